@@ -0,0 +1,110 @@
+package com.estore.api.estoreapi.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Options for the caches in front of the inventory endpoints, read from
+ * application.properties
+ * <br>
+ * A settings object created with {@code new} keeps every option at its
+ * default, which reads the inventory on every request
+ *
+ * @author Team 2
+ */
+@Component
+public class CacheSettings {
+    @Value("${catalog.cache.enabled:false}")
+    private boolean catalogEnabled; // Serve GET /keyboards from a pre-encoded copy with an ETag
+    @Value("${catalog.cache.gzip:false}")
+    private boolean catalogGzip; // Keep a gzipped copy of the catalog for clients that accept it
+    @Value("${query.cache.enabled:false}")
+    private boolean queryEnabled; // Keep the results of searches and price filters
+    @Value("${query.cache.max-weight:100000}")
+    private long queryMaxWeight; // Most keyboards kept across all cached results
+
+    /**
+     * Creates settings with every option at its default
+     */
+    public CacheSettings() {
+        this.catalogEnabled = false;
+        this.catalogGzip = false;
+        this.queryEnabled = false;
+        this.queryMaxWeight = 100000;
+    }
+
+    /**
+     * Returns whether the whole catalog is served from a copy encoded once
+     * per inventory version, with an ETag
+     *
+     * @return true if the catalog cache is enabled
+     */
+    public boolean isCatalogEnabled() {
+        return catalogEnabled;
+    }
+
+    /**
+     * Sets whether the whole catalog is served from a pre-encoded copy
+     *
+     * @param catalogEnabled true to enable the catalog cache
+     */
+    public void setCatalogEnabled(boolean catalogEnabled) {
+        this.catalogEnabled = catalogEnabled;
+    }
+
+    /**
+     * Returns whether the catalog cache also keeps a gzipped copy, sent to
+     * clients that accept gzip
+     *
+     * @return true if the gzipped copy is kept
+     */
+    public boolean isCatalogGzip() {
+        return catalogGzip;
+    }
+
+    /**
+     * Sets whether the catalog cache also keeps a gzipped copy
+     *
+     * @param catalogGzip true to keep the gzipped copy
+     */
+    public void setCatalogGzip(boolean catalogGzip) {
+        this.catalogGzip = catalogGzip;
+    }
+
+    /**
+     * Returns whether the results of keyboard searches and price filters are
+     * kept until an inventory change could affect them
+     *
+     * @return true if the query cache is enabled
+     */
+    public boolean isQueryEnabled() {
+        return queryEnabled;
+    }
+
+    /**
+     * Sets whether the results of searches and price filters are kept
+     *
+     * @param queryEnabled true to enable the query cache
+     */
+    public void setQueryEnabled(boolean queryEnabled) {
+        this.queryEnabled = queryEnabled;
+    }
+
+    /**
+     * Returns the most keyboards the query cache keeps across all results
+     *
+     * @return the maximum weight
+     */
+    public long getQueryMaxWeight() {
+        return queryMaxWeight;
+    }
+
+    /**
+     * Sets the most keyboards the query cache keeps across all results
+     *
+     * @param queryMaxWeight the maximum weight
+     */
+    public void setQueryMaxWeight(long queryMaxWeight) {
+        this.queryMaxWeight = queryMaxWeight;
+    }
+}
@@ -0,0 +1,162 @@
+package com.estore.api.estoreapi.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The whole catalog, already encoded as the JSON response of
+ * {@code GET /keyboards}
+ * <br>
+ * The encoding is kept with the inventory version it was read at, and only
+ * redone once the version moves, so requests between changes skip Jackson
+ * altogether and just write the same bytes. Each encoding has a strong ETag
+ * made of the version and a value chosen when the cache is created, which
+ * keeps tags from before a restart from matching a new catalog.
+ *
+ * @author Team 2
+ */
+public class CatalogCache {
+    /**
+     * One encoding of the catalog
+     */
+    public static final class Entry {
+        private final long version;
+        private final int count;
+        private final byte[] json;
+        private final byte[] gzipped; // Null when gzip is disabled
+        private final String etag;
+        private final String gzipEtag;
+
+        /**
+         * Creates an encoding
+         *
+         * @param version the inventory version it was read at
+         * @param count   the number of keyboards
+         * @param json    the JSON array of keyboards
+         * @param gzipped the JSON array compressed, or null
+         * @param tag     the part of the ETag that identifies this encoding
+         */
+        private Entry(long version, int count, byte[] json, byte[] gzipped, String tag) {
+            this.version = version;
+            this.count = count;
+            this.json = json;
+            this.gzipped = gzipped;
+            this.etag = "\"" + tag + "\"";
+            this.gzipEtag = "\"" + tag + "-gzip\"";
+        }
+
+        /**
+         * Returns the number of keyboards in the catalog
+         *
+         * @return the number of keyboards
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the JSON array of keyboards. The array is shared and must
+         * not be changed.
+         *
+         * @return the encoded catalog
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * Returns the JSON array of keyboards compressed with gzip. The array
+         * is shared and must not be changed.
+         *
+         * @return the compressed catalog, or null if gzip is disabled
+         */
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+
+        /**
+         * Returns the strong ETag of the JSON or the compressed encoding
+         *
+         * @param gzip true for the compressed encoding
+         * @return the quoted ETag
+         */
+        public String getEtag(boolean gzip) {
+            return gzip ? gzipEtag : etag;
+        }
+    }
+
+    private final InventoryDAO inventoryDAO;
+    private final ObjectMapper objectMapper;
+    private final boolean gzip;
+    private final String epoch;
+    private volatile Entry current; // Null until first read
+
+    /**
+     * Creates an empty cache
+     *
+     * @param inventoryDAO the inventory the catalog is read from
+     * @param objectMapper encodes the catalog
+     * @param gzip         true to keep a compressed copy as well
+     */
+    public CatalogCache(InventoryDAO inventoryDAO, ObjectMapper objectMapper, boolean gzip) {
+        this.inventoryDAO = inventoryDAO;
+        this.objectMapper = objectMapper;
+        this.gzip = gzip;
+        this.epoch = Long.toString(new Random().nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    /**
+     * Returns the encoding of the current catalog, encoding it again only if
+     * the inventory has changed since the last one. Only one thread encodes
+     * at a time; the others wait for its result.
+     *
+     * @return the encoding
+     *
+     * @throws IOException if the inventory cannot be read or encoded
+     */
+    public Entry get() throws IOException {
+        Entry entry = current;
+        if (entry != null && entry.version == inventoryDAO.getVersion()) {
+            return entry;
+        }
+        synchronized (this) {
+            long version = inventoryDAO.getVersion();
+            entry = current;
+            if (entry != null && entry.version == version) {
+                return entry;
+            }
+            Keyboard[] keyboards = inventoryDAO.getKeyboards();
+            byte[] json = objectMapper.writeValueAsBytes(keyboards);
+            entry = new Entry(version, keyboards.length, json, gzip ? compress(json) : null,
+                    epoch + "-" + version);
+            // A change landing during the read may or may not be in it, so
+            // the encoding is only kept if none did
+            if (inventoryDAO.getVersion() == version) {
+                current = entry;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Compresses bytes with gzip
+     *
+     * @param bytes the bytes
+     * @return the compressed bytes
+     *
+     * @throws IOException never, as the bytes are in memory
+     */
+    private static byte[] compress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
@@ -1,9 +1,14 @@
 package com.estore.api.estoreapi.controller;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,12 +16,22 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.estore.api.estoreapi.model.InventoryChanges;
 import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.KeyboardPage;
+import com.estore.api.estoreapi.model.KeyboardQuery;
+import com.estore.api.estoreapi.model.KeyboardQueryResult;
+import com.estore.api.estoreapi.model.KeyboardSort;
 import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.estore.api.estoreapi.persistence.PersistenceSettings;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * Constructor that initializes the InventoryController with a inventoryDAO.
@@ -29,7 +44,12 @@ import com.estore.api.estoreapi.persistence.InventoryDAO;
 @RequestMapping("keyboards")
 public class InventoryController {
     private static final Logger LOG = Logger.getLogger(InventoryController.class.getName());
+    public static final int MAX_PAGE_SIZE = 1000;
     private InventoryDAO inventoryDAO;
+    private ObjectMapper objectMapper;
+    private CatalogCache catalogCache; // Null when the catalog is encoded on every request
+    private QueryResultCache queryCache; // Null when searches and filters are read on every request
+    private InventoryEventStream eventStream;
 
     /**
      * Constructor that initializes the InventoryController with a inventoryDAO.
@@ -40,7 +60,47 @@ public class InventoryController {
      *                     .
      */
     public InventoryController(InventoryDAO inventoryDAO) {
+        this(inventoryDAO, new ObjectMapper(), new CacheSettings());
+    }
+
+    /**
+     * Constructor that initializes the InventoryController with a
+     * inventoryDAO, caching the encoded catalog and the results of searches
+     * and price filters if enabled in the settings.
+     * 
+     * @param inventoryDAO the inventoryDAO instance to be used by the
+     *                     InventoryController.
+     * @param objectMapper encodes the catalog.
+     * @param settings     whether the catalog is cached and gzipped, and
+     *                     whether and how many query results are cached.
+     */
+    public InventoryController(InventoryDAO inventoryDAO, ObjectMapper objectMapper, CacheSettings settings) {
+        this(inventoryDAO, objectMapper, settings, new InventoryEventStream(inventoryDAO, new PersistenceSettings()));
+    }
+
+    /**
+     * Constructor that initializes the InventoryController with a
+     * inventoryDAO and the stream its changes are pushed on.
+     * 
+     * @param inventoryDAO the inventoryDAO instance to be used by the
+     *                     InventoryController.
+     * @param objectMapper encodes the catalog.
+     * @param settings     whether the catalog is cached and gzipped, and
+     *                     whether and how many query results are cached.
+     * @param eventStream  pushes inventory changes to subscribers.
+     */
+    @Autowired
+    public InventoryController(InventoryDAO inventoryDAO, ObjectMapper objectMapper, CacheSettings settings,
+            InventoryEventStream eventStream) {
         this.inventoryDAO = inventoryDAO;
+        this.eventStream = eventStream;
+        this.objectMapper = objectMapper;
+        if (settings.isCatalogEnabled()) {
+            this.catalogCache = new CatalogCache(inventoryDAO, objectMapper, settings.isCatalogGzip());
+        }
+        if (settings.isQueryEnabled()) {
+            this.queryCache = new QueryResultCache(inventoryDAO, settings.getQueryMaxWeight());
+        }
     }
 
     /**
@@ -69,29 +129,107 @@ public class InventoryController {
     }
 
     /**
-     * A GET API endpoint that returns an array of all Keyboard objects.
+     * A GET API endpoint that returns the JSON array of all Keyboard objects.
+     * With the catalog cache enabled, the array is encoded once per inventory
+     * version and sent with a strong ETag, and a request whose If-None-Match
+     * names the current ETag gets 304 (NOT_MODIFIED) without a body. Clients
+     * accepting gzip get the gzipped copy, if one is kept.
      * 
-     * @return a ResponseEntity with a status code of 200 (OK) if the keyboards are
-     *         found,
-     *         500 (INTERNAL_SERVER_ERROR) if an IOException occurs.
+     * @param ifNoneMatch    the ETags the client already has, may be null.
+     * @param acceptEncoding the encodings the client accepts, may be null.
+     * @return a ResponseEntity with a status code of 200 (OK) and the encoded
+     *         keyboards if they are found,
+     *         304 (NOT_MODIFIED) if the client's copy is current,
+     *         500 (INTERNAL_SERVER_ERROR) if there are none or an IOException
+     *         occurs.
      */
     @GetMapping("")
-    public ResponseEntity<Keyboard[]> getKeyboards() {
+    public ResponseEntity<byte[]> getCatalog(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         LOG.info("GET /keyboards");
 
         try {
-            Keyboard[] keyboards = inventoryDAO.getKeyboards();
-            if (keyboards.length > 0) {
-                return new ResponseEntity<Keyboard[]>(keyboards, HttpStatus.OK);
-            } else {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            if (catalogCache == null) {
+                Keyboard[] keyboards = inventoryDAO.getKeyboards();
+                if (keyboards.length == 0) {
+                    return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+                }
+                return new ResponseEntity<byte[]>(objectMapper.writeValueAsBytes(keyboards), headers,
+                        HttpStatus.OK);
+            }
+            CatalogCache.Entry catalog = catalogCache.get();
+            if (catalog.getCount() == 0) {
                 return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
             }
+            boolean gzip = catalog.getGzipped() != null && acceptsGzip(acceptEncoding);
+            String etag = catalog.getEtag(gzip);
+            headers.setETag(etag);
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+            if (matchesEtag(ifNoneMatch, etag)) {
+                return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+            }
+            if (gzip) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                return new ResponseEntity<byte[]>(catalog.getGzipped(), headers, HttpStatus.OK);
+            }
+            return new ResponseEntity<byte[]>(catalog.getJson(), headers, HttpStatus.OK);
         } catch (IOException e) {
             LOG.log(Level.SEVERE, e.getLocalizedMessage());
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * A GET API endpoint that returns one page of Keyboard objects, in the
+     * given order.
+     * 
+     * @param limit  the most keyboards to return, from 1 to
+     *               {@value #MAX_PAGE_SIZE}.
+     * @param cursor the nextCursor of the previous page, omitted for the first.
+     * @param sort   id, price, name or quantity.
+     * @param order  asc or desc.
+     * @return a ResponseEntity with a status code of 200 (OK) and the page,
+     *         400 (BAD_REQUEST) if a parameter or the cursor is invalid,
+     *         or 500 (INTERNAL_SERVER_ERROR) if an IOException occurs.
+     */
+    @GetMapping(value = "", params = "limit")
+    public ResponseEntity<KeyboardPage> getKeyboards(@RequestParam int limit,
+            @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "asc") String order) {
+        LOG.info("GET /keyboards?limit=" + limit + "&sort=" + sort + "&order=" + order);
+        return getPage(() -> new KeyboardQuery(null, false, null, null, null, null), limit, cursor, sort, order);
+    }
+
+    /**
+     * A GET API endpoint that streams every Keyboard object as
+     * newline-delimited JSON, one keyboard per line, for backups and bulk
+     * reads. Keyboards are written as they are read, so memory use does not
+     * grow with the catalog and the first line is sent straight away.
+     * 
+     * @return a ResponseEntity with a status code of 200 (OK) and the stream
+     *         of keyboards; an IOException while streaming cuts the
+     *         response short.
+     */
+    @GetMapping(value = "", params = { "format=ndjson", "!limit" })
+    public ResponseEntity<StreamingResponseBody> exportKeyboards() {
+        LOG.info("GET /keyboards?format=ndjson");
+        StreamingResponseBody body = out -> {
+            try {
+                int count = inventoryDAO.exportKeyboards(out);
+                LOG.fine("Exported " + count + " keyboards");
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, e.getLocalizedMessage());
+                throw e;
+            }
+        };
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        return new ResponseEntity<StreamingResponseBody>(body, headers, HttpStatus.OK);
+    }
+
     /**
      * A GET API endpoint that returns an array of Keyboard objects with the
      * specified name.
@@ -106,7 +244,8 @@ public class InventoryController {
         LOG.info("GET /keyboards/?name=" + name);
 
         try {
-            Keyboard[] userNames = inventoryDAO.findKeyboard(name);
+            Keyboard[] userNames = cached(QueryResultCache.searchKey(name, false),
+                    () -> inventoryDAO.findKeyboard(name));
             if (userNames != null) {
                 return new ResponseEntity<Keyboard[]>(userNames, HttpStatus.OK);
             } else {
@@ -118,6 +257,60 @@ public class InventoryController {
         }
     }
 
+    /**
+     * A GET API endpoint that returns an array of Keyboard objects whose name
+     * contains the given text, optionally ignoring case.
+     * 
+     * @param name       the text to look for in keyboard names.
+     * @param ignoreCase true to match names regardless of case.
+     * @return a ResponseEntity with a status code of 200 (OK) if the keyboards are
+     *         found,
+     *         500 (INTERNAL_SERVER_ERROR) if an IOException occurs.
+     */
+    @GetMapping(value = "/", params = { "ignoreCase", "!limit" })
+    public ResponseEntity<Keyboard[]> searchKeyboards(@RequestParam String name, @RequestParam boolean ignoreCase) {
+        LOG.info("GET /keyboards/?name=" + name + "&ignoreCase=" + ignoreCase);
+
+        try {
+            Keyboard[] keyboards = cached(QueryResultCache.searchKey(name, ignoreCase),
+                    () -> ignoreCase ? inventoryDAO.findKeyboard(name, true) : inventoryDAO.findKeyboard(name));
+            if (keyboards != null) {
+                return new ResponseEntity<Keyboard[]>(keyboards, HttpStatus.OK);
+            } else {
+                return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * A GET API endpoint that returns one page of the Keyboard objects whose
+     * name contains the given text, in the given order.
+     * 
+     * @param name       the text to look for in keyboard names.
+     * @param ignoreCase true to match names regardless of case.
+     * @param limit      the most keyboards to return, from 1 to
+     *                   {@value #MAX_PAGE_SIZE}.
+     * @param cursor     the nextCursor of the previous page, omitted for the
+     *                   first.
+     * @param sort       id, price, name or quantity.
+     * @param order      asc or desc.
+     * @return a ResponseEntity with a status code of 200 (OK) and the page,
+     *         400 (BAD_REQUEST) if a parameter or the cursor is invalid,
+     *         or 500 (INTERNAL_SERVER_ERROR) if an IOException occurs.
+     */
+    @GetMapping(value = "/", params = "limit")
+    public ResponseEntity<KeyboardPage> searchKeyboards(@RequestParam String name,
+            @RequestParam(defaultValue = "false") boolean ignoreCase, @RequestParam int limit,
+            @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "asc") String order) {
+        LOG.info("GET /keyboards/?name=" + name + "&limit=" + limit + "&sort=" + sort + "&order=" + order);
+        return getPage(() -> new KeyboardQuery(name, ignoreCase, null, null, null, null), limit, cursor, sort,
+                order);
+    }
+
     /**
      * A POST API endpoint that creates a new Keyboard object.
      * 
@@ -215,7 +408,8 @@ public class InventoryController {
             @PathVariable String toPrice) throws IOException {
 
         try {
-            Keyboard[] keyboards = inventoryDAO.getFilteredKeyboards(fromPrice, toPrice);
+            Keyboard[] keyboards = cached(QueryResultCache.priceKey(fromPrice, toPrice),
+                    () -> inventoryDAO.getFilteredKeyboards(fromPrice, toPrice));
 
             if (keyboards != null) {
                 return new ResponseEntity<Keyboard[]>(keyboards, HttpStatus.OK);
@@ -228,4 +422,222 @@ public class InventoryController {
         }
     }
 
+    /**
+     * A GET API endpoint that returns one page of the Keyboard objects within
+     * a price range, in the given order.
+     * 
+     * @param fromPrice the lower limit of the price range.
+     * @param toPrice   the upper limit of the price range.
+     * @param limit     the most keyboards to return, from 1 to
+     *                  {@value #MAX_PAGE_SIZE}.
+     * @param cursor    the nextCursor of the previous page, omitted for the
+     *                  first.
+     * @param sort      id, price, name or quantity.
+     * @param order     asc or desc.
+     * @return a ResponseEntity with a status code of 200 (OK) and the page,
+     *         400 (BAD_REQUEST) if a parameter or the cursor is invalid,
+     *         or 500 (INTERNAL_SERVER_ERROR) if an IOException occurs.
+     */
+    @GetMapping(value = "/filter/fromPrice={fromPrice}&toPrice={toPrice}", params = "limit")
+    public ResponseEntity<KeyboardPage> filterKeyboards(@PathVariable String fromPrice,
+            @PathVariable String toPrice, @RequestParam int limit, @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "id") String sort, @RequestParam(defaultValue = "asc") String order) {
+        LOG.info("GET /keyboards/filter/fromPrice=" + fromPrice + "&toPrice=" + toPrice + "?limit=" + limit);
+        return getPage(() -> new KeyboardQuery(null, false, Integer.valueOf(fromPrice), Integer.valueOf(toPrice),
+                null, null), limit, cursor, sort, order);
+    }
+
+    /**
+     * A GET API endpoint that runs a faceted query over the catalog. Every
+     * parameter is optional and the given ones are combined; size and
+     * switchColor may be repeated to accept any of several values.
+     * 
+     * @param name         text the keyboard name must contain.
+     * @param ignoreCase   true to match the name regardless of case.
+     * @param minPrice     the lowest price to include.
+     * @param maxPrice     the highest price to include.
+     * @param size         the sizes to include.
+     * @param switchColor  the switch colors to include.
+     * @return a ResponseEntity with a status code of 200 (OK) and the matching
+     *         keyboards with their counts per size and switch color,
+     *         or 500 (INTERNAL_SERVER_ERROR) if an IOException occurs.
+     */
+    @GetMapping("/query")
+    public ResponseEntity<KeyboardQueryResult> queryKeyboards(@RequestParam(required = false) String name,
+            @RequestParam(defaultValue = "false") boolean ignoreCase,
+            @RequestParam(required = false) Integer minPrice, @RequestParam(required = false) Integer maxPrice,
+            @RequestParam(required = false) List<Keyboard.Size> size,
+            @RequestParam(required = false) List<Keyboard.SwitchColor> switchColor) {
+        KeyboardQuery query = new KeyboardQuery(name, ignoreCase, minPrice, maxPrice, size, switchColor);
+        LOG.info("GET /keyboards/query " + query);
+
+        try {
+            return new ResponseEntity<KeyboardQueryResult>(inventoryDAO.queryKeyboards(query), HttpStatus.OK);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * A GET API endpoint that returns the counts of how the search and price
+     * filter result cache has been used: hits, misses, evictions,
+     * invalidations and the results and keyboards it keeps.
+     * 
+     * @return a ResponseEntity with a status code of 200 (OK) and the counts,
+     *         or 404 (NOT_FOUND) if the cache is disabled.
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<QueryResultCache.Stats> getQueryCacheStats() {
+        LOG.info("GET /keyboards/cache/stats");
+        if (queryCache == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<QueryResultCache.Stats>(queryCache.getStats(), HttpStatus.OK);
+    }
+
+    /**
+     * A GET API endpoint that opens a stream of Server-Sent Events carrying
+     * the stock and price of keyboards as they change, so clients can keep a
+     * listing current without polling the catalog. A client sent a resync
+     * event was too slow to keep up and should fetch the catalog again.
+     * 
+     * @return a ResponseEntity with a status code of 200 (OK) and the open
+     *         stream,
+     *         404 (NOT_FOUND) if events are disabled,
+     *         or 503 (SERVICE_UNAVAILABLE) if too many streams are open.
+     */
+    @GetMapping("/events")
+    public ResponseEntity<SseEmitter> streamChanges() {
+        LOG.info("GET /keyboards/events");
+        if (!eventStream.isEnabled()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        SseEmitter emitter = eventStream.subscribe();
+        if (emitter == null) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return new ResponseEntity<SseEmitter>(emitter, HttpStatus.OK);
+    }
+
+    /**
+     * A GET API endpoint that returns the keyboards created, updated or
+     * deleted after a version, so a client holding a copy of the catalog can
+     * bring it up to date without fetching it again. Each keyboard appears
+     * once, with its latest change. The response's version and epoch are
+     * what to send next time; if resync is true the client must fetch the
+     * whole catalog instead.
+     * 
+     * @param since the version of the client's copy.
+     * @param epoch the epoch that came with that version; without it the
+     *              answer is always a resync, so a new client fetches the
+     *              whole catalog first.
+     * @return a ResponseEntity with a status code of 200 (OK) and the changes
+     *         or a resync,
+     *         or 500 (INTERNAL_SERVER_ERROR) if an IOException occurs.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<InventoryChanges> getChanges(@RequestParam long since,
+            @RequestParam(required = false) String epoch) {
+        LOG.info("GET /keyboards/changes?since=" + since + (epoch == null ? "" : "&epoch=" + epoch));
+
+        try {
+            return new ResponseEntity<InventoryChanges>(inventoryDAO.getChangesSince(since, epoch), HttpStatus.OK);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Reads a search or filter result through the query cache, or straight
+     * from the inventory when the cache is disabled.
+     * 
+     * @param key    the query's key in the cache.
+     * @param loader reads the result from the inventory.
+     * @return the result, which must not be changed.
+     * @throws IOException if the inventory cannot be read.
+     */
+    private Keyboard[] cached(String key, QueryResultCache.Loader loader) throws IOException {
+        return queryCache == null ? loader.load() : queryCache.get(key, loader);
+    }
+
+    /**
+     * Fetches one page for the paged endpoints. The query is built inside the
+     * try so that malformed parameters turn into a 400 like a bad cursor does.
+     * 
+     * @param query  builds the criteria the keyboards must match.
+     * @param limit  the most keyboards to return.
+     * @param cursor the nextCursor of the previous page, or null.
+     * @param sort   the name of a {@link KeyboardSort}, in any case.
+     * @param order  asc or desc.
+     * @return a ResponseEntity with the page, 400 (BAD_REQUEST) or 500
+     *         (INTERNAL_SERVER_ERROR).
+     */
+    private ResponseEntity<KeyboardPage> getPage(Supplier<KeyboardQuery> query, int limit, String cursor,
+            String sort, String order) {
+        try {
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            boolean descending;
+            if ("desc".equalsIgnoreCase(order)) {
+                descending = true;
+            } else if ("asc".equalsIgnoreCase(order)) {
+                descending = false;
+            } else {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            KeyboardPage page = inventoryDAO.getKeyboardPage(query.get(), KeyboardSort.parse(sort), descending,
+                    cursor, limit);
+            return new ResponseEntity<KeyboardPage>(page, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Rejected page request: " + e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+
+    /**
+     * Returns whether an Accept-Encoding header allows gzip.
+     * 
+     * @param acceptEncoding the header, may be null.
+     * @return true if gzip is listed without a zero weight.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether an If-None-Match header names an ETag, comparing weak
+     * and strong tags alike as the header requires.
+     * 
+     * @param ifNoneMatch the header, may be null.
+     * @param etag        the quoted ETag.
+     * @return true if the header is * or lists the ETag.
+     */
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.equals("*") || (trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,312 @@
+package com.estore.api.estoreapi.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.KeyboardDelta;
+import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.estore.api.estoreapi.persistence.PersistenceSettings;
+
+/**
+ * Pushes inventory changes to clients as Server-Sent Events
+ * <br>
+ * Each change becomes a {@link KeyboardDelta} held for every subscriber, by
+ * keyboard id, so a keyboard changing again before its last change was sent
+ * only sends the newest. A few dispatch threads send whatever is waiting for
+ * a subscriber as one {@value #CHANGES} event holding an array of deltas,
+ * with the highest version as its id. A subscriber with nothing waiting holds
+ * no buffer and no thread, only its open response.
+ * <br>
+ * A subscriber with changes to more keyboards waiting than the settings allow
+ * is too slow to keep up: its waiting changes are thrown away, it is sent a
+ * {@value #RESYNC} event, and its stream is closed. The client then fetches
+ * the catalog again and subscribes anew.
+ *
+ * @author Team 2
+ */
+@Component
+public class InventoryEventStream {
+    private static final Logger LOG = Logger.getLogger(InventoryEventStream.class.getName());
+    private static final int DISPATCH_THREADS = 2;
+
+    /**
+     * The name of the events carrying changes
+     */
+    public static final String CHANGES = "changes";
+
+    /**
+     * The name of the event telling a dropped subscriber to fetch the catalog
+     * again
+     */
+    public static final String RESYNC = "resync";
+
+    /**
+     * One client's stream and the changes waiting to be sent on it
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private LinkedHashMap<Integer, KeyboardDelta> pending; // Null while nothing waits
+        private boolean scheduled; // A dispatch thread has been asked to send
+        private boolean overflowed; // Too slow; to be told to resync
+        private boolean closed; // Removed; nothing more is held for it or sent
+
+        /**
+         * Creates a subscriber with nothing waiting
+         *
+         * @param emitter the client's stream
+         */
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * Holds a change for sending, replacing an older one of the same
+         * keyboard, and asks a dispatch thread to send it unless one already
+         * has been
+         *
+         * @param delta the change
+         */
+        private void offer(KeyboardDelta delta) {
+            synchronized (this) {
+                if (overflowed || closed) {
+                    return;
+                }
+                if (pending == null) {
+                    pending = new LinkedHashMap<>();
+                }
+                KeyboardDelta previous = pending.get(delta.getId());
+                if (previous == null || previous.getVersion() <= delta.getVersion()) {
+                    pending.put(delta.getId(), delta);
+                }
+                if (pending.size() > maxPending) {
+                    overflowed = true;
+                    pending = null;
+                }
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                dispatcher.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                remove(this);
+            }
+        }
+
+        /**
+         * Sends what is waiting until nothing is, on a dispatch thread. A
+         * subscriber that overflowed is told to resync and closed instead.
+         */
+        private void drain() {
+            while (true) {
+                List<KeyboardDelta> batch;
+                synchronized (this) {
+                    if (closed || (!overflowed && pending == null)) {
+                        scheduled = false;
+                        return;
+                    }
+                    batch = overflowed ? null : new ArrayList<>(pending.values());
+                    pending = null;
+                }
+                try {
+                    if (batch == null) {
+                        dropped.incrementAndGet();
+                        LOG.fine("Dropped a subscriber too slow to keep up with inventory changes");
+                        remove(this);
+                        emitter.send(SseEmitter.event().name(RESYNC).data(""));
+                        emitter.complete();
+                        return;
+                    }
+                    long version = 0;
+                    for (KeyboardDelta delta : batch) {
+                        version = Math.max(version, delta.getVersion());
+                    }
+                    emitter.send(SseEmitter.event().id(Long.toString(version)).name(CHANGES).data(batch,
+                            MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away or the stream timed out; the
+                    // container completes the response itself
+                    remove(this);
+                    return;
+                }
+            }
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxSubscribers;
+    private final int maxPending;
+    private final long timeoutMs;
+    private final Executor dispatcher;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates the stream and starts listening to the inventory, if enabled in
+     * the settings
+     *
+     * @param inventoryDAO the inventory whose changes are pushed
+     * @param settings     whether events are enabled, the most subscribers,
+     *                     the most changes waiting for one and how long a
+     *                     stream stays open
+     */
+    @Autowired
+    public InventoryEventStream(InventoryDAO inventoryDAO, PersistenceSettings settings) {
+        this(inventoryDAO, settings, settings.isInventoryEventsEnabled() ? newDispatcher() : null);
+    }
+
+    /**
+     * Creates a stream sending on the given executor
+     *
+     * @param inventoryDAO the inventory whose changes are pushed
+     * @param settings     whether events are enabled, the most subscribers,
+     *                     the most changes waiting for one and how long a
+     *                     stream stays open
+     * @param dispatcher   runs the sends
+     */
+    InventoryEventStream(InventoryDAO inventoryDAO, PersistenceSettings settings, Executor dispatcher) {
+        this.enabled = settings.isInventoryEventsEnabled();
+        this.maxSubscribers = Math.max(1, settings.getInventoryEventsMaxSubscribers());
+        this.maxPending = Math.max(1, settings.getInventoryEventsMaxPending());
+        this.timeoutMs = settings.getInventoryEventsTimeoutMs();
+        this.dispatcher = dispatcher;
+        if (enabled) {
+            inventoryDAO.addChangeListener(this::publish);
+        }
+    }
+
+    /**
+     * Creates the dispatch threads' pool. Each subscriber has at most one
+     * send queued at a time, so the queue never holds more than one per
+     * subscriber.
+     *
+     * @return the pool, whose threads start on first use
+     */
+    private static ExecutorService newDispatcher() {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(DISPATCH_THREADS, DISPATCH_THREADS, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "inventory-events-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Returns whether clients can subscribe
+     *
+     * @return true if inventory events are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens a stream of changes for a new client
+     *
+     * @return the stream, or null if events are disabled or there are
+     *         already as many subscribers as allowed
+     */
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(timeoutMs));
+    }
+
+    /**
+     * Sends changes on the given stream from now on
+     *
+     * @param emitter the stream
+     * @return the stream, or null if events are disabled or there are
+     *         already as many subscribers as allowed
+     */
+    SseEmitter subscribe(SseEmitter emitter) {
+        if (!enabled || subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(emitter);
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        return emitter;
+    }
+
+    /**
+     * Returns the number of open streams
+     *
+     * @return the number of subscribers
+     */
+    public int size() {
+        return subscribers.size();
+    }
+
+    /**
+     * Returns the number of subscribers dropped for being too slow
+     *
+     * @return the number dropped
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops the dispatch threads when the application shuts down
+     */
+    @PreDestroy
+    public void close() {
+        if (dispatcher instanceof ExecutorService) {
+            ((ExecutorService) dispatcher).shutdownNow();
+        }
+    }
+
+    /**
+     * Holds a change for every subscriber, called by the inventory on the
+     * thread that made the change
+     *
+     * @param change the change
+     */
+    private void publish(InventoryChange change) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        KeyboardDelta delta = KeyboardDelta.of(change);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(delta);
+        }
+    }
+
+    /**
+     * Stops holding changes for a subscriber
+     *
+     * @param subscriber the subscriber
+     */
+    private void remove(Subscriber subscriber) {
+        synchronized (subscriber) {
+            subscriber.closed = true;
+            subscriber.pending = null;
+        }
+        subscribers.remove(subscriber);
+    }
+}
@@ -0,0 +1,631 @@
+package com.estore.api.estoreapi.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The results of recent keyboard searches and price filters
+ * <br>
+ * Each result is weighed by the number of keyboards in it, and the total
+ * weight is bounded. New results go into a small window kept in recently used
+ * order; those pushed out of it only get into the main part of the cache if
+ * they have been asked for more often than the results they would replace,
+ * judged by an approximate count of recent requests for every query. A burst
+ * of one-off searches therefore cycles through the window without flushing
+ * the popular results. The main part keeps results asked for again apart
+ * from those only asked for once, and replaces the latter first.
+ * <br>
+ * Results are kept with the inventory version they were read at. When the
+ * version moves, the changes since are read from the inventory's change log
+ * and only the results they could affect are dropped: those holding a
+ * changed keyboard, and those whose query the keyboard now matches. A stock
+ * change to one keyboard therefore leaves every result without it in place.
+ * If the log no longer reaches back to the kept version, every result is
+ * dropped.
+ *
+ * @author Team 2
+ */
+public class QueryResultCache {
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * Reads a result from the inventory
+     */
+    @FunctionalInterface
+    public interface Loader {
+        Keyboard[] load() throws IOException;
+    }
+
+    /**
+     * The counts of how the cache has been used
+     */
+    public static final class Stats {
+        @JsonProperty("hits")
+        private final long hits;
+        @JsonProperty("misses")
+        private final long misses;
+        @JsonProperty("evictions")
+        private final long evictions;
+        @JsonProperty("invalidations")
+        private final long invalidations;
+        @JsonProperty("size")
+        private final int size;
+        @JsonProperty("weight")
+        private final long weight;
+        @JsonProperty("maxWeight")
+        private final long maxWeight;
+
+        /**
+         * Creates the counts
+         *
+         * @param hits          the requests answered from the cache
+         * @param misses        the requests read from the inventory
+         * @param evictions     the results dropped or refused to make room
+         * @param invalidations the times results were dropped because the
+         *                      inventory changed
+         * @param size          the number of results kept
+         * @param weight        the number of keyboards in the results kept
+         * @param maxWeight     the most keyboards kept
+         */
+        private Stats(long hits, long misses, long evictions, long invalidations, int size, long weight,
+                long maxWeight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.weight = weight;
+            this.maxWeight = maxWeight;
+        }
+
+        /**
+         * Returns the number of requests answered from the cache
+         *
+         * @return the hits
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Returns the number of requests read from the inventory
+         *
+         * @return the misses
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Returns the number of results dropped, or refused on their way into
+         * the main part of the cache, to make room
+         *
+         * @return the evictions
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Returns the number of times results were dropped because the
+         * inventory changed
+         *
+         * @return the invalidations
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        /**
+         * Returns the number of results kept
+         *
+         * @return the size
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the total weight of the results kept
+         *
+         * @return the weight
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * Returns the most weight kept
+         *
+         * @return the maximum weight
+         */
+        public long getMaxWeight() {
+            return maxWeight;
+        }
+    }
+
+    /**
+     * One kept result
+     */
+    private static final class Node {
+        private final String key;
+        private final Keyboard[] keyboards;
+        private final long weight;
+        private final int[] ids; // Sorted ids of the keyboards in the result
+        private final Predicate<Keyboard> query; // True for every keyboard the query could match
+
+        /**
+         * Creates a kept result
+         *
+         * @param key       the query
+         * @param keyboards the result
+         */
+        private Node(String key, Keyboard[] keyboards) {
+            this.key = key;
+            this.keyboards = keyboards;
+            this.weight = keyboards.length + 1L;
+            this.ids = new int[keyboards.length];
+            for (int i = 0; i < keyboards.length; ++i) {
+                ids[i] = keyboards[i].getKeyboardId();
+            }
+            Arrays.sort(ids);
+            this.query = queryOf(key);
+        }
+
+        /**
+         * Returns whether a change to one keyboard could change this result
+         *
+         * @param keyboardId the changed keyboard
+         * @param keyboard   the keyboard after the change, null if deleted
+         * @return true if the result holds the keyboard or its query could
+         *         now match it
+         */
+        private boolean isAffectedBy(int keyboardId, Keyboard keyboard) {
+            return Arrays.binarySearch(ids, keyboardId) >= 0 || (keyboard != null && query.test(keyboard));
+        }
+    }
+
+    /**
+     * An approximate count of recent requests for every query: a count-min
+     * sketch of small counters, all halved every so often so that old
+     * popularity fades
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+                0xD6E8FEB86659FD93L };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        /**
+         * Creates an empty sketch
+         *
+         * @param width the counters per row, a power of two
+         */
+        private FrequencySketch(int width) {
+            this.rows = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        /**
+         * Counts a request for a query
+         *
+         * @param key the query
+         */
+        private void increment(String key) {
+            int hash = key.hashCode();
+            for (int row = 0; row < rows.length; ++row) {
+                int index = index(hash, row);
+                if (rows[row][index] < MAX_COUNT) {
+                    ++rows[row][index];
+                }
+            }
+            if (++additions >= sampleSize) {
+                for (byte[] counters : rows) {
+                    for (int i = 0; i < counters.length; ++i) {
+                        counters[i] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        /**
+         * Returns the approximate number of recent requests for a query
+         *
+         * @param key the query
+         * @return the count, never less than the true one until halved
+         */
+        private int frequency(String key) {
+            int hash = key.hashCode();
+            int count = MAX_COUNT;
+            for (int row = 0; row < rows.length; ++row) {
+                count = Math.min(count, rows[row][index(hash, row)]);
+            }
+            return count;
+        }
+
+        /**
+         * Returns the counter a hash falls on in a row
+         *
+         * @param hash the query's hash
+         * @param row  the row
+         * @return the index of the counter
+         */
+        private int index(int hash, int row) {
+            return (int) ((hash * SEEDS[row]) >>> 32) & mask;
+        }
+    }
+
+    private final InventoryDAO inventoryDAO;
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long protectedMaxWeight;
+    private final FrequencySketch sketch;
+    // Least recently used first; get and put move an entry to the end
+    private final LinkedHashMap<String, Node> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Node> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Node> protectedResults = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+    private long version = Long.MIN_VALUE; // The inventory version of every kept result
+    private String epoch; // The change log the version belongs to, null until first read
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Creates an empty cache
+     *
+     * @param inventoryDAO the inventory whose version the results are kept
+     *                     with
+     * @param maxWeight    the most keyboards kept across all results
+     */
+    public QueryResultCache(InventoryDAO inventoryDAO, long maxWeight) {
+        this.inventoryDAO = inventoryDAO;
+        this.maxWeight = Math.max(2, maxWeight);
+        this.windowMaxWeight = Math.max(1, this.maxWeight * WINDOW_PERCENT / 100);
+        this.protectedMaxWeight = (this.maxWeight - windowMaxWeight) * PROTECTED_PERCENT / 100;
+        int width = Integer.highestOneBit((int) Math.min(1 << 16, Math.max(64, this.maxWeight)) - 1) << 1;
+        this.sketch = new FrequencySketch(width);
+    }
+
+    /**
+     * Returns the key of a search by name
+     *
+     * @param name       the text to look for in keyboard names
+     * @param ignoreCase true if case is ignored
+     * @return the key
+     */
+    public static String searchKey(String name, boolean ignoreCase) {
+        return (ignoreCase ? "name-ignore-case\0" : "name\0") + name;
+    }
+
+    /**
+     * Returns the key of a filter by price
+     *
+     * @param fromPrice the lower limit of the price range
+     * @param toPrice   the upper limit of the price range
+     * @return the key
+     */
+    public static String priceKey(String fromPrice, String toPrice) {
+        return "price\0" + fromPrice + "\0" + toPrice;
+    }
+
+    /**
+     * Returns the result of a query, reading it from the inventory if it is
+     * not kept for the current inventory version. The result is kept only if
+     * the inventory did not change while it was read. The array returned may
+     * be shared and must not be changed.
+     *
+     * @param key    the query's key
+     * @param loader reads the result from the inventory
+     * @return the result, null if the loader returned null
+     *
+     * @throws IOException if the loader fails
+     */
+    public Keyboard[] get(String key, Loader loader) throws IOException {
+        long current = inventoryDAO.getVersion();
+        long since;
+        String sinceEpoch;
+        synchronized (this) {
+            since = version;
+            sinceEpoch = epoch;
+        }
+        // Read outside the lock; advance ignores it if another caller moved on first
+        InventoryChanges changes = current > since ? changesSince(since, sinceEpoch) : null;
+        synchronized (this) {
+            sketch.increment(key);
+            advance(current, since, changes);
+            Node node = version == current ? find(key) : null;
+            if (node != null) {
+                ++hits;
+                return node.keyboards;
+            }
+            ++misses;
+        }
+        Keyboard[] keyboards = loader.load();
+        if (keyboards != null && inventoryDAO.getVersion() == current) {
+            synchronized (this) {
+                if (version == current) {
+                    put(new Node(key, keyboards));
+                }
+            }
+        }
+        return keyboards;
+    }
+
+    /**
+     * Returns the counts of how the cache has been used
+     *
+     * @return the counts
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, window.size() + probation.size()
+                + protectedResults.size(), windowWeight + probationWeight + protectedWeight, maxWeight);
+    }
+
+    /**
+     * Returns the query of a key made by {@link #searchKey(String, boolean)}
+     * or {@link #priceKey(String, String)}, as a test that is true for every
+     * keyboard the query could match. Names are compared ignoring case, which
+     * matches at least the keyboards a case-sensitive search does. Keys of
+     * any other form match every keyboard.
+     *
+     * @param key the query's key
+     * @return the test
+     */
+    private static Predicate<Keyboard> queryOf(String key) {
+        String[] parts = key.split("\0", -1);
+        if (parts.length == 2 && (parts[0].equals("name") || parts[0].equals("name-ignore-case"))) {
+            String text = parts[1].toLowerCase(Locale.ROOT);
+            return keyboard -> keyboard.getKeyboardName() == null
+                    || keyboard.getKeyboardName().toLowerCase(Locale.ROOT).contains(text);
+        }
+        if (parts.length == 3 && parts[0].equals("price")) {
+            try {
+                int from = Integer.parseInt(parts[1]);
+                int to = Integer.parseInt(parts[2]);
+                return keyboard -> keyboard.getPrice() >= from && keyboard.getPrice() <= to;
+            } catch (NumberFormatException e) {
+                // Falls through to matching everything
+            }
+        }
+        return keyboard -> true;
+    }
+
+    /**
+     * Reads the inventory changes made after a version
+     *
+     * @param since the version the kept results were read at
+     * @param epoch the change log the version belongs to, or null
+     * @return the changes, or null if they cannot be read
+     */
+    private InventoryChanges changesSince(long since, String epoch) {
+        try {
+            return inventoryDAO.getChangesSince(since, epoch);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Moves the kept results to a newer inventory version, dropping those the
+     * changes since could affect, or every result if the changes do not
+     * cover the kept version. Versions only grow, so a caller that read an
+     * older one is simply not answered from the cache.
+     *
+     * @param current the inventory version the caller read
+     * @param since   the version the changes were read after
+     * @param changes the changes after since, or null if they could not be
+     *                read
+     */
+    private void advance(long current, long since, InventoryChanges changes) {
+        if (current <= version) {
+            return;
+        }
+        long before = windowWeight + probationWeight + protectedWeight;
+        if (changes == null || changes.isResync() || since != version || changes.getVersion() < current) {
+            if (changes != null && changes.isResync()) {
+                epoch = changes.getEpoch();
+            }
+            window.clear();
+            probation.clear();
+            protectedResults.clear();
+            windowWeight = 0;
+            probationWeight = 0;
+            protectedWeight = 0;
+        } else {
+            for (InventoryChange change : changes.getChanges()) {
+                int keyboardId = change.getKeyboardId();
+                Keyboard keyboard = change.getType() == InventoryChange.Type.DELETE ? null : change.getKeyboard();
+                windowWeight -= invalidate(window, keyboardId, keyboard);
+                probationWeight -= invalidate(probation, keyboardId, keyboard);
+                protectedWeight -= invalidate(protectedResults, keyboardId, keyboard);
+            }
+        }
+        if (windowWeight + probationWeight + protectedWeight < before) {
+            ++invalidations;
+        }
+        version = current;
+    }
+
+    /**
+     * Drops the results of a segment that a change to one keyboard could
+     * affect
+     *
+     * @param segment    the segment
+     * @param keyboardId the changed keyboard
+     * @param keyboard   the keyboard after the change, null if deleted
+     * @return the weight dropped
+     */
+    private static long invalidate(LinkedHashMap<String, Node> segment, int keyboardId, Keyboard keyboard) {
+        long dropped = 0;
+        for (Iterator<Node> nodes = segment.values().iterator(); nodes.hasNext();) {
+            Node node = nodes.next();
+            if (node.isAffectedBy(keyboardId, keyboard)) {
+                nodes.remove();
+                dropped += node.weight;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Looks up a kept result, counting it as used. A result found on
+     * probation has now been asked for again, so it moves to the protected
+     * results, making room there by putting their least recently used back
+     * on probation.
+     *
+     * @param key the query's key
+     * @return the result, or null if it is not kept
+     */
+    private Node find(String key) {
+        Node node = window.get(key);
+        if (node == null) {
+            node = protectedResults.get(key);
+        }
+        if (node == null) {
+            node = probation.remove(key);
+            if (node != null) {
+                probationWeight -= node.weight;
+                protectedResults.put(key, node);
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMaxWeight && protectedResults.size() > 1) {
+                    Node demoted = removeEldest(protectedResults);
+                    protectedWeight -= demoted.weight;
+                    probation.put(demoted.key, demoted);
+                    probationWeight += demoted.weight;
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Keeps a new result in the window, passing those pushed out of it on to
+     * the main part of the cache
+     *
+     * @param node the result
+     */
+    private void put(Node node) {
+        if (node.weight > maxWeight || window.containsKey(node.key) || probation.containsKey(node.key)
+                || protectedResults.containsKey(node.key)) {
+            return;
+        }
+        window.put(node.key, node);
+        windowWeight += node.weight;
+        while (windowWeight > windowMaxWeight && !window.isEmpty()) {
+            Node candidate = removeEldest(window);
+            windowWeight -= candidate.weight;
+            admit(candidate);
+        }
+    }
+
+    /**
+     * Puts a result pushed out of the window on probation if there is room,
+     * or if it has been asked for more often than every result that would
+     * have to go to make room, least recently used first; otherwise drops it
+     *
+     * @param candidate the result
+     */
+    private void admit(Node candidate) {
+        long room = maxWeight - windowMaxWeight - probationWeight - protectedWeight;
+        List<Node> victims = new ArrayList<>();
+        if (room < candidate.weight) {
+            int frequency = sketch.frequency(candidate.key);
+            Iterator<Node> eldest = new ChainedIterator(probation.values().iterator(),
+                    protectedResults.values().iterator());
+            while (room < candidate.weight && eldest.hasNext()) {
+                Node victim = eldest.next();
+                if (sketch.frequency(victim.key) >= frequency) {
+                    ++evictions;
+                    return;
+                }
+                victims.add(victim);
+                room += victim.weight;
+            }
+            if (room < candidate.weight) {
+                ++evictions;
+                return;
+            }
+        }
+        for (Node victim : victims) {
+            if (probation.remove(victim.key) != null) {
+                probationWeight -= victim.weight;
+            } else if (protectedResults.remove(victim.key) != null) {
+                protectedWeight -= victim.weight;
+            }
+            ++evictions;
+        }
+        probation.put(candidate.key, candidate);
+        probationWeight += candidate.weight;
+    }
+
+    /**
+     * Removes the least recently used result of a segment
+     *
+     * @param segment the segment, not empty
+     * @return the result removed
+     */
+    private static Node removeEldest(LinkedHashMap<String, Node> segment) {
+        Iterator<Node> nodes = segment.values().iterator();
+        Node eldest = nodes.next();
+        nodes.remove();
+        return eldest;
+    }
+
+    /**
+     * Goes through the results of one segment, then another
+     */
+    private static final class ChainedIterator implements Iterator<Node> {
+        private final Iterator<Node> first;
+        private final Iterator<Node> second;
+
+        /**
+         * Creates the iterator
+         *
+         * @param first  the results gone through first
+         * @param second the results gone through after
+         */
+        private ChainedIterator(Iterator<Node> first, Iterator<Node> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return first.hasNext() || second.hasNext();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Node next() {
+            return first.hasNext() ? first.next() : second.next();
+        }
+    }
+}
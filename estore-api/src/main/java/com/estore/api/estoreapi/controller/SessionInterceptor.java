@@ -0,0 +1,75 @@
+package com.estore.api.estoreapi.controller;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.estore.api.estoreapi.security.SessionStore;
+
+/**
+ * Refuses cart and order requests that do not carry the session token of the
+ * user named in their path, when sessions are required
+ * <br>
+ * The token is looked up in the in-memory {@link SessionStore}, so checking
+ * it never reads the user from storage.
+ *
+ * @author Team 2
+ */
+@Component
+public class SessionInterceptor implements HandlerInterceptor {
+    private static final Logger LOG = Logger.getLogger(SessionInterceptor.class.getName());
+
+    /**
+     * The user paths that need a session
+     */
+    public static final String[] PATHS = { "/user/*/cart", "/user/*/cart/**", "/user/*/clearCart",
+            "/user/*/removeFromCart", "/user/*/orders", "/user/*/orders/**", "/user/*/checkout" };
+
+    private final SessionStore sessions;
+
+    /**
+     * Creates the interceptor
+     *
+     * @param sessions the sessions tokens are looked up in
+     */
+    @Autowired
+    public SessionInterceptor(SessionStore sessions) {
+        this.sessions = sessions;
+    }
+
+    /**
+     * Lets the request through if sessions are not required or its token
+     * belongs to the user in its path, and answers UNAUTHORIZED (401)
+     * otherwise
+     *
+     * @param request  the request
+     * @param response the response
+     * @param handler  the controller method that would handle the request
+     * @return true to let the request through
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!sessions.isRequired()) {
+            return true;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request
+                .getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String username = variables == null ? null : variables.get("username");
+        String owner = sessions.authenticate(request.getHeader(SessionStore.HEADER));
+        if (owner != null && owner.equals(username)) {
+            return true;
+        }
+        LOG.info("Refused " + request.getMethod() + " " + request.getRequestURI() + " without a session");
+        response.setStatus(HttpStatus.UNAUTHORIZED.value());
+        return false;
+    }
+}
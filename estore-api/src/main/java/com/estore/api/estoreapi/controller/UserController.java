@@ -1,6 +1,9 @@
 package com.estore.api.estoreapi.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -8,16 +11,24 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.estore.api.estoreapi.persistence.StockHolds;
 import com.estore.api.estoreapi.persistence.UserDAO;
+import com.estore.api.estoreapi.security.PasswordHasher;
+import com.estore.api.estoreapi.security.SessionStore;
 import com.estore.api.estoreapi.model.Keyboard;
 import com.estore.api.estoreapi.model.User;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,21 +41,36 @@ public class UserController {
     private static final Logger LOG = Logger.getLogger(UserController.class.getName());
     private UserDAO userDAO;
     private InventoryDAO inventoryDAO;
+    private StockHolds stockHolds;
+    private SessionStore sessions;
+    private PasswordHasher passwords;
 
     /**
-     * Constructor to initialize the userController with its DAO
+     * Constructor to initialize the userController with its DAOs, the holds on
+     * stock taken for carts, the store of login sessions and the password
+     * hasher
      * 
      * @param userDAO      the userDAO instance to be used in the UserController
      * @param inventoryDAO the inventoryDAO instance to be used in the
      *                     UserController
+     * @param stockHolds   gives stock back from carts that are not bought in
+     *                     time
+     * @param sessions     keeps logins in memory, when enabled
+     * @param passwords    hashes new passwords and checks given ones
      */
-    public UserController(UserDAO userDAO, InventoryDAO inventoryDAO) {
+    @Autowired
+    public UserController(UserDAO userDAO, InventoryDAO inventoryDAO, StockHolds stockHolds,
+            SessionStore sessions, PasswordHasher passwords) {
         this.userDAO = userDAO;
         this.inventoryDAO = inventoryDAO;
+        this.stockHolds = stockHolds;
+        this.sessions = sessions;
+        this.passwords = passwords;
     }
 
     /**
-     * gets a user from the json file as requested by http
+     * gets a user from the json file as requested by http, without its
+     * password
      * 
      * @param username user to get
      * @return a ResponseEntity with a status code of 200 (OK) if the user is found,
@@ -56,7 +82,7 @@ public class UserController {
         LOG.info("GET /user/" + username);
         User user = userDAO.getUser(username);
         if (user != null) {
-            return new ResponseEntity<User>(user, HttpStatus.OK);
+            return new ResponseEntity<User>(user.withoutPassword(), HttpStatus.OK);
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -64,7 +90,8 @@ public class UserController {
     }
 
     /**
-     * gets all users from the json file as requested by http
+     * gets all users from the json file as requested by http, without their
+     * passwords
      * 
      * @return a ResponseEntity with a status code of 200 (OK) if the user is found
      */
@@ -72,25 +99,56 @@ public class UserController {
     public ResponseEntity<User[]> getUsers() {
         LOG.info("GET /users");
         User[] users = userDAO.getUsers();
-        return new ResponseEntity<User[]>(users, HttpStatus.OK);
+        User[] body = new User[users.length];
+        for (int i = 0; i < users.length; ++i) {
+            body[i] = users[i].withoutPassword();
+        }
+        return new ResponseEntity<User[]>(body, HttpStatus.OK);
+    }
+
+    /**
+     * streams every user as newline-delimited JSON, one user per line, as
+     * requested by http. Users are written as they are read, so memory use
+     * does not grow with the number of users.
+     * 
+     * @return a ResponseEntity with a status code of 200 (OK) and the stream
+     *         of users; an IOException while streaming cuts the response short
+     */
+    @GetMapping(value = "", params = "format=ndjson")
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        LOG.info("GET /users?format=ndjson");
+        StreamingResponseBody body = out -> {
+            try {
+                int count = userDAO.exportUsers(out);
+                LOG.fine("Exported " + count + " users");
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, e.getLocalizedMessage());
+                throw e;
+            }
+        };
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        return new ResponseEntity<StreamingResponseBody>(body, headers, HttpStatus.OK);
     }
 
     /**
-     * uses the UserDAO to create a user from the username requested
+     * uses the UserDAO to create a user from the username requested, storing
+     * the password as a salted hash when hashing is enabled
      * 
      * @param user of the user to create
-     * @return a ResponseEntity with a status code of 201 (CREATED) if the user
-     *         is successfully created,
+     * @return a ResponseEntity with a status code of 201 (CREATED) and the
+     *         user without its password if the user is successfully created,
      *         409 (CONFLICT) if a user with the same username already exists,
      *         or 500 (INTERNAL_SERVER_ERROR) if an IOException occurs.
      */
     @PostMapping("")
     public ResponseEntity<User> createUser(@RequestBody User user) {
-        LOG.info("POST /user " + user);
+        LOG.info("POST /user " + user.getUsername());
         try {
+            user.setPassword(passwords.hash(user.getPassword()));
             User userToCreate = userDAO.createUser(user);
             if (userToCreate != null) {
-                return new ResponseEntity<>(userToCreate, HttpStatus.CREATED);
+                return new ResponseEntity<>(userToCreate.withoutPassword(), HttpStatus.CREATED);
             } else {
                 return new ResponseEntity<>(HttpStatus.CONFLICT);
             }
@@ -126,7 +184,7 @@ public class UserController {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             } else {
                 userToUpdate = userDAO.updateUser(userToUpdate);
-                return new ResponseEntity<>(userToUpdate, HttpStatus.OK);
+                return new ResponseEntity<>(userToUpdate.withoutPassword(), HttpStatus.OK);
             }
         } catch (IOException e) {
             LOG.log(Level.SEVERE, e.getLocalizedMessage());
@@ -135,7 +193,8 @@ public class UserController {
     }
 
     /**
-     * deletes a user from the website's storage based on http request
+     * deletes a user from the website's storage based on http request, giving
+     * back the stock held for the user's cart
      * 
      * @param username user to delete
      * @return http status of delete
@@ -147,6 +206,7 @@ public class UserController {
         try {
             boolean isDeleted = userDAO.deleteAccount(username);
             if (isDeleted) {
+                stockHolds.releaseAll(username);
                 return new ResponseEntity<>(HttpStatus.OK);
             } else {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -159,6 +219,8 @@ public class UserController {
 
     /**
      * Retrieves a User object with the specified username and logs the user in.
+     * Kept for clients that send credentials in the path; prefer
+     * {@link #login(User)}.
      *
      * @param username the username of the User object to retrieve and log in
      * @param password the password of the User object to retrieve and log in
@@ -176,28 +238,60 @@ public class UserController {
      */
     @PutMapping("/login/username={username}&password={password}")
     public ResponseEntity<User> login(@PathVariable String username, @PathVariable String password) {
-        LOG.info("GET /login/username=" + username + "&password=" + password);
+        LOG.info("PUT /login/username=" + username);
 
-        try {
-            User user = userDAO.getUser(username);
-            if (user == null) {
-                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-            }
-            if (user.getUsername().equals(username) && user.getPassword().equals(password)) {
-                userDAO.login(user);
-                return new ResponseEntity<User>(user, HttpStatus.OK);
-            } else {
-                return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
-            }
+        return logIn(username, password);
+    }
 
-        } catch (IOException e) {
-            LOG.log(Level.SEVERE, e.getLocalizedMessage());
-            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+    /**
+     * Logs in the user whose credentials are in the request body. With
+     * sessions enabled the login is kept in memory only, and the new
+     * session's token is returned in the {@value SessionStore#HEADER} header;
+     * otherwise the user's login status is saved. The user is returned
+     * without its password.
+     *
+     * @param credentials the username and password
+     * @return a ResponseEntity containing the User object and an HTTP status
+     *         code of OK (200) if the login was successful,
+     *         BAD_REQUEST (400) if the username or password is missing,
+     *         UNAUTHORIZED (401) if the password is wrong,
+     *         NOT_FOUND (404) if no User object with the username exists,
+     *         or INTERNAL_SERVER_ERROR (500) if an I/O error occurs
+     */
+    @PostMapping("/login")
+    public ResponseEntity<User> login(@RequestBody User credentials) {
+        LOG.info("POST /user/login " + credentials.getUsername());
+
+        if (credentials.getUsername() == null || credentials.getPassword() == null) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return logIn(credentials.getUsername(), credentials.getPassword());
+    }
+
+    /**
+     * Ends the session whose token is in the {@value SessionStore#HEADER}
+     * header
+     *
+     * @param token the session token
+     * @return a ResponseEntity with a status code of OK (200) if the session
+     *         was ended, or UNAUTHORIZED (401) if the token does not belong to
+     *         a session
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestHeader(value = SessionStore.HEADER, required = false) String token) {
+        LOG.info("POST /user/logout");
+
+        if (sessions.end(token)) {
+            return new ResponseEntity<>(HttpStatus.OK);
+        } else {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
     }
 
     /**
      * A PUT API endpoint that logs out a user with the given username and password.
+     * With sessions enabled, the password is checked, every session of the user
+     * is ended and nothing is saved.
      * 
      * @param username the username of the user to be logged out.
      * @param password the password of the user to be logged out.
@@ -206,17 +300,25 @@ public class UserController {
      *         successfully logged out,
      *         or a ResponseEntity with a status code of 404 (NOT_FOUND) if the user
      *         is not found,
+     *         or a ResponseEntity with a status code of 401 (UNAUTHORIZED) if
+     *         sessions are enabled and the password is wrong,
      *         or a ResponseEntity with a status code of 500 (INTERNAL_SERVER_ERROR)
      *         if an IOException occurs.
      */
     @PutMapping("/logout/username={username}&password={password}")
     public ResponseEntity<User> logout(@PathVariable String username, @PathVariable String password) {
-        LOG.info("GET /logout/username=" + username + "?password=" + password);
+        LOG.info("PUT /logout/username=" + username);
 
         try {
             User user = userDAO.getUser(username);
             if (user == null) {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            } else if (sessions.isEnabled()) {
+                if (!passwords.verify(username, user.getPassword(), password)) {
+                    return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+                }
+                sessions.endAll(username);
+                return new ResponseEntity<>(HttpStatus.OK);
             } else {
                 userDAO.logout(user);
                 return new ResponseEntity<>(HttpStatus.OK);
@@ -259,14 +361,20 @@ public class UserController {
     /**
      * 
      * PUT mapping for updating user shopping cart. Adds a new keyboard to the
-     * user's shopping cart and updates the quantity of the keyboard in the
-     * inventory.
+     * user's shopping cart and reserves one unit of it in the inventory. With
+     * cart holds enabled, the unit goes back to the inventory if the cart is
+     * not bought before the hold expires.
      * 
      * @param keyboard the keyboard to be added to the user's cart.
      * @param username the username of the user whose cart is being updated.
      * @return ResponseEntity<User> containing the updated user object and
      *         HttpStatus.CREATED if the cart was updated successfully.
      *         ResponseEntity with HttpStatus.NOT_FOUND if the user was not found.
+     *         ResponseEntity with HttpStatus.CONFLICT if the keyboard is out of
+     *         stock, in which case the cart is left unchanged.
+     *         ResponseEntity with HttpStatus.INTERNAL_SERVER_ERROR if the unit
+     *         cannot be held, in which case it is given back and the keyboard
+     *         taken out of the cart again.
      */
     @PutMapping("/{username}/cart")
     public ResponseEntity<User> addToCart(@RequestBody Keyboard keyboard, @PathVariable String username) {
@@ -276,13 +384,20 @@ public class UserController {
             User currUser = userDAO.getUser(username);
             if (currUser != null) {
                 if (userDAO.addToUserCart(currUser, keyboard, keyboard.getQuantity())) {
-                    Keyboard keyIndex = inventoryDAO.getKeyboard(keyboard.getKeyboardId());
-                    if (keyboard.equals(keyIndex)) {
-                        keyIndex.setQuantity(keyIndex.getQuantity() - 1);
-                        inventoryDAO.updateKeyboard(keyIndex);
+                    if (!inventoryDAO.reserveStock(keyboard.getKeyboardId(), 1)) {
+                        userDAO.removeFromCart(currUser, keyboard);
+                        return new ResponseEntity<>(HttpStatus.CONFLICT);
+                    }
+                    try {
+                        stockHolds.hold(username, keyboard.getKeyboardId(), 1);
+                    } catch (IOException e) {
+                        // Without a hold the unit would never come back if the cart is abandoned
+                        inventoryDAO.releaseStock(keyboard.getKeyboardId(), 1);
+                        userDAO.removeFromCart(currUser, keyboard);
+                        throw e;
                     }
                 }
-                return new ResponseEntity<User>(currUser, HttpStatus.CREATED);
+                return new ResponseEntity<User>(currUser.withoutPassword(), HttpStatus.CREATED);
             } else {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
@@ -313,7 +428,8 @@ public class UserController {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             else {
                 if (userDAO.clearUserCart(user)) {
-                    return new ResponseEntity<User>(user, HttpStatus.OK);
+                    stockHolds.releaseAll(username);
+                    return new ResponseEntity<User>(user.withoutPassword(), HttpStatus.OK);
                 } else
                     throw new IOException();
             }
@@ -350,7 +466,8 @@ public class UserController {
             User currUser = userDAO.getUser(username);
             if (currUser != null) {
                 if (userDAO.removeFromCart(currUser, keyboard)) {
-                    return new ResponseEntity<User>(currUser, HttpStatus.OK);
+                    stockHolds.release(username, keyboard.getKeyboardId());
+                    return new ResponseEntity<User>(currUser.withoutPassword(), HttpStatus.OK);
                 } else {
                     return new ResponseEntity<>(HttpStatus.NOT_FOUND);
                 }
@@ -382,10 +499,10 @@ public class UserController {
             User currUser = userDAO.getUser(username);
             if (currUser != null) {
                 Keyboard keyboardUpdated = userDAO.getKeyboardFromCart(currUser, keyboard);
-                if (currUser.getUserCart().contains(keyboard)) {
+                if (keyboardUpdated != null) {
                     userDAO.increaseQuantity(currUser, keyboardUpdated);
                 }
-                return new ResponseEntity<User>(currUser, HttpStatus.NOT_ACCEPTABLE);
+                return new ResponseEntity<User>(currUser.withoutPassword(), HttpStatus.CREATED);
             } else {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
@@ -414,10 +531,10 @@ public class UserController {
             User currUser = userDAO.getUser(username);
             if (currUser != null) {
                 Keyboard keyboardUpdated = userDAO.getKeyboardFromCart(currUser, keyboard);
-                if (currUser.getUserCart().contains(keyboard)) {
+                if (keyboardUpdated != null) {
                     userDAO.decreaseQuantity(currUser, keyboardUpdated);
                 }
-                return new ResponseEntity<User>(currUser, HttpStatus.CREATED);
+                return new ResponseEntity<User>(currUser.withoutPassword(), HttpStatus.CREATED);
             } else {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
@@ -459,12 +576,17 @@ public class UserController {
      * 
      * Adds a list of purchased keyboards to a user's order history and updates the
      * inventory accordingly.
+     * <br>
+     * Stock for every keyboard is reserved in one step before anything is
+     * added to the order history. If any keyboard is short, nothing is
+     * reserved or recorded.
      * 
      * @param keyboardsPurchased an ArrayList of Keyboard objects representing the
      *                           keyboards purchased
      * @param username           the username of the user who made the purchase
-     * @return a ResponseEntity containing the updated User object if successful, or
-     *         an error status if not
+     * @return a ResponseEntity containing the updated User object if successful,
+     *         HttpStatus.CONFLICT if a keyboard is out of stock, or an error
+     *         status if not
      */
     @PostMapping("/{username}/orders/addToOrderHistory")
     public ResponseEntity<User> pushToOrderHistory(@RequestBody ArrayList<Keyboard> keyboardsPurchased,
@@ -474,14 +596,14 @@ public class UserController {
         try {
             User currUser = userDAO.getUser(username);
             if (currUser != null) {
+                Map<Integer, Integer> units = unitsOf(keyboardsPurchased);
+                if (!reservePurchase(username, units)) {
+                    return new ResponseEntity<>(HttpStatus.CONFLICT);
+                }
                 for (Keyboard currPurchased : keyboardsPurchased) {
-                    if (userDAO.addToUserOrderHistory(currUser, currPurchased, currPurchased.getQuantity())) {
-                        Keyboard fromInventory = inventoryDAO.getKeyboard(currPurchased.getKeyboardId());
-                        fromInventory.setQuantity(fromInventory.getQuantity() - currPurchased.getQuantity());
-                        inventoryDAO.updateKeyboard(fromInventory);
-                    }
+                    userDAO.addToUserOrderHistory(currUser, currPurchased, currPurchased.getQuantity());
                 }
-                return new ResponseEntity<User>(currUser, HttpStatus.CREATED);
+                return new ResponseEntity<User>(currUser.withoutPassword(), HttpStatus.CREATED);
             } else {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
@@ -492,4 +614,164 @@ public class UserController {
         }
     }
 
-}
\ No newline at end of file
+
+    /**
+     * 
+     * Buys everything in a user's cart. Stock for the whole cart is reserved in
+     * one step, then the cart is moved to the order history and emptied in one
+     * save of the user. If the user cannot be saved, or the cart changed since
+     * it was read, the stock is released again.
+     * 
+     * @param username the username of the user who is checking out
+     * @return a ResponseEntity containing the updated User object and
+     *         HttpStatus.CREATED if the order was recorded,
+     *         HttpStatus.NOT_FOUND if the user was not found,
+     *         HttpStatus.BAD_REQUEST if the cart is empty, HttpStatus.CONFLICT
+     *         if a keyboard is out of stock or the cart changed meanwhile, or
+     *         HttpStatus.INTERNAL_SERVER_ERROR if storage failed
+     */
+    @PostMapping("/{username}/checkout")
+    public ResponseEntity<User> checkout(@PathVariable String username) {
+        LOG.info("POST /" + username + "/checkout");
+
+        try {
+            User currUser = userDAO.getUser(username);
+            if (currUser == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            ArrayList<Keyboard> cart = userDAO.getUserShoppingCart(currUser);
+            // Copies, so a quantity changed in the cart from now on is seen as a change
+            List<Keyboard> purchased = new ArrayList<>();
+            if (cart != null) {
+                for (Keyboard keyboard : cart) {
+                    purchased.add(new Keyboard(keyboard, keyboard.getQuantity()));
+                }
+            }
+            Map<Integer, Integer> units = unitsOf(purchased);
+            if (units.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            if (!reservePurchase(username, units)) {
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            }
+            boolean recorded = false;
+            try {
+                recorded = userDAO.checkout(currUser, purchased);
+            } finally {
+                if (!recorded) {
+                    inventoryDAO.releaseStock(units);
+                }
+            }
+            if (!recorded) {
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            }
+            return new ResponseEntity<User>(currUser.withoutPassword(), HttpStatus.CREATED);
+
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * 
+     * Reserves the stock for a purchase. Units the user's cart already holds
+     * count towards it, so only the rest is taken from the inventory; held
+     * units the purchase does not need are given back. If the inventory is
+     * short, nothing is taken and the cart keeps its holds.
+     * 
+     * @param username the username of the user who is buying
+     * @param units    the units bought, by keyboard id
+     * @return true if the purchase now owns all of the units
+     * @throws IOException if the inventory cannot be saved
+     */
+    private boolean reservePurchase(String username, Map<Integer, Integer> units) throws IOException {
+        Map<Integer, Integer> held = stockHolds.claim(username);
+        Map<Integer, Integer> needed = new HashMap<>();
+        Map<Integer, Integer> surplus = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : units.entrySet()) {
+            int fromHold = held.getOrDefault(entry.getKey(), 0);
+            if (entry.getValue() > fromHold) {
+                needed.put(entry.getKey(), entry.getValue() - fromHold);
+            } else if (fromHold > entry.getValue()) {
+                surplus.put(entry.getKey(), fromHold - entry.getValue());
+            }
+        }
+        if (!needed.isEmpty() && !inventoryDAO.reserveStock(needed)) {
+            for (Map.Entry<Integer, Integer> entry : held.entrySet()) {
+                stockHolds.hold(username, entry.getKey(), entry.getValue());
+            }
+            return false;
+        }
+        for (Map.Entry<Integer, Integer> entry : held.entrySet()) {
+            if (!units.containsKey(entry.getKey())) {
+                // Still in the cart but not part of this purchase
+                stockHolds.hold(username, entry.getKey(), entry.getValue());
+            }
+        }
+        if (!surplus.isEmpty()) {
+            inventoryDAO.releaseStock(surplus);
+        }
+        return true;
+    }
+
+    /**
+     * Checks a user's password and logs the user in, either by starting a
+     * session or, with sessions disabled, by saving the login status. A
+     * password stored before hashing, or hashed at another cost, is hashed
+     * again and saved once it has been proven.
+     *
+     * @param username the username
+     * @param password the password
+     * @return the user without its password and OK (200), with the session
+     *         token in a header when sessions are enabled, UNAUTHORIZED (401)
+     *         for a wrong password, NOT_FOUND (404) for an unknown user, or
+     *         INTERNAL_SERVER_ERROR (500) if the login status or rehashed
+     *         password cannot be saved
+     *         or the password cannot be checked
+     */
+    private ResponseEntity<User> logIn(String username, String password) {
+        try {
+            User user = userDAO.getUser(username);
+            if (user == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            if (!user.getUsername().equals(username)
+                    || !passwords.verify(username, user.getPassword(), password)) {
+                return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            }
+            if (passwords.needsRehash(user.getPassword())) {
+                user.setPassword(passwords.hash(password));
+                userDAO.updateUser(user);
+            }
+            if (!sessions.isEnabled()) {
+                userDAO.login(user);
+                return new ResponseEntity<User>(user.withoutPassword(), HttpStatus.OK);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(SessionStore.HEADER, sessions.create(username));
+            return new ResponseEntity<User>(user.withoutPassword(), headers, HttpStatus.OK);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * 
+     * Adds up the units of each keyboard in a list, skipping entries without a
+     * positive quantity.
+     * 
+     * @param keyboards the keyboards with the quantity of each
+     * @return the total units by keyboard id
+     */
+    private static Map<Integer, Integer> unitsOf(List<Keyboard> keyboards) {
+        Map<Integer, Integer> units = new HashMap<>();
+        for (Keyboard keyboard : keyboards) {
+            if (keyboard.getQuantity() > 0) {
+                units.merge(keyboard.getKeyboardId(), keyboard.getQuantity(), Integer::sum);
+            }
+        }
+        return units;
+    }
+}
@@ -0,0 +1,121 @@
+package com.estore.api.estoreapi.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A user's shopping cart, holding at most one entry per keyboard id
+ * <br>
+ * Entries are kept in a map keyed by keyboard id, so finding, adding,
+ * removing and changing the quantity of a keyboard take constant time however
+ * large the cart is, and never depend on the price or quantity of the
+ * keyboard being looked up. Entries keep the order they were added in, which
+ * is the order {@link #toList()} returns them in.
+ *
+ * @author Team 2
+ */
+public class Cart {
+    private final Map<Integer, Keyboard> items = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty cart
+     */
+    public Cart() {
+    }
+
+    /**
+     * Creates a cart holding the given keyboards. Entries sharing a keyboard
+     * id, which older carts could hold, are combined into one entry with the
+     * sum of their quantities.
+     *
+     * @param keyboards the keyboards, in the order they were added
+     */
+    public Cart(List<Keyboard> keyboards) {
+        for (Keyboard keyboard : keyboards) {
+            Keyboard previous = items.putIfAbsent(keyboard.getKeyboardId(), keyboard);
+            if (previous != null) {
+                items.put(keyboard.getKeyboardId(),
+                        new Keyboard(previous, previous.getQuantity() + keyboard.getQuantity()));
+            }
+        }
+    }
+
+    /**
+     * Returns the entry of a keyboard
+     *
+     * @param keyboardId the id of the keyboard
+     * @return the keyboard in the cart, null if the cart does not hold it
+     */
+    public Keyboard get(int keyboardId) {
+        return items.get(keyboardId);
+    }
+
+    /**
+     * Returns whether the cart holds a keyboard
+     *
+     * @param keyboardId the id of the keyboard
+     * @return true if the cart holds the keyboard
+     */
+    public boolean contains(int keyboardId) {
+        return items.containsKey(keyboardId);
+    }
+
+    /**
+     * Adds a keyboard to the end of the cart, unless the cart already holds a
+     * keyboard with the same id
+     *
+     * @param keyboard the keyboard
+     * @return true if the keyboard was added
+     */
+    public boolean add(Keyboard keyboard) {
+        return items.putIfAbsent(keyboard.getKeyboardId(), keyboard) == null;
+    }
+
+    /**
+     * Takes a keyboard out of the cart
+     *
+     * @param keyboardId the id of the keyboard
+     * @return the keyboard taken out, null if the cart did not hold it
+     */
+    public Keyboard remove(int keyboardId) {
+        return items.remove(keyboardId);
+    }
+
+    /**
+     * Returns the number of keyboards in the cart
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Returns whether the cart is empty
+     *
+     * @return true if the cart holds no keyboards
+     */
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Returns the keyboards in the cart as a new list, in the order they were
+     * added. The keyboards themselves are shared with the cart.
+     *
+     * @return the keyboards
+     */
+    public ArrayList<Keyboard> toList() {
+        return new ArrayList<>(items.values());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return items.values().toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.estore.api.estoreapi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single change to the stock held for a user's cart
+ * <br>
+ * Holds carry the total units held of one keyboard and when the hold
+ * expires, as they looked after the change. Ends only carry the username and
+ * keyboard id.
+ *
+ * @author Team 2
+ */
+public class HoldChange {
+
+    static final String STRING_FORMAT = "HoldChange [type=%s, username=%s, keyboardId=%d, quantity=%d, deadline=%d]";
+
+    public enum Type {
+        HOLD,
+        END
+    }
+
+    @JsonProperty("type")
+    private Type type;
+    @JsonProperty("username")
+    private String username;
+    @JsonProperty("keyboardId")
+    private int keyboardId;
+    @JsonProperty("quantity")
+    private int quantity;
+    @JsonProperty("deadline")
+    private long deadline;
+
+    /**
+     * Creates a hold change
+     *
+     * @param type       whether the hold was taken or ended
+     * @param username   the user whose cart holds the units
+     * @param keyboardId the keyboard the units are of
+     * @param quantity   the units held after the change, 0 for ends
+     * @param deadline   when the hold expires in milliseconds since the
+     *                   epoch, 0 for ends
+     */
+    public HoldChange(@JsonProperty("type") Type type, @JsonProperty("username") String username,
+            @JsonProperty("keyboardId") int keyboardId, @JsonProperty("quantity") int quantity,
+            @JsonProperty("deadline") long deadline) {
+        this.type = type;
+        this.username = username;
+        this.keyboardId = keyboardId;
+        this.quantity = quantity;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Creates a change recording that a cart holds units of a keyboard
+     *
+     * @param username   the user whose cart holds the units
+     * @param keyboardId the keyboard the units are of
+     * @param quantity   the total units held
+     * @param deadline   when the hold expires in milliseconds since the epoch
+     * @return the hold change
+     */
+    public static HoldChange hold(String username, int keyboardId, int quantity, long deadline) {
+        return new HoldChange(Type.HOLD, username, keyboardId, quantity, deadline);
+    }
+
+    /**
+     * Creates a change recording that a hold ended
+     *
+     * @param username   the user whose cart held the units
+     * @param keyboardId the keyboard the units were of
+     * @return the end change
+     */
+    public static HoldChange end(String username, int keyboardId) {
+        return new HoldChange(Type.END, username, keyboardId, 0, 0);
+    }
+
+    /**
+     * Returns the type of this change
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the username of the user whose cart holds the units
+     *
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the id of the keyboard the units are of
+     *
+     * @return the keyboard id
+     */
+    public int getKeyboardId() {
+        return keyboardId;
+    }
+
+    /**
+     * Returns the units held after the change, 0 for ends
+     *
+     * @return the quantity
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Returns when the hold expires, 0 for ends
+     *
+     * @return the deadline in milliseconds since the epoch
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns a string representation of the HoldChange object.
+     *
+     * @return a string representation of the HoldChange object
+     */
+    @Override
+    public String toString() {
+        return String.format(STRING_FORMAT, type, username, keyboardId, quantity, deadline);
+    }
+}
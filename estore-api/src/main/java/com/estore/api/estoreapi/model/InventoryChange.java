@@ -0,0 +1,114 @@
+package com.estore.api.estoreapi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single mutation applied to the keyboard inventory
+ * <br>
+ * Upserts carry the full {@link Keyboard keyboard} as it looked after the
+ * change, deletes only carry the id of the removed keyboard
+ *
+ * @author Team 2
+ */
+public class InventoryChange {
+
+    static final String STRING_FORMAT = "InventoryChange [version=%d, type=%s, keyboardId=%d, keyboard=%s]";
+
+    public enum Type {
+        UPSERT,
+        DELETE
+    }
+
+    @JsonProperty("version")
+    private long version;
+    @JsonProperty("type")
+    private Type type;
+    @JsonProperty("keyboardId")
+    private int keyboardId;
+    @JsonProperty("keyboard")
+    private Keyboard keyboard;
+
+    /**
+     * Creates an inventory change
+     *
+     * @param version    the inventory version produced by this change
+     * @param type       whether the keyboard was created/updated or deleted
+     * @param keyboardId the id of the affected keyboard
+     * @param keyboard   the keyboard after the change, null for deletes
+     */
+    public InventoryChange(@JsonProperty("version") long version, @JsonProperty("type") Type type,
+            @JsonProperty("keyboardId") int keyboardId, @JsonProperty("keyboard") Keyboard keyboard) {
+        this.version = version;
+        this.type = type;
+        this.keyboardId = keyboardId;
+        this.keyboard = keyboard;
+    }
+
+    /**
+     * Creates a change recording that a keyboard was created or updated
+     *
+     * @param version  the inventory version produced by this change
+     * @param keyboard the keyboard after the change
+     * @return the upsert change
+     */
+    public static InventoryChange upsert(long version, Keyboard keyboard) {
+        return new InventoryChange(version, Type.UPSERT, keyboard.getKeyboardId(), keyboard);
+    }
+
+    /**
+     * Creates a change recording that a keyboard was deleted
+     *
+     * @param version    the inventory version produced by this change
+     * @param keyboardId the id of the deleted keyboard
+     * @return the delete change
+     */
+    public static InventoryChange delete(long version, int keyboardId) {
+        return new InventoryChange(version, Type.DELETE, keyboardId, null);
+    }
+
+    /**
+     * Returns the inventory version produced by this change
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the type of this change
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the id of the affected keyboard
+     *
+     * @return the keyboard id
+     */
+    public int getKeyboardId() {
+        return keyboardId;
+    }
+
+    /**
+     * Returns the keyboard after the change, null for deletes
+     *
+     * @return the keyboard
+     */
+    public Keyboard getKeyboard() {
+        return keyboard;
+    }
+
+    /**
+     * Returns a string representation of the InventoryChange object.
+     *
+     * @return a string representation of the InventoryChange object
+     */
+    @Override
+    public String toString() {
+        return String.format(STRING_FORMAT, version, type, keyboardId, keyboard);
+    }
+}
@@ -0,0 +1,92 @@
+package com.estore.api.estoreapi.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The changes to the inventory after a version a client already has
+ * <br>
+ * Each keyboard appears at most once, with its latest change. When the
+ * client's version is too old to be answered from the changes kept, or comes
+ * from before a restart, {@link #isResync()} is true, there are no changes,
+ * and the client must fetch the whole catalog again.
+ *
+ * @author Team 2
+ */
+public class InventoryChanges {
+
+    static final String STRING_FORMAT = "InventoryChanges [epoch=%s, version=%d, resync=%b, changes=%d]";
+
+    @JsonProperty("epoch")
+    private String epoch;
+    @JsonProperty("version")
+    private long version;
+    @JsonProperty("resync")
+    private boolean resync;
+    @JsonProperty("changes")
+    private List<InventoryChange> changes;
+
+    /**
+     * Creates the changes
+     *
+     * @param epoch   identifies the run of the application the versions
+     *                belong to
+     * @param version the version the changes bring the client to, to ask
+     *                from next time
+     * @param resync  true if the client must fetch the whole catalog
+     * @param changes the latest change of each keyboard changed, in version
+     *                order, empty when resyncing
+     */
+    public InventoryChanges(@JsonProperty("epoch") String epoch, @JsonProperty("version") long version,
+            @JsonProperty("resync") boolean resync, @JsonProperty("changes") List<InventoryChange> changes) {
+        this.epoch = epoch;
+        this.version = version;
+        this.resync = resync;
+        this.changes = changes;
+    }
+
+    /**
+     * Returns the run of the application the versions belong to
+     *
+     * @return the epoch
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the version to ask for changes after next time
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns whether the client must fetch the whole catalog
+     *
+     * @return true if the changes could not be answered
+     */
+    public boolean isResync() {
+        return resync;
+    }
+
+    /**
+     * Returns the latest change of each keyboard changed
+     *
+     * @return the changes, in version order
+     */
+    public List<InventoryChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format(STRING_FORMAT, epoch, version, resync, changes.size());
+    }
+}
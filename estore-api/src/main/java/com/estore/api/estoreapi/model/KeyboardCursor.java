@@ -0,0 +1,93 @@
+package com.estore.api.estoreapi.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last keyboard on a page, handed to clients as an opaque
+ * string
+ * <br>
+ * The next page starts right after this (sort key, id) position, so it stays
+ * correct when keyboards are added or removed in between, and reaching it
+ * never means skipping over the earlier pages. The cursor also records the
+ * sort it was issued for and is refused for any other.
+ *
+ * @author Team 2
+ */
+public class KeyboardCursor {
+    private static final String PREFIX = "k1";
+    private static final char SEPARATOR = '|';
+
+    private final KeyboardSort sort;
+    private final boolean descending;
+    private final Comparable<?> key;
+    private final int id;
+
+    /**
+     * Creates a cursor
+     *
+     * @param sort       the sort of the page
+     * @param descending whether the page is sorted in descending order
+     * @param key        the sort key of the last keyboard on the page
+     * @param id         the id of the last keyboard on the page
+     */
+    public KeyboardCursor(KeyboardSort sort, boolean descending, Comparable<?> key, int id) {
+        this.sort = sort;
+        this.descending = descending;
+        this.key = key;
+        this.id = id;
+    }
+
+    /**
+     * Returns the sort key of the last keyboard on the page
+     *
+     * @return the key
+     */
+    public Comparable<?> getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the id of the last keyboard on the page
+     *
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Encodes the cursor for a client
+     *
+     * @return a URL-safe string
+     */
+    public String encode() {
+        String text = PREFIX + SEPARATOR + sort + SEPARATOR + (descending ? "desc" : "asc") + SEPARATOR + id
+                + SEPARATOR + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor sent back by a client
+     *
+     * @param encoded    the cursor as returned by {@link #encode()}
+     * @param sort       the sort of the requested page
+     * @param descending whether the requested page is in descending order
+     * @return the cursor
+     *
+     * @throws IllegalArgumentException if the cursor is malformed or was
+     *                                  issued for a different sort
+     */
+    public static KeyboardCursor decode(String encoded, KeyboardSort sort, boolean descending) {
+        String text = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        // The key goes last so a name containing the separator survives
+        String[] parts = text.split("\\|", 5);
+        if (parts.length != 5 || !PREFIX.equals(parts[0])) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (!sort.name().equals(parts[1]) || !(descending ? "desc" : "asc").equals(parts[2])) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort");
+        }
+        return new KeyboardCursor(sort, descending, sort.parseKey(parts[4]), Integer.parseInt(parts[3]));
+    }
+}
@@ -0,0 +1,119 @@
+package com.estore.api.estoreapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The stock and price of a keyboard after a change, as pushed to clients
+ * watching the inventory
+ * <br>
+ * Only the fields a listing refreshes are carried; a client that sees an id
+ * it does not know fetches the keyboard. Deletes carry only the id.
+ *
+ * @author Team 2
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class KeyboardDelta {
+
+    static final String STRING_FORMAT = "KeyboardDelta [version=%d, id=%d, quantity=%s, price=%s, deleted=%s]";
+
+    @JsonProperty("version")
+    private long version;
+    @JsonProperty("id")
+    private int id;
+    @JsonProperty("quantity")
+    private Integer quantity;
+    @JsonProperty("price")
+    private Integer price;
+    @JsonProperty("deleted")
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean deleted;
+
+    /**
+     * Creates a delta
+     *
+     * @param version  the inventory version produced by the change
+     * @param id       the id of the keyboard
+     * @param quantity the units in stock, null for deletes
+     * @param price    the price, null for deletes
+     * @param deleted  true for deletes
+     */
+    public KeyboardDelta(@JsonProperty("version") long version, @JsonProperty("id") int id,
+            @JsonProperty("quantity") Integer quantity, @JsonProperty("price") Integer price,
+            @JsonProperty("deleted") boolean deleted) {
+        this.version = version;
+        this.id = id;
+        this.quantity = quantity;
+        this.price = price;
+        this.deleted = deleted;
+    }
+
+    /**
+     * Creates the delta of an inventory change, copying the keyboard's
+     * quantity and price as they are now
+     *
+     * @param change the change
+     * @return the delta
+     */
+    public static KeyboardDelta of(InventoryChange change) {
+        if (change.getType() == InventoryChange.Type.DELETE) {
+            return new KeyboardDelta(change.getVersion(), change.getKeyboardId(), null, null, true);
+        }
+        Keyboard keyboard = change.getKeyboard();
+        return new KeyboardDelta(change.getVersion(), change.getKeyboardId(), keyboard.getQuantity(),
+                keyboard.getPrice(), false);
+    }
+
+    /**
+     * Returns the inventory version produced by the change
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the id of the keyboard
+     *
+     * @return the keyboard id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the units in stock after the change
+     *
+     * @return the quantity, null for deletes
+     */
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Returns the price after the change
+     *
+     * @return the price, null for deletes
+     */
+    public Integer getPrice() {
+        return price;
+    }
+
+    /**
+     * Returns whether the keyboard was deleted
+     *
+     * @return true for deletes
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format(STRING_FORMAT, version, id, quantity, price, deleted);
+    }
+}
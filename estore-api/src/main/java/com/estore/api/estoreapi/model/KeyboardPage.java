@@ -0,0 +1,58 @@
+package com.estore.api.estoreapi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One page of keyboards and the cursor to ask for the next one with
+ *
+ * @author Team 2
+ */
+public class KeyboardPage {
+
+    static final String STRING_FORMAT = "KeyboardPage [size=%d, nextCursor=%s]";
+
+    @JsonProperty("keyboards")
+    private Keyboard[] keyboards;
+    @JsonProperty("nextCursor")
+    private String nextCursor;
+
+    /**
+     * Creates a page
+     *
+     * @param keyboards  the keyboards on the page, in sort order
+     * @param nextCursor the cursor of the next page, null on the last page
+     */
+    public KeyboardPage(Keyboard[] keyboards, String nextCursor) {
+        this.keyboards = keyboards;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Returns the keyboards on the page
+     *
+     * @return the keyboards, in sort order
+     */
+    public Keyboard[] getKeyboards() {
+        return keyboards;
+    }
+
+    /**
+     * Returns the cursor of the next page
+     * <br>
+     * A full page always has a cursor, so the page after it may turn out to
+     * be empty
+     *
+     * @return the cursor, or null when there are no more keyboards
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format(STRING_FORMAT, keyboards.length, nextCursor);
+    }
+}
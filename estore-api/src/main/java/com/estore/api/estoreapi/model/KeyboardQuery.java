@@ -0,0 +1,176 @@
+package com.estore.api.estoreapi.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import com.estore.api.estoreapi.model.Keyboard.Size;
+import com.estore.api.estoreapi.model.Keyboard.SwitchColor;
+
+/**
+ * A faceted search over the keyboard catalog
+ * <br>
+ * Every criterion is optional and the ones given are combined with AND. Within
+ * the size and switch color facets any of the listed values matches.
+ *
+ * @author Team 2
+ */
+public class KeyboardQuery {
+
+    static final String STRING_FORMAT = "KeyboardQuery [name=%s, ignoreCase=%b, minPrice=%s, maxPrice=%s, sizes=%s, switchColors=%s]";
+
+    private final String name;
+    private final boolean ignoreCase;
+    private final Integer minPrice;
+    private final Integer maxPrice;
+    private final Set<Size> sizes;
+    private final Set<SwitchColor> switchColors;
+
+    /**
+     * Creates a query
+     *
+     * @param name         text the keyboard name must contain, null for any
+     * @param ignoreCase   true to match the name regardless of case
+     * @param minPrice     lowest price to include, null for no lower bound
+     * @param maxPrice     highest price to include, null for no upper bound
+     * @param sizes        sizes to include, null or empty for any
+     * @param switchColors switch colors to include, null or empty for any
+     */
+    public KeyboardQuery(String name, boolean ignoreCase, Integer minPrice, Integer maxPrice,
+            Collection<Size> sizes, Collection<SwitchColor> switchColors) {
+        this.name = name;
+        this.ignoreCase = ignoreCase;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.sizes = sizes == null || sizes.isEmpty() ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(sizes));
+        this.switchColors = switchColors == null || switchColors.isEmpty() ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(switchColors));
+    }
+
+    /**
+     * Returns the text the keyboard name must contain
+     *
+     * @return the text, or null for any name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns whether the name is matched regardless of case
+     *
+     * @return true if case is ignored
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Returns the lowest price to include
+     *
+     * @return the lower bound, or null
+     */
+    public Integer getMinPrice() {
+        return minPrice;
+    }
+
+    /**
+     * Returns the highest price to include
+     *
+     * @return the upper bound, or null
+     */
+    public Integer getMaxPrice() {
+        return maxPrice;
+    }
+
+    /**
+     * Returns the sizes to include
+     *
+     * @return the sizes, empty for any
+     */
+    public Set<Size> getSizes() {
+        return sizes;
+    }
+
+    /**
+     * Returns the switch colors to include
+     *
+     * @return the switch colors, empty for any
+     */
+    public Set<SwitchColor> getSwitchColors() {
+        return switchColors;
+    }
+
+    /**
+     * Returns whether a keyboard's name matches the query
+     *
+     * @param keyboard the keyboard to test
+     * @return true if no name was given or the name contains it
+     */
+    public boolean matchesName(Keyboard keyboard) {
+        if (name == null) {
+            return true;
+        }
+        String keyboardName = keyboard.getKeyboardName();
+        if (keyboardName == null) {
+            return false;
+        }
+        if (ignoreCase) {
+            return keyboardName.toLowerCase(Locale.ROOT).contains(name.toLowerCase(Locale.ROOT));
+        }
+        return keyboardName.contains(name);
+    }
+
+    /**
+     * Returns whether a keyboard's price is inside the query's range
+     *
+     * @param keyboard the keyboard to test
+     * @return true if the price is within both bounds that were given
+     */
+    public boolean matchesPrice(Keyboard keyboard) {
+        return (minPrice == null || keyboard.getPrice() >= minPrice)
+                && (maxPrice == null || keyboard.getPrice() <= maxPrice);
+    }
+
+    /**
+     * Returns whether a keyboard's size is one of the query's sizes
+     *
+     * @param keyboard the keyboard to test
+     * @return true if no sizes were given or the size is among them
+     */
+    public boolean matchesSize(Keyboard keyboard) {
+        return sizes.isEmpty() || sizes.contains(keyboard.getSize());
+    }
+
+    /**
+     * Returns whether a keyboard's switch color is one of the query's colors
+     *
+     * @param keyboard the keyboard to test
+     * @return true if no switch colors were given or the color is among them
+     */
+    public boolean matchesSwitchColor(Keyboard keyboard) {
+        return switchColors.isEmpty() || switchColors.contains(keyboard.getSwitchColor());
+    }
+
+    /**
+     * Returns whether a keyboard matches every criterion of the query
+     *
+     * @param keyboard the keyboard to test
+     * @return true if the name, price, size and switch color all match
+     */
+    public boolean matches(Keyboard keyboard) {
+        return matchesName(keyboard) && matchesPrice(keyboard) && matchesSize(keyboard)
+                && matchesSwitchColor(keyboard);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format(STRING_FORMAT, name, ignoreCase, minPrice, maxPrice, sizes, switchColors);
+    }
+}
@@ -0,0 +1,98 @@
+package com.estore.api.estoreapi.model;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.estore.api.estoreapi.model.Keyboard.Size;
+import com.estore.api.estoreapi.model.Keyboard.SwitchColor;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The keyboards matching a {@link KeyboardQuery} together with facet counts
+ * <br>
+ * The count for a size is the number of keyboards that would match if the
+ * query's size filter were replaced by that one size, with every other
+ * criterion kept, and likewise for switch colors. A storefront can show the
+ * counts next to each filter option without running more queries.
+ *
+ * @author Team 2
+ */
+public class KeyboardQueryResult {
+
+    static final String STRING_FORMAT = "KeyboardQueryResult [total=%d, sizeCounts=%s, switchColorCounts=%s]";
+
+    @JsonProperty("keyboards")
+    private Keyboard[] keyboards;
+    @JsonProperty("total")
+    private int total;
+    @JsonProperty("sizeCounts")
+    private EnumMap<Size, Integer> sizeCounts;
+    @JsonProperty("switchColorCounts")
+    private EnumMap<SwitchColor, Integer> switchColorCounts;
+
+    /**
+     * Creates a query result
+     *
+     * @param keyboards         the matching keyboards
+     * @param sizeCounts        matching keyboards per size, ignoring the size filter
+     * @param switchColorCounts matching keyboards per switch color, ignoring the
+     *                          switch color filter
+     */
+    public KeyboardQueryResult(Keyboard[] keyboards, Map<Size, Integer> sizeCounts,
+            Map<SwitchColor, Integer> switchColorCounts) {
+        this.keyboards = keyboards;
+        this.total = keyboards.length;
+        this.sizeCounts = new EnumMap<>(Size.class);
+        for (Size size : Size.values()) {
+            this.sizeCounts.put(size, sizeCounts.getOrDefault(size, 0));
+        }
+        this.switchColorCounts = new EnumMap<>(SwitchColor.class);
+        for (SwitchColor switchColor : SwitchColor.values()) {
+            this.switchColorCounts.put(switchColor, switchColorCounts.getOrDefault(switchColor, 0));
+        }
+    }
+
+    /**
+     * Returns the matching keyboards
+     *
+     * @return the keyboards
+     */
+    public Keyboard[] getKeyboards() {
+        return keyboards;
+    }
+
+    /**
+     * Returns the number of matching keyboards
+     *
+     * @return the number of keyboards
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of keyboards per size
+     *
+     * @return the size facet counts
+     */
+    public Map<Size, Integer> getSizeCounts() {
+        return sizeCounts;
+    }
+
+    /**
+     * Returns the number of keyboards per switch color
+     *
+     * @return the switch color facet counts
+     */
+    public Map<SwitchColor, Integer> getSwitchColorCounts() {
+        return switchColorCounts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format(STRING_FORMAT, total, sizeCounts, switchColorCounts);
+    }
+}
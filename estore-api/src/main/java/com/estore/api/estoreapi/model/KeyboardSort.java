@@ -0,0 +1,75 @@
+package com.estore.api.estoreapi.model;
+
+import java.util.Locale;
+
+/**
+ * The orders a page of keyboards can be sorted in
+ * <br>
+ * Keyboards with equal sort keys are ordered by id, so every order is total
+ * and a page can pick up exactly where the previous one stopped.
+ *
+ * @author Team 2
+ */
+public enum KeyboardSort {
+    ID {
+        @Override
+        public Comparable<?> keyOf(Keyboard keyboard) {
+            return keyboard.getKeyboardId();
+        }
+    },
+    PRICE {
+        @Override
+        public Comparable<?> keyOf(Keyboard keyboard) {
+            return keyboard.getPrice();
+        }
+    },
+    NAME {
+        @Override
+        public Comparable<?> keyOf(Keyboard keyboard) {
+            return keyboard.getKeyboardName() == null ? "" : keyboard.getKeyboardName();
+        }
+
+        @Override
+        public Comparable<?> parseKey(String text) {
+            return text;
+        }
+    },
+    QUANTITY {
+        @Override
+        public Comparable<?> keyOf(Keyboard keyboard) {
+            return keyboard.getQuantity();
+        }
+    };
+
+    /**
+     * Returns the value a keyboard is sorted by
+     *
+     * @param keyboard the keyboard
+     * @return its sort key; a null name sorts as the empty string
+     */
+    public abstract Comparable<?> keyOf(Keyboard keyboard);
+
+    /**
+     * Parses a sort key written with {@link String#valueOf(Object)}
+     *
+     * @param text the key as text
+     * @return the key
+     *
+     * @throws IllegalArgumentException if the text is not a key of this sort
+     */
+    public Comparable<?> parseKey(String text) {
+        return Integer.valueOf(text);
+    }
+
+    /**
+     * Looks a sort up by name, regardless of case
+     *
+     * @param name the name of the sort, e.g. "price"
+     * @return the sort
+     *
+     * @throws IllegalArgumentException if no sort has that name
+     */
+    public static KeyboardSort parse(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -1,5 +1,7 @@
 package com.estore.api.estoreapi.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,11 +22,11 @@ public class User {
     @JsonProperty("username")
     private String username;
     @JsonProperty("password")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private String password;
     @JsonProperty("userOrderHistory")
     private ArrayList<Keyboard> orderHistory;
-    @JsonProperty("userCart")
-    private ArrayList<Keyboard> cart;
+    private Cart cart; // Saved as the "userCart" list, through getUserCart and setUserCart
     @JsonProperty("loginStatus")
     private boolean loginStatus;
 
@@ -45,7 +47,7 @@ public class User {
         this.username = username;
         this.password = password;
         this.orderHistory = new ArrayList<>();
-        this.cart = new ArrayList<>();
+        this.cart = new Cart();
         this.loginStatus = true;
     }
 
@@ -118,11 +120,14 @@ public class User {
      * Returns an ArrayList of Keyboard objects representing the items in the
      * shopping cart of this User object.
      * 
-     * @return an ArrayList of Keyboard objects representing the items in the
-     *         shopping cart of this User object.
+     * @return a new ArrayList of the Keyboard objects in the shopping cart of
+     *         this User object, in the order they were added, or null if the
+     *         User object has no cart. Changing the list does not change the
+     *         cart; use {@link #getCart()} for that.
      */
+    @JsonProperty("userCart")
     public ArrayList<Keyboard> getUserCart() {
-        return this.cart;
+        return this.cart == null ? null : this.cart.toList();
     }
 
     /**
@@ -131,10 +136,23 @@ public class User {
      * Keyboard objects.
      * 
      * @param userCart the ArrayList of Keyboard objects to set as the shopping cart
-     *                 of this User object.
+     *                 of this User object, or null for no cart. Keyboards sharing
+     *                 an id are combined into one entry.
      */
+    @JsonProperty("userCart")
     public void setUserCart(ArrayList<Keyboard> cart) {
-        this.cart = cart;
+        this.cart = cart == null ? null : new Cart(cart);
+    }
+
+    /**
+     * 
+     * Returns the shopping cart of this User object, keyed by keyboard id.
+     * 
+     * @return the cart, or null if the User object has no cart
+     */
+    @JsonIgnore
+    public Cart getCart() {
+        return this.cart;
     }
 
     /**
@@ -170,6 +188,21 @@ public class User {
         this.loginStatus = loginStatus;
     }
 
+    /**
+     * 
+     * Returns a copy of this User object without its password, for sending to
+     * clients. The copy has its own order history and cart.
+     * 
+     * @return the copy, whose password is null
+     */
+    public User withoutPassword() {
+        User copy = new User(this.username, null);
+        copy.orderHistory = this.orderHistory == null ? null : new ArrayList<>(this.orderHistory);
+        copy.setUserCart(getUserCart());
+        copy.loginStatus = this.loginStatus;
+        return copy;
+    }
+
     /**
      * 
      * Returns a String representation of the User object.
@@ -0,0 +1,114 @@
+package com.estore.api.estoreapi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single mutation applied to a user account
+ * <br>
+ * Upserts carry the whole {@link User user}, including cart and order
+ * history, as it looked after the change. Deletes only carry the username.
+ *
+ * @author Team 2
+ */
+public class UserChange {
+
+    static final String STRING_FORMAT = "UserChange [version=%d, type=%s, username=%s]";
+
+    public enum Type {
+        UPSERT,
+        DELETE
+    }
+
+    @JsonProperty("version")
+    private long version;
+    @JsonProperty("type")
+    private Type type;
+    @JsonProperty("username")
+    private String username;
+    @JsonProperty("user")
+    private User user;
+
+    /**
+     * Creates a user change
+     *
+     * @param version  the sequence number of this change
+     * @param type     whether the user was created/updated or deleted
+     * @param username the username of the affected user
+     * @param user     the user after the change, null for deletes
+     */
+    public UserChange(@JsonProperty("version") long version, @JsonProperty("type") Type type,
+            @JsonProperty("username") String username, @JsonProperty("user") User user) {
+        this.version = version;
+        this.type = type;
+        this.username = username;
+        this.user = user;
+    }
+
+    /**
+     * Creates a change recording that a user was created or updated
+     *
+     * @param version the sequence number of this change
+     * @param user    the user after the change
+     * @return the upsert change
+     */
+    public static UserChange upsert(long version, User user) {
+        return new UserChange(version, Type.UPSERT, user.getUsername(), user);
+    }
+
+    /**
+     * Creates a change recording that a user was deleted
+     *
+     * @param version  the sequence number of this change
+     * @param username the username of the deleted user
+     * @return the delete change
+     */
+    public static UserChange delete(long version, String username) {
+        return new UserChange(version, Type.DELETE, username, null);
+    }
+
+    /**
+     * Returns the sequence number of this change
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the type of this change
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the username of the affected user
+     *
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the user after the change, null for deletes
+     *
+     * @return the user
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Returns a string representation of the UserChange object.
+     *
+     * @return a string representation of the UserChange object
+     */
+    @Override
+    public String toString() {
+        return String.format(STRING_FORMAT, version, type, username);
+    }
+}
@@ -0,0 +1,396 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.User;
+
+/**
+ * Compact binary encoding of the inventory and users snapshots
+ * <br>
+ * A snapshot starts with a header (magic number, format version and the kind
+ * of record it holds), followed by a table of every distinct keyboard name and
+ * then the records themselves. Each record is prefixed with its length so a
+ * truncated or mis-parsed record is caught straight away. Keyboards refer to
+ * their name by its index in the table and store {@link Keyboard.Size} and
+ * {@link Keyboard.SwitchColor} by ordinal, so new enum constants must only ever
+ * be added at the end.
+ * <br>
+ * Every keyboard with the same name shares a single String once loaded,
+ * which matters for users whose carts and order histories repeat the same
+ * few keyboards.
+ *
+ * @author Team 2
+ */
+public final class BinarySnapshot {
+    private static final int MAGIC = 0x4B42534E; // "KBSN"
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte KEYBOARDS = 1;
+    private static final byte USERS = 2;
+    private static final int NO_NAME = -1;
+    private static final int NO_LIST = -1;
+    private static final String EXTENSION = ".bin";
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Returns the binary snapshot file that sits next to a JSON data file
+     *
+     * @param jsonFilename the JSON data file, such as data/inventory.json
+     * @return the binary file, such as data/inventory.bin
+     */
+    public static String filenameFor(String jsonFilename) {
+        if (jsonFilename.endsWith(".json")) {
+            return jsonFilename.substring(0, jsonFilename.length() - ".json".length()) + EXTENSION;
+        }
+        return jsonFilename + EXTENSION;
+    }
+
+    /**
+     * Encodes an inventory snapshot
+     *
+     * @param keyboards the keyboards to encode
+     * @return the encoded snapshot
+     */
+    public static byte[] writeKeyboards(Keyboard[] keyboards) {
+        NameTable names = new NameTable();
+        for (Keyboard keyboard : keyboards) {
+            names.add(keyboard);
+        }
+        try {
+            Encoder encoder = new Encoder(KEYBOARDS, names, keyboards.length);
+            for (Keyboard keyboard : keyboards) {
+                writeKeyboard(encoder.record, names, keyboard);
+                encoder.endRecord();
+            }
+            return encoder.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory encoding failed", e); // Byte arrays never fail
+        }
+    }
+
+    /**
+     * Encodes a users snapshot
+     *
+     * @param users the users to encode
+     * @return the encoded snapshot
+     */
+    public static byte[] writeUsers(User[] users) {
+        NameTable names = new NameTable();
+        for (User user : users) {
+            names.addAll(user.getUserCart());
+            names.addAll(user.getUserOrderHistory());
+        }
+        try {
+            Encoder encoder = new Encoder(USERS, names, users.length);
+            for (User user : users) {
+                DataOutputStream out = encoder.record;
+                writeString(out, user.getUsername());
+                writeString(out, user.getPassword());
+                out.writeBoolean(user.getLoginStatus());
+                writeKeyboardList(out, names, user.getUserCart());
+                writeKeyboardList(out, names, user.getUserOrderHistory());
+                encoder.endRecord();
+            }
+            return encoder.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory encoding failed", e); // Byte arrays never fail
+        }
+    }
+
+    /**
+     * Decodes an inventory snapshot, passing on each keyboard as it is read
+     *
+     * @param input    the encoded snapshot, left open
+     * @param consumer called with each keyboard in order
+     * @return the number of keyboards read
+     *
+     * @throws IOException when the snapshot cannot be read or is malformed
+     */
+    public static long readKeyboards(InputStream input, Consumer<Keyboard> consumer) throws IOException {
+        Decoder decoder = new Decoder(input, KEYBOARDS);
+        for (long i = 0; i < decoder.count; ++i) {
+            DataInputStream record = decoder.nextRecord();
+            consumer.accept(readKeyboard(record, decoder.names));
+            decoder.endRecord(record);
+        }
+        return decoder.count;
+    }
+
+    /**
+     * Decodes a users snapshot, passing on each user as it is read
+     *
+     * @param input    the encoded snapshot, left open
+     * @param consumer called with each user in order
+     * @return the number of users read
+     *
+     * @throws IOException when the snapshot cannot be read or is malformed
+     */
+    public static long readUsers(InputStream input, Consumer<User> consumer) throws IOException {
+        Decoder decoder = new Decoder(input, USERS);
+        for (long i = 0; i < decoder.count; ++i) {
+            DataInputStream record = decoder.nextRecord();
+            User user = new User(readString(record), readString(record));
+            user.setLoginStatus(record.readBoolean());
+            user.setUserCart(readKeyboardList(record, decoder.names));
+            user.setUserOrderHistory(readKeyboardList(record, decoder.names));
+            consumer.accept(user);
+            decoder.endRecord(record);
+        }
+        return decoder.count;
+    }
+
+    /**
+     * Writes a keyboard as its id, name index, enum ordinals, price and quantity
+     *
+     * @param out      the record being written
+     * @param names    the snapshot's name table
+     * @param keyboard the keyboard to write
+     *
+     * @throws IOException never, the record is held in memory
+     */
+    private static void writeKeyboard(DataOutputStream out, NameTable names, Keyboard keyboard) throws IOException {
+        out.writeInt(keyboard.getKeyboardId());
+        out.writeInt(names.indexOf(keyboard.getKeyboardName()));
+        out.writeByte(keyboard.getSize() == null ? -1 : keyboard.getSize().ordinal());
+        out.writeByte(keyboard.getSwitchColor() == null ? -1 : keyboard.getSwitchColor().ordinal());
+        out.writeInt(keyboard.getPrice());
+        out.writeInt(keyboard.getQuantity());
+    }
+
+    /**
+     * Reads a keyboard written by {@link #writeKeyboard}
+     *
+     * @param in    the record being read
+     * @param names the snapshot's name table
+     * @return the keyboard
+     *
+     * @throws IOException when the record is malformed
+     */
+    private static Keyboard readKeyboard(DataInputStream in, String[] names) throws IOException {
+        int id = in.readInt();
+        int nameIndex = in.readInt();
+        if (nameIndex < NO_NAME || nameIndex >= names.length) {
+            throw new IOException("Name index " + nameIndex + " is outside the name table");
+        }
+        String name = nameIndex == NO_NAME ? null : names[nameIndex];
+        Keyboard.Size size = ordinal(Keyboard.Size.values(), in.readByte());
+        Keyboard.SwitchColor switchColor = ordinal(Keyboard.SwitchColor.values(), in.readByte());
+        return new Keyboard(id, name, size, switchColor, in.readInt(), in.readInt());
+    }
+
+    /**
+     * Writes a list of keyboards prefixed with its size, or a marker for null
+     *
+     * @param out       the record being written
+     * @param names     the snapshot's name table
+     * @param keyboards the keyboards to write, may be null
+     *
+     * @throws IOException never, the record is held in memory
+     */
+    private static void writeKeyboardList(DataOutputStream out, NameTable names, List<Keyboard> keyboards)
+            throws IOException {
+        if (keyboards == null) {
+            out.writeInt(NO_LIST);
+            return;
+        }
+        out.writeInt(keyboards.size());
+        for (Keyboard keyboard : keyboards) {
+            writeKeyboard(out, names, keyboard);
+        }
+    }
+
+    /**
+     * Reads a list of keyboards written by {@link #writeKeyboardList}
+     *
+     * @param in    the record being read
+     * @param names the snapshot's name table
+     * @return the keyboards, or null if a null list was written
+     *
+     * @throws IOException when the record is malformed
+     */
+    private static ArrayList<Keyboard> readKeyboardList(DataInputStream in, String[] names) throws IOException {
+        int size = in.readInt();
+        if (size == NO_LIST) {
+            return null;
+        }
+        if (size < 0) {
+            throw new IOException("Negative list size " + size);
+        }
+        ArrayList<Keyboard> keyboards = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            keyboards.add(readKeyboard(in, names));
+        }
+        return keyboards;
+    }
+
+    /**
+     * Writes a string that may be null
+     *
+     * @param out   the record being written
+     * @param value the string to write
+     *
+     * @throws IOException never, the record is held in memory
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}
+     *
+     * @param in the record being read
+     * @return the string, possibly null
+     *
+     * @throws IOException when the record is malformed
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Looks up an enum constant by the ordinal stored in a snapshot
+     *
+     * @param values  every constant of the enum
+     * @param ordinal the stored ordinal, -1 for null
+     * @return the constant, or null
+     *
+     * @throws IOException when the ordinal is out of range
+     */
+    private static <E extends Enum<E>> E ordinal(E[] values, byte ordinal) throws IOException {
+        if (ordinal == -1) {
+            return null;
+        }
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("Unknown ordinal " + ordinal + " for " + values.getClass().getComponentType());
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Distinct keyboard names in the order they were first seen
+     */
+    private static class NameTable {
+        private final Map<String, Integer> indexes = new LinkedHashMap<>();
+
+        void add(Keyboard keyboard) {
+            if (keyboard.getKeyboardName() != null) {
+                indexes.putIfAbsent(keyboard.getKeyboardName(), indexes.size());
+            }
+        }
+
+        void addAll(List<Keyboard> keyboards) {
+            if (keyboards != null) {
+                keyboards.forEach(this::add);
+            }
+        }
+
+        int indexOf(String name) {
+            return name == null ? NO_NAME : indexes.get(name);
+        }
+    }
+
+    /**
+     * Writes the header and name table, then collects each record in a
+     * scratch buffer so it can be prefixed with its length
+     */
+    private static class Encoder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        final DataOutputStream record = new DataOutputStream(recordBytes);
+
+        Encoder(byte kind, NameTable names, int count) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(kind);
+            out.writeInt(names.indexes.size());
+            for (String name : names.indexes.keySet()) {
+                out.writeUTF(name);
+            }
+            out.writeInt(count);
+        }
+
+        void endRecord() throws IOException {
+            record.flush();
+            out.writeInt(recordBytes.size());
+            recordBytes.writeTo(out);
+            recordBytes.reset();
+        }
+
+        byte[] finish() throws IOException {
+            out.flush();
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Reads the header and name table, then hands out one record at a time
+     */
+    private static class Decoder {
+        private final DataInputStream in;
+        private byte[] buffer = new byte[256];
+        final String[] names;
+        final int count;
+
+        Decoder(InputStream input, byte kind) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(input));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a binary snapshot");
+            }
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported binary snapshot version " + version);
+            }
+            byte actualKind = in.readByte();
+            if (actualKind != kind) {
+                throw new IOException("Expected snapshot kind " + kind + " but found " + actualKind);
+            }
+            int nameCount = in.readInt();
+            if (nameCount < 0) {
+                throw new IOException("Negative name count " + nameCount);
+            }
+            names = new String[nameCount];
+            for (int i = 0; i < nameCount; ++i) {
+                names[i] = in.readUTF();
+            }
+            count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Negative record count " + count);
+            }
+        }
+
+        DataInputStream nextRecord() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Negative record length " + length);
+            }
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            return new DataInputStream(new ByteArrayInputStream(buffer, 0, length));
+        }
+
+        void endRecord(DataInputStream record) throws IOException {
+            if (record.available() != 0) {
+                throw new IOException(record.available() + " unread bytes at the end of a record");
+            }
+        }
+    }
+}
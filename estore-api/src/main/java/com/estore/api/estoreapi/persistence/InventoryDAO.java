@@ -1,8 +1,17 @@
 package com.estore.api.estoreapi.persistence;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.function.Consumer;
 
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
 import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.KeyboardPage;
+import com.estore.api.estoreapi.model.KeyboardQuery;
+import com.estore.api.estoreapi.model.KeyboardQueryResult;
+import com.estore.api.estoreapi.model.KeyboardSort;
 import com.estore.api.estoreapi.model.Keyboard.Size;
 import com.estore.api.estoreapi.model.Keyboard.SwitchColor;
 
@@ -16,6 +25,66 @@ public interface InventoryDAO {
      */
     Keyboard[] getKeyboards() throws IOException;
 
+    /**
+     * Writes every {@linkplain Keyboard keyboard} to a stream as
+     * newline-delimited JSON, one keyboard per line, without building the
+     * whole catalog in memory
+     * 
+     * @param out The stream to write to, left open
+     * 
+     * @return The number of keyboards written
+     * 
+     * @throws IOException if underlying storage cannot be accessed or the
+     *                     stream cannot be written to
+     */
+    int exportKeyboards(OutputStream out) throws IOException;
+
+    /**
+     * Returns a number that changes whenever any {@linkplain Keyboard
+     * keyboard} is created, updated, deleted or has its stock changed
+     * <br>
+     * A reader that sees a version already sees every change counted in it,
+     * so a copy of the inventory read after the version is at least that
+     * recent. Versions are not comparable across restarts.
+     * 
+     * @return the current version
+     */
+    long getVersion();
+
+    /**
+     * Returns the changes made after a version, for a client updating its
+     * copy of the catalog
+     * <br>
+     * Only a bounded number of recent changes is kept, so a version too old,
+     * newer than the inventory's, or from another epoch is answered with a
+     * resync instead. So is a request without an epoch, including a client
+     * that has no copy yet.
+     * 
+     * @param since the version of the client's copy
+     * @param epoch the epoch that came with that version, null if it has
+     *              none
+     * 
+     * @return the latest change of each {@linkplain Keyboard keyboard}
+     *         changed, with the version and epoch to ask from next time
+     * 
+     * @throws IOException if underlying storage cannot be accessed
+     */
+    InventoryChanges getChangesSince(long since, String epoch) throws IOException;
+
+    /**
+     * Registers a listener told of every change to the inventory, once it is
+     * visible to readers
+     * <br>
+     * Listeners are called on the thread making the change, possibly while
+     * it holds the inventory's lock, so they must return quickly and must
+     * not call back into the DAO. An upsert's {@link Keyboard keyboard} may
+     * be changed again afterwards, so listeners copy what they keep.
+     * 
+     * @param listener receives each change, in version order for any one
+     *                 keyboard
+     */
+    void addChangeListener(Consumer<InventoryChange> listener);
+
     /**
      * Finds all {@linkplain Keyboard keyboards} whose name contains the given text
      * 
@@ -28,6 +97,20 @@ public interface InventoryDAO {
      */
     Keyboard[] findKeyboard(String containsText) throws IOException;
 
+    /**
+     * Finds all {@linkplain Keyboard keyboards} whose name contains the given
+     * text, optionally ignoring case
+     * 
+     * @param containsText The text to match against
+     * @param ignoreCase   true to match regardless of case
+     * 
+     * @return An array of {@link Keyboard keyboards} whose names contain the
+     *         given text, may be empty
+     * 
+     * @throws IOException if an issue with underlying storage
+     */
+    Keyboard[] findKeyboard(String containsText, boolean ignoreCase) throws IOException;
+
     /**
      * Retrieves a {@linkplain Keyboard keyboard} with the given id
      * 
@@ -95,4 +178,105 @@ public interface InventoryDAO {
     Keyboard[] getFilteredKeyboards(String fromPrice, String toPrice)
             throws IOException;
 
+    /**
+     * Finds the {@linkplain Keyboard keyboards} matching every criterion of a
+     * faceted query and counts the matches per size and switch color
+     * 
+     * @param query the criteria to match
+     * @return the matching keyboards in id order, with facet counts
+     * 
+     * @throws IOException if an issue with underlying storage
+     */
+    KeyboardQueryResult queryKeyboards(KeyboardQuery query) throws IOException;
+
+    /**
+     * Retrieves one page of the {@linkplain Keyboard keyboards} matching a
+     * query, in the given order
+     *
+     * @param query      the criteria to match
+     * @param sort       the order of the keyboards
+     * @param descending true for largest sort key first
+     * @param cursor     the cursor returned with the previous page, null for
+     *                   the first page
+     * @param limit      the most keyboards to return, at least 1
+     *
+     * @return the page of keyboards and the cursor of the next one
+     *
+     * @throws IOException              if an issue with underlying storage
+     * @throws IllegalArgumentException if the cursor is malformed or was issued
+     *                                  for a different sort, or the limit is
+     *                                  below 1
+     */
+    KeyboardPage getKeyboardPage(KeyboardQuery query, KeyboardSort sort, boolean descending, String cursor,
+            int limit) throws IOException;
+
+    /**
+     * Takes units of a {@linkplain Keyboard keyboard} out of stock, as one
+     * atomic step
+     * <br>
+     * Concurrent reservations of the same keyboard never take the quantity
+     * below zero; if not enough units are left, nothing is taken.
+     *
+     * @param id       The id of the {@link Keyboard keyboard}
+     * @param quantity The number of units to take, at least 1
+     *
+     * @return true if the units were taken
+     *         <br>
+     *         false if the keyboard does not exist or has fewer units in stock
+     *
+     * @throws IOException              if underlying storage cannot be accessed
+     * @throws IllegalArgumentException if the quantity is below 1
+     */
+    boolean reserveStock(int id, int quantity) throws IOException;
+
+    /**
+     * Puts units of a {@linkplain Keyboard keyboard} back into stock, as one
+     * atomic step
+     *
+     * @param id       The id of the {@link Keyboard keyboard}
+     * @param quantity The number of units to return, at least 1
+     *
+     * @return true if the units were returned
+     *         <br>
+     *         false if the keyboard does not exist
+     *
+     * @throws IOException              if underlying storage cannot be accessed
+     * @throws IllegalArgumentException if the quantity is below 1
+     */
+    boolean releaseStock(int id, int quantity) throws IOException;
+
+    /**
+     * Takes units of several {@linkplain Keyboard keyboards} out of stock, all
+     * or none of them, and saves the new quantities together
+     *
+     * @param quantities The number of units to take, by keyboard id, each at
+     *                   least 1
+     *
+     * @return true if every keyboard had enough units and they were taken
+     *         <br>
+     *         false if any keyboard does not exist or is short, in which case
+     *         no units are taken
+     *
+     * @throws IOException              if underlying storage cannot be accessed
+     * @throws IllegalArgumentException if any quantity is below 1
+     */
+    boolean reserveStock(Map<Integer, Integer> quantities) throws IOException;
+
+    /**
+     * Puts units of several {@linkplain Keyboard keyboards} back into stock
+     * and saves the new quantities together
+     *
+     * @param quantities The number of units to return, by keyboard id, each at
+     *                   least 1
+     *
+     * @return true if the units were returned
+     *         <br>
+     *         false if any keyboard does not exist; the units of the others
+     *         are still returned
+     *
+     * @throws IOException              if underlying storage cannot be accessed
+     * @throws IllegalArgumentException if any quantity is below 1
+     */
+    boolean releaseStock(Map<Integer, Integer> quantities) throws IOException;
+
 }
@@ -1,17 +1,45 @@
 package com.estore.api.estoreapi.persistence;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
 import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.KeyboardCursor;
+import com.estore.api.estoreapi.model.KeyboardPage;
+import com.estore.api.estoreapi.model.KeyboardQuery;
+import com.estore.api.estoreapi.model.KeyboardQueryResult;
+import com.estore.api.estoreapi.model.KeyboardSort;
 import com.estore.api.estoreapi.model.Keyboard.Size;
 import com.estore.api.estoreapi.model.Keyboard.SwitchColor;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -27,6 +55,7 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
  * @author Team 2
  */
 @Component
+@ConditionalOnProperty(name = "inventory.dao", havingValue = "file", matchIfMissing = true)
 public class InventoryFileDAO implements InventoryDAO {
     private static final Logger LOG = Logger.getLogger(InventoryFileDAO.class.getName());
     HashMap<Integer, Keyboard> keyboardMap; // Provides a local cache of the keyboard objects
@@ -37,6 +66,25 @@ public class InventoryFileDAO implements InventoryDAO {
                                        // to the file
     private static int nextId; // The next Id to assign to a new keyboard
     private String filename; // Filename to read from and write to
+    private PersistenceSettings settings; // Options controlling how changes reach the file
+    private MutationLog<InventoryChange> mutationLog; // Write-ahead log, null when disabled
+    private PersistenceWriter writer; // Coalesces saves in the background, null when disabled
+    private SnapshotFile snapshotFile; // Atomic, checksummed writes of filename, null when disabled
+    private String binaryFilename; // Binary snapshot written instead of filename, null for JSON
+    private SnapshotFile binarySnapshotFile; // Atomic, checksummed writes of binaryFilename, null when disabled
+    private long version; // Incremented on every change to the inventory
+    private volatile long appliedVersion; // The version of the changes readers can already see
+    private final List<Consumer<InventoryChange>> changeListeners = new CopyOnWriteArrayList<>();
+    private RecentChanges recentChanges; // Changes since startup, as far back as they fit
+    private TreeMap<Integer, Map<Integer, Keyboard>> priceIndex; // Keyboards by price, then by id
+    private KeyboardNameIndex nameIndex; // Trigram index over keyboard names
+    private KeyboardFacetIndex facetIndex; // Keyboard ids by size and by switch color
+    private SortedKeyIndex<Integer> idOrder; // Keyboard ids in ascending order, for paging
+    private SortedKeyIndex<Integer> priceOrder; // Keyboard ids by price, for paging
+    private SortedKeyIndex<String> nameOrder; // Keyboard ids by name, for paging
+    private SortedKeyIndex<Integer> quantityOrder; // Keyboard ids by quantity, for paging
+    private volatile InventorySnapshot snapshot; // Published copy for lock-free lookups and searches, null when disabled
+    private Map<Integer, AtomicInteger> stock; // Units in stock by keyboard id, taken without the map lock
 
     public static final int MAX_KEYBOARD_PRICE = 999;
 
@@ -49,10 +97,67 @@ public class InventoryFileDAO implements InventoryDAO {
      * 
      * @throws IOException when file cannot be accessed or read from
      */
-    public InventoryFileDAO(@Value("${inventory.file}") String filename, ObjectMapper objectMapper) throws IOException {
+    public InventoryFileDAO(String filename, ObjectMapper objectMapper) throws IOException {
+        this(filename, objectMapper, new PersistenceSettings());
+    }
+
+    /**
+     * Creates a Keyboard File Data Access Object
+     * <br>
+     * When the write-ahead log is enabled in the settings, changes are appended
+     * to a log next to the JSON file and the JSON file is only rewritten as a
+     * checkpoint. With group commit enabled as well, appends are not synced
+     * one by one; the background writer syncs the log once per window.
+     * Without the log, group commit has the background writer coalesce saves.
+     * <br>
+     * With snapshot reads enabled, every change also publishes a new
+     * {@link InventorySnapshot} and {@link #getKeyboards()},
+     * {@link #findKeyboard(String)}, {@link #getKeyboard(int)} and
+     * {@link #exportKeyboards(OutputStream)} read the latest one without
+     * taking the lock. Price filters, faceted queries and pages still walk
+     * the indexes under the lock.
+     * 
+     * @param filename     Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization
+     *                     and deserialization
+     * @param settings     Options controlling how changes are persisted
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    @Autowired
+    public InventoryFileDAO(@Value("${inventory.file}") String filename, ObjectMapper objectMapper,
+            PersistenceSettings settings) throws IOException {
         this.filename = filename;
         this.objectMapper = objectMapper;
+        this.settings = settings;
+        if (settings.getSnapshotFormat() == PersistenceSettings.SnapshotFormat.BINARY) {
+            binaryFilename = BinarySnapshot.filenameFor(filename);
+        }
+        if (settings.isAtomicSnapshots()) {
+            snapshotFile = new SnapshotFile(filename);
+            if (binaryFilename != null) {
+                binarySnapshotFile = new SnapshotFile(binaryFilename);
+            }
+        }
         load();
+        if (settings.isInventoryWalEnabled()) {
+            boolean groupSync = settings.isGroupCommitEnabled() && settings.isWalSync();
+            mutationLog = new MutationLog<>(filename + ".wal", objectMapper, InventoryChange.class,
+                    settings.isWalSync() && !groupSync);
+            recover();
+            if (groupSync) {
+                writer = new PersistenceWriter("inventory-writer", settings.getGroupCommitWindowMs(),
+                        settings.getGroupCommitDurability(), mutationLog::force);
+            }
+        } else if (settings.isGroupCommitEnabled()) {
+            writer = new PersistenceWriter("inventory-writer", settings.getGroupCommitWindowMs(),
+                    settings.getGroupCommitDurability(), this::flush);
+        }
+        if (settings.isInventorySnapshotReads()) {
+            snapshot = InventorySnapshot.of(keyboardMap.values(), version);
+        }
+        recentChanges = new RecentChanges(settings.getInventoryChangesCapacity(), version);
+        appliedVersion = version;
     }
 
     /**
@@ -78,7 +183,9 @@ public class InventoryFileDAO implements InventoryDAO {
     /**
      * 
      * Returns an ArrayList of Keyboard objects filtered by their price, based on
-     * the given range.
+     * the given range, ordered by price.
+     * <br>
+     * Looks the range up in the price index instead of scanning every keyboard.
      * 
      * @param fromPrice the lower limit of the price range.
      * @param toPrice   the upper limit of the price range.
@@ -87,14 +194,130 @@ public class InventoryFileDAO implements InventoryDAO {
      */
     public ArrayList<Keyboard> filteredByFromAndTwo(int fromPrice, int toPrice) {
         ArrayList<Keyboard> filtered = new ArrayList<Keyboard>();
-        for (Keyboard cuKeyboard : this.keyboardMap.values()) {
-            if (cuKeyboard.getPrice() >= fromPrice && cuKeyboard.getPrice() <= toPrice) {
-                filtered.add(cuKeyboard);
+        if (fromPrice > toPrice) {
+            return filtered;
+        }
+        synchronized (keyboardMap) {
+            for (Map<Integer, Keyboard> samePrice : priceIndex.subMap(fromPrice, true, toPrice, true).values()) {
+                filtered.addAll(samePrice.values());
             }
         }
         return filtered;
     }
 
+    /**
+     * Adds or replaces a {@linkplain Keyboard keyboard} in the map and in the
+     * price, name, facet and sort indexes. The caller must hold the map lock.
+     * <br>
+     * Replacing a keyboard applies its quantity to the stock counter as a
+     * change from the last recorded quantity, so units taken or returned
+     * without the lock since then are not overwritten. The keyboard's
+     * quantity is set to the counter's, which never drops below zero.
+     * 
+     * @param keyboard The keyboard to store
+     */
+    private void putKeyboard(Keyboard keyboard) {
+        int id = keyboard.getKeyboardId();
+        Integer recorded = quantityOrder.get(id);
+        AtomicInteger units = stock.get(id);
+        if (recorded == null || units == null) {
+            stock.put(id, new AtomicInteger(keyboard.getQuantity()));
+        } else {
+            int change = keyboard.getQuantity() - recorded;
+            keyboard.setQuantity(units.updateAndGet(current -> Math.max(0, current + change)));
+        }
+        Keyboard previous = keyboardMap.put(id, keyboard);
+        if (previous != null) {
+            unindex(previous);
+            facetIndex.remove(previous);
+        }
+        facetIndex.add(keyboard);
+        priceIndex.computeIfAbsent(keyboard.getPrice(), price -> new HashMap<>()).put(id, keyboard);
+        nameIndex.put(id, keyboard.getKeyboardName());
+        idOrder.put(id, id);
+        priceOrder.put(id, keyboard.getPrice());
+        nameOrder.put(id, (String) KeyboardSort.NAME.keyOf(keyboard));
+        quantityOrder.put(id, keyboard.getQuantity());
+    }
+
+    /**
+     * Removes a {@linkplain Keyboard keyboard} from the map and from the
+     * price, name, facet and sort indexes. The caller must hold the map lock.
+     * 
+     * @param id The id of the keyboard to remove
+     */
+    private void removeKeyboard(int id) {
+        Keyboard previous = keyboardMap.remove(id);
+        if (previous != null) {
+            unindex(previous);
+            nameIndex.remove(id);
+            facetIndex.remove(previous);
+            idOrder.remove(id);
+            priceOrder.remove(id);
+            nameOrder.remove(id);
+            quantityOrder.remove(id);
+            stock.remove(id);
+        }
+    }
+
+    /**
+     * Publishes a snapshot with a {@linkplain Keyboard keyboard} added or
+     * replaced, if snapshot reads are enabled. The caller must hold the map
+     * lock and have already bumped the version.
+     * 
+     * @param keyboard The keyboard that was stored
+     */
+    private void publish(Keyboard keyboard) {
+        if (snapshot != null) {
+            snapshot = snapshot.with(keyboard, version);
+        }
+    }
+
+    /**
+     * Publishes a snapshot with a {@linkplain Keyboard keyboard} removed, if
+     * snapshot reads are enabled. The caller must hold the map lock and have
+     * already bumped the version.
+     * 
+     * @param id The id of the keyboard that was removed
+     */
+    private void unpublish(int id) {
+        if (snapshot != null) {
+            snapshot = snapshot.without(id, version);
+        }
+    }
+
+    /**
+     * Empties the map and every index before loading. The caller must hold
+     * the map lock or be the constructor.
+     */
+    private void clearKeyboards() {
+        keyboardMap.clear();
+        priceIndex.clear();
+        nameIndex.clear();
+        facetIndex.clear();
+        idOrder.clear();
+        priceOrder.clear();
+        nameOrder.clear();
+        quantityOrder.clear();
+        stock.clear();
+        nextId = 0;
+    }
+
+    /**
+     * Removes a {@linkplain Keyboard keyboard} from the price index
+     * 
+     * @param keyboard The keyboard to remove
+     */
+    private void unindex(Keyboard keyboard) {
+        Map<Integer, Keyboard> samePrice = priceIndex.get(keyboard.getPrice());
+        if (samePrice != null) {
+            samePrice.remove(keyboard.getKeyboardId());
+            if (samePrice.isEmpty()) {
+                priceIndex.remove(keyboard.getPrice());
+            }
+        }
+    }
+
     /**
      * Generates an array of {@linkplain Keyboard keyboards} from the tree map for
      * any
@@ -132,13 +355,177 @@ public class InventoryFileDAO implements InventoryDAO {
      */
     private boolean save() throws IOException {
         Keyboard[] keyboardArray = getKeyboardArray();
-        objectMapper.writeValue(new File(filename), keyboardArray);
+        writeSnapshot(keyboardArray);
         return true;
     }
 
+    /**
+     * Writes an array of {@linkplain Keyboard keyboards} to the file, through
+     * a temporary file and checksum when atomic snapshots are enabled. With
+     * binary snapshots the binary file is written and the JSON file is left
+     * untouched.
+     * 
+     * @param keyboardArray the keyboards to write
+     * 
+     * @throws IOException when file cannot be accessed or written to
+     */
+    private void writeSnapshot(Keyboard[] keyboardArray) throws IOException {
+        if (binaryFilename != null) {
+            byte[] contents = BinarySnapshot.writeKeyboards(keyboardArray);
+            if (binarySnapshotFile != null) {
+                binarySnapshotFile.write(contents);
+            } else {
+                Files.write(Paths.get(binaryFilename), contents);
+            }
+        } else if (snapshotFile != null) {
+            snapshotFile.write(objectMapper.writeValueAsBytes(keyboardArray));
+        } else {
+            objectMapper.writeValue(new File(filename), keyboardArray);
+        }
+    }
+
+    /**
+     * Records a change to the inventory
+     * <br>
+     * With the write-ahead log enabled the change is appended to the log, and
+     * the whole map is only checkpointed once enough changes have piled up.
+     * With group commit the background writer is told the map is dirty, and
+     * it syncs the log or saves the map for every change in its window.
+     * Otherwise the whole map is saved straight away.
+     * <br>
+     * Must be called while holding the map lock, and the result passed to
+     * {@link PersistenceWriter#await(CompletableFuture)} after releasing it
+     * 
+     * @param change the change that was just applied to the map
+     * 
+     * @return completes once the change is durable
+     * 
+     * @throws IOException when file cannot be accessed or written to
+     */
+    private CompletableFuture<Void> persist(InventoryChange change) throws IOException {
+        return persist(Collections.singletonList(change));
+    }
+
+    /**
+     * Records several changes to the inventory with one write, as
+     * {@link #persist(InventoryChange)} does for one
+     * 
+     * @param changes the changes that were just applied to the map, in order
+     * 
+     * @return completes once the changes are durable
+     * 
+     * @throws IOException when file cannot be accessed or written to
+     */
+    private CompletableFuture<Void> persist(List<InventoryChange> changes) throws IOException {
+        // Every change is applied and published before it is persisted
+        appliedVersion = version;
+        for (InventoryChange change : changes) {
+            recentChanges.add(change);
+        }
+        for (Consumer<InventoryChange> listener : changeListeners) {
+            for (InventoryChange change : changes) {
+                listener.accept(change);
+            }
+        }
+        if (mutationLog != null) {
+            mutationLog.append(changes);
+            if (mutationLog.size() >= settings.getInventoryCheckpointInterval()) {
+                checkpoint();
+            }
+            if (writer != null) {
+                return writer.markDirty();
+            }
+        } else if (writer != null) {
+            return writer.markDirty();
+        } else {
+            save();
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Saves a copy of the map taken under the lock, called by the background
+     * writer once per commit window
+     * 
+     * @throws IOException when file cannot be accessed or written to
+     */
+    private void flush() throws IOException {
+        Keyboard[] keyboardArray;
+        synchronized (keyboardMap) {
+            keyboardArray = getKeyboardArray();
+        }
+        writeSnapshot(keyboardArray);
+    }
+
+    /**
+     * Writes the whole map to the JSON file and empties the write-ahead log,
+     * since every change in it is now part of the file
+     * 
+     * @throws IOException when file cannot be accessed or written to
+     */
+    private void checkpoint() throws IOException {
+        save();
+        mutationLog.truncate();
+        LOG.fine("Checkpointed inventory at version " + version);
+    }
+
+    /**
+     * Replays the write-ahead log on top of the {@linkplain Keyboard keyboards}
+     * loaded from the JSON file, restoring every change made after the last
+     * checkpoint
+     * 
+     * @throws IOException when the log cannot be read
+     */
+    private void recover() throws IOException {
+        int replayed = mutationLog.replay(change -> {
+            if (change.getType() == InventoryChange.Type.DELETE) {
+                removeKeyboard(change.getKeyboardId());
+            } else {
+                putKeyboard(change.getKeyboard());
+                if (change.getKeyboardId() >= nextId) {
+                    nextId = change.getKeyboardId() + 1;
+                }
+            }
+            version = Math.max(version, change.getVersion());
+        });
+        if (replayed > 0) {
+            LOG.info("Replayed " + replayed + " inventory changes from the write-ahead log");
+        }
+    }
+
+    /**
+     * Writes a final checkpoint and closes the write-ahead log so the next
+     * startup has nothing to replay, or flushes the background writer
+     * 
+     * @throws IOException when file cannot be accessed or written to
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+        if (mutationLog == null) {
+            return;
+        }
+        synchronized (keyboardMap) {
+            if (mutationLog.size() > 0) {
+                checkpoint();
+            }
+            mutationLog.close();
+        }
+    }
+
     /**
      * Loads {@linkplain Keyboard keyboards} from the JSON file into the map
      * <br>
+     * With atomic snapshots the file is checked against its checksum, and the
+     * previous version is loaded instead if the check fails. With streaming
+     * load each keyboard is put in the map as soon as it is parsed.
+     * <br>
+     * With binary snapshots the binary file is read instead, as long as it
+     * exists. Until the first save after switching formats it does not, and
+     * the JSON file is loaded as before.
+     * <br>
      * Also sets next id to one more than the greatest id found in the file
      * 
      * @return true if the file was read successfully
@@ -147,44 +534,202 @@ public class InventoryFileDAO implements InventoryDAO {
      */
     private boolean load() throws IOException {
         keyboardMap = new HashMap<>();
+        priceIndex = new TreeMap<>();
+        nameIndex = new KeyboardNameIndex();
+        facetIndex = new KeyboardFacetIndex();
+        idOrder = new SortedKeyIndex<>();
+        priceOrder = new SortedKeyIndex<>();
+        nameOrder = new SortedKeyIndex<>();
+        quantityOrder = new SortedKeyIndex<>();
+        stock = new ConcurrentHashMap<>();
         nextId = 0;
 
-        Keyboard[] keyboardArray = objectMapper.readValue(new File(filename), Keyboard[].class);
-        for (Keyboard currKeyboard : keyboardArray) {
-            keyboardMap.put(currKeyboard.getKeyboardId(), currKeyboard);
-            if (currKeyboard.getKeyboardId() > nextId) {
-                nextId = currKeyboard.getKeyboardId();
+        if (binaryFilename != null && new File(binaryFilename).exists()) {
+            loadBinary();
+        } else if (settings.isStreamingLoad()) {
+            loadStreaming();
+        } else {
+            Keyboard[] keyboardArray;
+            if (snapshotFile != null) {
+                keyboardArray = objectMapper.readValue(snapshotFile.read(), Keyboard[].class);
+            } else {
+                keyboardArray = objectMapper.readValue(new File(filename), Keyboard[].class);
+            }
+            for (Keyboard currKeyboard : keyboardArray) {
+                addLoaded(currKeyboard);
             }
         }
         ++nextId;
         return true;
     }
 
+    /**
+     * Parses the JSON file one {@linkplain Keyboard keyboard} at a time, so the
+     * whole array is never held in memory next to the map
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    private void loadStreaming() throws IOException {
+        StreamingJsonLoader<Keyboard> loader = new StreamingJsonLoader<>(objectMapper, Keyboard.class, "keyboards");
+        if (snapshotFile != null) {
+            snapshotFile.read((input, length) -> {
+                // Called again with the backup if the checksum fails
+                clearKeyboards();
+                loader.load(input, length, this::addLoaded);
+            });
+        } else {
+            File file = new File(filename);
+            try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+                loader.load(input, file.length(), this::addLoaded);
+            }
+        }
+    }
+
+    /**
+     * Reads the binary snapshot one {@linkplain Keyboard keyboard} at a time
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    private void loadBinary() throws IOException {
+        if (binarySnapshotFile != null) {
+            binarySnapshotFile.read((input, length) -> {
+                // Called again with the backup if the checksum fails
+                clearKeyboards();
+                BinarySnapshot.readKeyboards(input, this::addLoaded);
+            });
+        } else {
+            try (InputStream input = new FileInputStream(binaryFilename)) {
+                BinarySnapshot.readKeyboards(input, this::addLoaded);
+            }
+        }
+    }
+
+    /**
+     * Adds a {@linkplain Keyboard keyboard} read from the JSON file to the map
+     * 
+     * @param keyboard The keyboard read from the file
+     */
+    private void addLoaded(Keyboard keyboard) {
+        putKeyboard(keyboard);
+        if (keyboard.getKeyboardId() > nextId) {
+            nextId = keyboard.getKeyboardId();
+        }
+    }
+
     /**
      ** {@inheritDoc}
      */
     @Override
     public Keyboard[] getKeyboards() throws IOException {
+        InventorySnapshot published = snapshot;
+        if (published != null) {
+            return published.keyboards();
+        }
         synchronized (keyboardMap) {
             return getKeyboardArray();
         }
     }
 
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * With snapshot reads the published snapshot is written as it is, with no
+     * lock and no copy, so the export shows one version however long the
+     * client takes. Otherwise a snapshot is taken under the lock first.
+     */
+    @Override
+    public int exportKeyboards(OutputStream out) throws IOException {
+        InventorySnapshot published = snapshot;
+        if (published == null) {
+            synchronized (keyboardMap) {
+                published = InventorySnapshot.of(keyboardMap.values(), version);
+            }
+        }
+        for (Keyboard keyboard : published) {
+            out.write(objectMapper.writeValueAsBytes(keyboard));
+            out.write('\n');
+        }
+        return published.size();
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Read without the lock. The version moves only once a change has been
+     * applied to the map and published, so whatever it reports is already
+     * visible to readers.
+     */
+    @Override
+    public long getVersion() {
+        return appliedVersion;
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Read without the map lock. Changes are kept in memory only, from the
+     * version the inventory had when loaded, so a client whose version is
+     * from before a restart resyncs.
+     */
+    @Override
+    public InventoryChanges getChangesSince(long since, String epoch) {
+        return recentChanges.since(since, epoch);
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Called while holding the map lock, so listeners see the changes in
+     * version order
+     */
+    @Override
+    public void addChangeListener(Consumer<InventoryChange> listener) {
+        changeListeners.add(listener);
+    }
+
     /**
      ** {@inheritDoc}
      */
     @Override
     public Keyboard[] findKeyboard(String containsText) throws IOException {
+        return findKeyboard(containsText, false);
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Candidates come from the trigram index, so only keyboards sharing every
+     * trigram of the text are compared against it. With snapshot reads the
+     * published snapshot's own trigram index is searched, without locking.
+     */
+    @Override
+    public Keyboard[] findKeyboard(String containsText, boolean ignoreCase) throws IOException {
+        InventorySnapshot published = snapshot;
+        if (published != null) {
+            return published.find(containsText, ignoreCase);
+        }
         synchronized (keyboardMap) {
-            return getKeyboardArray(containsText);
+            List<Integer> ids = nameIndex.search(containsText, ignoreCase);
+            Keyboard[] keyboardArray = new Keyboard[ids.size()];
+            for (int i = 0; i < keyboardArray.length; ++i) {
+                keyboardArray[i] = keyboardMap.get(ids.get(i));
+            }
+            return keyboardArray;
         }
     }
 
     /**
      ** {@inheritDoc}
+     * <br>
+     * With snapshot reads the keyboard is a copy from the published snapshot;
+     * changes to it only take effect through {@link #updateKeyboard(Keyboard)}
      */
     @Override
     public Keyboard getKeyboard(int id) throws IOException {
+        InventorySnapshot published = snapshot;
+        if (published != null) {
+            return published.get(id);
+        }
         synchronized (keyboardMap) {
             if (keyboardMap.containsKey(id)) {
                 return keyboardMap.get(id);
@@ -200,33 +745,46 @@ public class InventoryFileDAO implements InventoryDAO {
      */
     @Override
     public Keyboard createKeyboard(Keyboard keyboard) throws IOException {
+        Keyboard newKeyboard;
+        CompletableFuture<Void> commit;
         synchronized (keyboardMap) {
-            Keyboard newKeyboard = new Keyboard(nextKeyboardId(),
+            newKeyboard = new Keyboard(nextKeyboardId(),
                     keyboard.getKeyboardName(), keyboard.getSize(), keyboard.getSwitchColor(),
                     keyboard.getPrice(), keyboard.getQuantity());
             if (keyboardMap.containsValue(newKeyboard)) {
                 return null;
             }
             newKeyboard.setKeyboardId(nextId);
-            keyboardMap.put(newKeyboard.getKeyboardId(), newKeyboard);
-            save();
-            return newKeyboard;
+            putKeyboard(newKeyboard);
+            InventoryChange change = InventoryChange.upsert(++version, newKeyboard);
+            publish(newKeyboard);
+            commit = persist(change);
         }
+        PersistenceWriter.await(commit);
+        return newKeyboard;
     }
 
     /**
      ** {@inheritDoc}
+     * <br>
+     * The new quantity is applied as a change from the last recorded one, so
+     * units reserved while the update was on its way stay reserved. The
+     * returned keyboard holds the quantity actually stored.
      */
     @Override
     public Keyboard updateKeyboard(Keyboard keyboard) throws IOException {
+        CompletableFuture<Void> commit;
         synchronized (keyboardMap) {
             if (!keyboardMap.containsKey(keyboard.getKeyboardId())) {
                 return null;
             }
-            keyboardMap.put(keyboard.getKeyboardId(), keyboard);
-            save();
-            return keyboard;
+            putKeyboard(keyboard);
+            InventoryChange change = InventoryChange.upsert(++version, keyboard);
+            publish(keyboard);
+            commit = persist(change);
         }
+        PersistenceWriter.await(commit);
+        return keyboard;
     }
 
     /**
@@ -234,14 +792,19 @@ public class InventoryFileDAO implements InventoryDAO {
      */
     @Override
     public boolean deleteKeyboard(int id) throws IOException {
+        CompletableFuture<Void> commit;
         synchronized (keyboardMap) {
             if (keyboardMap.containsKey(id)) {
-                keyboardMap.remove(id);
-                return save();
+                removeKeyboard(id);
+                InventoryChange change = InventoryChange.delete(++version, id);
+                unpublish(id);
+                commit = persist(change);
             } else {
                 return false;
             }
         }
+        PersistenceWriter.await(commit);
+        return true;
     }
 
     /**
@@ -255,4 +818,315 @@ public class InventoryFileDAO implements InventoryDAO {
         return keyboardArray;
     }
 
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * The name and price criteria are turned into bitsets of keyboard ids from
+     * their indexes and ANDed with the facet bitsets, so no keyboard outside
+     * the result is looked at
+     */
+    @Override
+    public KeyboardQueryResult queryKeyboards(KeyboardQuery query) throws IOException {
+        synchronized (keyboardMap) {
+            BitSet base = facetIndex.all();
+            if (query.getName() != null) {
+                BitSet named = new BitSet();
+                for (int id : nameIndex.search(query.getName(), query.isIgnoreCase())) {
+                    if (id >= 0) {
+                        named.set(id);
+                    }
+                }
+                base.and(named);
+            }
+            if (query.getMinPrice() != null || query.getMaxPrice() != null) {
+                int from = query.getMinPrice() == null ? Integer.MIN_VALUE : query.getMinPrice();
+                int to = query.getMaxPrice() == null ? Integer.MAX_VALUE : query.getMaxPrice();
+                BitSet priced = new BitSet();
+                if (from <= to) {
+                    for (Map<Integer, Keyboard> samePrice : priceIndex.subMap(from, true, to, true).values()) {
+                        for (int id : samePrice.keySet()) {
+                            if (id >= 0) {
+                                priced.set(id);
+                            }
+                        }
+                    }
+                }
+                base.and(priced);
+            }
+            BitSet sized = facetIndex.withSizes(query.getSizes());
+            BitSet colored = facetIndex.withSwitchColors(query.getSwitchColors());
+
+            // Each facet is counted with every filter applied except its own
+            BitSet forSizeCounts = (BitSet) base.clone();
+            if (colored != null) {
+                forSizeCounts.and(colored);
+            }
+            BitSet forColorCounts = (BitSet) base.clone();
+            if (sized != null) {
+                forColorCounts.and(sized);
+            }
+            BitSet matches = forSizeCounts;
+            if (sized != null) {
+                matches = (BitSet) forSizeCounts.clone();
+                matches.and(sized);
+            }
+
+            Keyboard[] keyboardArray = new Keyboard[matches.cardinality()];
+            int i = 0;
+            for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+                keyboardArray[i++] = keyboardMap.get(id);
+            }
+            return new KeyboardQueryResult(keyboardArray, facetIndex.countSizes(forSizeCounts),
+                    facetIndex.countSwitchColors(forColorCounts));
+        }
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Walks the sort index from the cursor and stops once the page is full,
+     * so only the keyboards on the page and the non-matching ones passed over
+     * on the way are looked at. Sorted by price, the walk starts at the
+     * query's price bound and ends past the other one.
+     */
+    @Override
+    public KeyboardPage getKeyboardPage(KeyboardQuery query, KeyboardSort sort, boolean descending, String cursor,
+            int limit) throws IOException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be at least 1");
+        }
+        KeyboardCursor after = cursor == null ? null : KeyboardCursor.decode(cursor, sort, descending);
+        synchronized (keyboardMap) {
+            switch (sort) {
+                case PRICE:
+                    return page(priceOrder, query, sort, descending, after, limit);
+                case NAME:
+                    return page(nameOrder, query, sort, descending, after, limit);
+                case QUANTITY:
+                    return page(quantityOrder, query, sort, descending, after, limit);
+                default:
+                    return page(idOrder, query, sort, descending, after, limit);
+            }
+        }
+    }
+
+    /**
+     * Collects one page of matching {@linkplain Keyboard keyboards} from a
+     * sort index. The caller must hold the map lock.
+     * 
+     * @param <K>        the type of the sort key
+     * @param order      the index of the requested sort
+     * @param query      the criteria to match
+     * @param sort       the requested sort
+     * @param descending true for largest sort key first
+     * @param after      the position to start after, null for the first page
+     * @param limit      the most keyboards to return
+     * @return the page and the cursor of the next one
+     */
+    @SuppressWarnings("unchecked")
+    private <K extends Comparable<? super K>> KeyboardPage page(SortedKeyIndex<K> order, KeyboardQuery query,
+            KeyboardSort sort, boolean descending, KeyboardCursor after, int limit) {
+        Integer startPrice = descending ? query.getMaxPrice() : query.getMinPrice();
+        Integer endPrice = descending ? query.getMinPrice() : query.getMaxPrice();
+        Iterator<SortedKeyIndex.Position<K>> positions;
+        if (after != null) {
+            positions = order.after(new SortedKeyIndex.Position<>((K) after.getKey(), after.getId()), descending);
+        } else if (sort == KeyboardSort.PRICE && startPrice != null) {
+            positions = order.from((K) startPrice, descending);
+        } else {
+            positions = order.after(null, descending);
+        }
+        Set<Integer> named = null;
+        if (query.getName() != null) {
+            named = new HashSet<>(nameIndex.search(query.getName(), query.isIgnoreCase()));
+        }
+
+        List<Keyboard> found = new ArrayList<>(Math.min(limit, keyboardMap.size()));
+        SortedKeyIndex.Position<K> last = null;
+        while (found.size() < limit && positions.hasNext()) {
+            SortedKeyIndex.Position<K> position = positions.next();
+            if (sort == KeyboardSort.PRICE && endPrice != null) {
+                int price = (Integer) position.getKey();
+                if (descending ? price < endPrice : price > endPrice) {
+                    break;
+                }
+            }
+            Keyboard keyboard = keyboardMap.get(position.getId());
+            if ((named == null || named.contains(position.getId())) && query.matchesPrice(keyboard)
+                    && query.matchesSize(keyboard) && query.matchesSwitchColor(keyboard)) {
+                found.add(keyboard);
+                last = position;
+            }
+        }
+        String nextCursor = null;
+        if (found.size() == limit) {
+            nextCursor = new KeyboardCursor(sort, descending, last.getKey(), last.getId()).encode();
+        }
+        return new KeyboardPage(found.toArray(new Keyboard[0]), nextCursor);
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * The units are taken with a compare-and-set on the keyboard's stock
+     * counter, without the map lock, so two reservations can never both see
+     * the last unit. The lock is only taken afterwards to record the new
+     * quantity.
+     */
+    @Override
+    public boolean reserveStock(int id, int quantity) throws IOException {
+        return reserveStock(Collections.singletonMap(id, quantity));
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Adds to the keyboard's stock counter without the map lock, like
+     * {@link #reserveStock(int, int)}
+     */
+    @Override
+    public boolean releaseStock(int id, int quantity) throws IOException {
+        return releaseStock(Collections.singletonMap(id, quantity));
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Each keyboard's units are taken with a compare-and-set as in
+     * {@link #reserveStock(int, int)}, in id order. If one is short, the
+     * units already taken are added back before returning. The new
+     * quantities are then recorded under one lock with one write.
+     */
+    @Override
+    public boolean reserveStock(Map<Integer, Integer> quantities) throws IOException {
+        checkQuantities(quantities);
+        Map<Integer, AtomicInteger> counters = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(quantities).entrySet()) {
+            AtomicInteger units = stock.get(entry.getKey());
+            if (units == null || !take(units, entry.getValue())) {
+                for (Map.Entry<Integer, AtomicInteger> taken : counters.entrySet()) {
+                    taken.getValue().addAndGet(quantities.get(taken.getKey()));
+                }
+                // Another caller may have recorded a quantity with these units taken
+                recordStock(counters, null);
+                return false;
+            }
+            counters.put(entry.getKey(), units);
+        }
+        return recordStock(counters, quantities);
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Adds to each keyboard's stock counter without the map lock, then
+     * records the new quantities under one lock with one write
+     */
+    @Override
+    public boolean releaseStock(Map<Integer, Integer> quantities) throws IOException {
+        checkQuantities(quantities);
+        Map<Integer, AtomicInteger> counters = new TreeMap<>();
+        boolean found = true;
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            AtomicInteger units = stock.get(entry.getKey());
+            if (units == null) {
+                found = false;
+            } else {
+                units.addAndGet(entry.getValue());
+                counters.put(entry.getKey(), units);
+            }
+        }
+        return recordStock(counters, null) && found;
+    }
+
+    /**
+     * Checks that every quantity of a stock change is at least 1
+     * 
+     * @param quantities The units to change, by keyboard id
+     * 
+     * @throws IllegalArgumentException if any quantity is below 1
+     */
+    private static void checkQuantities(Map<Integer, Integer> quantities) {
+        for (int quantity : quantities.values()) {
+            if (quantity < 1) {
+                throw new IllegalArgumentException("Quantity must be at least 1");
+            }
+        }
+    }
+
+    /**
+     * Takes units from a stock counter unless fewer are left
+     * 
+     * @param units    The counter
+     * @param quantity The number of units to take
+     * 
+     * @return true if the units were taken
+     */
+    private static boolean take(AtomicInteger units, int quantity) {
+        int current;
+        do {
+            current = units.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!units.compareAndSet(current, current - quantity));
+        return true;
+    }
+
+    /**
+     * Copies stock counters into their keyboards and persists the ones that
+     * changed, after units were taken or returned
+     * <br>
+     * Each counter is read under the lock, so one call records every change
+     * made to it so far. Callers that find their change already recorded
+     * skip the write, which lets a burst of reservations of one keyboard
+     * share a few saves instead of making one each.
+     * 
+     * @param counters The counters that were changed, by keyboard id
+     * @param taken    The units taken from the counters, added back if any of
+     *                 the keyboards was deleted meanwhile, or null to leave
+     *                 the counters as they are
+     * 
+     * @return false if a keyboard was deleted while its counter was changed
+     * 
+     * @throws IOException when file cannot be accessed or written to
+     */
+    private boolean recordStock(Map<Integer, AtomicInteger> counters, Map<Integer, Integer> taken)
+            throws IOException {
+        CompletableFuture<Void> commit;
+        boolean live = true;
+        synchronized (keyboardMap) {
+            for (Map.Entry<Integer, AtomicInteger> entry : counters.entrySet()) {
+                live &= stock.get(entry.getKey()) == entry.getValue();
+            }
+            if (!live && taken != null) {
+                for (Map.Entry<Integer, AtomicInteger> entry : counters.entrySet()) {
+                    entry.getValue().addAndGet(taken.get(entry.getKey()));
+                }
+            }
+            List<InventoryChange> changes = new ArrayList<>();
+            for (Map.Entry<Integer, AtomicInteger> entry : counters.entrySet()) {
+                Keyboard keyboard = keyboardMap.get(entry.getKey());
+                int quantity = entry.getValue().get();
+                if (stock.get(entry.getKey()) == entry.getValue() && keyboard.getQuantity() != quantity) {
+                    keyboard.setQuantity(quantity);
+                    quantityOrder.put(entry.getKey(), quantity);
+                    changes.add(InventoryChange.upsert(++version, keyboard));
+                    publish(keyboard);
+                }
+            }
+            if (!changes.isEmpty()) {
+                commit = persist(changes);
+            } else if (writer != null) {
+                // Saved by an earlier caller while it held the lock, or still
+                // waiting in the background writer's window
+                commit = writer.markDirty();
+            } else {
+                commit = CompletableFuture.completedFuture(null);
+            }
+        }
+        PersistenceWriter.await(commit);
+        return live;
+    }
+
 }
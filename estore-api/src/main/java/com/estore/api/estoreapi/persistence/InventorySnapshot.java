@@ -0,0 +1,236 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import com.estore.api.estoreapi.model.Keyboard;
+
+/**
+ * An immutable copy of the inventory at one version, for readers that must
+ * not wait on writers
+ * <br>
+ * Keyboards are held in id order in a plain array with a parallel array of
+ * ids, so a lookup is a binary search and a listing is one array copy. A
+ * change produces a new snapshot sharing no mutable state with the old one:
+ * the arrays are copied with one element inserted, replaced or dropped, which
+ * is a single block copy rather than a rebuild. The keyboards are copies
+ * too, so changing a keyboard object handed out elsewhere cannot reach into
+ * a published snapshot.
+ * <br>
+ * Name searches go through a {@link KeyboardNameIndex} built on the first
+ * search and only read after that. A change that keeps every name, such as
+ * a stock or price change, hands the same index on to the new snapshot, so
+ * only creates, renames and deletes cost a rebuild.
+ *
+ * @author Team 2
+ */
+public final class InventorySnapshot implements Iterable<Keyboard> {
+    static final InventorySnapshot EMPTY = new InventorySnapshot(new int[0], new Keyboard[0], 0, new Names());
+
+    /**
+     * The name index of snapshots holding the same names, built when first
+     * searched
+     */
+    private static final class Names {
+        private volatile KeyboardNameIndex index;
+
+        /**
+         * Returns the index, building it from the given keyboards the first
+         * time
+         *
+         * @param keyboards the keyboards of any snapshot sharing this index
+         * @return the index, never changed once returned
+         */
+        private KeyboardNameIndex get(Keyboard[] keyboards) {
+            KeyboardNameIndex built = index;
+            if (built == null) {
+                synchronized (this) {
+                    built = index;
+                    if (built == null) {
+                        built = new KeyboardNameIndex();
+                        for (Keyboard keyboard : keyboards) {
+                            built.put(keyboard.getKeyboardId(), keyboard.getKeyboardName());
+                        }
+                        index = built;
+                    }
+                }
+            }
+            return built;
+        }
+    }
+
+    private final int[] ids;
+    private final Keyboard[] keyboards;
+    private final long version;
+    private final Names names;
+
+    /**
+     * Creates a snapshot from arrays that nothing else refers to
+     *
+     * @param ids       the keyboard ids, ascending
+     * @param keyboards the keyboard with each id
+     * @param version   the inventory version the snapshot shows
+     * @param names     the name index, shared only with snapshots holding the
+     *                  same names
+     */
+    private InventorySnapshot(int[] ids, Keyboard[] keyboards, long version, Names names) {
+        this.ids = ids;
+        this.keyboards = keyboards;
+        this.version = version;
+        this.names = names;
+    }
+
+    /**
+     * Creates a snapshot of a set of keyboards
+     *
+     * @param source  the keyboards, in any order
+     * @param version the inventory version they make up
+     * @return the snapshot
+     */
+    public static InventorySnapshot of(Collection<Keyboard> source, long version) {
+        Keyboard[] keyboards = new Keyboard[source.size()];
+        int i = 0;
+        for (Keyboard keyboard : source) {
+            keyboards[i++] = copy(keyboard);
+        }
+        Arrays.sort(keyboards, (a, b) -> Integer.compare(a.getKeyboardId(), b.getKeyboardId()));
+        int[] ids = new int[keyboards.length];
+        for (i = 0; i < ids.length; ++i) {
+            ids[i] = keyboards[i].getKeyboardId();
+        }
+        return new InventorySnapshot(ids, keyboards, version, new Names());
+    }
+
+    /**
+     * Returns a snapshot with a keyboard added or replaced
+     *
+     * @param keyboard the keyboard to store
+     * @param version  the inventory version after the change
+     * @return the new snapshot
+     */
+    public InventorySnapshot with(Keyboard keyboard, long version) {
+        int index = Arrays.binarySearch(ids, keyboard.getKeyboardId());
+        if (index >= 0) {
+            Keyboard[] newKeyboards = keyboards.clone();
+            newKeyboards[index] = copy(keyboard);
+            boolean renamed = !Objects.equals(keyboards[index].getKeyboardName(), keyboard.getKeyboardName());
+            return new InventorySnapshot(ids, newKeyboards, version, renamed ? new Names() : names);
+        }
+        int at = -index - 1;
+        int[] newIds = new int[ids.length + 1];
+        Keyboard[] newKeyboards = new Keyboard[keyboards.length + 1];
+        System.arraycopy(ids, 0, newIds, 0, at);
+        System.arraycopy(keyboards, 0, newKeyboards, 0, at);
+        newIds[at] = keyboard.getKeyboardId();
+        newKeyboards[at] = copy(keyboard);
+        System.arraycopy(ids, at, newIds, at + 1, ids.length - at);
+        System.arraycopy(keyboards, at, newKeyboards, at + 1, keyboards.length - at);
+        return new InventorySnapshot(newIds, newKeyboards, version, new Names());
+    }
+
+    /**
+     * Returns a snapshot with a keyboard removed
+     *
+     * @param id      the id of the keyboard to remove
+     * @param version the inventory version after the change
+     * @return the new snapshot, with only the version changed if the id was
+     *         not in this one
+     */
+    public InventorySnapshot without(int id, long version) {
+        int at = Arrays.binarySearch(ids, id);
+        if (at < 0) {
+            return new InventorySnapshot(ids, keyboards, version, names);
+        }
+        int[] newIds = new int[ids.length - 1];
+        Keyboard[] newKeyboards = new Keyboard[keyboards.length - 1];
+        System.arraycopy(ids, 0, newIds, 0, at);
+        System.arraycopy(keyboards, 0, newKeyboards, 0, at);
+        System.arraycopy(ids, at + 1, newIds, at, newIds.length - at);
+        System.arraycopy(keyboards, at + 1, newKeyboards, at, newKeyboards.length - at);
+        return new InventorySnapshot(newIds, newKeyboards, version, new Names());
+    }
+
+    /**
+     * Looks a keyboard up by id
+     *
+     * @param id the keyboard id
+     * @return a copy of the keyboard the caller may change, or null
+     */
+    public Keyboard get(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index < 0 ? null : copy(keyboards[index]);
+    }
+
+    /**
+     * Returns every keyboard in id order
+     * <br>
+     * The keyboards themselves belong to the snapshot and must not be changed
+     *
+     * @return a new array of the keyboards
+     */
+    public Keyboard[] keyboards() {
+        return keyboards.clone();
+    }
+
+    /**
+     * Goes through every keyboard in id order without copying the array
+     * <br>
+     * The keyboards themselves belong to the snapshot and must not be changed
+     *
+     * @return an iterator that does not support removal
+     */
+    @Override
+    public Iterator<Keyboard> iterator() {
+        return Arrays.asList(keyboards).iterator();
+    }
+
+    /**
+     * Finds the keyboards whose name contains the given text, through the
+     * trigram index
+     * <br>
+     * The keyboards themselves belong to the snapshot and must not be changed
+     *
+     * @param text       the text to look for
+     * @param ignoreCase true to match regardless of case
+     * @return the matching keyboards in id order
+     */
+    public Keyboard[] find(String text, boolean ignoreCase) {
+        List<Integer> found = names.get(keyboards).search(text, ignoreCase);
+        Keyboard[] keyboardArray = new Keyboard[found.size()];
+        for (int i = 0; i < keyboardArray.length; ++i) {
+            keyboardArray[i] = keyboards[Arrays.binarySearch(ids, found.get(i))];
+        }
+        return keyboardArray;
+    }
+
+    /**
+     * Returns the inventory version the snapshot shows
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of keyboards in the snapshot
+     *
+     * @return the number of keyboards
+     */
+    public int size() {
+        return keyboards.length;
+    }
+
+    /**
+     * Copies a keyboard so the snapshot does not share it
+     *
+     * @param keyboard the keyboard to copy
+     * @return the copy
+     */
+    private static Keyboard copy(Keyboard keyboard) {
+        return new Keyboard(keyboard, keyboard.getQuantity());
+    }
+}
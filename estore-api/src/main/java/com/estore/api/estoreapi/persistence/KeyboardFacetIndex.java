@@ -0,0 +1,177 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.Keyboard.Size;
+import com.estore.api.estoreapi.model.Keyboard.SwitchColor;
+
+/**
+ * Bitset posting lists of keyboard ids for each {@link Size} and
+ * {@link SwitchColor}
+ * <br>
+ * Bit n of a set is on when the keyboard with id n has that value, so
+ * combining facets is a handful of word-wise ANDs and ORs and a facet count is
+ * a population count. Keyboards with a negative id cannot be represented and
+ * are left out.
+ * <br>
+ * Not thread-safe; the owning DAO updates and queries it under its own lock.
+ *
+ * @author Team 2
+ */
+public class KeyboardFacetIndex {
+    private final BitSet all = new BitSet(); // Every indexed keyboard
+    private final EnumMap<Size, BitSet> sizes = new EnumMap<>(Size.class);
+    private final EnumMap<SwitchColor, BitSet> switchColors = new EnumMap<>(SwitchColor.class);
+
+    /**
+     * Creates an empty index
+     */
+    public KeyboardFacetIndex() {
+        for (Size size : Size.values()) {
+            sizes.put(size, new BitSet());
+        }
+        for (SwitchColor switchColor : SwitchColor.values()) {
+            switchColors.put(switchColor, new BitSet());
+        }
+    }
+
+    /**
+     * Adds a keyboard to the index. A keyboard already in the index must be
+     * removed first.
+     *
+     * @param keyboard the keyboard to add
+     */
+    public void add(Keyboard keyboard) {
+        int id = keyboard.getKeyboardId();
+        if (id < 0) {
+            return;
+        }
+        all.set(id);
+        if (keyboard.getSize() != null) {
+            sizes.get(keyboard.getSize()).set(id);
+        }
+        if (keyboard.getSwitchColor() != null) {
+            switchColors.get(keyboard.getSwitchColor()).set(id);
+        }
+    }
+
+    /**
+     * Removes a keyboard from the index
+     *
+     * @param keyboard the keyboard as it was added
+     */
+    public void remove(Keyboard keyboard) {
+        int id = keyboard.getKeyboardId();
+        if (id < 0) {
+            return;
+        }
+        all.clear(id);
+        if (keyboard.getSize() != null) {
+            sizes.get(keyboard.getSize()).clear(id);
+        }
+        if (keyboard.getSwitchColor() != null) {
+            switchColors.get(keyboard.getSwitchColor()).clear(id);
+        }
+    }
+
+    /**
+     * Removes every keyboard from the index
+     */
+    public void clear() {
+        all.clear();
+        sizes.values().forEach(BitSet::clear);
+        switchColors.values().forEach(BitSet::clear);
+    }
+
+    /**
+     * Returns a copy of the set of every indexed keyboard
+     *
+     * @return the ids of every keyboard
+     */
+    public BitSet all() {
+        return (BitSet) all.clone();
+    }
+
+    /**
+     * Returns the keyboards having any of the given sizes
+     *
+     * @param wanted the sizes to include, empty for any
+     * @return a new set of ids, or null when no sizes were given
+     */
+    public BitSet withSizes(Set<Size> wanted) {
+        return union(sizes, wanted);
+    }
+
+    /**
+     * Returns the keyboards having any of the given switch colors
+     *
+     * @param wanted the switch colors to include, empty for any
+     * @return a new set of ids, or null when no switch colors were given
+     */
+    public BitSet withSwitchColors(Set<SwitchColor> wanted) {
+        return union(switchColors, wanted);
+    }
+
+    /**
+     * Counts, for every size, the keyboards of that size within a set
+     *
+     * @param within the ids to count in
+     * @return the count for each size
+     */
+    public Map<Size, Integer> countSizes(BitSet within) {
+        return count(sizes, within, Size.class);
+    }
+
+    /**
+     * Counts, for every switch color, the keyboards of that color within a set
+     *
+     * @param within the ids to count in
+     * @return the count for each switch color
+     */
+    public Map<SwitchColor, Integer> countSwitchColors(BitSet within) {
+        return count(switchColors, within, SwitchColor.class);
+    }
+
+    /**
+     * ORs together the posting lists of the wanted values
+     *
+     * @param <E>      the facet's enum type
+     * @param postings the posting list of each value
+     * @param wanted   the values to include
+     * @return a new set of ids, or null when no values were given
+     */
+    private static <E extends Enum<E>> BitSet union(EnumMap<E, BitSet> postings, Set<E> wanted) {
+        if (wanted.isEmpty()) {
+            return null;
+        }
+        BitSet result = new BitSet();
+        for (E value : wanted) {
+            result.or(postings.get(value));
+        }
+        return result;
+    }
+
+    /**
+     * Counts the ids of each value's posting list that are also in a set
+     *
+     * @param <E>      the facet's enum type
+     * @param postings the posting list of each value
+     * @param within   the ids to count in
+     * @param type     the facet's enum class
+     * @return the count for each value
+     */
+    private static <E extends Enum<E>> Map<E, Integer> count(EnumMap<E, BitSet> postings, BitSet within,
+            Class<E> type) {
+        EnumMap<E, Integer> counts = new EnumMap<>(type);
+        for (Map.Entry<E, BitSet> entry : postings.entrySet()) {
+            BitSet matching = (BitSet) entry.getValue().clone();
+            matching.and(within);
+            counts.put(entry.getKey(), matching.cardinality());
+        }
+        return counts;
+    }
+}
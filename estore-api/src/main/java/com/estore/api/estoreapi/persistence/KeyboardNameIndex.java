@@ -0,0 +1,148 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over keyboard names for substring search
+ * <br>
+ * Every three-character window of a lower-cased name is a key mapped to the
+ * ids of the keyboards whose names contain it. A name containing the query
+ * must contain every trigram of the query, so a search intersects those
+ * posting lists, starting with the shortest, and then checks the few
+ * candidates left with {@link String#contains}. Queries shorter than a
+ * trigram have nothing to look up and fall back to checking every name.
+ * <br>
+ * Not thread-safe; the owning DAO updates and queries it under its own lock,
+ * or an {@link InventorySnapshot} builds it once and only searches it after.
+ *
+ * @author Team 2
+ */
+public class KeyboardNameIndex {
+    static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Set<Integer>> postings = new HashMap<>(); // Trigram to ids of matching names
+    private final Map<Integer, String> names = new HashMap<>(); // Id to name as indexed
+    private final Map<Integer, String> lowerNames = new HashMap<>(); // Id to lower-cased name
+
+    /**
+     * Adds a keyboard's name to the index, replacing its previous name
+     *
+     * @param id   the id of the keyboard
+     * @param name the name of the keyboard, may be null
+     */
+    public void put(int id, String name) {
+        remove(id);
+        if (name == null) {
+            return;
+        }
+        String lower = name.toLowerCase(Locale.ROOT);
+        names.put(id, name);
+        lowerNames.put(id, lower);
+        for (String gram : grams(lower)) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    /**
+     * Removes a keyboard from the index
+     *
+     * @param id the id of the keyboard
+     */
+    public void remove(int id) {
+        names.remove(id);
+        String lower = lowerNames.remove(id);
+        if (lower == null) {
+            return;
+        }
+        for (String gram : grams(lower)) {
+            Set<Integer> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every keyboard from the index
+     */
+    public void clear() {
+        postings.clear();
+        names.clear();
+        lowerNames.clear();
+    }
+
+    /**
+     * Finds the keyboards whose names contain the given text
+     *
+     * @param text       the text to look for
+     * @param ignoreCase true to match regardless of case
+     * @return the ids of the matching keyboards in ascending order
+     */
+    public List<Integer> search(String text, boolean ignoreCase) {
+        String lowerText = text.toLowerCase(Locale.ROOT);
+        Map<Integer, String> checked = ignoreCase ? lowerNames : names;
+        String wanted = ignoreCase ? lowerText : text;
+
+        Iterable<Integer> candidates;
+        if (lowerText.length() < GRAM_LENGTH) {
+            candidates = names.keySet();
+        } else {
+            candidates = intersect(grams(lowerText));
+        }
+        List<Integer> found = new ArrayList<>();
+        for (Integer id : candidates) {
+            if (checked.get(id).contains(wanted)) {
+                found.add(id);
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    /**
+     * Intersects the posting lists of a set of trigrams, smallest first
+     *
+     * @param grams the trigrams of the query
+     * @return the ids found in every posting list
+     */
+    private Set<Integer> intersect(Set<String> grams) {
+        List<Set<Integer>> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            Set<Integer> ids = postings.get(gram);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            lists.add(ids);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        Set<Integer> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); ++i) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Splits a lower-cased string into its distinct trigrams
+     *
+     * @param lower the string to split
+     * @return its trigrams, empty if it is shorter than a trigram
+     */
+    private static Set<String> grams(String lower) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= lower.length(); ++i) {
+            grams.add(lower.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
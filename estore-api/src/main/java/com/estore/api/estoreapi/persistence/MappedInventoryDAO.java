@@ -0,0 +1,926 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.KeyboardCursor;
+import com.estore.api.estoreapi.model.KeyboardPage;
+import com.estore.api.estoreapi.model.KeyboardQuery;
+import com.estore.api.estoreapi.model.KeyboardQueryResult;
+import com.estore.api.estoreapi.model.KeyboardSort;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Implements the functionality for a memory-mapped inventory store
+ * <br>
+ * Keyboards live in a file of fixed-width records, one slot per keyboard id,
+ * so {@link #getKeyboard(int)} reads a single record at a known offset and
+ * {@link #getKeyboards()} is a sequential scan of the mapped region. Names are
+ * kept in a second, append-only file and the record holds their offset. No
+ * map of keyboards is kept on the heap, so the catalog can outgrow it, and a
+ * restart only maps the files again instead of parsing them.
+ * <br>
+ * The first start imports the inventory JSON file (or its binary snapshot)
+ * into {@code <inventory>.records} and {@code <inventory>.names}. From then on
+ * those two files are the store and the JSON file is no longer written.
+ * <br>
+ * Selected with {@code inventory.dao=mapped}.
+ *
+ * @author Team 2
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.dao", havingValue = "mapped")
+public class MappedInventoryDAO implements InventoryDAO {
+    private static final Logger LOG = Logger.getLogger(MappedInventoryDAO.class.getName());
+
+    private static final int MAGIC = 0x4B42524D; // "KBRM"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_NAMES_SIZE = 64 * 1024;
+
+    // Header layout
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_NEXT_ID = 8;
+    private static final int HEADER_COUNT = 12;
+    private static final int HEADER_NAMES_END = 16;
+
+    // Record layout, relative to the start of the slot
+    private static final int RECORD_LIVE = 0; // 1 if the slot holds a keyboard
+    private static final int RECORD_SIZE_ORDINAL = 1; // -1 for null
+    private static final int RECORD_SWITCH_ORDINAL = 2; // -1 for null
+    private static final int RECORD_ID = 4;
+    private static final int RECORD_PRICE = 8;
+    private static final int RECORD_QUANTITY = 12;
+    private static final int RECORD_NAME_OFFSET = 16; // -1 for a null name
+    private static final int RECORD_NAME_LENGTH = 24;
+
+    // Atomic access to an int field of a record, for taking stock without the write lock
+    private static final VarHandle RECORD_INT = MethodHandles.byteBufferViewVarHandle(int[].class,
+            ByteOrder.BIG_ENDIAN);
+
+    private static final int EXPORT_CHUNK = 256; // Keyboards read per hold of the read lock while exporting
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ObjectMapper objectMapper;
+    private final AtomicLong version = new AtomicLong(); // Incremented after every change, not saved
+    private final List<Consumer<InventoryChange>> changeListeners = new CopyOnWriteArrayList<>();
+    private final RecentChanges recentChanges; // Starts empty each time the inventory is opened
+    private final FileChannel recordChannel;
+    private final FileChannel nameChannel;
+    private MappedByteBuffer records; // Header followed by one slot per keyboard id
+    private MappedByteBuffer names; // UTF-8 names referenced by the records
+
+    /**
+     * Opens the mapped inventory next to the inventory JSON file, importing
+     * the JSON file the first time
+     *
+     * @param filename     the inventory JSON file
+     * @param objectMapper reads the JSON file on the first start
+     * @param settings     options controlling how the JSON file is read
+     *
+     * @throws IOException when the files cannot be opened or imported
+     */
+    @Autowired
+    public MappedInventoryDAO(@Value("${inventory.file}") String filename, ObjectMapper objectMapper,
+            PersistenceSettings settings) throws IOException {
+        this.objectMapper = objectMapper;
+        recentChanges = new RecentChanges(settings.getInventoryChangesCapacity(), 0);
+        String base = filename.endsWith(".json") ? filename.substring(0, filename.length() - 5) : filename;
+        Path recordPath = Paths.get(base + ".records");
+        Path namePath = Paths.get(base + ".names");
+        if (!Files.exists(recordPath)) {
+            importInventory(filename, objectMapper, settings, recordPath, namePath);
+        }
+        recordChannel = FileChannel.open(recordPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        nameChannel = FileChannel.open(namePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        records = recordChannel.map(FileChannel.MapMode.READ_WRITE, 0, recordChannel.size());
+        names = nameChannel.map(FileChannel.MapMode.READ_WRITE, 0, nameChannel.size());
+        if (records.getInt(HEADER_MAGIC) != MAGIC || records.getInt(HEADER_VERSION) != FORMAT_VERSION) {
+            close();
+            throw new IOException(recordPath + " is not a mapped inventory file");
+        }
+        LOG.info("Mapped " + records.getInt(HEADER_COUNT) + " keyboards from " + recordPath);
+    }
+
+    /**
+     * Builds the record and name files from the inventory JSON file, or from
+     * its binary snapshot when that format is selected and the file exists.
+     * The files are built under temporary names and renamed once complete.
+     *
+     * @param filename     the inventory JSON file
+     * @param objectMapper reads the JSON file
+     * @param settings     options controlling how the JSON file is read
+     * @param recordPath   the record file to create
+     * @param namePath     the name file to create
+     *
+     * @throws IOException when the inventory cannot be read or the files written
+     */
+    private void importInventory(String filename, ObjectMapper objectMapper, PersistenceSettings settings,
+            Path recordPath, Path namePath) throws IOException {
+        Path recordTemp = Paths.get(recordPath + ".tmp");
+        Path nameTemp = Paths.get(namePath + ".tmp");
+        try (FileChannel recordOut = FileChannel.open(recordTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileChannel nameOut = FileChannel.open(nameTemp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            records = recordOut.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) INITIAL_SLOTS * RECORD_SIZE);
+            names = nameOut.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_NAMES_SIZE);
+            records.putInt(HEADER_MAGIC, MAGIC);
+            records.putInt(HEADER_VERSION, FORMAT_VERSION);
+            records.putInt(HEADER_NEXT_ID, 0);
+            records.putInt(HEADER_COUNT, 0);
+            records.putLong(HEADER_NAMES_END, 0);
+
+            String binaryFilename = BinarySnapshot.filenameFor(filename);
+            if (settings.getSnapshotFormat() == PersistenceSettings.SnapshotFormat.BINARY
+                    && new File(binaryFilename).exists()) {
+                try (InputStream input = new FileInputStream(binaryFilename)) {
+                    BinarySnapshot.readKeyboards(input, keyboard -> importKeyboard(recordOut, nameOut, keyboard));
+                }
+            } else {
+                File file = new File(filename);
+                try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+                    new StreamingJsonLoader<>(objectMapper, Keyboard.class, "keyboards").load(input, file.length(),
+                            keyboard -> importKeyboard(recordOut, nameOut, keyboard));
+                }
+            }
+            records.force();
+            names.force();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(nameTemp, namePath, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(recordTemp, recordPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes one imported {@linkplain Keyboard keyboard} into its slot
+     *
+     * @param recordOut the record file being built
+     * @param nameOut   the name file being built
+     * @param keyboard  the keyboard to import
+     */
+    private void importKeyboard(FileChannel recordOut, FileChannel nameOut, Keyboard keyboard) {
+        try {
+            writeKeyboard(recordOut, nameOut, keyboard);
+            if (keyboard.getKeyboardId() >= records.getInt(HEADER_NEXT_ID)) {
+                records.putInt(HEADER_NEXT_ID, keyboard.getKeyboardId() + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the offset of the slot for a keyboard id
+     *
+     * @param id the keyboard id
+     * @return the offset of its record
+     */
+    private static long slotOffset(int id) {
+        return HEADER_SIZE + (long) id * RECORD_SIZE;
+    }
+
+    /**
+     * Returns whether the slot for an id holds a keyboard. The caller must
+     * hold the lock.
+     *
+     * @param id the keyboard id
+     * @return true if a keyboard with the id exists
+     */
+    private boolean isLive(int id) {
+        long offset = slotOffset(id);
+        return id >= 0 && offset + RECORD_SIZE <= records.capacity() && records.get((int) offset + RECORD_LIVE) == 1;
+    }
+
+    /**
+     * Reads the {@linkplain Keyboard keyboard} in a live slot. The caller must
+     * hold the lock.
+     *
+     * @param id the keyboard id
+     * @return the keyboard
+     */
+    private Keyboard readKeyboard(int id) {
+        int offset = (int) slotOffset(id);
+        byte sizeOrdinal = records.get(offset + RECORD_SIZE_ORDINAL);
+        byte switchOrdinal = records.get(offset + RECORD_SWITCH_ORDINAL);
+        return new Keyboard(records.getInt(offset + RECORD_ID), readName(offset),
+                sizeOrdinal < 0 ? null : Keyboard.Size.values()[sizeOrdinal],
+                switchOrdinal < 0 ? null : Keyboard.SwitchColor.values()[switchOrdinal],
+                records.getInt(offset + RECORD_PRICE), records.getInt(offset + RECORD_QUANTITY));
+    }
+
+    /**
+     * Reads the name referenced by a record. The caller must hold the lock.
+     *
+     * @param offset the offset of the record
+     * @return the name, or null
+     */
+    private String readName(int offset) {
+        long nameOffset = records.getLong(offset + RECORD_NAME_OFFSET);
+        if (nameOffset < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[records.getInt(offset + RECORD_NAME_LENGTH)];
+        ByteBuffer view = names.duplicate();
+        view.position((int) nameOffset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a {@linkplain Keyboard keyboard} into the slot for its id,
+     * growing the files as needed. The caller must hold the write lock.
+     *
+     * @param recordFile the record file
+     * @param nameFile   the name file
+     * @param keyboard   the keyboard to write
+     *
+     * @throws IOException when the files cannot be grown
+     */
+    private void writeKeyboard(FileChannel recordFile, FileChannel nameFile, Keyboard keyboard)
+            throws IOException {
+        int id = keyboard.getKeyboardId();
+        if (id < 0) {
+            throw new IOException("Keyboard ids must not be negative: " + id);
+        }
+        long end = slotOffset(id) + RECORD_SIZE;
+        if (end > records.capacity()) {
+            long capacity = records.capacity();
+            while (capacity < end) {
+                capacity = Math.min(capacity * 2, Integer.MAX_VALUE);
+                if (capacity == Integer.MAX_VALUE && capacity < end) {
+                    throw new IOException("Keyboard id " + id + " does not fit in the mapped inventory");
+                }
+            }
+            records.force();
+            records = recordFile.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        int offset = (int) slotOffset(id);
+        boolean wasLive = records.get(offset + RECORD_LIVE) == 1;
+        String name = keyboard.getKeyboardName();
+        if (name == null) {
+            records.putLong(offset + RECORD_NAME_OFFSET, -1);
+            records.putInt(offset + RECORD_NAME_LENGTH, 0);
+        } else if (!wasLive || !name.equals(readName(offset))) {
+            // Names are append-only; a renamed keyboard leaves its old name behind
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            long namesEnd = records.getLong(HEADER_NAMES_END);
+            if (namesEnd + bytes.length > names.capacity()) {
+                long capacity = Math.max(names.capacity() * 2L, namesEnd + bytes.length);
+                if (capacity > Integer.MAX_VALUE) {
+                    throw new IOException("Keyboard names do not fit in the mapped inventory");
+                }
+                names.force();
+                names = nameFile.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+            ByteBuffer view = names.duplicate();
+            view.position((int) namesEnd);
+            view.put(bytes);
+            records.putLong(offset + RECORD_NAME_OFFSET, namesEnd);
+            records.putInt(offset + RECORD_NAME_LENGTH, bytes.length);
+            records.putLong(HEADER_NAMES_END, namesEnd + bytes.length);
+        }
+        records.put(offset + RECORD_SIZE_ORDINAL,
+                (byte) (keyboard.getSize() == null ? -1 : keyboard.getSize().ordinal()));
+        records.put(offset + RECORD_SWITCH_ORDINAL,
+                (byte) (keyboard.getSwitchColor() == null ? -1 : keyboard.getSwitchColor().ordinal()));
+        records.putInt(offset + RECORD_ID, id);
+        records.putInt(offset + RECORD_PRICE, keyboard.getPrice());
+        records.putInt(offset + RECORD_QUANTITY, keyboard.getQuantity());
+        if (!wasLive) {
+            records.put(offset + RECORD_LIVE, (byte) 1);
+            records.putInt(HEADER_COUNT, records.getInt(HEADER_COUNT) + 1);
+        }
+    }
+
+    /**
+     * Scans every slot below the next id and collects the live keyboards that
+     * match a test. The caller must hold the lock.
+     *
+     * @param matches tests the offset of each live record
+     * @return the matching keyboards in id order
+     */
+    private Keyboard[] scan(IntPredicate matches) {
+        ArrayList<Keyboard> found = new ArrayList<>();
+        int nextId = records.getInt(HEADER_NEXT_ID);
+        for (int id = 0; id < nextId; ++id) {
+            int offset = (int) slotOffset(id);
+            if (records.get(offset + RECORD_LIVE) == 1 && matches.test(offset)) {
+                found.add(readKeyboard(id));
+            }
+        }
+        return found.toArray(new Keyboard[0]);
+    }
+
+    /**
+     ** {@inheritDoc}
+     */
+    @Override
+    public Keyboard[] getKeyboards() throws IOException {
+        lock.readLock().lock();
+        try {
+            return scan(offset -> true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * The records are read {@value #EXPORT_CHUNK} at a time under the read
+     * lock and written after releasing it, so a slow client never holds up
+     * changes for long and only one chunk is on the heap. Each chunk is
+     * consistent on its own; a keyboard changed during the export may appear
+     * as it was before or after the change.
+     */
+    @Override
+    public int exportKeyboards(OutputStream out) throws IOException {
+        List<Keyboard> chunk = new ArrayList<>(EXPORT_CHUNK);
+        int count = 0;
+        int id = 0;
+        boolean done = false;
+        while (!done) {
+            chunk.clear();
+            lock.readLock().lock();
+            try {
+                int nextId = records.getInt(HEADER_NEXT_ID);
+                for (; id < nextId && chunk.size() < EXPORT_CHUNK; ++id) {
+                    if (isLive(id)) {
+                        chunk.add(readKeyboard(id));
+                    }
+                }
+                done = id >= nextId;
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (Keyboard keyboard : chunk) {
+                out.write(objectMapper.writeValueAsBytes(keyboard));
+                out.write('\n');
+            }
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Counted in memory from zero each time the inventory is opened, and
+     * moved only after a change is written to the mapped records.
+     */
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Changes are only kept in memory, so a client whose version is from
+     * before the inventory was last opened resyncs.
+     */
+    @Override
+    public InventoryChanges getChangesSince(long since, String epoch) {
+        return recentChanges.since(since, epoch);
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Called holding either the write lock or the recent changes' lock, so
+     * listeners see the changes in version order. A stock change of several
+     * keyboards gives all of them the same version.
+     */
+    @Override
+    public void addChangeListener(Consumer<InventoryChange> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     ** {@inheritDoc}
+     */
+    @Override
+    public Keyboard[] findKeyboard(String containsText) throws IOException {
+        return findKeyboard(containsText, false);
+    }
+
+    /**
+     ** {@inheritDoc}
+     */
+    @Override
+    public Keyboard[] findKeyboard(String containsText, boolean ignoreCase) throws IOException {
+        String wanted = ignoreCase ? containsText.toLowerCase(Locale.ROOT) : containsText;
+        lock.readLock().lock();
+        try {
+            return scan(offset -> {
+                String name = readName(offset);
+                if (name == null) {
+                    return false;
+                }
+                return (ignoreCase ? name.toLowerCase(Locale.ROOT) : name).contains(wanted);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     ** {@inheritDoc}
+     */
+    @Override
+    public Keyboard getKeyboard(int id) throws IOException {
+        lock.readLock().lock();
+        try {
+            return isLive(id) ? readKeyboard(id) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     ** {@inheritDoc}
+     */
+    @Override
+    public Keyboard createKeyboard(Keyboard keyboard) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int id = records.getInt(HEADER_NEXT_ID);
+            Keyboard newKeyboard = new Keyboard(id, keyboard.getKeyboardName(), keyboard.getSize(),
+                    keyboard.getSwitchColor(), keyboard.getPrice(), keyboard.getQuantity());
+            writeKeyboard(recordChannel, nameChannel, newKeyboard);
+            records.putInt(HEADER_NEXT_ID, id + 1);
+            force();
+            record(InventoryChange.upsert(version.incrementAndGet(), newKeyboard));
+            return newKeyboard;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     ** {@inheritDoc}
+     */
+    @Override
+    public Keyboard updateKeyboard(Keyboard keyboard) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!isLive(keyboard.getKeyboardId())) {
+                return null;
+            }
+            writeKeyboard(recordChannel, nameChannel, keyboard);
+            force();
+            record(InventoryChange.upsert(version.incrementAndGet(), keyboard));
+            return keyboard;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     ** {@inheritDoc}
+     */
+    @Override
+    public boolean deleteKeyboard(int id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!isLive(id)) {
+                return false;
+            }
+            records.put((int) slotOffset(id) + RECORD_LIVE, (byte) 0);
+            records.putInt(HEADER_COUNT, records.getInt(HEADER_COUNT) - 1);
+            force();
+            record(InventoryChange.delete(version.incrementAndGet(), id));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Keyboard[] getFilteredKeyboards(String fromPrice, String toPrice) throws IOException {
+        int from = Integer.valueOf(fromPrice);
+        int to = Integer.valueOf(toPrice);
+        lock.readLock().lock();
+        try {
+            return scan(offset -> {
+                int price = records.getInt(offset + RECORD_PRICE);
+                return price >= from && price <= to;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Runs as one scan of the mapped records; price is checked straight from
+     * the record before the keyboard is decoded
+     */
+    @Override
+    public KeyboardQueryResult queryKeyboards(KeyboardQuery query) throws IOException {
+        Map<Keyboard.Size, Integer> sizeCounts = new EnumMap<>(Keyboard.Size.class);
+        Map<Keyboard.SwitchColor, Integer> switchColorCounts = new EnumMap<>(Keyboard.SwitchColor.class);
+        ArrayList<Keyboard> found = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int nextId = records.getInt(HEADER_NEXT_ID);
+            for (int id = 0; id < nextId; ++id) {
+                int offset = (int) slotOffset(id);
+                if (records.get(offset + RECORD_LIVE) != 1) {
+                    continue;
+                }
+                int price = records.getInt(offset + RECORD_PRICE);
+                if ((query.getMinPrice() != null && price < query.getMinPrice())
+                        || (query.getMaxPrice() != null && price > query.getMaxPrice())) {
+                    continue;
+                }
+                Keyboard keyboard = readKeyboard(id);
+                if (!query.matchesName(keyboard)) {
+                    continue;
+                }
+                boolean sizeMatches = query.matchesSize(keyboard);
+                boolean colorMatches = query.matchesSwitchColor(keyboard);
+                if (colorMatches && keyboard.getSize() != null) {
+                    sizeCounts.merge(keyboard.getSize(), 1, Integer::sum);
+                }
+                if (sizeMatches && keyboard.getSwitchColor() != null) {
+                    switchColorCounts.merge(keyboard.getSwitchColor(), 1, Integer::sum);
+                }
+                if (sizeMatches && colorMatches) {
+                    found.add(keyboard);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new KeyboardQueryResult(found.toArray(new Keyboard[0]), sizeCounts, switchColorCounts);
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Sorted by id, the walk goes slot by slot from the cursor and stops once
+     * the page is full. Other sorts have no index here, so one scan keeps the
+     * best {@code limit} keyboards past the cursor in a bounded heap; the scan
+     * touches every record but holds no more than a page.
+     */
+    @Override
+    public KeyboardPage getKeyboardPage(KeyboardQuery query, KeyboardSort sort, boolean descending, String cursor,
+            int limit) throws IOException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be at least 1");
+        }
+        KeyboardCursor after = cursor == null ? null : KeyboardCursor.decode(cursor, sort, descending);
+        lock.readLock().lock();
+        try {
+            if (sort == KeyboardSort.ID) {
+                return pageById(query, descending, after, limit);
+            }
+            return pageBySelection(query, sort, descending, after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Collects one page in id order by walking the slots from the cursor. The
+     * caller must hold the lock.
+     *
+     * @param query      the criteria to match
+     * @param descending true for largest id first
+     * @param after      the position to start after, null for the first page
+     * @param limit      the most keyboards to return
+     * @return the page and the cursor of the next one
+     */
+    private KeyboardPage pageById(KeyboardQuery query, boolean descending, KeyboardCursor after, int limit) {
+        int nextId = records.getInt(HEADER_NEXT_ID);
+        int step = descending ? -1 : 1;
+        int id;
+        if (after == null) {
+            id = descending ? nextId - 1 : 0;
+        } else if (descending) {
+            id = Math.min(after.getId() - 1, nextId - 1);
+        } else {
+            id = Math.max(after.getId() + 1, 0);
+        }
+        ArrayList<Keyboard> found = new ArrayList<>(Math.min(limit, records.getInt(HEADER_COUNT)));
+        for (; id >= 0 && id < nextId && found.size() < limit; id += step) {
+            if (records.get((int) slotOffset(id) + RECORD_LIVE) != 1) {
+                continue;
+            }
+            Keyboard keyboard = readKeyboard(id);
+            if (query.matches(keyboard)) {
+                found.add(keyboard);
+            }
+        }
+        String nextCursor = null;
+        if (found.size() == limit) {
+            int lastId = found.get(limit - 1).getKeyboardId();
+            nextCursor = new KeyboardCursor(KeyboardSort.ID, descending, lastId, lastId).encode();
+        }
+        return new KeyboardPage(found.toArray(new Keyboard[0]), nextCursor);
+    }
+
+    /**
+     * Collects one page in a sort other than id with a single scan, keeping
+     * only the first {@code limit} keyboards past the cursor. The caller must
+     * hold the lock.
+     *
+     * @param query      the criteria to match
+     * @param sort       the requested sort
+     * @param descending true for largest sort key first
+     * @param after      the position to start after, null for the first page
+     * @param limit      the most keyboards to return
+     * @return the page and the cursor of the next one
+     */
+    @SuppressWarnings("unchecked")
+    private KeyboardPage pageBySelection(KeyboardQuery query, KeyboardSort sort, boolean descending,
+            KeyboardCursor after, int limit) {
+        Comparator<SortedKeyIndex.Position<Comparable<Object>>> walk = descending ? Comparator.reverseOrder()
+                : Comparator.naturalOrder();
+        SortedKeyIndex.Position<Comparable<Object>> start = null;
+        if (after != null) {
+            start = new SortedKeyIndex.Position<>((Comparable<Object>) after.getKey(), after.getId());
+        }
+        // Head is the last of the kept keyboards in walking order, evicted first
+        PriorityQueue<Map.Entry<SortedKeyIndex.Position<Comparable<Object>>, Keyboard>> best = new PriorityQueue<>(
+                Map.Entry.comparingByKey(walk.reversed()));
+        int nextId = records.getInt(HEADER_NEXT_ID);
+        for (int id = 0; id < nextId; ++id) {
+            int offset = (int) slotOffset(id);
+            if (records.get(offset + RECORD_LIVE) != 1) {
+                continue;
+            }
+            int price = records.getInt(offset + RECORD_PRICE);
+            if ((query.getMinPrice() != null && price < query.getMinPrice())
+                    || (query.getMaxPrice() != null && price > query.getMaxPrice())) {
+                continue;
+            }
+            Keyboard keyboard = readKeyboard(id);
+            if (!query.matches(keyboard)) {
+                continue;
+            }
+            SortedKeyIndex.Position<Comparable<Object>> position = new SortedKeyIndex.Position<>(
+                    (Comparable<Object>) sort.keyOf(keyboard), id);
+            if (start != null && walk.compare(position, start) <= 0) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(new AbstractMap.SimpleImmutableEntry<>(position, keyboard));
+            } else if (walk.compare(position, best.peek().getKey()) < 0) {
+                best.poll();
+                best.add(new AbstractMap.SimpleImmutableEntry<>(position, keyboard));
+            }
+        }
+
+        Keyboard[] page = new Keyboard[best.size()];
+        SortedKeyIndex.Position<Comparable<Object>> last = best.isEmpty() ? null : best.peek().getKey();
+        for (int i = page.length - 1; i >= 0; --i) {
+            page[i] = best.poll().getValue();
+        }
+        String nextCursor = null;
+        if (page.length == limit) {
+            nextCursor = new KeyboardCursor(sort, descending, last.getKey(), last.getId()).encode();
+        }
+        return new KeyboardPage(page, nextCursor);
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * The quantity is changed with a compare-and-set on the mapped record
+     * while holding only the read lock, so reservations of any keyboards run
+     * side by side and still never take a quantity below zero. The write
+     * lock keeps the record from being deleted or remapped meanwhile.
+     */
+    @Override
+    public boolean reserveStock(int id, int quantity) throws IOException {
+        return reserveStock(Collections.singletonMap(id, quantity));
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Adds to the mapped record atomically under the read lock, like
+     * {@link #reserveStock(int, int)}
+     */
+    @Override
+    public boolean releaseStock(int id, int quantity) throws IOException {
+        return releaseStock(Collections.singletonMap(id, quantity));
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Each record is changed with a compare-and-set as in
+     * {@link #reserveStock(int, int)}. If one keyboard is short, the units
+     * already taken are added back before the read lock is released, and the
+     * records are forced to disk once at the end.
+     */
+    @Override
+    public boolean reserveStock(Map<Integer, Integer> quantities) throws IOException {
+        checkQuantities(quantities);
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> taken = new HashMap<>();
+            for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                if (!isLive(entry.getKey()) || !take(entry.getKey(), entry.getValue())) {
+                    for (Map.Entry<Integer, Integer> undo : taken.entrySet()) {
+                        RECORD_INT.getAndAdd(records, quantityOffset(undo.getKey()), undo.getValue());
+                    }
+                    return false;
+                }
+                taken.put(entry.getKey(), entry.getValue());
+            }
+            recordStock(taken.keySet());
+            records.force();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     ** {@inheritDoc}
+     * <br>
+     * Adds to each mapped record atomically under the read lock and forces
+     * the records to disk once
+     */
+    @Override
+    public boolean releaseStock(Map<Integer, Integer> quantities) throws IOException {
+        checkQuantities(quantities);
+        lock.readLock().lock();
+        try {
+            boolean found = true;
+            for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                if (isLive(entry.getKey())) {
+                    RECORD_INT.getAndAdd(records, quantityOffset(entry.getKey()), entry.getValue());
+                } else {
+                    found = false;
+                }
+            }
+            recordStock(quantities.keySet());
+            records.force();
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Keeps a change among the recent changes and tells the listeners of it
+     *
+     * @param change the change
+     */
+    private void record(InventoryChange change) {
+        recentChanges.add(change);
+        for (Consumer<InventoryChange> listener : changeListeners) {
+            listener.accept(change);
+        }
+    }
+
+    /**
+     * Moves the version for a stock change and records the new quantities of
+     * its keyboards. Stock changes run side by side under the read lock, so
+     * this is done holding the recent changes' lock, which keeps them in
+     * version order. Must be called holding the read lock.
+     *
+     * @param ids the keyboards whose stock changed; deleted ones are skipped
+     */
+    private void recordStock(Iterable<Integer> ids) {
+        synchronized (recentChanges) {
+            long changed = version.incrementAndGet();
+            for (int id : ids) {
+                if (isLive(id)) {
+                    record(InventoryChange.upsert(changed, readKeyboard(id)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that every quantity of a stock change is at least 1
+     *
+     * @param quantities the units to change, by keyboard id
+     *
+     * @throws IllegalArgumentException if any quantity is below 1
+     */
+    private static void checkQuantities(Map<Integer, Integer> quantities) {
+        for (int quantity : quantities.values()) {
+            if (quantity < 1) {
+                throw new IllegalArgumentException("Quantity must be at least 1");
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the quantity in a record
+     *
+     * @param id the keyboard id
+     * @return the offset of its quantity field
+     */
+    private static int quantityOffset(int id) {
+        return (int) slotOffset(id) + RECORD_QUANTITY;
+    }
+
+    /**
+     * Takes units from a live record unless fewer are left. The caller must
+     * hold the lock.
+     *
+     * @param id       the keyboard id
+     * @param quantity the number of units to take
+     * @return true if the units were taken
+     */
+    private boolean take(int id, int quantity) {
+        int offset = quantityOffset(id);
+        int current;
+        do {
+            current = (int) RECORD_INT.getVolatile(records, offset);
+            if (current < quantity) {
+                return false;
+            }
+        } while (!RECORD_INT.compareAndSet(records, offset, current, current - quantity));
+        return true;
+    }
+
+    /**
+     * Writes the mapped pages back to the files. The name file goes first so
+     * a record never points past the names on disk.
+     */
+    private void force() {
+        names.force();
+        records.force();
+    }
+
+    /**
+     * Flushes the mapped files and closes them when the application shuts
+     * down
+     *
+     * @throws IOException when the files cannot be closed
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            force();
+            recordChannel.close();
+            nameChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Append-only log of mutation records, one JSON object per line
+ * <br>
+ * The file DAOs append a small record here for every change instead of
+ * rewriting their whole JSON file, and only write a full checkpoint of their
+ * data every so often. On startup the records written since the last
+ * checkpoint are replayed on top of it.
+ *
+ * @param <T> the type of record stored in the log
+ *
+ * @author Team 2
+ */
+public class MutationLog<T> implements Closeable {
+    private static final Logger LOG = Logger.getLogger(MutationLog.class.getName());
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    private final Class<T> recordType;
+    private final boolean sync; // Whether every append is forced to disk
+    private final FileChannel channel;
+    private int size; // Number of records appended since the last truncate
+
+    /**
+     * Opens a mutation log, creating the file if it does not exist yet
+     *
+     * @param filename     the log file to append to
+     * @param objectMapper converts records to and from JSON
+     * @param recordType   the class of the records stored in the log
+     * @param sync         true to force every append to disk before returning
+     *
+     * @throws IOException when the file cannot be opened
+     */
+    public MutationLog(String filename, ObjectMapper objectMapper, Class<T> recordType, boolean sync)
+            throws IOException {
+        this.file = new File(filename);
+        this.objectMapper = objectMapper;
+        this.recordType = recordType;
+        this.sync = sync;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads every record in the log in the order it was written
+     * <br>
+     * Only lines ending in a newline count as written, because an append
+     * writes the newline last. An unterminated last line, left behind by a
+     * crash mid-append, is cut off even if it holds complete JSON, so later
+     * appends start on a clean line. A line that cannot be read ends the
+     * replay; it and everything after it are cut off.
+     *
+     * @param consumer called with each record
+     * @return the number of records replayed
+     *
+     * @throws IOException when the file cannot be read
+     */
+    public synchronized int replay(Consumer<T> consumer) throws IOException {
+        long length = channel.size();
+        long validBytes = 0; // Bytes of the whole lines replayed so far
+        int replayed = 0;
+        int lineNumber = 0;
+        boolean unreadable = false;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                ++lineNumber;
+                if (line.size() > 0) {
+                    T record;
+                    try {
+                        record = objectMapper.readValue(line.toByteArray(), recordType);
+                    } catch (JsonProcessingException e) {
+                        LOG.severe("Unreadable record on line " + lineNumber + " of " + file
+                                + "; discarding it and every record after it (" + (length - validBytes)
+                                + " bytes): " + e.getOriginalMessage());
+                        unreadable = true;
+                        break;
+                    }
+                    consumer.accept(record);
+                    ++replayed;
+                }
+                validBytes += line.size() + 1;
+                line.reset();
+            }
+        }
+        if (validBytes < length) {
+            if (!unreadable) {
+                LOG.warning("Discarding unterminated record at the end of " + file + " ("
+                        + (length - validBytes) + " bytes)");
+            }
+            channel.truncate(validBytes);
+        }
+        channel.position(validBytes);
+        size = replayed;
+        return replayed;
+    }
+
+    /**
+     * Appends a record to the end of the log
+     *
+     * @param record the record to append
+     *
+     * @throws IOException when the record cannot be written
+     */
+    public synchronized void append(T record) throws IOException {
+        append(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends several records to the end of the log with a single write, and a
+     * single force when syncing
+     *
+     * @param records the records to append, in order
+     *
+     * @throws IOException when the records cannot be written
+     */
+    public synchronized void append(List<T> records) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (T record : records) {
+            lines.append(objectMapper.writeValueAsString(record)).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+        size += records.size();
+    }
+
+    /**
+     * Forces every record appended so far to disk, for a log opened without
+     * syncing whose appends are synced once per batch instead. Does not hold
+     * up appends while the disk catches up.
+     *
+     * @throws IOException when the file cannot be forced
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Returns the number of records appended since the log was last truncated
+     *
+     * @return the number of records in the log
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Discards every record in the log, called once a checkpoint containing
+     * them has been written
+     *
+     * @throws IOException when the file cannot be truncated
+     */
+    public synchronized void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        if (sync) {
+            channel.force(true);
+        }
+        size = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
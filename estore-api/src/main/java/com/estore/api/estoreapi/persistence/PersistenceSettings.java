@@ -0,0 +1,511 @@
+package com.estore.api.estoreapi.persistence;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tuning options for the file-based DAOs, read from application.properties
+ * <br>
+ * A settings object created with {@code new} keeps every option at its
+ * default, which matches the original behaviour of rewriting the whole JSON
+ * file on every change
+ *
+ * @author Team 2
+ */
+@Component
+public class PersistenceSettings {
+    /**
+     * How users are laid out on disk
+     */
+    public enum UserStorage {
+        FILE, // Every user in the single users.file
+        SHARDED // One file per user inside users.directory
+    }
+
+    /**
+     * How the inventory and users snapshots are encoded
+     */
+    public enum SnapshotFormat {
+        JSON, // The readable inventory.file and users.file
+        BINARY // A compact .bin file next to each of them
+    }
+
+    @Value("${inventory.wal.enabled:false}")
+    private boolean inventoryWalEnabled; // Append changes to a log instead of rewriting inventory.json
+    @Value("${inventory.wal.checkpoint-interval:1000}")
+    private int inventoryCheckpointInterval; // Log records to collect before writing a checkpoint
+    @Value("${users.journal.enabled:false}")
+    private boolean usersJournalEnabled; // Append changes to a journal instead of rewriting users.json
+    @Value("${users.journal.checkpoint-interval-ms:30000}")
+    private long usersCheckpointIntervalMs; // How often the background checkpoint of users.json runs
+    @Value("${users.storage:FILE}")
+    private UserStorage userStorage; // Single users.json file or one file per user
+    @Value("${users.directory:data/users}")
+    private String usersDirectory; // Directory holding the per-user files in sharded mode
+    @Value("${persistence.group-commit.enabled:false}")
+    private boolean groupCommitEnabled; // Coalesce saves, or log syncs, on a background writer
+    @Value("${persistence.group-commit.window-ms:10}")
+    private long groupCommitWindowMs; // How long the writer collects changes before saving
+    @Value("${persistence.group-commit.durability:FLUSH}")
+    private PersistenceWriter.Durability groupCommitDurability; // Acknowledge after the save or right away
+    @Value("${persistence.atomic-snapshots:false}")
+    private boolean atomicSnapshots; // Write data files through a temp file, rename and checksum
+    @Value("${persistence.wal.sync:true}")
+    private boolean walSync; // Force each log append to disk before acknowledging it
+    @Value("${persistence.streaming-load:false}")
+    private boolean streamingLoad; // Parse data files record by record instead of as one array
+    @Value("${persistence.snapshot-format:JSON}")
+    private SnapshotFormat snapshotFormat; // Encoding of the inventory and users snapshots
+    @Value("${inventory.snapshot-reads:false}")
+    private boolean inventorySnapshotReads; // Serve lookups, listings and searches from a published copy, without locking
+    @Value("${cart.holds.enabled:false}")
+    private boolean cartHoldsEnabled; // Give stock taken by a cart back if it is not bought in time
+    @Value("${cart.holds.ttl-seconds:900}")
+    private long cartHoldTtlSeconds; // How long a cart keeps the stock it took
+    @Value("${cart.holds.tick-ms:1000}")
+    private long cartHoldTickMs; // How often expired holds are swept
+    @Value("${inventory.changes.capacity:1024}")
+    private int inventoryChangesCapacity; // Recent changes kept for GET /keyboards/changes
+    @Value("${inventory.events.enabled:false}")
+    private boolean inventoryEventsEnabled; // Push inventory changes to subscribers of GET /keyboards/events
+    @Value("${inventory.events.max-subscribers:10000}")
+    private int inventoryEventsMaxSubscribers; // Most open event streams
+    @Value("${inventory.events.max-pending:256}")
+    private int inventoryEventsMaxPending; // Keyboards awaiting delivery before a subscriber is dropped
+    @Value("${inventory.events.timeout-ms:600000}")
+    private long inventoryEventsTimeoutMs; // How long an event stream stays open before the client reconnects
+
+    /**
+     * Creates settings with every option at its default
+     */
+    public PersistenceSettings() {
+        this.inventoryWalEnabled = false;
+        this.inventoryCheckpointInterval = 1000;
+        this.usersJournalEnabled = false;
+        this.usersCheckpointIntervalMs = 30000;
+        this.userStorage = UserStorage.FILE;
+        this.usersDirectory = "data/users";
+        this.groupCommitEnabled = false;
+        this.groupCommitWindowMs = 10;
+        this.groupCommitDurability = PersistenceWriter.Durability.FLUSH;
+        this.atomicSnapshots = false;
+        this.walSync = true;
+        this.streamingLoad = false;
+        this.snapshotFormat = SnapshotFormat.JSON;
+        this.inventorySnapshotReads = false;
+        this.cartHoldsEnabled = false;
+        this.cartHoldTtlSeconds = 900;
+        this.cartHoldTickMs = 1000;
+        this.inventoryChangesCapacity = 1024;
+        this.inventoryEventsEnabled = false;
+        this.inventoryEventsMaxSubscribers = 10000;
+        this.inventoryEventsMaxPending = 256;
+        this.inventoryEventsTimeoutMs = 600000;
+    }
+
+    /**
+     * Returns whether inventory changes are written to a write-ahead log
+     *
+     * @return true if the inventory write-ahead log is enabled
+     */
+    public boolean isInventoryWalEnabled() {
+        return inventoryWalEnabled;
+    }
+
+    /**
+     * Sets whether inventory changes are written to a write-ahead log
+     *
+     * @param inventoryWalEnabled true to enable the inventory write-ahead log
+     */
+    public void setInventoryWalEnabled(boolean inventoryWalEnabled) {
+        this.inventoryWalEnabled = inventoryWalEnabled;
+    }
+
+    /**
+     * Returns how many log records are collected before inventory.json is
+     * checkpointed
+     *
+     * @return the checkpoint interval in records
+     */
+    public int getInventoryCheckpointInterval() {
+        return inventoryCheckpointInterval;
+    }
+
+    /**
+     * Sets how many log records are collected before inventory.json is
+     * checkpointed
+     *
+     * @param inventoryCheckpointInterval the checkpoint interval in records
+     */
+    public void setInventoryCheckpointInterval(int inventoryCheckpointInterval) {
+        this.inventoryCheckpointInterval = inventoryCheckpointInterval;
+    }
+
+    /**
+     * Returns whether user changes are written to a journal
+     *
+     * @return true if the users journal is enabled
+     */
+    public boolean isUsersJournalEnabled() {
+        return usersJournalEnabled;
+    }
+
+    /**
+     * Sets whether user changes are written to a journal
+     *
+     * @param usersJournalEnabled true to enable the users journal
+     */
+    public void setUsersJournalEnabled(boolean usersJournalEnabled) {
+        this.usersJournalEnabled = usersJournalEnabled;
+    }
+
+    /**
+     * Returns how often users.json is checkpointed in the background
+     *
+     * @return the checkpoint interval in milliseconds
+     */
+    public long getUsersCheckpointIntervalMs() {
+        return usersCheckpointIntervalMs;
+    }
+
+    /**
+     * Sets how often users.json is checkpointed in the background
+     *
+     * @param usersCheckpointIntervalMs the checkpoint interval in milliseconds
+     */
+    public void setUsersCheckpointIntervalMs(long usersCheckpointIntervalMs) {
+        this.usersCheckpointIntervalMs = usersCheckpointIntervalMs;
+    }
+
+    /**
+     * Returns how users are laid out on disk
+     *
+     * @return the user storage layout
+     */
+    public UserStorage getUserStorage() {
+        return userStorage;
+    }
+
+    /**
+     * Sets how users are laid out on disk
+     *
+     * @param userStorage the user storage layout
+     */
+    public void setUserStorage(UserStorage userStorage) {
+        this.userStorage = userStorage;
+    }
+
+    /**
+     * Returns the directory holding one file per user in sharded mode
+     *
+     * @return the users directory
+     */
+    public String getUsersDirectory() {
+        return usersDirectory;
+    }
+
+    /**
+     * Sets the directory holding one file per user in sharded mode
+     *
+     * @param usersDirectory the users directory
+     */
+    public void setUsersDirectory(String usersDirectory) {
+        this.usersDirectory = usersDirectory;
+    }
+
+    /**
+     * Returns whether full-file saves are coalesced on a background writer
+     *
+     * @return true if group commit is enabled
+     */
+    public boolean isGroupCommitEnabled() {
+        return groupCommitEnabled;
+    }
+
+    /**
+     * Sets whether full-file saves are coalesced on a background writer
+     *
+     * @param groupCommitEnabled true to enable group commit
+     */
+    public void setGroupCommitEnabled(boolean groupCommitEnabled) {
+        this.groupCommitEnabled = groupCommitEnabled;
+    }
+
+    /**
+     * Returns how long the background writer collects changes before saving
+     *
+     * @return the commit window in milliseconds
+     */
+    public long getGroupCommitWindowMs() {
+        return groupCommitWindowMs;
+    }
+
+    /**
+     * Sets how long the background writer collects changes before saving
+     *
+     * @param groupCommitWindowMs the commit window in milliseconds
+     */
+    public void setGroupCommitWindowMs(long groupCommitWindowMs) {
+        this.groupCommitWindowMs = groupCommitWindowMs;
+    }
+
+    /**
+     * Returns when changes are acknowledged under group commit
+     *
+     * @return the durability mode
+     */
+    public PersistenceWriter.Durability getGroupCommitDurability() {
+        return groupCommitDurability;
+    }
+
+    /**
+     * Sets when changes are acknowledged under group commit
+     *
+     * @param groupCommitDurability the durability mode
+     */
+    public void setGroupCommitDurability(PersistenceWriter.Durability groupCommitDurability) {
+        this.groupCommitDurability = groupCommitDurability;
+    }
+
+    /**
+     * Returns whether data files are replaced atomically and checksummed
+     *
+     * @return true if atomic snapshots are enabled
+     */
+    public boolean isAtomicSnapshots() {
+        return atomicSnapshots;
+    }
+
+    /**
+     * Sets whether data files are replaced atomically and checksummed
+     *
+     * @param atomicSnapshots true to enable atomic snapshots
+     */
+    public void setAtomicSnapshots(boolean atomicSnapshots) {
+        this.atomicSnapshots = atomicSnapshots;
+    }
+
+    /**
+     * Returns whether every log append is forced to disk
+     *
+     * @return true if appends are synced
+     */
+    public boolean isWalSync() {
+        return walSync;
+    }
+
+    /**
+     * Sets whether every log append is forced to disk
+     *
+     * @param walSync true to sync every append
+     */
+    public void setWalSync(boolean walSync) {
+        this.walSync = walSync;
+    }
+
+    /**
+     * Returns whether data files are parsed one record at a time on startup
+     *
+     * @return true if streaming load is enabled
+     */
+    public boolean isStreamingLoad() {
+        return streamingLoad;
+    }
+
+    /**
+     * Sets whether data files are parsed one record at a time on startup
+     *
+     * @param streamingLoad true to enable streaming load
+     */
+    public void setStreamingLoad(boolean streamingLoad) {
+        this.streamingLoad = streamingLoad;
+    }
+
+    /**
+     * Returns how the inventory and users snapshots are encoded
+     *
+     * @return the snapshot format
+     */
+    public SnapshotFormat getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    /**
+     * Sets how the inventory and users snapshots are encoded
+     *
+     * @param snapshotFormat the snapshot format
+     */
+    public void setSnapshotFormat(SnapshotFormat snapshotFormat) {
+        this.snapshotFormat = snapshotFormat;
+    }
+
+    /**
+     * Returns whether inventory lookups, listings and name searches are served
+     * from an immutable published snapshot instead of under the inventory lock
+     *
+     * @return true if snapshot reads are enabled
+     */
+    public boolean isInventorySnapshotReads() {
+        return inventorySnapshotReads;
+    }
+
+    /**
+     * Sets whether inventory lookups, listings and name searches are served
+     * from an immutable published snapshot instead of under the inventory lock
+     *
+     * @param inventorySnapshotReads true to enable snapshot reads
+     */
+    public void setInventorySnapshotReads(boolean inventorySnapshotReads) {
+        this.inventorySnapshotReads = inventorySnapshotReads;
+    }
+
+    /**
+     * Returns whether stock taken by adding to a cart is given back once the
+     * hold expires
+     *
+     * @return true if cart holds are enabled
+     */
+    public boolean isCartHoldsEnabled() {
+        return cartHoldsEnabled;
+    }
+
+    /**
+     * Sets whether stock taken by adding to a cart is given back once the
+     * hold expires
+     *
+     * @param cartHoldsEnabled true to enable cart holds
+     */
+    public void setCartHoldsEnabled(boolean cartHoldsEnabled) {
+        this.cartHoldsEnabled = cartHoldsEnabled;
+    }
+
+    /**
+     * Returns how long a cart keeps the stock it took
+     *
+     * @return the hold lifetime in seconds
+     */
+    public long getCartHoldTtlSeconds() {
+        return cartHoldTtlSeconds;
+    }
+
+    /**
+     * Sets how long a cart keeps the stock it took
+     *
+     * @param cartHoldTtlSeconds the hold lifetime in seconds
+     */
+    public void setCartHoldTtlSeconds(long cartHoldTtlSeconds) {
+        this.cartHoldTtlSeconds = cartHoldTtlSeconds;
+    }
+
+    /**
+     * Returns how often expired holds are swept, which is also how late a
+     * hold may expire
+     *
+     * @return the sweep interval in milliseconds
+     */
+    public long getCartHoldTickMs() {
+        return cartHoldTickMs;
+    }
+
+    /**
+     * Sets how often expired holds are swept
+     *
+     * @param cartHoldTickMs the sweep interval in milliseconds
+     */
+    public void setCartHoldTickMs(long cartHoldTickMs) {
+        this.cartHoldTickMs = cartHoldTickMs;
+    }
+
+    /**
+     * Returns whether clients can subscribe to a stream of inventory changes
+     *
+     * @return true if inventory events are enabled
+     */
+    public boolean isInventoryEventsEnabled() {
+        return inventoryEventsEnabled;
+    }
+
+    /**
+     * Sets whether clients can subscribe to a stream of inventory changes
+     *
+     * @param inventoryEventsEnabled true to enable inventory events
+     */
+    public void setInventoryEventsEnabled(boolean inventoryEventsEnabled) {
+        this.inventoryEventsEnabled = inventoryEventsEnabled;
+    }
+
+    /**
+     * Returns the most event streams open at once
+     *
+     * @return the maximum number of subscribers
+     */
+    public int getInventoryEventsMaxSubscribers() {
+        return inventoryEventsMaxSubscribers;
+    }
+
+    /**
+     * Sets the most event streams open at once
+     *
+     * @param inventoryEventsMaxSubscribers the maximum number of subscribers
+     */
+    public void setInventoryEventsMaxSubscribers(int inventoryEventsMaxSubscribers) {
+        this.inventoryEventsMaxSubscribers = inventoryEventsMaxSubscribers;
+    }
+
+    /**
+     * Returns how many keyboards' changes may wait for one subscriber before
+     * it is dropped as too slow
+     *
+     * @return the maximum number of pending keyboards
+     */
+    public int getInventoryEventsMaxPending() {
+        return inventoryEventsMaxPending;
+    }
+
+    /**
+     * Sets how many keyboards' changes may wait for one subscriber
+     *
+     * @param inventoryEventsMaxPending the maximum number of pending keyboards
+     */
+    public void setInventoryEventsMaxPending(int inventoryEventsMaxPending) {
+        this.inventoryEventsMaxPending = inventoryEventsMaxPending;
+    }
+
+    /**
+     * Returns how long an event stream stays open before the client has to
+     * reconnect
+     *
+     * @return the time in milliseconds
+     */
+    public long getInventoryEventsTimeoutMs() {
+        return inventoryEventsTimeoutMs;
+    }
+
+    /**
+     * Sets how long an event stream stays open
+     *
+     * @param inventoryEventsTimeoutMs the time in milliseconds
+     */
+    public void setInventoryEventsTimeoutMs(long inventoryEventsTimeoutMs) {
+        this.inventoryEventsTimeoutMs = inventoryEventsTimeoutMs;
+    }
+
+    /**
+     * Returns how many recent inventory changes are kept for clients asking
+     * for the changes after their version
+     *
+     * @return the number of changes kept
+     */
+    public int getInventoryChangesCapacity() {
+        return inventoryChangesCapacity;
+    }
+
+    /**
+     * Sets how many recent inventory changes are kept
+     *
+     * @param inventoryChangesCapacity the number of changes kept, 0 for none
+     */
+    public void setInventoryChangesCapacity(int inventoryChangesCapacity) {
+        this.inventoryChangesCapacity = inventoryChangesCapacity;
+    }
+}
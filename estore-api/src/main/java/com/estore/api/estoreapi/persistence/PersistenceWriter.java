@@ -0,0 +1,186 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background writer that coalesces save requests from a DAO into one write
+ * per commit window
+ * <br>
+ * Every change marks the DAO dirty. The writer thread waits for the window to
+ * pass after the first dirty mark, then runs the DAO's flush once for every
+ * change that arrived in the meantime. A burst of changes therefore costs one
+ * file write instead of one per change.
+ *
+ * @author Team 2
+ */
+public class PersistenceWriter implements Closeable {
+    private static final Logger LOG = Logger.getLogger(PersistenceWriter.class.getName());
+
+    /**
+     * When a change is acknowledged to the caller
+     */
+    public enum Durability {
+        FLUSH, // After the window containing the change has been written
+        IMMEDIATE // As soon as the change is applied in memory
+    }
+
+    /**
+     * Writes the DAO's current state to storage
+     */
+    @FunctionalInterface
+    public interface Flush {
+        void flush() throws IOException;
+    }
+
+    private final Flush flush;
+    private final long windowMs;
+    private final Durability durability;
+    private final Thread thread;
+    private CompletableFuture<Void> pending; // Completed by the next flush, null when nothing is dirty
+    private boolean closed;
+    private long flushCount;
+
+    /**
+     * Creates a writer and starts its background thread
+     *
+     * @param name       name of the background thread
+     * @param windowMs   how long changes are collected before they are written
+     * @param durability when changes are acknowledged
+     * @param flush      writes the DAO's current state to storage
+     */
+    public PersistenceWriter(String name, long windowMs, Durability durability, Flush flush) {
+        this.flush = flush;
+        this.windowMs = windowMs;
+        this.durability = durability;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Marks the DAO dirty so its state is written at the end of the current
+     * window
+     * <br>
+     * Must be called after the change has been applied in memory. The returned
+     * future must be passed to {@link #await(CompletableFuture)} once the
+     * caller has released any lock the flush needs.
+     *
+     * @return completes once the change is durable, or straight away in
+     *         {@link Durability#IMMEDIATE IMMEDIATE} mode
+     */
+    public synchronized CompletableFuture<Void> markDirty() {
+        if (closed) {
+            throw new IllegalStateException("Persistence writer is closed");
+        }
+        if (pending == null) {
+            pending = new CompletableFuture<>();
+            notifyAll();
+        }
+        if (durability == Durability.IMMEDIATE) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return pending;
+    }
+
+    /**
+     * Waits for a change returned by {@link #markDirty()} to become durable
+     *
+     * @param commit the future returned by {@link #markDirty()}
+     *
+     * @throws IOException when the flush containing the change failed
+     */
+    public static void await(CompletableFuture<Void> commit) throws IOException {
+        try {
+            commit.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a flush", e);
+        }
+    }
+
+    /**
+     * Returns how many flushes have been run
+     *
+     * @return the number of flushes
+     */
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Background loop: waits for a dirty mark, lets the window pass, then
+     * flushes once for everything that arrived in it
+     */
+    private void run() {
+        while (true) {
+            CompletableFuture<Void> batch;
+            synchronized (this) {
+                while (pending == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pending == null) {
+                    return;
+                }
+                long deadline = System.currentTimeMillis() + windowMs;
+                long remaining = windowMs;
+                while (remaining > 0 && !closed) {
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                batch = pending;
+                pending = null;
+            }
+            try {
+                flush.flush();
+                batch.complete(null);
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.SEVERE, "Flush by " + thread.getName() + " failed", e);
+                batch.completeExceptionally(e);
+            }
+            synchronized (this) {
+                ++flushCount;
+            }
+        }
+    }
+
+    /**
+     * Flushes any outstanding changes straight away and stops the background
+     * thread
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the persistence writer", e);
+        }
+    }
+}
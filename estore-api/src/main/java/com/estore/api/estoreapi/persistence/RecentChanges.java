@@ -0,0 +1,108 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
+import com.estore.api.estoreapi.model.Keyboard;
+
+/**
+ * The most recent changes to the inventory, kept in memory in a ring of
+ * fixed size so clients holding a copy of the catalog can ask for just the
+ * changes after the version they have
+ * <br>
+ * Once the ring is full each new change overwrites the oldest, and a client
+ * whose version is older than the overwritten change is told to resync.
+ * Versions restart with the application, so each log has a random epoch and
+ * clients that send one from another run, or none, are told to resync as
+ * well. A client starting out without a copy therefore always resyncs
+ * first, since the log only holds changes made after the application
+ * started.
+ *
+ * @author Team 2
+ */
+public class RecentChanges {
+    private final InventoryChange[] ring;
+    private final String epoch;
+    private int next; // Slot the next change is written to
+    private int size;
+    private long floor; // Changes up to this version are no longer all kept
+    private long latest; // The version of the newest change, or the starting version
+
+    /**
+     * Creates an empty log
+     *
+     * @param capacity the most changes kept; 0 keeps none, so every client
+     *                 resyncs
+     * @param version  the inventory's version when the log starts
+     */
+    public RecentChanges(int capacity, long version) {
+        this.ring = new InventoryChange[Math.max(0, capacity)];
+        this.epoch = Long.toString(new Random().nextLong() & Long.MAX_VALUE, 36);
+        this.floor = version;
+        this.latest = version;
+    }
+
+    /**
+     * Returns the random value identifying this log's run
+     *
+     * @return the epoch
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Keeps a change, copying the keyboard so later changes to it do not
+     * alter the record. Changes must be added in version order.
+     *
+     * @param change the change
+     */
+    public synchronized void add(InventoryChange change) {
+        latest = Math.max(latest, change.getVersion());
+        if (ring.length == 0) {
+            floor = latest;
+            return;
+        }
+        if (size == ring.length) {
+            floor = Math.max(floor, ring[next].getVersion());
+        } else {
+            ++size;
+        }
+        Keyboard keyboard = change.getKeyboard();
+        ring[next] = keyboard == null ? change
+                : InventoryChange.upsert(change.getVersion(), new Keyboard(keyboard, keyboard.getQuantity()));
+        next = (next + 1) % ring.length;
+    }
+
+    /**
+     * Returns the changes after a version, keeping only the latest change of
+     * each keyboard
+     *
+     * @param since the version the client has
+     * @param epoch the epoch the client's version came with, null if it has
+     *              none
+     * @return the changes, or a resync if the version is from another epoch
+     *         or comes without one, is newer than any change, or is older
+     *         than the changes kept
+     */
+    public synchronized InventoryChanges since(long since, String epoch) {
+        if (!this.epoch.equals(epoch) || since < floor || since > latest) {
+            return new InventoryChanges(this.epoch, latest, true, Collections.emptyList());
+        }
+        Map<Integer, InventoryChange> changes = new LinkedHashMap<>();
+        for (int i = 0; i < size; ++i) {
+            InventoryChange change = ring[(next - size + i + ring.length) % ring.length];
+            if (change.getVersion() > since) {
+                // Removed first so the keyboard moves to its latest change's place
+                changes.remove(change.getKeyboardId());
+                changes.put(change.getKeyboardId(), change);
+            }
+        }
+        return new InventoryChanges(this.epoch, latest, false, new ArrayList<>(changes.values()));
+    }
+}
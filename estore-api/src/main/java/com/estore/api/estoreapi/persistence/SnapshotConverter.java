@@ -0,0 +1,145 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Converts inventory and users snapshots between JSON and the
+ * {@linkplain BinarySnapshot binary format}
+ * <br>
+ * Run from the estore-api directory with the application stopped, e.g.
+ * <pre>
+ * java -cp target/classes:... com.estore.api.estoreapi.persistence.SnapshotConverter \
+ *     to-binary inventory data/inventory.json data/inventory.bin
+ * </pre>
+ * JSON is written pretty-printed so it stays readable for tooling and review.
+ *
+ * @author Team 2
+ */
+public class SnapshotConverter {
+    private static final String USAGE = "Usage: SnapshotConverter <to-binary|to-json> <inventory|users> <input> <output>";
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates a converter
+     *
+     * @param objectMapper converts snapshots to and from JSON
+     */
+    public SnapshotConverter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Converts an inventory JSON file into a binary snapshot
+     *
+     * @param jsonFile   the JSON file to read
+     * @param binaryFile the binary file to write
+     * @return the number of keyboards converted
+     *
+     * @throws IOException when a file cannot be read or written
+     */
+    public int inventoryToBinary(String jsonFile, String binaryFile) throws IOException {
+        Keyboard[] keyboards = objectMapper.readValue(Paths.get(jsonFile).toFile(), Keyboard[].class);
+        Files.write(Paths.get(binaryFile), BinarySnapshot.writeKeyboards(keyboards));
+        return keyboards.length;
+    }
+
+    /**
+     * Converts an inventory binary snapshot into a JSON file
+     *
+     * @param binaryFile the binary file to read
+     * @param jsonFile   the JSON file to write
+     * @return the number of keyboards converted
+     *
+     * @throws IOException when a file cannot be read or written
+     */
+    public int inventoryToJson(String binaryFile, String jsonFile) throws IOException {
+        List<Keyboard> keyboards = new ArrayList<>();
+        try (InputStream input = new FileInputStream(binaryFile)) {
+            BinarySnapshot.readKeyboards(input, keyboards::add);
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(Paths.get(jsonFile).toFile(),
+                keyboards.toArray(new Keyboard[0]));
+        return keyboards.size();
+    }
+
+    /**
+     * Converts a users JSON file into a binary snapshot
+     *
+     * @param jsonFile   the JSON file to read
+     * @param binaryFile the binary file to write
+     * @return the number of users converted
+     *
+     * @throws IOException when a file cannot be read or written
+     */
+    public int usersToBinary(String jsonFile, String binaryFile) throws IOException {
+        User[] users = objectMapper.readValue(Paths.get(jsonFile).toFile(), User[].class);
+        Files.write(Paths.get(binaryFile), BinarySnapshot.writeUsers(users));
+        return users.length;
+    }
+
+    /**
+     * Converts a users binary snapshot into a JSON file
+     *
+     * @param binaryFile the binary file to read
+     * @param jsonFile   the JSON file to write
+     * @return the number of users converted
+     *
+     * @throws IOException when a file cannot be read or written
+     */
+    public int usersToJson(String binaryFile, String jsonFile) throws IOException {
+        List<User> users = new ArrayList<>();
+        try (InputStream input = new FileInputStream(binaryFile)) {
+            BinarySnapshot.readUsers(input, users::add);
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(Paths.get(jsonFile).toFile(),
+                users.toArray(new User[0]));
+        return users.size();
+    }
+
+    /**
+     * Command line entry point
+     *
+     * @param args direction, kind of snapshot, input file and output file
+     *
+     * @throws IOException when a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        SnapshotConverter converter = new SnapshotConverter(new ObjectMapper());
+        String conversion = args[0] + " " + args[1];
+        int converted;
+        switch (conversion) {
+            case "to-binary inventory":
+                converted = converter.inventoryToBinary(args[2], args[3]);
+                break;
+            case "to-json inventory":
+                converted = converter.inventoryToJson(args[2], args[3]);
+                break;
+            case "to-binary users":
+                converted = converter.usersToBinary(args[2], args[3]);
+                break;
+            case "to-json users":
+                converted = converter.usersToJson(args[2], args[3]);
+                break;
+            default:
+                System.err.println(USAGE);
+                System.exit(2);
+                return;
+        }
+        System.out.println("Converted " + converted + " records from " + args[2] + " to " + args[3]);
+    }
+}
@@ -0,0 +1,352 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * A data file that is replaced atomically and checked on every read
+ * <br>
+ * New contents are written to a temporary file, forced to disk and renamed
+ * over the old file, so a crash never leaves a half-written file behind. A
+ * {@code .crc} sidecar holds the checksum and length of the contents, and the
+ * previous version is kept as {@code .bak} (with its own sidecar) to fall back
+ * on if the current file fails its check.
+ * <br>
+ * The backup is linked or copied from the current pair before the current
+ * pair is touched, and every read checks a data file against its sidecar,
+ * so a crash between any two renames leaves at least one pair that matches.
+ * <br>
+ * A file without a sidecar, such as one written before this class existed, is
+ * read as-is.
+ *
+ * @author Team 2
+ */
+public class SnapshotFile {
+    private static final Logger LOG = Logger.getLogger(SnapshotFile.class.getName());
+    private static final String SIDECAR_FORMAT = "crc32c=%08x length=%d";
+
+    private final Path file;
+    private final Path sidecar;
+    private final Path backup;
+    private final Path backupSidecar;
+    private final Path tempFile;
+    private final Path tempSidecar;
+    private final Path tempBackup;
+    private final Path tempBackupSidecar;
+
+    /**
+     * Creates a snapshot file
+     *
+     * @param filename the file holding the current contents
+     */
+    public SnapshotFile(String filename) {
+        this.file = Paths.get(filename).toAbsolutePath();
+        this.sidecar = sibling(".crc");
+        this.backup = sibling(".bak");
+        this.backupSidecar = sibling(".bak.crc");
+        this.tempFile = sibling(".tmp");
+        this.tempSidecar = sibling(".crc.tmp");
+        this.tempBackup = sibling(".bak.tmp");
+        this.tempBackupSidecar = sibling(".bak.crc.tmp");
+    }
+
+    /**
+     * Returns a path next to the data file with the given suffix
+     *
+     * @param suffix the suffix appended to the data file's name
+     * @return the path
+     */
+    private Path sibling(String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+
+    /**
+     * Receives the contents of a file as a stream
+     */
+    @FunctionalInterface
+    public interface Reader {
+        void read(InputStream input, long length) throws IOException;
+    }
+
+    /**
+     * One file operation of a write
+     */
+    @FunctionalInterface
+    interface Step {
+        void run() throws IOException;
+    }
+
+    /**
+     * Reads the current contents, falling back to the previous version if the
+     * current file is missing or fails its checksum
+     *
+     * @return the contents
+     *
+     * @throws IOException when neither version can be read and verified
+     */
+    public byte[] read() throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        read((input, length) -> {
+            contents.reset();
+            input.transferTo(contents);
+        });
+        return contents.toByteArray();
+    }
+
+    /**
+     * Streams the current contents to a reader, falling back to the previous
+     * version if the current file is missing or fails its checksum
+     * <br>
+     * The checksum is computed while the reader consumes the stream and only
+     * checked once it returns, so the reader is called again with the next
+     * candidate if the check fails. It must discard anything it built from
+     * the earlier call when that happens.
+     * <br>
+     * The candidates are the current pair; the current file with the
+     * temporary sidecar, left by a crash between the last two renames; and
+     * the backup pair.
+     *
+     * @param reader receives the contents
+     *
+     * @throws IOException when neither version can be read and verified
+     */
+    public void read(Reader reader) throws IOException {
+        IOException failure;
+        try {
+            readVerified(file, sidecar, reader);
+            return;
+        } catch (IOException e) {
+            failure = e;
+        }
+        if (Files.exists(tempSidecar) && Files.exists(file)) {
+            try {
+                readVerified(file, tempSidecar, reader);
+                return;
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        if (!Files.exists(backup)) {
+            throw failure;
+        }
+        LOG.warning("Falling back to " + backup + ": " + failure.getMessage());
+        readVerified(backup, backupSidecar, reader);
+    }
+
+    /**
+     * Streams a file to a reader and checks it against its sidecar, if the
+     * sidecar exists
+     *
+     * @param data     the file to read
+     * @param checksum the sidecar holding the expected checksum
+     * @param reader   receives the contents
+     *
+     * @throws IOException when the file cannot be read or does not match
+     */
+    private static void readVerified(Path data, Path checksum, Reader reader) throws IOException {
+        String expected;
+        try {
+            expected = new String(Files.readAllBytes(checksum), StandardCharsets.US_ASCII).trim();
+        } catch (NoSuchFileException e) {
+            expected = null;
+        }
+        long length = Files.size(data);
+        CRC32C crc = new CRC32C();
+        IOException failure = null; // Reported only if the checksum matches
+        try (CheckedInputStream input = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(data)), crc)) {
+            try {
+                reader.read(input, length);
+            } catch (IOException e) {
+                failure = e;
+            }
+            // Consume whatever the reader left so the checksum covers the whole file
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        if (expected != null) {
+            String actual = String.format(SIDECAR_FORMAT, crc.getValue(), length);
+            if (!expected.equals(actual)) {
+                throw new IOException(data + " is corrupt: expected " + expected + " but found " + actual);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Replaces the contents, keeping the current version as the backup
+     *
+     * @param contents the new contents
+     *
+     * @throws IOException when the contents cannot be written
+     */
+    public void write(byte[] contents) throws IOException {
+        for (Step step : steps(contents)) {
+            step.run();
+        }
+    }
+
+    /**
+     * Returns the file operations of a write, in order, so a test can stop
+     * part way as a crash would
+     * <br>
+     * The new pair is written under temporary names. The current pair is
+     * then linked to temporary backup names and renamed over the backup
+     * pair, leaving the current pair as it was. Only then is the new pair
+     * renamed over the current one, data first.
+     *
+     * @param contents the new contents
+     * @return the operations
+     */
+    List<Step> steps(byte[] contents) {
+        boolean[] current = new boolean[2]; // Whether the data file and its sidecar existed
+        return List.of(
+                () -> writeSynced(tempFile, contents),
+                () -> writeSynced(tempSidecar, describe(contents).getBytes(StandardCharsets.US_ASCII)),
+                () -> {
+                    current[0] = Files.exists(file);
+                    current[1] = current[0] && Files.exists(sidecar);
+                    Files.deleteIfExists(tempBackup);
+                    Files.deleteIfExists(tempBackupSidecar);
+                    if (current[0]) {
+                        link(file, tempBackup);
+                    }
+                },
+                () -> {
+                    if (current[1]) {
+                        link(sidecar, tempBackupSidecar);
+                    }
+                },
+                () -> {
+                    if (current[0]) {
+                        move(tempBackup, backup);
+                    }
+                },
+                () -> {
+                    if (current[1]) {
+                        move(tempBackupSidecar, backupSidecar);
+                    } else if (current[0]) {
+                        Files.deleteIfExists(backupSidecar);
+                    }
+                    syncDirectory();
+                },
+                () -> move(tempFile, file),
+                () -> {
+                    move(tempSidecar, sidecar);
+                    syncDirectory();
+                });
+    }
+
+    /**
+     * Removes the current and previous versions along with their sidecars,
+     * and anything a crashed write left behind
+     *
+     * @throws IOException when a file cannot be deleted
+     */
+    public void delete() throws IOException {
+        for (Path path : List.of(file, sidecar, backup, backupSidecar, tempFile, tempSidecar, tempBackup,
+                tempBackupSidecar)) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Returns the sidecar line describing the given contents
+     *
+     * @param contents the contents to describe
+     * @return the checksum and length of the contents
+     */
+    private static String describe(byte[] contents) {
+        CRC32C crc = new CRC32C();
+        crc.update(contents);
+        return String.format(SIDECAR_FORMAT, crc.getValue(), contents.length);
+    }
+
+    /**
+     * Writes a whole file and forces it to disk
+     *
+     * @param path     the file to write
+     * @param contents the contents of the file
+     *
+     * @throws IOException when the file cannot be written
+     */
+    private static void writeSynced(Path path, byte[] contents) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Gives a file a second name without copying it, or copies it and forces
+     * the copy to disk where the file system has no hard links
+     *
+     * @param existing the file
+     * @param link     the new name, which must not exist
+     *
+     * @throws IOException when the file can neither be linked nor copied
+     */
+    private static void link(Path existing, Path link) throws IOException {
+        try {
+            Files.createLink(link, existing);
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            LOG.fine("Copying " + existing + " since it cannot be linked: " + e.getMessage());
+        }
+        Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel channel = FileChannel.open(link, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Renames a file, atomically where the file system allows it
+     *
+     * @param source the file to rename
+     * @param target the new name, replaced if it exists
+     *
+     * @throws IOException when the file cannot be renamed
+     */
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces the renames in the containing directory to disk. Not every
+     * platform can open a directory, in which case the renames are left to
+     * the operating system.
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            LOG.fine("Could not sync directory " + file.getParent() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Keyboard ids kept in the order of a sort key, with the id breaking ties
+ * <br>
+ * Used for keyset pagination: a page starts right after the (key, id)
+ * position of the last keyboard on the previous page, so reading a page
+ * costs a tree lookup plus one step per keyboard on it, however large the
+ * catalog is. The key each id was indexed under is remembered, so an id can
+ * be moved or removed even after the keyboard object has been changed in
+ * place.
+ * <br>
+ * Not thread-safe; the owning DAO updates and queries it under its own lock.
+ *
+ * @param <K> the type of the sort key
+ *
+ * @author Team 2
+ */
+public class SortedKeyIndex<K extends Comparable<? super K>> {
+
+    /**
+     * A (key, id) position in the index
+     *
+     * @param <K> the type of the sort key
+     */
+    public static final class Position<K extends Comparable<? super K>> implements Comparable<Position<K>> {
+        private final K key;
+        private final int id;
+
+        /**
+         * Creates a position
+         *
+         * @param key the sort key
+         * @param id  the keyboard id
+         */
+        public Position(K key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        /**
+         * Returns the sort key
+         *
+         * @return the key
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the keyboard id
+         *
+         * @return the id
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Orders positions by key, then by id
+         */
+        @Override
+        public int compareTo(Position<K> other) {
+            int byKey = key.compareTo(other.key);
+            return byKey != 0 ? byKey : Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Position)) {
+                return false;
+            }
+            Position<?> other = (Position<?>) o;
+            return id == other.id && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + id;
+        }
+    }
+
+    private final TreeSet<Position<K>> positions = new TreeSet<>();
+    private final Map<Integer, K> keys = new HashMap<>(); // Key each id was indexed under
+
+    /**
+     * Adds an id under a key, moving it if it was indexed under another key
+     *
+     * @param id  the keyboard id
+     * @param key the sort key, must not be null
+     */
+    public void put(int id, K key) {
+        K previous = keys.put(id, key);
+        if (previous != null) {
+            positions.remove(new Position<>(previous, id));
+        }
+        positions.add(new Position<>(key, id));
+    }
+
+    /**
+     * Removes an id from the index
+     *
+     * @param id the keyboard id
+     */
+    public void remove(int id) {
+        K previous = keys.remove(id);
+        if (previous != null) {
+            positions.remove(new Position<>(previous, id));
+        }
+    }
+
+    /**
+     * Returns the key an id was last indexed under
+     *
+     * @param id the keyboard id
+     * @return the key, or null if the id is not indexed
+     */
+    public K get(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * Removes every id from the index
+     */
+    public void clear() {
+        positions.clear();
+        keys.clear();
+    }
+
+    /**
+     * Walks the index in order, starting right after a position
+     *
+     * @param after      the position to start after, null to start at the
+     *                   beginning (or the end when descending)
+     * @param descending true to walk from the largest key down
+     * @return the positions after the given one, in walking order
+     */
+    public Iterator<Position<K>> after(Position<K> after, boolean descending) {
+        NavigableSet<Position<K>> view = positions;
+        if (after != null) {
+            view = descending ? positions.headSet(after, false) : positions.tailSet(after, false);
+        }
+        return descending ? view.descendingIterator() : view.iterator();
+    }
+
+    /**
+     * Walks the index in order, starting at the first position whose key is
+     * at least (or, descending, at most) the given key
+     *
+     * @param key        the key to start at
+     * @param descending true to walk from the largest key down
+     * @return the positions from the given key on, in walking order
+     */
+    public Iterator<Position<K>> from(K key, boolean descending) {
+        if (descending) {
+            return positions.headSet(new Position<>(key, Integer.MAX_VALUE), true).descendingIterator();
+        }
+        return positions.tailSet(new Position<>(key, Integer.MIN_VALUE), true).iterator();
+    }
+
+    /**
+     * Returns the number of indexed ids
+     *
+     * @return the number of ids
+     */
+    public int size() {
+        return keys.size();
+    }
+}
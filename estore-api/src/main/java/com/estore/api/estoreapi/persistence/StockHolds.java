@@ -0,0 +1,471 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.estore.api.estoreapi.model.HoldChange;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stock taken out of the inventory for users' carts, given back if the cart
+ * is not bought in time
+ * <br>
+ * Every hold belongs to one user and one keyboard and expires a fixed time
+ * after it was last taken. Expiry times live in a {@link TimingWheel} with
+ * one bucket per sweep interval, and a single background thread sweeps the
+ * wheel, returning the units of every hold that came due in one
+ * {@link InventoryDAO#releaseStock(Map)} call.
+ * <br>
+ * The units a hold took are saved with the inventory, so holds are saved
+ * too: every hold and every end is appended to a log with the hold's
+ * deadline. On startup the log is replayed, holds that expired while the
+ * application was down give their units back and the rest are swept as
+ * usual. An end is logged before its units go back to the inventory, so a
+ * crash in between leaves the units out of stock rather than returning them
+ * twice.
+ * <br>
+ * When holds are disabled in the settings every method does nothing, and
+ * stock taken for a cart stays taken as before.
+ *
+ * @author Team 2
+ */
+@Component
+public class StockHolds {
+    private static final Logger LOG = Logger.getLogger(StockHolds.class.getName());
+    private static final int WHEEL_BUCKETS = 4096;
+    private static final int MIN_COMPACT_RECORDS = 1024; // Log size below which it is never compacted
+
+    /**
+     * Units of one keyboard held for one user's cart
+     */
+    private static final class Hold {
+        private final String username;
+        private final int keyboardId;
+        private final int quantity;
+        private final long dueTick;
+
+        /**
+         * Creates a hold
+         *
+         * @param username   the user whose cart holds the units
+         * @param keyboardId the keyboard the units are of
+         * @param quantity   the number of units
+         * @param dueTick    the tick the hold expires on
+         */
+        private Hold(String username, int keyboardId, int quantity, long dueTick) {
+            this.username = username;
+            this.keyboardId = keyboardId;
+            this.quantity = quantity;
+            this.dueTick = dueTick;
+        }
+    }
+
+    private final InventoryDAO inventoryDAO;
+    private final boolean enabled;
+    private final long tickMs;
+    private final long ttlTicks;
+    private final LongSupplier clock; // Milliseconds
+    private final TimingWheel<Hold> wheel;
+    private final Map<String, Map<Integer, TimingWheel.Timeout<Hold>>> holdsByUser = new HashMap<>();
+    private MutationLog<HoldChange> log; // Null when holds are disabled or only kept in memory
+    private ScheduledExecutorService sweeper; // Null when holds are disabled or swept by hand
+
+    /**
+     * Creates the holds, settles the ones saved in the log and starts
+     * sweeping them, if enabled in the settings
+     *
+     * @param inventoryDAO the inventory expired holds are returned to
+     * @param settings     whether holds are enabled, their lifetime and the
+     *                     sweep interval
+     * @param objectMapper converts logged holds to and from JSON
+     * @param filename     the log holds are saved to, empty to only keep
+     *                     them in memory
+     *
+     * @throws IOException if the log cannot be read or the inventory cannot
+     *                     be saved
+     */
+    @Autowired
+    public StockHolds(InventoryDAO inventoryDAO, PersistenceSettings settings, ObjectMapper objectMapper,
+            @Value("${cart.holds.file:}") String filename) throws IOException {
+        this(inventoryDAO, settings, objectMapper, filename, System::currentTimeMillis);
+        startSweeping();
+    }
+
+    /**
+     * Creates holds that are only kept in memory and starts sweeping them, if
+     * enabled in the settings. Units still held when the application stops
+     * stay out of stock.
+     *
+     * @param inventoryDAO the inventory expired holds are returned to
+     * @param settings     whether holds are enabled, their lifetime and the
+     *                     sweep interval
+     */
+    public StockHolds(InventoryDAO inventoryDAO, PersistenceSettings settings) {
+        this(inventoryDAO, settings, System::currentTimeMillis);
+        startSweeping();
+    }
+
+    /**
+     * Creates holds saved to a log that are only swept by calling
+     * {@link #sweep()}, settling the holds already in the log
+     *
+     * @param inventoryDAO the inventory expired holds are returned to
+     * @param settings     whether holds are enabled, their lifetime and the
+     *                     sweep interval
+     * @param objectMapper converts logged holds to and from JSON
+     * @param filename     the log holds are saved to, empty to only keep
+     *                     them in memory
+     * @param clock        the current time in milliseconds
+     *
+     * @throws IOException if the log cannot be read or the inventory cannot
+     *                     be saved
+     */
+    StockHolds(InventoryDAO inventoryDAO, PersistenceSettings settings, ObjectMapper objectMapper,
+            String filename, LongSupplier clock) throws IOException {
+        this(inventoryDAO, settings, clock);
+        if (!enabled) {
+            return;
+        }
+        if (filename == null || filename.isEmpty()) {
+            LOG.warning("cart.holds.file is not set, so units held at shutdown stay out of stock");
+            return;
+        }
+        log = new MutationLog<>(filename, objectMapper, HoldChange.class, settings.isWalSync());
+        recover();
+    }
+
+    /**
+     * Creates holds kept in memory that are only swept by calling
+     * {@link #sweep()}
+     *
+     * @param inventoryDAO the inventory expired holds are returned to
+     * @param settings     whether holds are enabled, their lifetime and the
+     *                     sweep interval
+     * @param clock        the current time in milliseconds
+     */
+    StockHolds(InventoryDAO inventoryDAO, PersistenceSettings settings, LongSupplier clock) {
+        this.inventoryDAO = inventoryDAO;
+        this.enabled = settings.isCartHoldsEnabled();
+        this.tickMs = Math.max(1, settings.getCartHoldTickMs());
+        this.ttlTicks = Math.max(1, TimeUnit.SECONDS.toMillis(settings.getCartHoldTtlSeconds()) / tickMs);
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(WHEEL_BUCKETS, clock.getAsLong() / tickMs);
+    }
+
+    /**
+     * Returns whether holds are enabled
+     *
+     * @return true if stock taken for carts is given back on expiry
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records units a user's cart has just taken out of stock. Units already
+     * held for the same keyboard are added to, and the hold's lifetime starts
+     * over.
+     *
+     * @param username   the user whose cart took the units
+     * @param keyboardId the keyboard the units are of
+     * @param quantity   the number of units taken
+     *
+     * @throws IOException if the hold cannot be logged
+     */
+    public synchronized void hold(String username, int keyboardId, int quantity) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Map<Integer, TimingWheel.Timeout<Hold>> holds = holdsByUser.get(username);
+        TimingWheel.Timeout<Hold> previous = holds == null ? null : holds.get(keyboardId);
+        if (previous != null && previous.isPending()) {
+            quantity += previous.getItem().quantity;
+        }
+        long dueTick = currentTick() + ttlTicks;
+        if (log != null) {
+            log.append(HoldChange.hold(username, keyboardId, quantity, dueTick * tickMs));
+        }
+        if (previous != null) {
+            wheel.cancel(previous);
+        }
+        schedule(new Hold(username, keyboardId, quantity, dueTick));
+    }
+
+    /**
+     * Gives back the units a user's cart holds of one keyboard, when it is
+     * taken out of the cart
+     *
+     * @param username   the user
+     * @param keyboardId the keyboard
+     * @return true if the cart held units of the keyboard
+     *
+     * @throws IOException if the end of the hold cannot be logged or the
+     *                     inventory cannot be saved
+     */
+    public boolean release(String username, int keyboardId) throws IOException {
+        int quantity;
+        synchronized (this) {
+            Map<Integer, TimingWheel.Timeout<Hold>> holds = holdsByUser.get(username);
+            TimingWheel.Timeout<Hold> timeout = holds == null ? null : holds.get(keyboardId);
+            if (timeout == null || !timeout.isPending()) {
+                return false;
+            }
+            if (log != null) {
+                log.append(HoldChange.end(username, keyboardId));
+            }
+            wheel.cancel(timeout);
+            holds.remove(keyboardId);
+            if (holds.isEmpty()) {
+                holdsByUser.remove(username);
+            }
+            quantity = timeout.getItem().quantity;
+        }
+        inventoryDAO.releaseStock(keyboardId, quantity);
+        return true;
+    }
+
+    /**
+     * Gives back every unit a user's cart holds, when the cart is emptied
+     *
+     * @param username the user
+     * @return the number of keyboards the cart held units of
+     *
+     * @throws IOException if the end of the holds cannot be logged or the
+     *                     inventory cannot be saved
+     */
+    public int releaseAll(String username) throws IOException {
+        Map<Integer, Integer> units = claim(username);
+        if (!units.isEmpty()) {
+            inventoryDAO.releaseStock(units);
+        }
+        return units.size();
+    }
+
+    /**
+     * Takes over every unit a user's cart holds, when the cart is bought. The
+     * holds end without giving the units back, so they count towards the
+     * purchase.
+     *
+     * @param username the user
+     * @return the units held, by keyboard id, empty if none
+     *
+     * @throws IOException if the end of the holds cannot be logged
+     */
+    public synchronized Map<Integer, Integer> claim(String username) throws IOException {
+        Map<Integer, Integer> units = new HashMap<>();
+        Map<Integer, TimingWheel.Timeout<Hold>> holds = holdsByUser.get(username);
+        if (holds == null) {
+            return units;
+        }
+        if (log != null) {
+            List<HoldChange> ends = new ArrayList<>();
+            for (Integer keyboardId : holds.keySet()) {
+                ends.add(HoldChange.end(username, keyboardId));
+            }
+            log.append(ends);
+        }
+        holdsByUser.remove(username);
+        for (TimingWheel.Timeout<Hold> timeout : holds.values()) {
+            if (wheel.cancel(timeout)) {
+                units.put(timeout.getItem().keyboardId, timeout.getItem().quantity);
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Returns the units of every expired hold to the inventory, in one call.
+     * If the ends cannot be logged the units stay out of stock until the
+     * next startup, which finds the holds expired in the log.
+     *
+     * @return the number of holds that expired
+     *
+     * @throws IOException if the end of the holds cannot be logged or the
+     *                     inventory cannot be saved
+     */
+    public int sweep() throws IOException {
+        Map<Integer, Integer> units = new HashMap<>();
+        List<HoldChange> ends = new ArrayList<>();
+        int expired;
+        synchronized (this) {
+            expired = wheel.advance(currentTick(), hold -> {
+                Map<Integer, TimingWheel.Timeout<Hold>> holds = holdsByUser.get(hold.username);
+                holds.remove(hold.keyboardId);
+                if (holds.isEmpty()) {
+                    holdsByUser.remove(hold.username);
+                }
+                units.merge(hold.keyboardId, hold.quantity, Integer::sum);
+                ends.add(HoldChange.end(hold.username, hold.keyboardId));
+            });
+            if (log != null) {
+                if (log.size() + ends.size() > Math.max(MIN_COMPACT_RECORDS, 2 * wheel.size())) {
+                    compact();
+                } else if (!ends.isEmpty()) {
+                    log.append(ends);
+                }
+            }
+        }
+        if (!units.isEmpty()) {
+            inventoryDAO.releaseStock(units);
+            LOG.fine("Released " + expired + " expired cart holds");
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of holds that have not expired or ended
+     *
+     * @return the number of holds
+     */
+    public synchronized int size() {
+        return wheel.size();
+    }
+
+    /**
+     * Stops the background sweep and closes the log when the application
+     * shuts down. Holds still open are settled from the log on the next
+     * startup; without a log their units stay out of stock.
+     *
+     * @throws IOException if the log cannot be closed
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        synchronized (this) {
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        }
+    }
+
+    /**
+     * Starts sweeping holds from a background thread, if enabled
+     */
+    private void startSweeping() {
+        if (enabled) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cart-hold-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::backgroundSweep, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Replays the log, giving back the units of every hold that expired while
+     * the application was down and scheduling the rest. The log is then
+     * rewritten with just the open holds before any units are given back, so
+     * a crash during startup cannot give them back twice.
+     *
+     * @throws IOException if the log cannot be read or rewritten or the
+     *                     inventory cannot be saved
+     */
+    private synchronized void recover() throws IOException {
+        Map<String, Map<Integer, HoldChange>> open = new HashMap<>();
+        int replayed = log.replay(change -> {
+            if (change.getType() == HoldChange.Type.HOLD) {
+                open.computeIfAbsent(change.getUsername(), key -> new HashMap<>())
+                        .put(change.getKeyboardId(), change);
+            } else {
+                Map<Integer, HoldChange> holds = open.get(change.getUsername());
+                if (holds != null) {
+                    holds.remove(change.getKeyboardId());
+                    if (holds.isEmpty()) {
+                        open.remove(change.getUsername());
+                    }
+                }
+            }
+        });
+        long now = clock.getAsLong();
+        Map<Integer, Integer> units = new HashMap<>();
+        int expired = 0;
+        for (Map<Integer, HoldChange> holds : open.values()) {
+            for (HoldChange change : holds.values()) {
+                if (change.getDeadline() <= now) {
+                    units.merge(change.getKeyboardId(), change.getQuantity(), Integer::sum);
+                    ++expired;
+                } else {
+                    long dueTick = change.getDeadline() / tickMs;
+                    schedule(new Hold(change.getUsername(), change.getKeyboardId(), change.getQuantity(), dueTick));
+                }
+            }
+        }
+        compact();
+        if (!units.isEmpty()) {
+            inventoryDAO.releaseStock(units);
+        }
+        if (replayed > 0) {
+            LOG.info("Replayed " + replayed + " cart hold changes, released " + expired + " expired holds and kept "
+                    + wheel.size());
+        }
+    }
+
+    /**
+     * Rewrites the log with just the open holds
+     *
+     * @throws IOException if the log cannot be rewritten
+     */
+    private void compact() throws IOException {
+        List<HoldChange> holds = new ArrayList<>();
+        for (Map<Integer, TimingWheel.Timeout<Hold>> timeouts : holdsByUser.values()) {
+            for (TimingWheel.Timeout<Hold> timeout : timeouts.values()) {
+                Hold hold = timeout.getItem();
+                holds.add(HoldChange.hold(hold.username, hold.keyboardId, hold.quantity, hold.dueTick * tickMs));
+            }
+        }
+        log.truncate();
+        if (!holds.isEmpty()) {
+            log.append(holds);
+        }
+    }
+
+    /**
+     * Schedules a hold's expiry and files it under its user
+     *
+     * @param hold the hold
+     */
+    private void schedule(Hold hold) {
+        holdsByUser.computeIfAbsent(hold.username, key -> new HashMap<>())
+                .put(hold.keyboardId, wheel.schedule(hold, hold.dueTick));
+    }
+
+    /**
+     * Sweeps from the background thread, logging failures instead of
+     * stopping the schedule
+     */
+    private void backgroundSweep() {
+        try {
+            sweep();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.SEVERE, "Releasing expired cart holds failed", e);
+        }
+    }
+
+    /**
+     * Returns the current tick of the wheel's clock
+     *
+     * @return the tick
+     */
+    private long currentTick() {
+        return clock.getAsLong() / tickMs;
+    }
+}
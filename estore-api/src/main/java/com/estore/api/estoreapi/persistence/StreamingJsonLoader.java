@@ -0,0 +1,87 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads a JSON array one element at a time
+ * <br>
+ * Only the element currently being parsed is held in memory, so a data file
+ * can be loaded straight into a DAO's map without first building the whole
+ * array. Progress is logged as the file is read.
+ *
+ * @param <T> the type of the array elements
+ *
+ * @author Team 2
+ */
+public class StreamingJsonLoader<T> {
+    private static final Logger LOG = Logger.getLogger(StreamingJsonLoader.class.getName());
+    private static final int PROGRESS_PERCENT_STEP = 10; // Log whenever another 10% has been read
+    private static final int PROGRESS_RECORD_STEP = 100000; // Log every 100k records when the size is unknown
+
+    private final ObjectMapper objectMapper;
+    private final Class<T> elementType;
+    private final String description;
+
+    /**
+     * Creates a loader
+     *
+     * @param objectMapper converts elements from JSON
+     * @param elementType  the class of the array elements
+     * @param description  what is being loaded, used in progress messages
+     */
+    public StreamingJsonLoader(ObjectMapper objectMapper, Class<T> elementType, String description) {
+        this.objectMapper = objectMapper;
+        this.elementType = elementType;
+        this.description = description;
+    }
+
+    /**
+     * Parses a JSON array from a stream, passing each element on as soon as it
+     * has been read
+     *
+     * @param input      the stream holding the array, left open
+     * @param totalBytes size of the stream in bytes, or a negative number if
+     *                   unknown
+     * @param consumer   called with each element in order
+     * @return the number of elements read
+     *
+     * @throws IOException when the stream cannot be read or is not a JSON array
+     */
+    public long load(InputStream input, long totalBytes, Consumer<T> consumer) throws IOException {
+        long start = System.nanoTime();
+        long count = 0;
+        int nextPercent = PROGRESS_PERCENT_STEP;
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of " + description + " but found "
+                        + parser.currentToken());
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                consumer.accept(objectMapper.readValue(parser, elementType));
+                ++count;
+                if (totalBytes > 0) {
+                    long percent = parser.getCurrentLocation().getByteOffset() * 100 / totalBytes;
+                    if (percent >= nextPercent) {
+                        LOG.info("Loading " + description + ": " + percent + "% (" + count + " records)");
+                        nextPercent = (int) (percent / PROGRESS_PERCENT_STEP + 1) * PROGRESS_PERCENT_STEP;
+                    }
+                } else if (count % PROGRESS_RECORD_STEP == 0) {
+                    LOG.info("Loading " + description + ": " + count + " records");
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Unexpected " + parser.currentToken() + " in JSON array of " + description);
+            }
+        }
+        LOG.info("Loaded " + count + " " + description + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return count;
+    }
+}
@@ -0,0 +1,180 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel of timeouts counted in ticks
+ * <br>
+ * Each timeout sits in the bucket of the tick it is due on, modulo the number
+ * of buckets, and counts how many more turns of the wheel it has to wait.
+ * Scheduling and cancelling are constant time, and advancing one tick only
+ * visits the timeouts in one bucket, so hundreds of thousands of timeouts
+ * need neither a timer each nor a sorted structure.
+ * <br>
+ * Not thread-safe; the owner must synchronize access.
+ *
+ * @param <T> the type of the scheduled items
+ *
+ * @author Team 2
+ */
+public class TimingWheel<T> {
+    /**
+     * A scheduled item, which may be cancelled until it is due
+     *
+     * @param <T> the type of the item
+     */
+    public static final class Timeout<T> {
+        private final T item;
+        private long rounds; // Turns of the wheel left before the timeout is due
+        private int bucket = -1; // -1 once the timeout has expired or been cancelled
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        /**
+         * Creates a timeout for an item
+         *
+         * @param item the item
+         */
+        private Timeout(T item) {
+            this.item = item;
+        }
+
+        /**
+         * Returns the scheduled item
+         *
+         * @return the item
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Returns whether the timeout has neither expired nor been cancelled
+         *
+         * @return true if the timeout is still waiting
+         */
+        public boolean isPending() {
+            return bucket >= 0;
+        }
+    }
+
+    private final Timeout<T>[] buckets; // First timeout in each bucket, linked through next
+    private final int mask;
+    private long tick; // The next tick to be processed
+    private int size;
+
+    /**
+     * Creates an empty wheel
+     *
+     * @param bucketCount the number of buckets, rounded up to a power of two
+     * @param startTick   the first tick the wheel will process
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int bucketCount, long startTick) {
+        int count = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        this.buckets = (Timeout<T>[]) new Timeout<?>[count];
+        this.mask = count - 1;
+        this.tick = startTick;
+    }
+
+    /**
+     * Schedules an item
+     *
+     * @param item     the item
+     * @param dueTick  the tick the item is due on; a tick already processed
+     *                 makes it due on the next one
+     * @return the timeout, for cancelling it
+     */
+    public Timeout<T> schedule(T item, long dueTick) {
+        long due = Math.max(dueTick, tick);
+        Timeout<T> timeout = new Timeout<>(item);
+        timeout.rounds = (due - tick) / buckets.length;
+        timeout.bucket = (int) (due & mask);
+        timeout.next = buckets[timeout.bucket];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        buckets[timeout.bucket] = timeout;
+        ++size;
+        return timeout;
+    }
+
+    /**
+     * Cancels a timeout so its item never comes due
+     *
+     * @param timeout the timeout returned by {@link #schedule(Object, long)}
+     * @return true if the timeout was still pending
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (!timeout.isPending()) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * Processes every tick up to and including the given one, handing each
+     * item that comes due to a consumer
+     *
+     * @param now     the current tick
+     * @param expired receives the items that came due
+     * @return the number of items that came due
+     */
+    public int advance(long now, Consumer<T> expired) {
+        int count = 0;
+        for (; tick <= now; ++tick) {
+            Timeout<T> timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.rounds == 0) {
+                    unlink(timeout);
+                    expired.accept(timeout.item);
+                    ++count;
+                } else {
+                    --timeout.rounds;
+                }
+                timeout = next;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the next tick the wheel will process
+     *
+     * @return the tick
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the number of pending timeouts
+     *
+     * @return the number of timeouts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes a pending timeout from its bucket
+     *
+     * @param timeout the timeout
+     */
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        --size;
+    }
+}
@@ -3,7 +3,9 @@ package com.estore.api.estoreapi.persistence;
 import com.estore.api.estoreapi.model.*;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The interface for UserFileDAO which interacts with json storage
@@ -27,6 +29,18 @@ public interface UserDAO {
      */
     User[] getUsers();
 
+    /**
+     * writes every user to a stream as newline-delimited JSON, one user per
+     * line, without building the whole array. Each user is written once, as it
+     * was at one moment; users changed during the export may appear in their
+     * old or new state, and users created during it are left out.
+     * 
+     * @param out the stream to write to, left open
+     * @return the number of users written
+     * @throws IOException if writing to the stream or reading a user fails
+     */
+    int exportUsers(OutputStream out) throws IOException;
+
     /**
      * creates a user with the provided username
      * 
@@ -143,11 +157,13 @@ public interface UserDAO {
 
     /**
      * 
-     * Returns a Keyboard object from a User's cart.
+     * Returns a Keyboard object from a User's cart. Keyboards are matched by id
+     * only, so a cart entry is found whatever its price or quantity.
      * 
      * @param user     the User object whose cart is being queried
      * @param keyboard the Keyboard object being queried in the cart
-     * @return the Keyboard object from the cart if it exists, null otherwise
+     * @return the Keyboard object in the cart with the same id if it exists, null
+     *         otherwise
      * @throws IOException if an I/O error occurs while accessing the User's cart
      */
     Keyboard getKeyboardFromCart(User user, Keyboard keyboard) throws IOException;
@@ -179,6 +195,21 @@ public interface UserDAO {
      */
     boolean addToUserOrderHistory(User user, Keyboard keyboard, int quantity) throws IOException;
 
+    /**
+     * 
+     * Moves the keyboards in a user's cart to their order history and empties
+     * the cart, saving the user once.
+     * 
+     * @param user      the User object who is checking out
+     * @param purchased copies of the cart entries the purchase was priced and
+     *                  reserved from; entries still in the cart would change
+     *                  along with it and hide a change of quantity
+     * @return true if the order was recorded, false if the cart no longer holds
+     *         exactly the purchased keyboards, in which case nothing changes
+     * @throws IOException if an I/O error occurs while saving the updated user data
+     */
+    boolean checkout(User user, List<Keyboard> purchased) throws IOException;
+
     /**
      * 
      * Removes a specified quantity of a keyboard from a user's cart and saves the
@@ -1,44 +1,167 @@
 package com.estore.api.estoreapi.persistence;
 
 import com.estore.api.estoreapi.model.*;
-import java.util.HashMap;
 import java.util.logging.Logger;
 import java.io.IOException;
 import java.security.Key;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+
+import javax.annotation.PreDestroy;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
  * Implementation of user methods to interact with storage in json files
+ * <br>
+ * Operations on one user lock only that user's stripe, plus the shared side
+ * of a store-wide read-write lock, so unrelated users are served in parallel.
+ * Operations over every user, such as {@link #getUsers()} and writing a
+ * snapshot, take the exclusive side and see no user half-changed.
  * 
  * @author Justin Ronca & Andrew Photinakis
  */
 @Component
 public class UserFileDAO implements UserDAO {
     private static final Logger LOG = Logger.getLogger(UserFileDAO.class.getName());
+    static final int LOCK_STRIPES = 64; // Locks shared out between usernames by hash
+    // Returned by persist() when the whole file must be saved once the user's lock is released
+    private static final CompletableFuture<Void> SAVE_AFTER_UNLOCK = new CompletableFuture<>();
+
+    /**
+     * A held user lock, released by unlocking it in a finally block
+     */
+    interface UserLock {
+        void unlock();
+    }
+
     private ObjectMapper objectMapper;
     private String filename;
-    HashMap<String, User> userMap;
+    private MutationLog<UserChange> journal; // Journal of changes since the last checkpoint, null when disabled
+    private ScheduledExecutorService checkpointer; // Writes users.json checkpoints in the background
+    private boolean checkpointDeferred; // The last checkpoint kept the journal, so the next holds the lock
+    private PersistenceWriter writer; // Coalesces saves in the background, null when disabled
+    private SnapshotFile snapshotFile; // Atomic, checksummed writes of filename, null when disabled
+    private final AtomicLong version = new AtomicLong(); // Sequence number of the last change
+    private UserShardDirectory shards; // One file per user, null when every user lives in filename
+    private Set<String> unloadedUsers; // Users with a shard file that has not been read yet
+    private boolean streamingLoad; // Parse filename one user at a time instead of as one array
+    private String binaryFilename; // Binary snapshot written instead of filename, null for JSON
+    private SnapshotFile binarySnapshotFile; // Atomic, checksummed writes of binaryFilename, null when disabled
+    private final ReentrantReadWriteLock usersLock = new ReentrantReadWriteLock(); // Shared per user, exclusive for all
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES]; // Per-user locks, picked by hash
+    Map<String, User> userMap;
+
+    /**
+     * creates a UserFileDAO instance and json storage
+     * 
+     * @param filename     name of the file to store info in
+     * @param objectMapper object mapper to write to file with
+     * @throws IOException
+     */
+    public UserFileDAO(String filename, ObjectMapper objectMapper) throws IOException {
+        this(filename, objectMapper, new PersistenceSettings());
+    }
 
     /**
      * creates a UserFileDAO instance and json storage
+     * <br>
+     * When the journal is enabled in the settings, changes are appended to a
+     * journal next to the json file and the json file is rewritten by a
+     * background checkpoint. With group commit enabled as well, appends are
+     * not synced one by one; a background writer syncs the journal once per
+     * window.
+     * <br>
+     * In sharded mode every user lives in a file of its own and is only read
+     * on first use. The journal is not needed in that mode since a change
+     * already rewrites just one user. Without the journal, group commit lets a
+     * background writer coalesce full saves of the json file.
      * 
      * @param filename     name of the file to store info in
      * @param objectMapper object mapper to write to file with
+     * @param settings     options controlling how changes are persisted
      * @throws IOException
      */
-    public UserFileDAO(@Value("${users.file}") String filename, ObjectMapper objectMapper) throws IOException {
+    @Autowired
+    public UserFileDAO(@Value("${users.file}") String filename, ObjectMapper objectMapper,
+            PersistenceSettings settings) throws IOException {
         this.filename = filename;
         this.objectMapper = objectMapper;
+        for (int i = 0; i < stripes.length; ++i) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.streamingLoad = settings.isStreamingLoad();
+        if (settings.getSnapshotFormat() == PersistenceSettings.SnapshotFormat.BINARY) {
+            binaryFilename = BinarySnapshot.filenameFor(filename);
+        }
+        if (settings.isAtomicSnapshots()) {
+            snapshotFile = new SnapshotFile(filename);
+            if (binaryFilename != null) {
+                binarySnapshotFile = new SnapshotFile(binaryFilename);
+            }
+        }
+        if (settings.getUserStorage() == PersistenceSettings.UserStorage.SHARDED) {
+            openShards(settings.getUsersDirectory(), settings.isAtomicSnapshots());
+            if (settings.isUsersJournalEnabled()) {
+                LOG.warning("users.journal.enabled is ignored with sharded user storage");
+            }
+            return;
+        }
         loadFromJSON();
+        if (settings.isUsersJournalEnabled()) {
+            boolean groupSync = settings.isGroupCommitEnabled() && settings.isWalSync();
+            journal = new MutationLog<>(filename + ".journal", objectMapper, UserChange.class,
+                    settings.isWalSync() && !groupSync);
+            recover();
+            if (groupSync) {
+                writer = new PersistenceWriter("users-writer", settings.getGroupCommitWindowMs(),
+                        settings.getGroupCommitDurability(), journal::force);
+            }
+            checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "users-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = settings.getUsersCheckpointIntervalMs();
+            checkpointer.scheduleWithFixedDelay(this::backgroundCheckpoint, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        } else if (settings.isGroupCommitEnabled()) {
+            writer = new PersistenceWriter("users-writer", settings.getGroupCommitWindowMs(),
+                    settings.getGroupCommitDurability(), this::flush);
+        }
     }
 
     /**
      * 
-     * Loads user data from a JSON file and updates the user map.
+     * Loads user data from a JSON file and updates the user map. With atomic
+     * snapshots the file is checked against its checksum, and the previous
+     * version is loaded instead if the check fails. With streaming load each
+     * user is put in the map as soon as it is parsed. With binary snapshots
+     * the binary file is read instead once it exists.
      * 
      * @throws IOException if an I/O error occurs while reading the JSON file
      * 
@@ -46,8 +169,43 @@ public class UserFileDAO implements UserDAO {
      *         otherwise
      */
     private boolean loadFromJSON() throws IOException {
-        userMap = new HashMap<>();
-        User[] userArray = objectMapper.readValue(new File(filename), User[].class);
+        userMap = new ConcurrentHashMap<>();
+        if (binaryFilename != null && new File(binaryFilename).exists()) {
+            if (binarySnapshotFile != null) {
+                binarySnapshotFile.read((input, length) -> {
+                    // Called again with the backup if the checksum fails
+                    userMap.clear();
+                    BinarySnapshot.readUsers(input, user -> userMap.put(user.getUsername(), user));
+                });
+            } else {
+                try (InputStream input = new FileInputStream(binaryFilename)) {
+                    BinarySnapshot.readUsers(input, user -> userMap.put(user.getUsername(), user));
+                }
+            }
+            return true;
+        }
+        if (streamingLoad) {
+            StreamingJsonLoader<User> loader = new StreamingJsonLoader<>(objectMapper, User.class, "users");
+            if (snapshotFile != null) {
+                snapshotFile.read((input, length) -> {
+                    // Called again with the backup if the checksum fails
+                    userMap.clear();
+                    loader.load(input, length, user -> userMap.put(user.getUsername(), user));
+                });
+            } else {
+                File file = new File(filename);
+                try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+                    loader.load(input, file.length(), user -> userMap.put(user.getUsername(), user));
+                }
+            }
+            return true;
+        }
+        User[] userArray;
+        if (snapshotFile != null) {
+            userArray = objectMapper.readValue(snapshotFile.read(), User[].class);
+        } else {
+            userArray = objectMapper.readValue(new File(filename), User[].class);
+        }
         for (User user : userArray) {
             userMap.put(user.getUsername(), user);
         }
@@ -56,7 +214,90 @@ public class UserFileDAO implements UserDAO {
 
     /**
      * 
-     * Saves the current user data to a JSON file.
+     * Opens the per-user shard directory. The first time it is used, every
+     * user in the JSON file is copied into a file of its own.
+     * 
+     * @param directory the directory holding one file per user
+     * @param atomic    whether user files are replaced atomically
+     * 
+     * @throws IOException if an I/O error occurs while reading or writing users
+     */
+    private void openShards(String directory, boolean atomic) throws IOException {
+        userMap = new ConcurrentHashMap<>();
+        shards = new UserShardDirectory(directory, objectMapper, atomic);
+        if (shards.isEmpty() && new File(filename).exists()) {
+            loadFromJSON();
+            for (User user : userMap.values()) {
+                shards.write(user);
+            }
+            LOG.info("Split " + userMap.size() + " users from " + filename + " into " + directory);
+        }
+        unloadedUsers = ConcurrentHashMap.newKeySet();
+        unloadedUsers.addAll(shards.usernames());
+        unloadedUsers.removeAll(userMap.keySet());
+    }
+
+    /**
+     * 
+     * Finds a user in the map, reading it from its shard file first if it has
+     * not been loaded yet. Must be called while holding the user's lock or the
+     * exclusive lock.
+     * 
+     * @param username the username of the user to find
+     * 
+     * @return the user, or null if no such user exists
+     */
+    private User lookup(String username) {
+        User user = userMap.get(username);
+        if (user == null && shards != null && unloadedUsers.remove(username)) {
+            try {
+                user = shards.read(username);
+            } catch (IOException e) {
+                unloadedUsers.add(username);
+                throw new UncheckedIOException(e);
+            }
+            if (user != null) {
+                userMap.put(username, user);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * 
+     * Locks one user for an operation on it. Other users stay available, but
+     * operations over every user wait until the lock is unlocked.
+     * 
+     * @param username the username of the user to lock
+     * 
+     * @return the held lock, to be unlocked when the operation is done
+     */
+    UserLock lockUser(String username) {
+        ReentrantLock stripe = stripes[Math.floorMod(Objects.hashCode(username), stripes.length)];
+        usersLock.readLock().lock();
+        stripe.lock();
+        return () -> {
+            stripe.unlock();
+            usersLock.readLock().unlock();
+        };
+    }
+
+    /**
+     * 
+     * Locks every user for an operation that needs a consistent view of all
+     * of them. Waits for the operations on single users that are under way.
+     * 
+     * @return the held lock, to be unlocked when the operation is done
+     */
+    UserLock lockAllUsers() {
+        usersLock.writeLock().lock();
+        return () -> usersLock.writeLock().unlock();
+    }
+
+    /**
+     * 
+     * Saves the current user data to a JSON file, or to the binary snapshot
+     * when that format is selected. Every user is locked while saving.
      * 
      * @throws IOException if an I/O error occurs while writing to the JSON file
      * 
@@ -64,20 +305,274 @@ public class UserFileDAO implements UserDAO {
      *         otherwise
      */
     private boolean saveToJSON() throws IOException {
-        User[] userArray = getUsers();
-        objectMapper.writeValue(new File(filename), userArray);
+        UserLock held = lockAllUsers();
+        try {
+            User[] userArray = getUsers();
+            if (binaryFilename != null) {
+                writeBinary(BinarySnapshot.writeUsers(userArray));
+            } else if (snapshotFile != null) {
+                snapshotFile.write(objectMapper.writeValueAsBytes(userArray));
+            } else {
+                objectMapper.writeValue(new File(filename), userArray);
+            }
+        } finally {
+            held.unlock();
+        }
         return true;
     }
 
+    /**
+     * 
+     * Records a change to a user.
+     * <br>
+     * In sharded mode only the changed user's file is rewritten. With the
+     * journal enabled only the changed user is appended to the journal. With
+     * group commit the background writer is told the users are dirty, and it
+     * syncs the journal or saves every user for every change in its window.
+     * Otherwise every user is saved to the JSON file, which needs every user
+     * locked and so is left for {@link #complete(CompletableFuture)}.
+     * <br>
+     * Must be called while holding the user's lock, and the result passed to
+     * {@link #complete(CompletableFuture)} after releasing it.
+     * 
+     * @param change the change that was just applied
+     * 
+     * @throws IOException if an I/O error occurs while writing the change
+     * 
+     * @return completes once the change is durable
+     */
+    private CompletableFuture<Void> persist(UserChange change) throws IOException {
+        if (shards != null) {
+            if (change.getType() == UserChange.Type.DELETE) {
+                shards.delete(change.getUsername());
+            } else {
+                shards.write(change.getUser());
+            }
+        } else if (journal != null) {
+            journal.append(change);
+            if (writer != null) {
+                return writer.markDirty();
+            }
+        } else if (writer != null) {
+            return writer.markDirty();
+        } else {
+            return SAVE_AFTER_UNLOCK;
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 
+     * Waits until a change recorded by {@link #persist(UserChange)} is
+     * durable, saving every user first if that is how it is recorded. Must be
+     * called after releasing the user's lock.
+     * 
+     * @param commit the result of persist
+     * 
+     * @throws IOException if an I/O error occurs while writing the change
+     */
+    private void complete(CompletableFuture<Void> commit) throws IOException {
+        if (commit == SAVE_AFTER_UNLOCK) {
+            saveToJSON();
+        } else {
+            PersistenceWriter.await(commit);
+        }
+    }
+
+    /**
+     * 
+     * Saves every user to the JSON file, called by the background writer once
+     * per commit window. Users are serialized under the lock since carts and
+     * order histories are changed in place, and written after releasing it.
+     * 
+     * @throws IOException if an I/O error occurs while writing the JSON file
+     */
+    private void flush() throws IOException {
+        byte[] contents;
+        UserLock held = lockAllUsers();
+        try {
+            contents = encodeUsers();
+        } finally {
+            held.unlock();
+        }
+        writeUsers(contents);
+    }
+
+    /**
+     * 
+     * Encodes every user as the JSON file or the binary snapshot would hold
+     * them. Must be called while holding every user's lock.
+     * 
+     * @return the encoded users
+     * 
+     * @throws IOException if the users cannot be encoded
+     */
+    private byte[] encodeUsers() throws IOException {
+        if (binaryFilename != null) {
+            return BinarySnapshot.writeUsers(getUsers());
+        }
+        return objectMapper.writeValueAsBytes(getUsers());
+    }
+
+    /**
+     * 
+     * Writes users encoded by {@link #encodeUsers()} to the JSON file or the
+     * binary snapshot
+     * 
+     * @param contents the encoded users
+     * 
+     * @throws IOException if an I/O error occurs while writing the file
+     */
+    private void writeUsers(byte[] contents) throws IOException {
+        if (binaryFilename != null) {
+            writeBinary(contents);
+        } else if (snapshotFile != null) {
+            snapshotFile.write(contents);
+        } else {
+            Files.write(Paths.get(filename), contents);
+        }
+    }
+
+    /**
+     * 
+     * Writes an encoded binary snapshot of every user, through a temporary
+     * file and checksum when atomic snapshots are enabled
+     * 
+     * @param contents the encoded snapshot
+     * 
+     * @throws IOException if an I/O error occurs while writing the file
+     */
+    private void writeBinary(byte[] contents) throws IOException {
+        if (binarySnapshotFile != null) {
+            binarySnapshotFile.write(contents);
+        } else {
+            Files.write(Paths.get(binaryFilename), contents);
+        }
+    }
+
+    /**
+     * 
+     * Writes every user to the JSON file and empties the journal, if anything
+     * has changed since the last checkpoint.
+     * <br>
+     * The users are encoded with every user locked and written after
+     * releasing the lock, so requests are only held up for the encoding. The
+     * journal is emptied only if nothing was appended to it meanwhile;
+     * otherwise it is kept, since replaying its records over the new file
+     * gives the same users, and the next checkpoint writes with the lock held
+     * so the journal cannot grow without bound under steady traffic.
+     * 
+     * @throws IOException if an I/O error occurs while writing the checkpoint
+     */
+    synchronized void checkpoint() throws IOException {
+        byte[] contents;
+        int journaled;
+        UserLock held = lockAllUsers();
+        try {
+            journaled = journal.size();
+            if (journaled == 0) {
+                return;
+            }
+            contents = encodeUsers();
+            if (checkpointDeferred) {
+                writeUsers(contents);
+                truncateJournal();
+                return;
+            }
+        } finally {
+            held.unlock();
+        }
+        writeUsers(contents);
+        held = lockAllUsers();
+        try {
+            if (journal.size() == journaled) {
+                truncateJournal();
+            } else {
+                checkpointDeferred = true;
+            }
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * 
+     * Empties the journal once a checkpoint holding every change in it has
+     * been written. Must be called while holding every user's lock.
+     * 
+     * @throws IOException if an I/O error occurs while truncating the journal
+     */
+    private void truncateJournal() throws IOException {
+        journal.truncate();
+        checkpointDeferred = false;
+        LOG.fine("Checkpointed users at version " + version.get());
+    }
+
+    /**
+     * 
+     * Runs a checkpoint from the background thread, logging failures so the
+     * schedule keeps going. The journal still holds every change until a
+     * checkpoint succeeds.
+     */
+    private void backgroundCheckpoint() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Users checkpoint failed", e);
+        }
+    }
+
+    /**
+     * 
+     * Replays the journal on top of the users loaded from the JSON file,
+     * restoring every change made after the last checkpoint.
+     * 
+     * @throws IOException if an I/O error occurs while reading the journal
+     */
+    private void recover() throws IOException {
+        int replayed = journal.replay(change -> {
+            if (change.getType() == UserChange.Type.DELETE) {
+                userMap.remove(change.getUsername());
+            } else {
+                userMap.put(change.getUsername(), change.getUser());
+            }
+            version.accumulateAndGet(change.getVersion(), Math::max);
+        });
+        if (replayed > 0) {
+            LOG.info("Replayed " + replayed + " user changes from the journal");
+        }
+    }
+
+    /**
+     * 
+     * Stops the background checkpoints, writes a final checkpoint and closes
+     * the journal so the next startup has nothing to replay. Flushes the
+     * background writer if group commit is in use.
+     * 
+     * @throws IOException if an I/O error occurs while writing the checkpoint
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+        if (journal == null) {
+            return;
+        }
+        checkpointer.shutdown();
+        checkpoint();
+        journal.close();
+    }
+
     /**
      * {@inheritDoc}
      */
     public User getUser(String username) {
-        synchronized (userMap) {
-            if (userMap.containsKey(username))
-                return userMap.get(username);
-            else
-                return null;
+        UserLock held = lockUser(username);
+        try {
+            return lookup(username);
+        } finally {
+            held.unlock();
         }
     }
 
@@ -85,7 +580,13 @@ public class UserFileDAO implements UserDAO {
      * {@inheritDoc}
      */
     public User[] getUsers() {
-        synchronized (userMap) {
+        UserLock held = lockAllUsers();
+        try {
+            if (shards != null) {
+                for (String username : new ArrayList<>(unloadedUsers)) {
+                    lookup(username);
+                }
+            }
             int num_users = userMap.size();
             User[] usersArray = new User[num_users];
             int i = 0;
@@ -94,50 +595,110 @@ public class UserFileDAO implements UserDAO {
                 i++;
             }
             return usersArray;
+        } finally {
+            held.unlock();
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <br>
+     * The usernames are taken once, in order, with every user locked, so
+     * each user is written at most once. Users whose shard file has not been
+     * read yet are read and written without being kept in memory.
+     */
+    public int exportUsers(OutputStream out) throws IOException {
+        String[] usernames;
+        UserLock all = lockAllUsers();
+        try {
+            List<String> names = new ArrayList<>(userMap.keySet());
+            if (shards != null) {
+                names.addAll(unloadedUsers);
+            }
+            usernames = names.toArray(new String[0]);
+        } finally {
+            all.unlock();
+        }
+        Arrays.sort(usernames);
+        int count = 0;
+        for (String username : usernames) {
+            byte[] json;
+            UserLock held = lockUser(username);
+            try {
+                User user = userMap.get(username);
+                if (user == null && shards != null && unloadedUsers.contains(username)) {
+                    user = shards.read(username);
+                }
+                json = user == null ? null : objectMapper.writeValueAsBytes(user);
+            } finally {
+                held.unlock();
+            }
+            if (json != null) {
+                out.write(json);
+                out.write('\n');
+                ++count;
+            }
+        }
+        return count;
+    }
+
     /**
      * {@inheritDoc}
      */
     public User createUser(User user) throws IOException {
-        synchronized (userMap) {
-            User newUser = new User(user.getUsername(), user.getPassword());
-            if (userMap.containsValue(newUser))
+        User newUser;
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
+            newUser = new User(user.getUsername(), user.getPassword());
+            if (lookup(newUser.getUsername()) != null)
                 return null;
             userMap.put(newUser.getUsername(), newUser);
-            saveToJSON();
-            return newUser;
+            commit = persist(UserChange.upsert(version.incrementAndGet(), newUser));
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return newUser;
     }
 
     /**
      * {@inheritDoc}
      */
     public User updateUser(User userToUpdate) throws IOException {
-        synchronized (userMap) {
-            if (!userMap.containsKey(userToUpdate.getUsername()) || !userMap.containsValue(userToUpdate)) {
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(userToUpdate.getUsername());
+        try {
+            if (lookup(userToUpdate.getUsername()) == null) {
                 return null;
             }
             userMap.put(userToUpdate.getUsername(), userToUpdate);
-            saveToJSON();
-            return userToUpdate;
+            commit = persist(UserChange.upsert(version.incrementAndGet(), userToUpdate));
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return userToUpdate;
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean deleteAccount(String username) throws IOException {
-        synchronized (userMap) {
-            if (userMap.containsKey(username)) {
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(username);
+        try {
+            if (lookup(username) != null) {
                 userMap.remove(username);
-                saveToJSON();
-                return true;
+                commit = persist(UserChange.delete(version.incrementAndGet(), username));
             } else {
                 return false;
             }
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return true;
     }
 
     /**
@@ -147,10 +708,15 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public void login(User user) throws IOException {
-        synchronized (userMap) {
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
             user.setLoginStatus(true);
-            saveToJSON();
+            commit = persist(UserChange.upsert(version.incrementAndGet(), user));
+        } finally {
+            held.unlock();
         }
+        complete(commit);
     }
 
     /**
@@ -158,10 +724,15 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public void logout(User user) throws IOException {
-        synchronized (userMap) {
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
             user.setLoginStatus(false);
-            saveToJSON();
+            commit = persist(UserChange.upsert(version.incrementAndGet(), user));
+        } finally {
+            held.unlock();
         }
+        complete(commit);
     }
 
     /**
@@ -171,22 +742,20 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public boolean addToUserCart(User user, Keyboard keyboard, int quantity) throws IOException {
-        synchronized (userMap) {
-            try {
-                if (!user.getUserCart().contains(keyboard)) {
-                    ArrayList<Keyboard> currCart = user.getUserCart();
-                    currCart.add(keyboard);
-                    user.setUserCart(currCart);
-                    saveToJSON();
-                    return true;
-                } else {
-                    LOG.info("Already contains keyboard");
-                    return false;
-                }
-            } catch (IOException e) {
-                throw new IOException();
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
+            if (user.getCart().add(keyboard)) {
+                commit = persist(UserChange.upsert(version.incrementAndGet(), user));
+            } else {
+                LOG.info("Already contains keyboard");
+                return false;
             }
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return true;
     }
 
     /**
@@ -197,25 +766,20 @@ public class UserFileDAO implements UserDAO {
 
     @Override
     public boolean removeFromCart(User user, Keyboard keyboard) throws IOException {
-        synchronized (userMap) {
-            try {
-                if (user.getUserCart().contains(keyboard)) {
-                    System.out.println("Containes keyboard");
-                    ArrayList<Keyboard> currCart = user.getUserCart();
-                    currCart.remove(keyboard);
-                    user.setUserCart(currCart);
-                    saveToJSON();
-                    return true;
-                } else {
-                    System.out.println("Hello");
-                    LOG.info("Does not contain keyboard");
-                    return false;
-                }
-            } catch (IOException e) {
-                System.out.println("Fucl");
-                throw new IOException();
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
+            if (user.getCart().remove(keyboard.getKeyboardId()) != null) {
+                commit = persist(UserChange.upsert(version.incrementAndGet(), user));
+            } else {
+                LOG.info("Does not contain keyboard");
+                return false;
             }
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return true;
     }
 
     /**
@@ -223,51 +787,79 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public boolean addToUserOrderHistory(User user, Keyboard keyboard, int quantity) throws IOException {
-        synchronized (userMap) {
-            try {
-                if (keyboard.getQuantity() != 0) {
-                    if (user.getUserOrderHistory().contains(keyboard)) {
-                        Keyboard keyboardIndex = user.getUserOrderHistory().get(user.getUserCart().indexOf(keyboard));
-                        keyboardIndex.setQuantity(keyboardIndex.getQuantity() + quantity);
-                    } else {
-                        user.getUserOrderHistory().add(new Keyboard(keyboard, quantity));
-                    }
-                    saveToJSON();
-                    return true;
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
+            if (keyboard.getQuantity() != 0) {
+                if (user.getUserOrderHistory().contains(keyboard)) {
+                    Keyboard keyboardIndex = user.getUserOrderHistory().get(user.getUserCart().indexOf(keyboard));
+                    keyboardIndex.setQuantity(keyboardIndex.getQuantity() + quantity);
                 } else {
-                    LOG.info("No keyboards to add");
+                    user.getUserOrderHistory().add(new Keyboard(keyboard, quantity));
                 }
+                commit = persist(UserChange.upsert(version.incrementAndGet(), user));
+            } else {
+                LOG.info("No keyboards to add");
                 return true;
-            } catch (IOException e) {
-                throw new IOException();
             }
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return true;
     }
 
     /**
      * {@inheritDoc}
+     * <br>
+     * The cart is compared and replaced under the user's lock, so the order
+     * and the emptied cart reach the store in the same save.
      */
     @Override
-    public boolean increaseQuantity(User user, Keyboard keyboard) throws IOException {
-        synchronized (userMap) {
-            try {
-                if (keyboard.getQuantity() == 0) {
-                    return false;
+    public boolean checkout(User user, List<Keyboard> purchased) throws IOException {
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
+            if (!purchased.equals(user.getUserCart())) {
+                return false;
+            }
+            ArrayList<Keyboard> history = user.getUserOrderHistory();
+            if (history == null) {
+                history = new ArrayList<>();
+            }
+            for (Keyboard keyboard : purchased) {
+                if (keyboard.getQuantity() < 1) {
+                    continue;
                 }
-                if (user.getUserCart().contains(keyboard)) {
-                    Keyboard keyboardIndex = user.getUserCart().get(user.getUserCart().indexOf(keyboard));
-                    keyboardIndex.setQuantity(keyboardIndex.getQuantity() + 1);
-                    ArrayList<Keyboard> keys = user.getUserCart();
-                    keys.set(user.getUserCart().indexOf(keyboard), keyboardIndex);
-                    user.setUserCart(keys);
-                    saveToJSON();
-                    return true;
+                Keyboard ordered = null;
+                for (Keyboard previous : history) {
+                    if (previous.getKeyboardId() == keyboard.getKeyboardId()) {
+                        ordered = previous;
+                        break;
+                    }
+                }
+                if (ordered != null) {
+                    ordered.setQuantity(ordered.getQuantity() + keyboard.getQuantity());
+                } else {
+                    history.add(new Keyboard(keyboard, keyboard.getQuantity()));
                 }
-                return false;
-            } catch (Exception e) {
-                throw new IOException();
             }
+            user.setUserOrderHistory(history);
+            user.setUserCart(new ArrayList<Keyboard>());
+            commit = persist(UserChange.upsert(version.incrementAndGet(), user));
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean increaseQuantity(User user, Keyboard keyboard) throws IOException {
+        return changeQuantity(user, keyboard, 1);
     }
 
     /**
@@ -275,25 +867,42 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public boolean decreaseQuantity(User user, Keyboard keyboard) throws IOException {
-        synchronized (userMap) {
+        return changeQuantity(user, keyboard, -1);
+    }
+
+    /**
+     * 
+     * Changes the quantity of a Keyboard in a User's cart and saves the user.
+     * 
+     * @param user     the User object whose cart is being modified
+     * @param keyboard the Keyboard object being modified in the cart
+     * @param delta    the amount to add to the quantity
+     * @return true if the quantity was changed, false if the keyboard has no
+     *         quantity or is not in the cart
+     * @throws IOException if the cart cannot be updated or saved
+     */
+    private boolean changeQuantity(User user, Keyboard keyboard, int delta) throws IOException {
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
             try {
                 if (keyboard.getQuantity() == 0) {
                     return false;
                 }
-                if (user.getUserCart().contains(keyboard)) {
-                    Keyboard keyboardIndex = user.getUserCart().get(user.getUserCart().indexOf(keyboard));
-                    keyboardIndex.setQuantity(keyboardIndex.getQuantity() - 1);
-                    ArrayList<Keyboard> keys = user.getUserCart();
-                    keys.set(user.getUserCart().indexOf(keyboard), keyboardIndex);
-                    user.setUserCart(keys);
-                    saveToJSON();
-                    return true;
+                Keyboard inCart = user.getCart().get(keyboard.getKeyboardId());
+                if (inCart == null) {
+                    return false;
                 }
-                return false;
+                inCart.setQuantity(inCart.getQuantity() + delta);
+                commit = persist(UserChange.upsert(version.incrementAndGet(), user));
             } catch (Exception e) {
-                throw new IOException();
+                throw new IOException(e);
             }
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return true;
     }
 
     /**
@@ -303,14 +912,19 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public boolean clearUserCart(User user) throws IOException {
-        synchronized (userMap) {
-            if (user.getUserCart() != null) {
-                user.setUserCart(new ArrayList<Keyboard>());
-                saveToJSON();
-                return true;
+        CompletableFuture<Void> commit;
+        UserLock held = lockUser(user.getUsername());
+        try {
+            if (user.getUserCart() == null) {
+                return false;
             }
-            return false;
+            user.setUserCart(new ArrayList<Keyboard>());
+            commit = persist(UserChange.upsert(version.incrementAndGet(), user));
+        } finally {
+            held.unlock();
         }
+        complete(commit);
+        return true;
     }
 
     /**
@@ -318,8 +932,11 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public ArrayList<Keyboard> getUserShoppingCart(User user) {
-        synchronized (userMap) {
+        UserLock held = lockUser(user.getUsername());
+        try {
             return user.getUserCart();
+        } finally {
+            held.unlock();
         }
     }
 
@@ -328,12 +945,11 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public Keyboard getKeyboardFromCart(User user, Keyboard keyboard) throws IOException {
-        synchronized (userMap) {
-            if (!user.getUserCart().contains(keyboard)) {
-                return null;
-            } else {
-                return user.getUserCart().get(user.getUserCart().indexOf(keyboard));
-            }
+        UserLock held = lockUser(user.getUsername());
+        try {
+            return user.getCart().get(keyboard.getKeyboardId());
+        } finally {
+            held.unlock();
         }
     }
 
@@ -342,11 +958,15 @@ public class UserFileDAO implements UserDAO {
      */
     @Override
     public ArrayList<Keyboard> getUserOrderHistory(String username) throws IOException {
-        synchronized (userMap) {
-            if (userMap.containsKey(username))
-                return userMap.get(username).getUserOrderHistory();
+        UserLock held = lockUser(username);
+        try {
+            User user = lookup(username);
+            if (user != null)
+                return user.getUserOrderHistory();
             else
                 return null;
+        } finally {
+            held.unlock();
         }
     }
 
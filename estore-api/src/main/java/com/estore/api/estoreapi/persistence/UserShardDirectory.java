@@ -0,0 +1,135 @@
+package com.estore.api.estoreapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.estore.api.estoreapi.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stores every {@linkplain User user} in a JSON file of its own inside a
+ * directory, so a change to one user only rewrites that user's file
+ * <br>
+ * File names are the URL-encoded username followed by {@code .json}. When
+ * atomic writes are enabled each file is a {@link SnapshotFile}.
+ *
+ * @author Team 2
+ */
+public class UserShardDirectory {
+    private static final String EXTENSION = ".json";
+
+    private final File directory;
+    private final ObjectMapper objectMapper;
+    private final boolean atomic; // Whether user files are replaced atomically and checksummed
+
+    /**
+     * Opens a shard directory, creating it if it does not exist yet
+     *
+     * @param directory    the directory holding one file per user
+     * @param objectMapper converts users to and from JSON
+     * @param atomic       true to replace user files atomically with a checksum
+     *
+     * @throws IOException when the directory cannot be created
+     */
+    public UserShardDirectory(String directory, ObjectMapper objectMapper, boolean atomic) throws IOException {
+        this.directory = new File(directory);
+        this.objectMapper = objectMapper;
+        this.atomic = atomic;
+        Files.createDirectories(this.directory.toPath());
+    }
+
+    /**
+     * Returns the file that holds the given user
+     *
+     * @param username the username of the user
+     * @return the user's file
+     */
+    File fileFor(String username) {
+        return new File(directory, URLEncoder.encode(username, StandardCharsets.UTF_8) + EXTENSION);
+    }
+
+    /**
+     * Lists the usernames stored in the directory without reading any of the
+     * files
+     *
+     * @return the stored usernames
+     */
+    public Set<String> usernames() {
+        Set<String> usernames = new HashSet<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(EXTENSION)) {
+                    String encoded = name.substring(0, name.length() - EXTENSION.length());
+                    usernames.add(URLDecoder.decode(encoded, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return usernames;
+    }
+
+    /**
+     * Returns whether the directory holds no users yet
+     *
+     * @return true if no user files exist
+     */
+    public boolean isEmpty() {
+        return usernames().isEmpty();
+    }
+
+    /**
+     * Reads a single user from its file
+     *
+     * @param username the username of the user to read
+     * @return the user, or null if no file exists for it
+     *
+     * @throws IOException when the file cannot be read
+     */
+    public User read(String username) throws IOException {
+        File file = fileFor(username);
+        if (!file.exists()) {
+            return null;
+        }
+        if (atomic) {
+            return objectMapper.readValue(new SnapshotFile(file.getPath()).read(), User.class);
+        }
+        return objectMapper.readValue(file, User.class);
+    }
+
+    /**
+     * Writes a single user to its file, replacing any previous contents
+     *
+     * @param user the user to write
+     *
+     * @throws IOException when the file cannot be written
+     */
+    public void write(User user) throws IOException {
+        File file = fileFor(user.getUsername());
+        if (atomic) {
+            new SnapshotFile(file.getPath()).write(objectMapper.writeValueAsBytes(user));
+        } else {
+            objectMapper.writeValue(file, user);
+        }
+    }
+
+    /**
+     * Removes a user's file
+     *
+     * @param username the username of the user to remove
+     *
+     * @throws IOException when the file cannot be deleted
+     */
+    public void delete(String username) throws IOException {
+        if (atomic) {
+            new SnapshotFile(fileFor(username).getPath()).delete();
+        } else {
+            Files.deleteIfExists(fileFor(username).toPath());
+        }
+    }
+}
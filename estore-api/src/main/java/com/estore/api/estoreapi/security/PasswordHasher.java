@@ -0,0 +1,319 @@
+package com.estore.api.estoreapi.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PreDestroy;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hashes and checks users' passwords
+ * <br>
+ * Passwords are stored as {@code pbkdf2-sha256$<iterations>$<salt>$<hash>},
+ * with a random salt per password and the iteration count from the settings.
+ * Hashing is deliberately slow, so it runs on a small pool of its own threads
+ * with a bounded queue: at peak, logins wait for or are refused a worker
+ * instead of taking every core from the request threads. A successful check
+ * is remembered for a short while, so a user logging in again with the same
+ * password against the same stored hash skips the work.
+ * <br>
+ * Passwords saved before hashing are still accepted by comparing them as
+ * they are; {@link #needsRehash(String)} tells the caller to replace them,
+ * and any hash made with a different iteration count, once the user has
+ * proven the password. With hashing disabled in the settings new passwords
+ * are stored as they are, as before, while existing hashes are still checked.
+ *
+ * @author Team 2
+ */
+@Component
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int MAX_CACHED = 10000;
+    private static final int MAX_ITERATIONS_FACTOR = 4; // Stored counts above this many times the setting are refused
+
+    /**
+     * A password check that succeeded
+     */
+    private static final class Verified {
+        private final String stored; // The stored password the check was made against
+        private final long expiresAt; // Milliseconds
+
+        /**
+         * Creates a record of a successful check
+         *
+         * @param stored    the stored password
+         * @param expiresAt when the record stops being trusted
+         */
+        private Verified(String stored, long expiresAt) {
+            this.stored = stored;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final boolean enabled;
+    private final int iterations;
+    private final long cacheTtlMs;
+    private final LongSupplier clock; // Milliseconds
+    private final ThreadPoolExecutor workers;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Verified> verified = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the hasher
+     *
+     * @param settings whether hashing is enabled, its iteration count, the
+     *                 size of the worker pool and its queue, and how long a
+     *                 successful check is remembered
+     */
+    @Autowired
+    public PasswordHasher(PasswordSettings settings) {
+        this(settings, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a hasher reading the time from the given clock
+     *
+     * @param settings whether hashing is enabled, its iteration count, the
+     *                 size of the worker pool and its queue, and how long a
+     *                 successful check is remembered
+     * @param clock    the current time in milliseconds
+     */
+    PasswordHasher(PasswordSettings settings, LongSupplier clock) {
+        this.enabled = settings.isHashingEnabled();
+        this.iterations = Math.max(1, settings.getIterations());
+        this.cacheTtlMs = TimeUnit.SECONDS.toMillis(settings.getCacheTtlSeconds());
+        this.clock = clock;
+        int threads = Math.max(1, settings.getWorkerThreads());
+        AtomicInteger count = new AtomicInteger();
+        // Threads start on first use, so a hasher that never hashes costs none
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, settings.getQueueSize())), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Returns whether new passwords are hashed
+     *
+     * @return true if hashing is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether a password is stored as a hash
+     *
+     * @param stored the stored password
+     * @return true if it is a hash made by this class
+     */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Prepares a new password for storage. The password is always hashed as
+     * given, even if it looks like a hash, so a client cannot choose the
+     * stored hash or its cost.
+     *
+     * @param password the password
+     * @return the salted hash, or the password as it is if hashing is
+     *         disabled
+     *
+     * @throws IOException if the worker pool is full or hashing fails
+     */
+    public String hash(String password) throws IOException {
+        if (!enabled || password == null) {
+            return password;
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = run(() -> pbkdf2(password, salt, iterations));
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password a user gave against the one stored for them. A hash
+     * stored with more than a few times the configured iteration count is
+     * refused without being computed, so no stored value can tie up a worker
+     * for long.
+     *
+     * @param username the user, whose successful checks are remembered
+     * @param stored   the stored password or hash
+     * @param password the password given
+     * @return true if the password matches
+     *
+     * @throws IOException if the worker pool is full or hashing fails
+     */
+    public boolean verify(String username, String stored, String password) throws IOException {
+        if (stored == null || password == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8));
+        }
+        String key = cacheKey(username, password);
+        long now = clock.getAsLong();
+        Verified previous = verified.get(key);
+        if (previous != null && previous.expiresAt > now && previous.stored.equals(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        int storedIterations;
+        byte[] salt;
+        byte[] expected;
+        try {
+            storedIterations = Integer.parseInt(parts[1]);
+            salt = Base64.getDecoder().decode(parts[2]);
+            expected = Base64.getDecoder().decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (storedIterations < 1 || storedIterations > (long) iterations * MAX_ITERATIONS_FACTOR) {
+            return false;
+        }
+        byte[] actual = run(() -> pbkdf2(password, salt, storedIterations));
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return false;
+        }
+        remember(key, new Verified(stored, now + cacheTtlMs));
+        return true;
+    }
+
+    /**
+     * Returns whether a stored password should be replaced once its user has
+     * proven it: it is not a hash, or was hashed with a different iteration
+     * count
+     *
+     * @param stored the stored password or hash
+     * @return true if hashing is enabled and the password should be hashed
+     *         again
+     */
+    public boolean needsRehash(String stored) {
+        return enabled && (!isHashed(stored) || !stored.startsWith(PREFIX + iterations + "$"));
+    }
+
+    /**
+     * Stops the worker pool when the application shuts down
+     */
+    @PreDestroy
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Runs a hash on the worker pool and waits for it
+     *
+     * @param task the hash
+     * @return the hash's result
+     *
+     * @throws IOException if the pool's queue is full, the hash fails or the
+     *                     wait is interrupted
+     */
+    private byte[] run(Callable<byte[]> task) throws IOException {
+        try {
+            return workers.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Too many passwords waiting to be checked", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Computes a PBKDF2 hash
+     *
+     * @param password   the password
+     * @param salt       the salt
+     * @param iterations the iteration count
+     * @return the hash
+     *
+     * @throws GeneralSecurityException if the JDK lacks the algorithm
+     */
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Returns the key successful checks of a user's password are remembered
+     * under. The password itself is kept only as a fast digest, and only for
+     * as long as the check is remembered.
+     *
+     * @param username the user
+     * @param password the password given
+     * @return the key
+     */
+    private static String cacheKey(String username, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(username.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(password.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Remembers a successful check, first dropping expired ones if too many
+     * are remembered; if none have expired the check is not remembered
+     *
+     * @param key   the key of the user and password
+     * @param check the check
+     */
+    private void remember(String key, Verified check) {
+        if (cacheTtlMs <= 0) {
+            return;
+        }
+        if (verified.size() >= MAX_CACHED) {
+            long now = clock.getAsLong();
+            for (Iterator<Verified> checks = verified.values().iterator(); checks.hasNext();) {
+                if (checks.next().expiresAt <= now) {
+                    checks.remove();
+                }
+            }
+            if (verified.size() >= MAX_CACHED) {
+                return;
+            }
+        }
+        verified.put(key, check);
+    }
+}
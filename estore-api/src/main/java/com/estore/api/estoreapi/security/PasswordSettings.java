@@ -0,0 +1,131 @@
+package com.estore.api.estoreapi.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Options for storing and checking passwords, read from
+ * application.properties
+ * <br>
+ * A settings object created with {@code new} keeps every option at its
+ * default, which stores new passwords as they are
+ *
+ * @author Team 2
+ */
+@Component
+public class PasswordSettings {
+    @Value("${passwords.hashing.enabled:false}")
+    private boolean hashingEnabled; // Store new and migrated passwords as salted PBKDF2 hashes
+    @Value("${passwords.iterations:210000}")
+    private int iterations; // PBKDF2 iterations per hash
+    @Value("${passwords.worker-threads:2}")
+    private int workerThreads; // Threads that hash passwords
+    @Value("${passwords.queue-size:64}")
+    private int queueSize; // Hashes waiting for a thread before more are refused
+    @Value("${passwords.cache-ttl-seconds:60}")
+    private long cacheTtlSeconds; // How long a successful check is remembered
+
+    /**
+     * Creates settings with every option at its default
+     */
+    public PasswordSettings() {
+        this.hashingEnabled = false;
+        this.iterations = 210000;
+        this.workerThreads = 2;
+        this.queueSize = 64;
+        this.cacheTtlSeconds = 60;
+    }
+
+    /**
+     * Returns whether new passwords, and old ones once their users log in,
+     * are stored as salted hashes
+     *
+     * @return true if password hashing is enabled
+     */
+    public boolean isHashingEnabled() {
+        return hashingEnabled;
+    }
+
+    /**
+     * Sets whether passwords are stored as salted hashes
+     *
+     * @param hashingEnabled true to enable password hashing
+     */
+    public void setHashingEnabled(boolean hashingEnabled) {
+        this.hashingEnabled = hashingEnabled;
+    }
+
+    /**
+     * Returns the PBKDF2 iteration count of new hashes; changing it rehashes
+     * each password the next time its user logs in
+     *
+     * @return the iteration count
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Sets the PBKDF2 iteration count of new hashes
+     *
+     * @param iterations the iteration count
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Returns the number of threads that hash passwords
+     *
+     * @return the number of threads
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Sets the number of threads that hash passwords
+     *
+     * @param workerThreads the number of threads
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Returns how many hashes may wait for a thread before more are refused
+     *
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Sets how many hashes may wait for a thread
+     *
+     * @param queueSize the queue size
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Returns how long a successful password check is remembered, letting the
+     * same user and password skip the hash
+     *
+     * @return the time in seconds, 0 to remember none
+     */
+    public long getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    /**
+     * Sets how long a successful password check is remembered
+     *
+     * @param cacheTtlSeconds the time in seconds
+     */
+    public void setCacheTtlSeconds(long cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+}
@@ -0,0 +1,132 @@
+package com.estore.api.estoreapi.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Options for login sessions, read from application.properties
+ * <br>
+ * A settings object created with {@code new} keeps every option at its
+ * default, which leaves sessions disabled
+ *
+ * @author Team 2
+ */
+@Component
+public class SessionSettings {
+    @Value("${sessions.enabled:false}")
+    private boolean enabled; // Keep logins in memory as session tokens instead of on disk
+    @Value("${sessions.required:true}")
+    private boolean required; // Refuse cart and order requests without a session token
+    @Value("${sessions.idle-timeout-seconds:1800}")
+    private long idleTimeoutSeconds; // How long an unused session lasts
+    @Value("${sessions.absolute-timeout-seconds:43200}")
+    private long absoluteTimeoutSeconds; // How long any session lasts
+    @Value("${sessions.max-sessions:100000}")
+    private int maxSessions; // Most sessions kept before the idlest is evicted
+
+    /**
+     * Creates settings with every option at its default
+     */
+    public SessionSettings() {
+        this.enabled = false;
+        this.required = true;
+        this.idleTimeoutSeconds = 1800;
+        this.absoluteTimeoutSeconds = 43200;
+        this.maxSessions = 100000;
+    }
+
+    /**
+     * Returns whether logging in starts an in-memory session identified by a
+     * token, instead of saving the user's login status
+     *
+     * @return true if sessions are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether logging in starts an in-memory session
+     *
+     * @param enabled true to enable sessions
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns whether cart and order requests must carry the token of a
+     * session belonging to the user they name. Only applies when sessions are
+     * enabled.
+     *
+     * @return true if a session is required
+     */
+    public boolean isRequired() {
+        return required;
+    }
+
+    /**
+     * Sets whether cart and order requests must carry a session token
+     *
+     * @param required true to require a session
+     */
+    public void setRequired(boolean required) {
+        this.required = required;
+    }
+
+    /**
+     * Returns how long a session lasts without being used
+     *
+     * @return the idle timeout in seconds
+     */
+    public long getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    /**
+     * Sets how long a session lasts without being used
+     *
+     * @param idleTimeoutSeconds the idle timeout in seconds
+     */
+    public void setIdleTimeoutSeconds(long idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    /**
+     * Returns how long a session lasts after logging in, however often it is
+     * used
+     *
+     * @return the absolute timeout in seconds
+     */
+    public long getAbsoluteTimeoutSeconds() {
+        return absoluteTimeoutSeconds;
+    }
+
+    /**
+     * Sets how long a session lasts after logging in
+     *
+     * @param absoluteTimeoutSeconds the absolute timeout in seconds
+     */
+    public void setAbsoluteTimeoutSeconds(long absoluteTimeoutSeconds) {
+        this.absoluteTimeoutSeconds = absoluteTimeoutSeconds;
+    }
+
+    /**
+     * Returns the most sessions kept at once; logging in beyond it evicts the
+     * session that has gone unused the longest
+     *
+     * @return the session limit
+     */
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Sets the most sessions kept at once
+     *
+     * @param maxSessions the session limit
+     */
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+}
@@ -0,0 +1,301 @@
+package com.estore.api.estoreapi.security;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logged-in users' sessions, kept in memory only
+ * <br>
+ * Logging in creates a session identified by a random token, which later
+ * requests present in the {@value #HEADER} header. A session ends when the
+ * user logs out, when it goes unused for the idle timeout, or when the
+ * absolute timeout has passed since logging in, however busy it is. Expired
+ * sessions are refused as soon as they are looked up, and a background
+ * thread removes them from memory. Nothing is written to disk, so sessions
+ * end when the application restarts.
+ * <br>
+ * When sessions are disabled in the settings no session is ever created and
+ * every token is refused.
+ *
+ * @author Team 2
+ */
+@Component
+public class SessionStore {
+    private static final Logger LOG = Logger.getLogger(SessionStore.class.getName());
+    private static final int TOKEN_BYTES = 32;
+    private static final long SWEEP_INTERVAL_MS = 60000;
+
+    /**
+     * The request and response header carrying a session token
+     */
+    public static final String HEADER = "X-Session-Token";
+
+    /**
+     * One user's session
+     */
+    private static final class Session {
+        private final String username;
+        private final long createdAt; // Milliseconds
+        private volatile long lastUsedAt; // Milliseconds
+
+        /**
+         * Creates a session that was last used when it was created
+         *
+         * @param username  the user the session belongs to
+         * @param createdAt the time the user logged in
+         */
+        private Session(String username, long createdAt) {
+            this.username = username;
+            this.createdAt = createdAt;
+            this.lastUsedAt = createdAt;
+        }
+    }
+
+    private final boolean enabled;
+    private final boolean required;
+    private final long idleTimeoutMs;
+    private final long absoluteTimeoutMs;
+    private final int maxSessions;
+    private final LongSupplier clock; // Milliseconds
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper; // Null when sessions are disabled or swept by hand
+
+    /**
+     * Creates the store and starts removing expired sessions, if enabled in
+     * the settings
+     *
+     * @param settings whether sessions are enabled and required, their
+     *                 timeouts and the most kept at once
+     */
+    @Autowired
+    public SessionStore(SessionSettings settings) {
+        this(settings, System::currentTimeMillis);
+        if (enabled) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "session-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Creates a store whose expired sessions are only removed by calling
+     * {@link #sweep()}
+     *
+     * @param settings whether sessions are enabled and required, their
+     *                 timeouts and the most kept at once
+     * @param clock    the current time in milliseconds
+     */
+    SessionStore(SessionSettings settings, LongSupplier clock) {
+        this.enabled = settings.isEnabled();
+        this.required = enabled && settings.isRequired();
+        this.idleTimeoutMs = TimeUnit.SECONDS.toMillis(settings.getIdleTimeoutSeconds());
+        this.absoluteTimeoutMs = TimeUnit.SECONDS.toMillis(settings.getAbsoluteTimeoutSeconds());
+        this.maxSessions = Math.max(1, settings.getMaxSessions());
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether logging in creates sessions
+     *
+     * @return true if sessions are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether cart and order requests must carry a session token
+     *
+     * @return true if sessions are enabled and required
+     */
+    public boolean isRequired() {
+        return required;
+    }
+
+    /**
+     * Starts a session for a user who has just proven who they are. If the
+     * store is full, expired sessions are removed first, then the session
+     * unused for longest.
+     *
+     * @param username the user
+     * @return the new session's token, or null if sessions are disabled
+     */
+    public String create(String username) {
+        if (!enabled) {
+            return null;
+        }
+        if (sessions.size() >= maxSessions) {
+            sweep();
+            if (sessions.size() >= maxSessions) {
+                evictIdlest();
+            }
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(username, clock.getAsLong()));
+        // Added inside compute, so a concurrent remove cannot drop the set
+        // between creating it and adding to it
+        tokensByUser.compute(username, (key, tokens) -> {
+            Set<String> userTokens = tokens == null ? ConcurrentHashMap.newKeySet() : tokens;
+            userTokens.add(token);
+            return userTokens;
+        });
+        return token;
+    }
+
+    /**
+     * Looks up the user a token belongs to, counting the lookup as use of the
+     * session
+     *
+     * @param token the token, may be null
+     * @return the username, or null if the token is unknown or its session
+     *         has expired
+     */
+    public String authenticate(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        if (isExpired(session, now)) {
+            remove(token, session);
+            return null;
+        }
+        session.lastUsedAt = now;
+        return session.username;
+    }
+
+    /**
+     * Ends one session, when its user logs out
+     *
+     * @param token the session's token, may be null
+     * @return true if the session existed
+     */
+    public boolean end(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        return session != null && remove(token, session);
+    }
+
+    /**
+     * Ends every session of a user
+     *
+     * @param username the user
+     * @return the number of sessions ended
+     */
+    public int endAll(String username) {
+        Set<String> tokens = tokensByUser.getOrDefault(username, Collections.emptySet());
+        int ended = 0;
+        for (String token : tokens) {
+            if (end(token)) {
+                ++ended;
+            }
+        }
+        return ended;
+    }
+
+    /**
+     * Removes every expired session from memory
+     *
+     * @return the number of sessions removed
+     */
+    public int sweep() {
+        long now = clock.getAsLong();
+        int removed = 0;
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            if (isExpired(entry.getValue(), now) && remove(entry.getKey(), entry.getValue())) {
+                ++removed;
+            }
+        }
+        if (removed > 0) {
+            LOG.fine("Removed " + removed + " expired sessions");
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of sessions in memory, including expired ones not
+     * yet removed
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops removing expired sessions when the application shuts down
+     */
+    @PreDestroy
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns whether a session has gone unused too long or outlived the
+     * absolute timeout
+     *
+     * @param session the session
+     * @param now     the current time in milliseconds
+     * @return true if the session has expired
+     */
+    private boolean isExpired(Session session, long now) {
+        return now - session.lastUsedAt >= idleTimeoutMs || now - session.createdAt >= absoluteTimeoutMs;
+    }
+
+    /**
+     * Removes the session unused for longest, to make room for a new one
+     */
+    private void evictIdlest() {
+        Map.Entry<String, Session> idlest = null;
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            if (idlest == null || entry.getValue().lastUsedAt < idlest.getValue().lastUsedAt) {
+                idlest = entry;
+            }
+        }
+        if (idlest != null) {
+            remove(idlest.getKey(), idlest.getValue());
+        }
+    }
+
+    /**
+     * Removes a session and its entry in the user's tokens, unless another
+     * thread removed it first
+     *
+     * @param token   the session's token
+     * @param session the session
+     * @return true if this call removed the session
+     */
+    private boolean remove(String token, Session session) {
+        if (!sessions.remove(token, session)) {
+            return false;
+        }
+        tokensByUser.computeIfPresent(session.username, (username, tokens) -> {
+            tokens.remove(token);
+            return tokens.isEmpty() ? null : tokens;
+        });
+        return true;
+    }
+}
@@ -0,0 +1,120 @@
+package com.estore.api.estoreapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test the Catalog Cache class
+ *
+ * @author Team 2
+ */
+@Tag("Controller-tier")
+public class CatalogCacheTest {
+    private InventoryDAO mockInventoryDAO;
+    private ObjectMapper objectMapper;
+    private Keyboard[] keyboards;
+
+    @BeforeEach
+    public void setupCatalogCache() throws IOException {
+        mockInventoryDAO = mock(InventoryDAO.class);
+        objectMapper = new ObjectMapper();
+        keyboards = new Keyboard[] {
+                new Keyboard(12, "test", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 10, 10),
+                new Keyboard(13, "test2", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 10, 10) };
+        when(mockInventoryDAO.getKeyboards()).thenReturn(keyboards);
+    }
+
+    @Test
+    public void testEncodesOncePerVersion() throws IOException {
+        CatalogCache cache = new CatalogCache(mockInventoryDAO, objectMapper, false);
+        when(mockInventoryDAO.getVersion()).thenReturn(7L);
+
+        CatalogCache.Entry first = cache.get();
+        assertSame(first, cache.get());
+        assertArrayEquals(keyboards, objectMapper.readValue(first.getJson(), Keyboard[].class));
+        assertEquals(2, first.getCount());
+        assertNull(first.getGzipped());
+        verify(mockInventoryDAO, times(1)).getKeyboards();
+
+        when(mockInventoryDAO.getVersion()).thenReturn(8L);
+        CatalogCache.Entry second = cache.get();
+        assertNotEquals(first.getEtag(false), second.getEtag(false));
+        verify(mockInventoryDAO, times(2)).getKeyboards();
+    }
+
+    @Test
+    public void testChangeDuringEncodingIsNotKept() throws IOException {
+        CatalogCache cache = new CatalogCache(mockInventoryDAO, objectMapper, false);
+        when(mockInventoryDAO.getVersion()).thenReturn(1L, 1L, 2L, 2L, 2L, 2L);
+
+        cache.get();
+        cache.get();
+        cache.get();
+        verify(mockInventoryDAO, times(2)).getKeyboards();
+    }
+
+    @Test
+    public void testGzippedCopyHasItsOwnEtag() throws IOException {
+        CatalogCache.Entry entry = new CatalogCache(mockInventoryDAO, objectMapper, true).get();
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(entry.getGzipped()))) {
+            assertArrayEquals(entry.getJson(), in.readAllBytes());
+        }
+        assertNotEquals(entry.getEtag(false), entry.getEtag(true));
+        // Another cache, as after a restart, never issues the same tags
+        assertNotEquals(entry.getEtag(false),
+                new CatalogCache(mockInventoryDAO, objectMapper, true).get().getEtag(false));
+    }
+
+    /**
+     * Compares encoding a large catalog with Jackson on every request against
+     * serving the cached bytes. Timings depend on the machine, so they are
+     * only logged; run with -Pbenchmarks.
+     */
+    @Test
+    @Tag("Benchmark")
+    public void testBenchmarkCachedCatalog() throws IOException {
+        Keyboard[] large = new Keyboard[5000];
+        for (int i = 0; i < large.length; ++i) {
+            large[i] = new Keyboard(i, "keyboard " + i, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, i % 999, i);
+        }
+        when(mockInventoryDAO.getKeyboards()).thenReturn(large);
+        CatalogCache cache = new CatalogCache(mockInventoryDAO, objectMapper, true);
+        int requests = 200;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; ++i) {
+            objectMapper.writeValueAsBytes(mockInventoryDAO.getKeyboards());
+        }
+        long encoded = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < requests; ++i) {
+            cache.get().getJson();
+        }
+        long cached = System.nanoTime() - start;
+
+        Logger.getLogger(CatalogCacheTest.class.getName()).info(String.format(
+                "%d catalog requests of %d keyboards: %d ms encoding each, %d ms cached", requests, large.length,
+                encoded / 1000000, cached / 1000000));
+    }
+}
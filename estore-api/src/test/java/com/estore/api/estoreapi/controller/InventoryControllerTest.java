@@ -1,18 +1,45 @@
 package com.estore.api.estoreapi.controller;
 
 import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.estore.api.estoreapi.persistence.PersistenceSettings;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
 import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.KeyboardPage;
+import com.estore.api.estoreapi.model.KeyboardQuery;
+import com.estore.api.estoreapi.model.KeyboardQueryResult;
+import com.estore.api.estoreapi.model.KeyboardSort;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Tag("Controller-tier")
 public class InventoryControllerTest {
@@ -66,10 +93,136 @@ public class InventoryControllerTest {
         when(mockInventoryDAO.getKeyboard(keys[1].getKeyboardId())).thenReturn(keys[1]);
         when(mockInventoryDAO.getKeyboards()).thenReturn(keys);
 
-        ResponseEntity<Keyboard[]> response = inventoryController.getKeyboards();
+        ResponseEntity<byte[]> response = inventoryController.getCatalog(null, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertArrayEquals(new Keyboard[] { keys[0], keys[1] }, response.getBody());
+        assertArrayEquals(new Keyboard[] { keys[0], keys[1] },
+                new ObjectMapper().readValue(response.getBody(), Keyboard[].class));
+    }
+
+    @Test
+    public void testGetCatalog() throws IOException {
+        Keyboard[] keys = new Keyboard[] {
+                new Keyboard(12, "test", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 10, 10) };
+        when(mockInventoryDAO.getKeyboards()).thenReturn(keys);
+
+        ResponseEntity<byte[]> response = inventoryController.getCatalog(null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(keys, new ObjectMapper().readValue(response.getBody(), Keyboard[].class));
+        assertNull(response.getHeaders().getETag());
+    }
+
+    @Test
+    public void testGetCatalogNotModified() throws IOException {
+        CacheSettings settings = new CacheSettings();
+        settings.setCatalogEnabled(true);
+        settings.setCatalogGzip(true);
+        inventoryController = new InventoryController(mockInventoryDAO, new ObjectMapper(), settings);
+        Keyboard[] keys = new Keyboard[] {
+                new Keyboard(12, "test", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 10, 10) };
+        when(mockInventoryDAO.getKeyboards()).thenReturn(keys);
+        when(mockInventoryDAO.getVersion()).thenReturn(3L);
+
+        ResponseEntity<byte[]> plain = inventoryController.getCatalog(null, "identity");
+        String etag = plain.getHeaders().getETag();
+        assertEquals(HttpStatus.OK, plain.getStatusCode());
+        assertNull(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+
+        ResponseEntity<byte[]> gzipped = inventoryController.getCatalog(null, "deflate, gzip;q=0.8");
+        assertEquals("gzip", gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertNotEquals(etag, gzipped.getHeaders().getETag());
+        assertNull(inventoryController.getCatalog(null, "gzip;q=0").getHeaders()
+                .getFirst(HttpHeaders.CONTENT_ENCODING));
+
+        ResponseEntity<byte[]> cached = inventoryController.getCatalog("\"other\", W/" + etag, null);
+        assertEquals(HttpStatus.NOT_MODIFIED, cached.getStatusCode());
+        assertNull(cached.getBody());
+        assertEquals(etag, cached.getHeaders().getETag());
+
+        when(mockInventoryDAO.getVersion()).thenReturn(4L);
+        assertEquals(HttpStatus.OK, inventoryController.getCatalog(etag, null).getStatusCode());
+        verify(mockInventoryDAO, times(2)).getKeyboards();
+    }
+
+    @Test
+    public void testSearchAndFilterAreCached() throws IOException {
+        CacheSettings settings = new CacheSettings();
+        settings.setQueryEnabled(true);
+        inventoryController = new InventoryController(mockInventoryDAO, new ObjectMapper(), settings);
+        Keyboard[] keys = new Keyboard[] {
+                new Keyboard(12, "test", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 10, 10) };
+        when(mockInventoryDAO.findKeyboard("te")).thenReturn(keys);
+        when(mockInventoryDAO.getFilteredKeyboards("5", "15")).thenReturn(keys);
+        when(mockInventoryDAO.getVersion()).thenReturn(1L);
+
+        assertArrayEquals(keys, inventoryController.searchKeyboards("te").getBody());
+        assertArrayEquals(keys, inventoryController.searchKeyboards("te", false).getBody());
+        assertArrayEquals(keys, inventoryController.filterKeyboards("5", "15").getBody());
+        assertArrayEquals(keys, inventoryController.filterKeyboards("5", "15").getBody());
+        verify(mockInventoryDAO, times(1)).findKeyboard("te");
+        verify(mockInventoryDAO, times(1)).getFilteredKeyboards("5", "15");
+
+        when(mockInventoryDAO.getVersion()).thenReturn(2L);
+        inventoryController.searchKeyboards("te");
+        verify(mockInventoryDAO, times(2)).findKeyboard("te");
+
+        QueryResultCache.Stats stats = inventoryController.getQueryCacheStats().getBody();
+        assertEquals(2, stats.getHits());
+        assertEquals(3, stats.getMisses());
+        assertEquals(1, stats.getInvalidations());
+    }
+
+    @Test
+    public void testGetChanges() throws IOException {
+        InventoryChanges changes = new InventoryChanges("e", 5, false, Arrays.asList(InventoryChange.delete(5, 12)));
+        when(mockInventoryDAO.getChangesSince(4, "e")).thenReturn(changes);
+
+        ResponseEntity<InventoryChanges> response = inventoryController.getChanges(4, "e");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(changes, response.getBody());
+
+        doThrow(new IOException()).when(mockInventoryDAO).getChangesSince(3, null);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, inventoryController.getChanges(3, null).getStatusCode());
+    }
+
+    @Test
+    public void testExportKeyboards() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(mockInventoryDAO.exportKeyboards(out)).thenReturn(2);
+
+        ResponseEntity<StreamingResponseBody> response = inventoryController.exportKeyboards();
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        response.getBody().writeTo(out);
+        verify(mockInventoryDAO).exportKeyboards(out);
+
+        doThrow(new IOException()).when(mockInventoryDAO).exportKeyboards(out);
+        assertThrows(IOException.class, () -> inventoryController.exportKeyboards().getBody().writeTo(out));
+    }
+
+    @Test
+    public void testStreamChangesDisabled() {
+        assertEquals(HttpStatus.NOT_FOUND, inventoryController.streamChanges().getStatusCode());
+    }
+
+    @Test
+    public void testStreamChanges() {
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setInventoryEventsEnabled(true);
+        settings.setInventoryEventsMaxSubscribers(1);
+        inventoryController = new InventoryController(mockInventoryDAO, new ObjectMapper(), new CacheSettings(),
+                new InventoryEventStream(mockInventoryDAO, settings));
+
+        ResponseEntity<SseEmitter> response = inventoryController.streamChanges();
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, inventoryController.streamChanges().getStatusCode());
+    }
+
+    @Test
+    public void testQueryCacheStatsDisabled() {
+        assertEquals(HttpStatus.NOT_FOUND, inventoryController.getQueryCacheStats().getStatusCode());
     }
 
     @Test
@@ -81,7 +234,7 @@ public class InventoryControllerTest {
         // when(mockInventoryDAO.getKeyboard(keys[1].getKeyboardId())).thenReturn(keys[1]);
         when(mockInventoryDAO.getKeyboards()).thenReturn(keys);
 
-        ResponseEntity<Keyboard[]> response = inventoryController.getKeyboards();
+        ResponseEntity<byte[]> response = inventoryController.getCatalog(null, null);
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         // assertArrayEquals(new Keyboard[] {keys[0], keys[1]}, response.getBody());
@@ -122,6 +275,106 @@ public class InventoryControllerTest {
 
     }
 
+    @Test
+    public void testSearchKeyboardsIgnoreCase() throws IOException {
+        Keyboard[] keys = new Keyboard[1];
+        keys[0] = new Keyboard(12, "Test", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 10, 10);
+        when(mockInventoryDAO.findKeyboard("test", true)).thenReturn(keys);
+
+        ResponseEntity<Keyboard[]> response = inventoryController.searchKeyboards("test", true);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(keys, response.getBody());
+    }
+
+    @Test
+    public void testSearchKeyboardsIgnoreCaseHandleException() throws IOException {
+        doThrow(new IOException()).when(mockInventoryDAO).findKeyboard("test", true);
+
+        ResponseEntity<Keyboard[]> response = inventoryController.searchKeyboards("test", true);
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+    }
+
+    @Test
+    public void testQueryKeyboards() throws IOException {
+        Keyboard[] keys = new Keyboard[1];
+        keys[0] = new Keyboard(12, "Test", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 10, 10);
+        KeyboardQueryResult result = new KeyboardQueryResult(keys, new EnumMap<>(Keyboard.Size.class),
+                new EnumMap<>(Keyboard.SwitchColor.class));
+        when(mockInventoryDAO.queryKeyboards(any(KeyboardQuery.class))).thenReturn(result);
+
+        ResponseEntity<KeyboardQueryResult> response = inventoryController.queryKeyboards("test", true, 5, 20,
+                Arrays.asList(Keyboard.Size.FULL), null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(result, response.getBody());
+    }
+
+    @Test
+    public void testQueryKeyboardsHandleException() throws IOException {
+        doThrow(new IOException()).when(mockInventoryDAO).queryKeyboards(any(KeyboardQuery.class));
+
+        ResponseEntity<KeyboardQueryResult> response = inventoryController.queryKeyboards(null, false, null, null,
+                null, null);
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+    }
+
+    @Test
+    public void testGetKeyboardsPage() throws IOException {
+        KeyboardPage page = new KeyboardPage(
+                new Keyboard[] { new Keyboard(12, "test", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 10, 10) },
+                "next");
+        when(mockInventoryDAO.getKeyboardPage(any(KeyboardQuery.class), eq(KeyboardSort.PRICE), eq(true),
+                isNull(), eq(1))).thenReturn(page);
+
+        ResponseEntity<KeyboardPage> response = inventoryController.getKeyboards(1, null, "price", "DESC");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(page, response.getBody());
+    }
+
+    @Test
+    public void testSearchAndFilterKeyboardsPage() throws IOException {
+        KeyboardPage page = new KeyboardPage(new Keyboard[0], null);
+        when(mockInventoryDAO.getKeyboardPage(
+                argThat(query -> query != null && "te".equals(query.getName()) && query.isIgnoreCase()),
+                eq(KeyboardSort.NAME), eq(false), eq("abc"), eq(20))).thenReturn(page);
+        when(mockInventoryDAO.getKeyboardPage(
+                argThat(query -> query != null && Integer.valueOf(5).equals(query.getMinPrice())
+                        && Integer.valueOf(9).equals(query.getMaxPrice())),
+                eq(KeyboardSort.ID), eq(false), isNull(), eq(20))).thenReturn(page);
+
+        assertEquals(page, inventoryController.searchKeyboards("te", true, 20, "abc", "name", "asc").getBody());
+        assertEquals(page, inventoryController.filterKeyboards("5", "9", 20, null, "id", "asc").getBody());
+    }
+
+    @Test
+    public void testKeyboardsPageBadRequest() throws IOException {
+        doThrow(new IllegalArgumentException("Malformed cursor")).when(mockInventoryDAO)
+                .getKeyboardPage(any(KeyboardQuery.class), any(KeyboardSort.class), eq(false), eq("bad"), anyInt());
+
+        assertEquals(HttpStatus.BAD_REQUEST, inventoryController.getKeyboards(10, "bad", "id", "asc").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, inventoryController.getKeyboards(0, null, "id", "asc").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST,
+                inventoryController.getKeyboards(InventoryController.MAX_PAGE_SIZE + 1, null, "id", "asc")
+                        .getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, inventoryController.getKeyboards(10, null, "color", "asc").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, inventoryController.getKeyboards(10, null, "id", "up").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST,
+                inventoryController.filterKeyboards("cheap", "9", 10, null, "id", "asc").getStatusCode());
+    }
+
+    @Test
+    public void testKeyboardsPageHandleException() throws IOException {
+        doThrow(new IOException()).when(mockInventoryDAO).getKeyboardPage(any(KeyboardQuery.class),
+                any(KeyboardSort.class), eq(false), isNull(), anyInt());
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,
+                inventoryController.getKeyboards(10, null, "id", "asc").getStatusCode());
+    }
+
     @Test
     public void testCreateKeyboard() throws IOException {
 
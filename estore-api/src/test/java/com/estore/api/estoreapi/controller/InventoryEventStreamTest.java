@@ -0,0 +1,182 @@
+package com.estore.api.estoreapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.KeyboardDelta;
+import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.estore.api.estoreapi.persistence.PersistenceSettings;
+
+/**
+ * Test the Inventory Event Stream class
+ *
+ * @author Team 2
+ */
+@Tag("Controller-tier")
+public class InventoryEventStreamTest {
+    /**
+     * A stream that keeps what is sent on it instead of writing it
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> names = new ArrayList<>();
+        private final List<List<KeyboardDelta>> batches = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void send(SseEventBuilder builder) {
+            for (DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof List) {
+                    batches.add((List<KeyboardDelta>) part.getData());
+                } else if (part.getData().toString().contains("event:")) {
+                    String text = part.getData().toString();
+                    names.add(text.substring(text.indexOf("event:") + 6, text.indexOf('\n', text.indexOf("event:"))));
+                }
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+        }
+    }
+
+    private InventoryDAO mockInventoryDAO;
+    private PersistenceSettings settings;
+    private List<Runnable> queued;
+    private Consumer<InventoryChange> listener;
+
+    @BeforeEach
+    public void setupInventoryEventStream() {
+        mockInventoryDAO = mock(InventoryDAO.class);
+        settings = new PersistenceSettings();
+        settings.setInventoryEventsEnabled(true);
+        settings.setInventoryEventsMaxPending(3);
+        settings.setInventoryEventsMaxSubscribers(2);
+        queued = new ArrayList<>();
+    }
+
+    /**
+     * Creates a stream whose sends wait in {@link #queued} until run, and
+     * captures the listener it registers with the inventory
+     *
+     * @return the stream
+     */
+    @SuppressWarnings("unchecked")
+    private InventoryEventStream createStream() {
+        InventoryEventStream stream = new InventoryEventStream(mockInventoryDAO, settings, queued::add);
+        ArgumentCaptor<Consumer<InventoryChange>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(mockInventoryDAO).addChangeListener(captor.capture());
+        listener = captor.getValue();
+        return stream;
+    }
+
+    /**
+     * Runs the queued sends
+     */
+    private void dispatch() {
+        List<Runnable> tasks = new ArrayList<>(queued);
+        queued.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    /**
+     * Reports a stock change of a keyboard to the stream
+     *
+     * @param version  the version of the change
+     * @param id       the keyboard's id
+     * @param quantity the keyboard's new quantity
+     */
+    private void change(long version, int id, int quantity) {
+        listener.accept(InventoryChange.upsert(version,
+                new Keyboard(id, "k" + id, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 10, quantity)));
+    }
+
+    @Test
+    public void testCoalescesChangesToOneKeyboard() {
+        InventoryEventStream stream = createStream();
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.subscribe(emitter);
+
+        change(1, 5, 9);
+        change(2, 5, 8);
+        change(3, 6, 4);
+        listener.accept(InventoryChange.delete(4, 7));
+        assertEquals(1, queued.size());
+        dispatch();
+
+        assertEquals(List.of(InventoryEventStream.CHANGES), emitter.names);
+        List<KeyboardDelta> batch = emitter.batches.get(0);
+        assertEquals(3, batch.size());
+        assertEquals(8, batch.get(0).getQuantity());
+        assertEquals(2, batch.get(0).getVersion());
+        assertTrue(batch.get(2).isDeleted());
+
+        // Nothing waits once sent, so the next change is sent again
+        change(5, 5, 7);
+        dispatch();
+        assertEquals(2, emitter.batches.size());
+    }
+
+    @Test
+    public void testDropsSlowSubscriber() {
+        InventoryEventStream stream = createStream();
+        RecordingEmitter slow = new RecordingEmitter();
+        RecordingEmitter fast = new RecordingEmitter();
+        stream.subscribe(slow);
+
+        for (int id = 1; id <= 4; ++id) {
+            change(id, id, 1);
+        }
+        stream.subscribe(fast);
+        change(5, 1, 0);
+        dispatch();
+
+        assertEquals(List.of(InventoryEventStream.RESYNC), slow.names);
+        assertTrue(slow.batches.isEmpty());
+        assertTrue(slow.completed);
+        assertEquals(1, stream.getDropped());
+        assertEquals(1, fast.batches.size());
+        assertEquals(1, stream.size());
+    }
+
+    @Test
+    public void testLimitsSubscribers() {
+        InventoryEventStream stream = createStream();
+
+        assertNotNull(stream.subscribe(new RecordingEmitter()));
+        assertNotNull(stream.subscribe(new RecordingEmitter()));
+        assertNull(stream.subscribe(new RecordingEmitter()));
+        assertEquals(2, stream.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        settings.setInventoryEventsEnabled(false);
+        InventoryEventStream stream = new InventoryEventStream(mockInventoryDAO, settings);
+
+        assertFalse(stream.isEnabled());
+        assertNull(stream.subscribe());
+        verify(mockInventoryDAO, never()).addChangeListener(ArgumentMatchers.any());
+    }
+}
@@ -0,0 +1,218 @@
+package com.estore.api.estoreapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.persistence.InventoryDAO;
+
+/**
+ * Test the Query Result Cache class
+ *
+ * @author Team 2
+ */
+@Tag("Controller-tier")
+public class QueryResultCacheTest {
+    private InventoryDAO mockInventoryDAO;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    public void setupQueryResultCache() {
+        mockInventoryDAO = mock(InventoryDAO.class);
+        when(mockInventoryDAO.getVersion()).thenReturn(1L);
+        loads = new AtomicInteger();
+    }
+
+    /**
+     * Returns a loader that counts its calls and returns a result of nine
+     * keyboards, weighing ten
+     *
+     * @return the loader
+     */
+    private QueryResultCache.Loader loader() {
+        return () -> {
+            loads.incrementAndGet();
+            Keyboard[] keyboards = new Keyboard[9];
+            for (int i = 0; i < keyboards.length; ++i) {
+                keyboards[i] = new Keyboard(i, "keyboard " + i, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 10, 1);
+            }
+            return keyboards;
+        };
+    }
+
+    /**
+     * Returns a loader that counts its calls and returns the given keyboards
+     *
+     * @param keyboards the result
+     * @return the loader
+     */
+    private QueryResultCache.Loader loader(Keyboard... keyboards) {
+        return () -> {
+            loads.incrementAndGet();
+            return keyboards;
+        };
+    }
+
+    @Test
+    public void testHitsUntilVersionChanges() throws IOException {
+        QueryResultCache cache = new QueryResultCache(mockInventoryDAO, 1000);
+
+        Keyboard[] first = cache.get(QueryResultCache.searchKey("key", true), loader());
+        assertSame(first, cache.get(QueryResultCache.searchKey("key", true), loader()));
+        cache.get(QueryResultCache.searchKey("key", false), loader());
+        assertEquals(2, loads.get());
+
+        when(mockInventoryDAO.getVersion()).thenReturn(2L);
+        cache.get(QueryResultCache.searchKey("key", true), loader());
+        assertEquals(3, loads.get());
+
+        QueryResultCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(3, stats.getMisses());
+        assertEquals(1, stats.getInvalidations());
+        assertEquals(1, stats.getSize());
+        assertEquals(10, stats.getWeight());
+    }
+
+    @Test
+    public void testChangeDuringLoadIsNotKept() throws IOException {
+        QueryResultCache cache = new QueryResultCache(mockInventoryDAO, 1000);
+        when(mockInventoryDAO.getVersion()).thenReturn(1L, 2L, 2L, 2L, 2L);
+
+        cache.get(QueryResultCache.priceKey("1", "9"), loader());
+        cache.get(QueryResultCache.priceKey("1", "9"), loader());
+        cache.get(QueryResultCache.priceKey("1", "9"), loader());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testScanDoesNotFlushPopularResults() throws IOException {
+        // Room for ten results of weight ten beside a window of one
+        QueryResultCache cache = new QueryResultCache(mockInventoryDAO, 102);
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < 10; ++i) {
+                cache.get("hot" + i, loader());
+            }
+        }
+        assertEquals(10, loads.get());
+
+        for (int i = 0; i < 50; ++i) {
+            cache.get("once" + i, loader());
+        }
+        for (int i = 0; i < 10; ++i) {
+            cache.get("hot" + i, loader());
+        }
+        assertEquals(60, loads.get());
+        assertEquals(50, cache.getStats().getEvictions());
+
+        // Asked for more often than the popular results' four times, a new
+        // query replaces one of them
+        for (int i = 0; i < 6; ++i) {
+            cache.get("rising", loader());
+        }
+        assertEquals(65, loads.get());
+        assertEquals(10, cache.getStats().getSize());
+    }
+
+    @Test
+    public void testChangeOnlyDropsResultsItCouldAffect() throws IOException {
+        QueryResultCache cache = new QueryResultCache(mockInventoryDAO, 1000);
+        Keyboard alpha = new Keyboard(1, "Alpha", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 10, 5);
+        Keyboard beta = new Keyboard(2, "Beta", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 5);
+        String alphaKey = QueryResultCache.searchKey("alpha", true);
+        String betaKey = QueryResultCache.searchKey("Beta", false);
+        String priceKey = QueryResultCache.priceKey("40", "60");
+        when(mockInventoryDAO.getChangesSince(anyLong(), isNull()))
+                .thenReturn(new InventoryChanges("e", 1, true, Collections.emptyList()));
+        cache.get(alphaKey, loader(alpha));
+        cache.get(betaKey, loader(beta));
+        cache.get(priceKey, loader(beta));
+        assertEquals(3, loads.get());
+
+        // Selling a unit of alpha only changes the result holding it
+        Keyboard sold = new Keyboard(alpha, 4);
+        when(mockInventoryDAO.getVersion()).thenReturn(2L);
+        when(mockInventoryDAO.getChangesSince(1, "e")).thenReturn(
+                new InventoryChanges("e", 2, false, Arrays.asList(InventoryChange.upsert(2, sold))));
+        assertSame(sold, cache.get(alphaKey, loader(sold))[0]);
+        assertSame(beta, cache.get(betaKey, loader(beta))[0]);
+        assertSame(beta, cache.get(priceKey, loader(beta))[0]);
+        assertEquals(4, loads.get());
+
+        // Renaming it so that the Beta search now finds it drops that result too
+        Keyboard renamed = new Keyboard(1, "Alpha Beta", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 10, 4);
+        when(mockInventoryDAO.getVersion()).thenReturn(3L);
+        when(mockInventoryDAO.getChangesSince(2, "e")).thenReturn(
+                new InventoryChanges("e", 3, false, Arrays.asList(InventoryChange.upsert(3, renamed))));
+        cache.get(betaKey, loader(beta, renamed));
+        cache.get(priceKey, loader(beta));
+        assertEquals(5, loads.get());
+        assertEquals(2, cache.getStats().getInvalidations());
+
+        // A change log that no longer reaches back drops everything
+        when(mockInventoryDAO.getVersion()).thenReturn(4L);
+        when(mockInventoryDAO.getChangesSince(3, "e"))
+                .thenReturn(new InventoryChanges("e", 4, true, Collections.emptyList()));
+        cache.get(priceKey, loader(beta));
+        assertEquals(6, loads.get());
+    }
+
+    /**
+     * Compares filtering a large inventory on every request against answering
+     * repeated queries from the cache. Timings depend on the machine, so they
+     * are only logged; run with -Pbenchmarks.
+     */
+    @Test
+    @Tag("Benchmark")
+    public void testBenchmarkCachedQueries() throws IOException {
+        Keyboard[] inventory = new Keyboard[5000];
+        for (int i = 0; i < inventory.length; ++i) {
+            inventory[i] = new Keyboard(i, "keyboard " + i, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, i % 999, i);
+        }
+        QueryResultCache.Loader filter = () -> {
+            List<Keyboard> matches = new ArrayList<>();
+            for (Keyboard keyboard : inventory) {
+                if (keyboard.getKeyboardName().toLowerCase().contains("keyboard 1")) {
+                    matches.add(keyboard);
+                }
+            }
+            return matches.toArray(new Keyboard[0]);
+        };
+        QueryResultCache cache = new QueryResultCache(mockInventoryDAO, 100000);
+        int requests = 2000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; ++i) {
+            filter.load();
+        }
+        long filtered = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < requests; ++i) {
+            cache.get(QueryResultCache.searchKey("keyboard 1", true), filter);
+        }
+        long cached = System.nanoTime() - start;
+
+        assertEquals(requests - 1, cache.getStats().getHits());
+        Logger.getLogger(QueryResultCacheTest.class.getName()).info(String.format(
+                "%d searches of %d keyboards: %d ms filtering each, %d ms cached", requests, inventory.length,
+                filtered / 1000000, cached / 1000000));
+    }
+}
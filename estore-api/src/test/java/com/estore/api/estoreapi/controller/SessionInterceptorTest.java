@@ -0,0 +1,69 @@
+package com.estore.api.estoreapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.estore.api.estoreapi.security.SessionStore;
+
+/**
+ * Test the Session Interceptor class
+ *
+ * @author Team 2
+ */
+@Tag("Controller-tier")
+public class SessionInterceptorTest {
+    private SessionStore mockSessions;
+    private SessionInterceptor interceptor;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    public void setupSessionInterceptor() {
+        mockSessions = mock(SessionStore.class);
+        interceptor = new SessionInterceptor(mockSessions);
+        request = new MockHttpServletRequest("PUT", "/user/alice/cart");
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("username", "alice"));
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    public void testAllowsEveryRequestWhenNotRequired() {
+        when(mockSessions.isRequired()).thenReturn(false);
+
+        assertTrue(interceptor.preHandle(request, response, null));
+    }
+
+    @Test
+    public void testAllowsOwnersToken() {
+        when(mockSessions.isRequired()).thenReturn(true);
+        when(mockSessions.authenticate("token")).thenReturn("alice");
+        request.addHeader(SessionStore.HEADER, "token");
+
+        assertTrue(interceptor.preHandle(request, response, null));
+    }
+
+    @Test
+    public void testRefusesMissingOrOtherUsersToken() {
+        when(mockSessions.isRequired()).thenReturn(true);
+        when(mockSessions.authenticate("token")).thenReturn("bob");
+
+        assertFalse(interceptor.preHandle(request, response, null));
+        assertEquals(HttpStatus.UNAUTHORIZED.value(), response.getStatus());
+
+        request.addHeader(SessionStore.HEADER, "token");
+        assertFalse(interceptor.preHandle(request, response, null));
+    }
+}
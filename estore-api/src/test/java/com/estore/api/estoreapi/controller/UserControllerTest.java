@@ -2,24 +2,42 @@ package com.estore.api.estoreapi.controller;
 
 import com.estore.api.estoreapi.persistence.UserDAO;
 import com.estore.api.estoreapi.persistence.InventoryDAO;
+import com.estore.api.estoreapi.persistence.PersistenceSettings;
+import com.estore.api.estoreapi.persistence.StockHolds;
+import com.estore.api.estoreapi.security.PasswordHasher;
+import com.estore.api.estoreapi.security.PasswordSettings;
+import com.estore.api.estoreapi.security.SessionSettings;
+import com.estore.api.estoreapi.security.SessionStore;
 import com.estore.api.estoreapi.model.User;
 import com.estore.api.estoreapi.model.Keyboard;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.util.ArrayList;
+import java.util.Map;
 
 @Tag("Controller-tier")
 public class UserControllerTest {
@@ -35,7 +53,16 @@ public class UserControllerTest {
     public void setupUserController() {
         mockUserDAO = mock(UserDAO.class);
         mockInventoryDAO = mock(InventoryDAO.class);
-        userController = new UserController(mockUserDAO, mockInventoryDAO);
+        userController = userController(new StockHolds(mockInventoryDAO, new PersistenceSettings()),
+                new SessionStore(new SessionSettings()), new PasswordHasher(new PasswordSettings()));
+    }
+
+    /**
+     * Creates a UserController over the mock DAOs with the given holds,
+     * sessions and password hasher
+     */
+    private UserController userController(StockHolds stockHolds, SessionStore sessions, PasswordHasher passwords) {
+        return new UserController(mockUserDAO, mockInventoryDAO, stockHolds, sessions, passwords);
     }
 
     @Test
@@ -202,6 +229,19 @@ public class UserControllerTest {
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
     }
 
+    @Test
+    public void testExportUsers() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(mockUserDAO.exportUsers(out)).thenReturn(2);
+
+        ResponseEntity<StreamingResponseBody> response = userController.exportUsers();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        response.getBody().writeTo(out);
+        verify(mockUserDAO).exportUsers(out);
+    }
+
     @Test
     public void testGetUsers() {
         // Setup
@@ -265,6 +305,21 @@ public class UserControllerTest {
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
     }
 
+    @Test
+    public void testDeleteUserReleasesHolds() throws IOException {
+        StockHolds stockHolds = mock(StockHolds.class);
+        userController = userController(stockHolds, new SessionStore(new SessionSettings()),
+                new PasswordHasher(new PasswordSettings()));
+        when(mockUserDAO.deleteAccount("Batman")).thenReturn(true);
+        when(mockUserDAO.deleteAccount("Robin")).thenReturn(false);
+
+        assertEquals(HttpStatus.OK, userController.deleteUser("Batman").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, userController.deleteUser("Robin").getStatusCode());
+
+        verify(stockHolds).releaseAll("Batman");
+        verify(stockHolds, never()).releaseAll("Robin");
+    }
+
     @Test
     public void testLogin() throws IOException {
         // Setup
@@ -272,7 +327,7 @@ public class UserControllerTest {
 
         // To get a user in storage, lets create it
         when(mockUserDAO.createUser(user)).thenReturn(user);
-        user = userController.createUser(user).getBody();
+        userController.createUser(user);
 
         when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
 
@@ -337,7 +392,7 @@ public class UserControllerTest {
 
         // To get a user in storage, lets create it
         when(mockUserDAO.createUser(user)).thenReturn(user);
-        user = userController.createUser(user).getBody();
+        userController.createUser(user);
 
         doThrow(new IOException()).when(mockUserDAO).login(user);
         when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
@@ -371,6 +426,131 @@ public class UserControllerTest {
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, userController.logout(user.getUsername(), user.getPassword()).getStatusCode());
     }
 
+    @Test
+    public void testLoginWithSessionStaysInMemory() throws IOException {
+        SessionStore sessions = sessionStore();
+        userController = userController(new StockHolds(mockInventoryDAO, new PersistenceSettings()), sessions,
+                new PasswordHasher(new PasswordSettings()));
+        User user = new User("login man", "login man");
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+
+        ResponseEntity<User> response = userController.login(new User("login man", "login man"));
+        String token = response.getHeaders().getFirst(SessionStore.HEADER);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("login man", sessions.authenticate(token));
+        assertEquals(HttpStatus.UNAUTHORIZED, userController.login(new User("login man", "wrong")).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, userController.login(new User("login man", null)).getStatusCode());
+
+        assertEquals(HttpStatus.OK, userController.logout(token).getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, userController.logout(token).getStatusCode());
+        verify(mockUserDAO, never()).login(any());
+        verify(mockUserDAO, never()).logout(any());
+    }
+
+    @Test
+    public void testLogoutByNameEndsEverySession() throws IOException {
+        SessionStore sessions = sessionStore();
+        userController = userController(new StockHolds(mockInventoryDAO, new PersistenceSettings()), sessions,
+                new PasswordHasher(new PasswordSettings()));
+        User user = new User("login man", "login man");
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+        String first = userController.login(user.getUsername(), user.getPassword()).getHeaders()
+                .getFirst(SessionStore.HEADER);
+        String second = userController.login(user.getUsername(), user.getPassword()).getHeaders()
+                .getFirst(SessionStore.HEADER);
+
+        assertEquals(HttpStatus.OK, userController.logout(user.getUsername(), user.getPassword()).getStatusCode());
+        assertNull(sessions.authenticate(first));
+        assertNull(sessions.authenticate(second));
+        verify(mockUserDAO, never()).logout(any());
+    }
+
+    @Test
+    public void testLogoutByNameChecksPassword() throws IOException {
+        SessionStore sessions = sessionStore();
+        userController = userController(new StockHolds(mockInventoryDAO, new PersistenceSettings()), sessions,
+                new PasswordHasher(new PasswordSettings()));
+        User user = new User("login man", "login man");
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+        String token = userController.login(user.getUsername(), user.getPassword()).getHeaders()
+                .getFirst(SessionStore.HEADER);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, userController.logout(user.getUsername(), "wrong").getStatusCode());
+        assertEquals("login man", sessions.authenticate(token));
+    }
+
+    @Test
+    public void testResponsesLeaveOutPassword() throws IOException {
+        User user = new User("Bob", "hash");
+        user.getUserOrderHistory().add(new Keyboard(1, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 1));
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+        when(mockUserDAO.getUsers()).thenReturn(new User[] { user });
+
+        User body = userController.getUser(user.getUsername()).getBody();
+        assertNull(body.getPassword());
+        assertEquals(1, body.getUserOrderHistory().size());
+        assertNull(userController.getUsers().getBody()[0].getPassword());
+        assertNull(userController.login(user.getUsername(), "hash").getBody().getPassword());
+        assertEquals("hash", user.getPassword());
+    }
+
+    @Test
+    public void testLoginRehashesPlainPasswordOnce() throws IOException {
+        PasswordHasher passwords = passwordHasher();
+        userController = userController(new StockHolds(mockInventoryDAO, new PersistenceSettings()),
+                new SessionStore(new SessionSettings()), passwords);
+        User user = new User("login man", "login man");
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+
+        assertEquals(HttpStatus.OK, userController.login(user.getUsername(), "login man").getStatusCode());
+        assertTrue(PasswordHasher.isHashed(user.getPassword()));
+        assertEquals(HttpStatus.OK, userController.login(user.getUsername(), "login man").getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, userController.login(user.getUsername(), "login").getStatusCode());
+
+        verify(mockUserDAO, times(1)).updateUser(user);
+        passwords.close();
+    }
+
+    @Test
+    public void testCreateUserStoresHash() throws IOException {
+        PasswordHasher passwords = passwordHasher();
+        userController = userController(new StockHolds(mockInventoryDAO, new PersistenceSettings()),
+                new SessionStore(new SessionSettings()), passwords);
+        User user = new User("new man", "secret");
+        when(mockUserDAO.createUser(user)).thenReturn(user);
+
+        ResponseEntity<User> response = userController.createUser(user);
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertNull(response.getBody().getPassword());
+        assertTrue(PasswordHasher.isHashed(user.getPassword()));
+        assertTrue(passwords.verify("new man", user.getPassword(), "secret"));
+        passwords.close();
+    }
+
+    /**
+     * Creates a password hasher at a low cost
+     *
+     * @return the password hasher
+     */
+    private PasswordHasher passwordHasher() {
+        PasswordSettings settings = new PasswordSettings();
+        settings.setHashingEnabled(true);
+        settings.setIterations(1000);
+        return new PasswordHasher(settings);
+    }
+
+    /**
+     * Creates an enabled session store
+     *
+     * @return the session store
+     */
+    private SessionStore sessionStore() {
+        SessionSettings settings = new SessionSettings();
+        settings.setEnabled(true);
+        return new SessionStore(settings);
+    }
+
     @Test
     public void testAddToCart() throws IOException { // createUser may throw IOException
         // Setup
@@ -429,6 +609,54 @@ public class UserControllerTest {
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
     }
 
+    @Test
+    public void testAddToCartReservesStock() throws IOException {
+        User user = new User("Batman", "super");
+        Keyboard keyboard = new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 10);
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+        when(mockUserDAO.addToUserCart(user, keyboard, 10)).thenReturn(true);
+        when(mockInventoryDAO.reserveStock(16, 1)).thenReturn(true);
+
+        ResponseEntity<User> response = userController.addToCart(keyboard, user.getUsername());
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        verify(mockInventoryDAO).reserveStock(16, 1);
+        verify(mockUserDAO, never()).removeFromCart(user, keyboard);
+    }
+
+    @Test
+    public void testAddToCartOutOfStock() throws IOException {
+        User user = new User("Batman", "super");
+        Keyboard keyboard = new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 10);
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+        when(mockUserDAO.addToUserCart(user, keyboard, 10)).thenReturn(true);
+        when(mockInventoryDAO.reserveStock(16, 1)).thenReturn(false);
+
+        ResponseEntity<User> response = userController.addToCart(keyboard, user.getUsername());
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        verify(mockUserDAO).removeFromCart(user, keyboard);
+    }
+
+    @Test
+    public void testAddToCartHoldFailureGivesStockBack() throws IOException {
+        StockHolds stockHolds = mock(StockHolds.class);
+        userController = userController(stockHolds, new SessionStore(new SessionSettings()),
+                new PasswordHasher(new PasswordSettings()));
+        User user = new User("Batman", "super");
+        Keyboard keyboard = new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 10);
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+        when(mockUserDAO.addToUserCart(user, keyboard, 10)).thenReturn(true);
+        when(mockInventoryDAO.reserveStock(16, 1)).thenReturn(true);
+        doThrow(new IOException()).when(stockHolds).hold(user.getUsername(), 16, 1);
+
+        ResponseEntity<User> response = userController.addToCart(keyboard, user.getUsername());
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        verify(mockInventoryDAO).releaseStock(16, 1);
+        verify(mockUserDAO).removeFromCart(user, keyboard);
+    }
+
     // @Test
     // public void testRemoveFromCart() throws IOException { // createUser may throw IOException
     //     // Setup
@@ -676,6 +904,165 @@ public class UserControllerTest {
         assertEquals(2, keyboard.getQuantity());
     }
 
+    @Test
+    public void testPushToOrderHistoryReservesStock() throws IOException {
+        User user = new User("Batman", "super");
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+        Keyboard keyboard = new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3);
+        ArrayList<Keyboard> purchased = new ArrayList<>();
+        purchased.add(keyboard);
+        when(mockInventoryDAO.reserveStock(Map.of(16, 3))).thenReturn(true);
+
+        assertEquals(HttpStatus.CREATED, userController.pushToOrderHistory(purchased, "Batman").getStatusCode());
+        verify(mockUserDAO).addToUserOrderHistory(user, keyboard, 3);
+    }
+
+    @Test
+    public void testPushToOrderHistoryOutOfStock() throws IOException {
+        User user = new User("Batman", "super");
+        when(mockUserDAO.getUser(user.getUsername())).thenReturn(user);
+        ArrayList<Keyboard> purchased = new ArrayList<>();
+        purchased.add(new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3));
+        purchased.add(new Keyboard(17, "Foldable Keyboard", Keyboard.Size.TKL, Keyboard.SwitchColor.RED, 60, 2));
+        when(mockInventoryDAO.reserveStock(Map.of(16, 3, 17, 2))).thenReturn(false);
+
+        assertEquals(HttpStatus.CONFLICT, userController.pushToOrderHistory(purchased, "Batman").getStatusCode());
+        verify(mockUserDAO, never()).addToUserOrderHistory(any(), any(), anyInt());
+    }
+
+    @Test
+    public void testCheckout() throws IOException {
+        User user = new User("Batman", "super");
+        user.getCart().add(new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3));
+        user.getCart().add(new Keyboard(17, "Foldable Keyboard", Keyboard.Size.TKL, Keyboard.SwitchColor.RED, 60, 2));
+        when(mockUserDAO.getUser("Batman")).thenReturn(user);
+        when(mockUserDAO.getUserShoppingCart(user)).thenReturn(user.getUserCart());
+        when(mockInventoryDAO.reserveStock(Map.of(16, 3, 17, 2))).thenReturn(true);
+        when(mockUserDAO.checkout(user, user.getUserCart())).thenReturn(true);
+
+        ResponseEntity<User> response = userController.checkout("Batman");
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(user, response.getBody());
+        verify(mockInventoryDAO, never()).releaseStock(any());
+    }
+
+    @Test
+    public void testCheckoutOutOfStock() throws IOException {
+        User user = new User("Batman", "super");
+        user.getCart().add(new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3));
+        when(mockUserDAO.getUser("Batman")).thenReturn(user);
+        when(mockUserDAO.getUserShoppingCart(user)).thenReturn(user.getUserCart());
+        when(mockInventoryDAO.reserveStock(Map.of(16, 3))).thenReturn(false);
+
+        assertEquals(HttpStatus.CONFLICT, userController.checkout("Batman").getStatusCode());
+        verify(mockUserDAO, never()).checkout(any(), any());
+    }
+
+    @Test
+    public void testCheckoutReleasesStockWhenCartChanged() throws IOException {
+        User user = new User("Batman", "super");
+        user.getCart().add(new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3));
+        when(mockUserDAO.getUser("Batman")).thenReturn(user);
+        when(mockUserDAO.getUserShoppingCart(user)).thenReturn(user.getUserCart());
+        when(mockInventoryDAO.reserveStock(Map.of(16, 3))).thenReturn(true);
+        when(mockUserDAO.checkout(user, user.getUserCart())).thenReturn(false);
+
+        assertEquals(HttpStatus.CONFLICT, userController.checkout("Batman").getStatusCode());
+        verify(mockInventoryDAO).releaseStock(Map.of(16, 3));
+    }
+
+    @Test
+    public void testCheckoutNoticesQuantityChangedWhileReserving() throws IOException {
+        User user = new User("Batman", "super");
+        Keyboard keyboard = new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3);
+        user.getCart().add(keyboard);
+        when(mockUserDAO.getUser("Batman")).thenReturn(user);
+        when(mockUserDAO.getUserShoppingCart(user)).thenReturn(user.getUserCart());
+        // The cart's quantity goes up while the stock is being reserved
+        when(mockInventoryDAO.reserveStock(Map.of(16, 3))).thenAnswer(invocation -> {
+            keyboard.setQuantity(4);
+            return true;
+        });
+        // Like UserFileDAO, only checks out the cart the purchase was reserved from
+        when(mockUserDAO.checkout(eq(user), any())).thenAnswer(
+                invocation -> invocation.getArgument(1).equals(user.getUserCart()));
+
+        assertEquals(HttpStatus.CONFLICT, userController.checkout("Batman").getStatusCode());
+        verify(mockInventoryDAO).releaseStock(Map.of(16, 3));
+    }
+
+    @Test
+    public void testCheckoutHandleException() throws IOException {
+        User user = new User("Batman", "super");
+        user.getCart().add(new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3));
+        when(mockUserDAO.getUser("Batman")).thenReturn(user);
+        when(mockUserDAO.getUserShoppingCart(user)).thenReturn(user.getUserCart());
+        when(mockInventoryDAO.reserveStock(Map.of(16, 3))).thenReturn(true);
+        doThrow(new IOException()).when(mockUserDAO).checkout(user, user.getUserCart());
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, userController.checkout("Batman").getStatusCode());
+        verify(mockInventoryDAO).releaseStock(Map.of(16, 3));
+    }
+
+    @Test
+    public void testCheckoutCountsUnitsHeldForCart() throws IOException {
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setCartHoldsEnabled(true);
+        StockHolds stockHolds = new StockHolds(mockInventoryDAO, settings);
+        userController = userController(stockHolds, new SessionStore(new SessionSettings()),
+                new PasswordHasher(new PasswordSettings()));
+        User user = new User("Batman", "super");
+        Keyboard keyboard = new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3);
+        when(mockUserDAO.getUser("Batman")).thenReturn(user);
+        when(mockUserDAO.addToUserCart(user, keyboard, 3)).thenReturn(true);
+        when(mockInventoryDAO.reserveStock(16, 1)).thenReturn(true);
+
+        userController.addToCart(keyboard, "Batman");
+        assertEquals(1, stockHolds.size());
+
+        user.getCart().add(keyboard);
+        when(mockUserDAO.getUserShoppingCart(user)).thenReturn(user.getUserCart());
+        when(mockInventoryDAO.reserveStock(Map.of(16, 2))).thenReturn(true);
+        when(mockUserDAO.checkout(user, user.getUserCart())).thenReturn(true);
+
+        assertEquals(HttpStatus.CREATED, userController.checkout("Batman").getStatusCode());
+        assertEquals(0, stockHolds.size());
+        stockHolds.close();
+    }
+
+    @Test
+    public void testRemoveFromCartReleasesHold() throws IOException {
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setCartHoldsEnabled(true);
+        StockHolds stockHolds = new StockHolds(mockInventoryDAO, settings);
+        userController = userController(stockHolds, new SessionStore(new SessionSettings()),
+                new PasswordHasher(new PasswordSettings()));
+        User user = new User("Batman", "super");
+        Keyboard keyboard = new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 3);
+        when(mockUserDAO.getUser("Batman")).thenReturn(user);
+        when(mockUserDAO.addToUserCart(user, keyboard, 3)).thenReturn(true);
+        when(mockInventoryDAO.reserveStock(16, 1)).thenReturn(true);
+        when(mockUserDAO.removeFromCart(user, keyboard)).thenReturn(true);
+
+        userController.addToCart(keyboard, "Batman");
+        assertEquals(HttpStatus.OK, userController.removeFromCart("Batman", keyboard).getStatusCode());
+
+        verify(mockInventoryDAO).releaseStock(16, 1);
+        assertEquals(0, stockHolds.size());
+        stockHolds.close();
+    }
+
+    @Test
+    public void testCheckoutEmptyCartOrUnknownUser() throws IOException {
+        User user = new User("Batman", "super");
+        when(mockUserDAO.getUser("Batman")).thenReturn(user);
+        when(mockUserDAO.getUserShoppingCart(user)).thenReturn(user.getUserCart());
+
+        assertEquals(HttpStatus.BAD_REQUEST, userController.checkout("Batman").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, userController.checkout("Robin").getStatusCode());
+    }
+
     // @Test
     // public void testPushToOrderHistoryUserNotFound() throws IOException {
     //     User user = new User("Batman", "super");
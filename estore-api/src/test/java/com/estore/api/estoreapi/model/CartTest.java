@@ -0,0 +1,81 @@
+package com.estore.api.estoreapi.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Cart class
+ *
+ * @author Team 2
+ */
+@Tag("Model-tier")
+public class CartTest {
+
+    @Test
+    public void testEntriesAreKeyedById() {
+        Cart cart = new Cart();
+        Keyboard keyboard = new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 1);
+
+        assertTrue(cart.add(keyboard));
+        // Same id, different quantity
+        assertFalse(cart.add(new Keyboard(keyboard, 4)));
+        keyboard.setQuantity(3);
+
+        assertSame(keyboard, cart.get(16));
+        assertTrue(cart.contains(16));
+        assertEquals(1, cart.size());
+        assertSame(keyboard, cart.remove(16));
+        assertNull(cart.get(16));
+        assertTrue(cart.isEmpty());
+    }
+
+    @Test
+    public void testListKeepsOrderAndCombinesDuplicates() {
+        Keyboard first = new Keyboard(17, "Foldable Keyboard", Keyboard.Size.TKL, Keyboard.SwitchColor.RED, 60, 2);
+        Keyboard second = new Keyboard(3, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 1);
+        Cart cart = new Cart(List.of(first, second, new Keyboard(first, 5)));
+
+        assertEquals(2, cart.size());
+        assertEquals(List.of(17, 3), List.of(cart.toList().get(0).getKeyboardId(),
+                cart.toList().get(1).getKeyboardId()));
+        assertEquals(7, cart.get(17).getQuantity());
+        // The keyboards passed in are left as they were
+        assertEquals(2, first.getQuantity());
+    }
+
+    /**
+     * Fills a large cart and changes, finds and removes every entry. Timings
+     * depend on the machine, so they are only logged; run with -Pbenchmarks.
+     */
+    @Test
+    @Tag("Benchmark")
+    public void testBenchmarkLargeCart() {
+        int count = 100000;
+        Cart cart = new Cart();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; ++i) {
+            cart.add(new Keyboard(i, "keyboard" + i, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 1));
+        }
+        for (int i = 0; i < count; ++i) {
+            Keyboard keyboard = cart.get(i);
+            keyboard.setQuantity(keyboard.getQuantity() + 1);
+        }
+        for (int i = 0; i < count; ++i) {
+            assertEquals(2, cart.remove(i).getQuantity());
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(cart.isEmpty());
+        Logger.getLogger(CartTest.class.getName()).info(String.format(
+                "%d cart entries added, changed and removed in %d ms", count, elapsed / 1000000));
+    }
+}
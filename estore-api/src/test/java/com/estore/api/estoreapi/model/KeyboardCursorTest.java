@@ -0,0 +1,44 @@
+package com.estore.api.estoreapi.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("Model-tier")
+public class KeyboardCursorTest {
+
+    @Test
+    public void testRoundTrip() {
+        String encoded = new KeyboardCursor(KeyboardSort.NAME, true, "Key|chron K2", 7).encode();
+
+        KeyboardCursor cursor = KeyboardCursor.decode(encoded, KeyboardSort.NAME, true);
+
+        assertEquals("Key|chron K2", cursor.getKey());
+        assertEquals(7, cursor.getId());
+    }
+
+    @Test
+    public void testNumericKey() {
+        String encoded = new KeyboardCursor(KeyboardSort.PRICE, false, 80, 3).encode();
+
+        assertEquals(80, KeyboardCursor.decode(encoded, KeyboardSort.PRICE, false).getKey());
+    }
+
+    @Test
+    public void testRejectsOtherSort() {
+        String encoded = new KeyboardCursor(KeyboardSort.PRICE, false, 80, 3).encode();
+
+        assertThrows(IllegalArgumentException.class, () -> KeyboardCursor.decode(encoded, KeyboardSort.QUANTITY, false));
+        assertThrows(IllegalArgumentException.class, () -> KeyboardCursor.decode(encoded, KeyboardSort.PRICE, true));
+        assertThrows(IllegalArgumentException.class, () -> KeyboardCursor.decode("%%%", KeyboardSort.PRICE, false));
+        assertThrows(IllegalArgumentException.class, () -> KeyboardCursor.decode("YWJj", KeyboardSort.PRICE, false));
+    }
+
+    @Test
+    public void testParseSort() {
+        assertEquals(KeyboardSort.QUANTITY, KeyboardSort.parse("quantity"));
+        assertThrows(IllegalArgumentException.class, () -> KeyboardSort.parse("color"));
+    }
+}
@@ -0,0 +1,39 @@
+package com.estore.api.estoreapi.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test the Keyboard Delta class
+ *
+ * @author Team 2
+ */
+@Tag("Model-tier")
+public class KeyboardDeltaTest {
+
+    @Test
+    public void testUpsertCopiesQuantityAndPrice() throws IOException {
+        Keyboard keyboard = new Keyboard(7, "Seventh", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 40, 3);
+        KeyboardDelta delta = KeyboardDelta.of(InventoryChange.upsert(12, keyboard));
+        keyboard.setQuantity(2);
+
+        assertEquals(3, delta.getQuantity());
+        assertEquals("{\"version\":12,\"id\":7,\"quantity\":3,\"price\":40}",
+                new ObjectMapper().writeValueAsString(delta));
+    }
+
+    @Test
+    public void testDeleteCarriesOnlyTheId() throws IOException {
+        KeyboardDelta delta = KeyboardDelta.of(InventoryChange.delete(13, 7));
+
+        assertTrue(delta.isDeleted());
+        assertEquals("{\"version\":13,\"id\":7,\"deleted\":true}", new ObjectMapper().writeValueAsString(delta));
+    }
+}
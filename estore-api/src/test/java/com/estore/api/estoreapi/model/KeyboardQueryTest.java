@@ -0,0 +1,61 @@
+package com.estore.api.estoreapi.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("Model-tier")
+public class KeyboardQueryTest {
+    Keyboard keyboard = new Keyboard(1, "Keychron K2", Keyboard.Size.TKL, Keyboard.SwitchColor.BROWN, 80, 3);
+
+    @Test
+    public void testEmptyQueryMatchesEverything() {
+        KeyboardQuery query = new KeyboardQuery(null, false, null, null, null, Collections.emptyList());
+        assertTrue(query.matchesName(keyboard));
+        assertTrue(query.matchesPrice(keyboard));
+        assertTrue(query.matchesSize(keyboard));
+        assertTrue(query.matchesSwitchColor(keyboard));
+        assertTrue(query.getSizes().isEmpty());
+    }
+
+    @Test
+    public void testName() {
+        assertTrue(new KeyboardQuery("K2", false, null, null, null, null).matchesName(keyboard));
+        assertFalse(new KeyboardQuery("k2", false, null, null, null, null).matchesName(keyboard));
+        assertTrue(new KeyboardQuery("k2", true, null, null, null, null).matchesName(keyboard));
+    }
+
+    @Test
+    public void testPrice() {
+        assertTrue(new KeyboardQuery(null, false, 80, 80, null, null).matchesPrice(keyboard));
+        assertTrue(new KeyboardQuery(null, false, null, 100, null, null).matchesPrice(keyboard));
+        assertFalse(new KeyboardQuery(null, false, 81, null, null, null).matchesPrice(keyboard));
+    }
+
+    @Test
+    public void testFacets() {
+        KeyboardQuery query = new KeyboardQuery(null, false, null, null,
+                Arrays.asList(Keyboard.Size.FULL, Keyboard.Size.TKL), Arrays.asList(Keyboard.SwitchColor.RED));
+        assertTrue(query.matchesSize(keyboard));
+        assertFalse(query.matchesSwitchColor(keyboard));
+    }
+
+    @Test
+    public void testResultFillsMissingCounts() {
+        EnumMap<Keyboard.Size, Integer> sizeCounts = new EnumMap<>(Keyboard.Size.class);
+        sizeCounts.put(Keyboard.Size.TKL, 1);
+        KeyboardQueryResult result = new KeyboardQueryResult(new Keyboard[] { keyboard }, sizeCounts,
+                new EnumMap<>(Keyboard.SwitchColor.class));
+        assertEquals(1, result.getTotal());
+        assertEquals(1, result.getSizeCounts().get(Keyboard.Size.TKL));
+        assertEquals(0, result.getSizeCounts().get(Keyboard.Size.FULL));
+        assertEquals(Keyboard.SwitchColor.values().length, result.getSwitchColorCounts().size());
+    }
+}
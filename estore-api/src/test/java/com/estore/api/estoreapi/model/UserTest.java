@@ -8,6 +8,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 @Tag("Model-tier")
 public class UserTest {
 
@@ -76,6 +78,21 @@ public class UserTest {
         assertEquals(cart, user.getUserCart());
     }
 
+    @Test
+    public void testCartIsSavedAsList() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        User user = new User("testuser", "test");
+        user.getCart().add(new Keyboard(16, "NonFoldable Keyboard", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 2));
+
+        String json = objectMapper.writeValueAsString(user);
+        User read = objectMapper.readValue(json, User.class);
+
+        assertTrue(json.contains("\"userCart\":[{"));
+        assertFalse(json.contains("\"cart\""));
+        assertEquals(user.getUserCart(), read.getUserCart());
+        assertEquals(2, read.getCart().get(16).getQuantity());
+    }
+
     @Test
     public void testgetLoginStatus() {
         User user = new User("test", "test");
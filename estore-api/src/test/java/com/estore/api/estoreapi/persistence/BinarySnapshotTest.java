@@ -0,0 +1,182 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@Tag("Persistence-tier")
+public class BinarySnapshotTest {
+    private static final Logger LOG = Logger.getLogger(BinarySnapshotTest.class.getName());
+
+    private static Keyboard[] generateKeyboards(int count) {
+        Keyboard[] keyboards = new Keyboard[count];
+        for (int i = 0; i < count; ++i) {
+            keyboards[i] = new Keyboard(i, "Keyboard model " + (i % 500),
+                    Keyboard.Size.values()[i % Keyboard.Size.values().length],
+                    Keyboard.SwitchColor.values()[i % Keyboard.SwitchColor.values().length], 50 + i % 200, i % 40);
+        }
+        return keyboards;
+    }
+
+    @Test
+    public void testKeyboardsRoundTrip() throws IOException {
+        Keyboard[] keyboards = generateKeyboards(600);
+        keyboards[3] = new Keyboard(3, null, null, null, 0, 0);
+
+        List<Keyboard> loaded = new ArrayList<>();
+        long count = BinarySnapshot.readKeyboards(
+                new ByteArrayInputStream(BinarySnapshot.writeKeyboards(keyboards)), loaded::add);
+
+        assertEquals(keyboards.length, count);
+        assertArrayEquals(keyboards, loaded.toArray(new Keyboard[0]));
+        assertNull(loaded.get(3).getSize());
+        // Repeated names are read once from the name table
+        assertSame(loaded.get(1).getKeyboardName(), loaded.get(501).getKeyboardName());
+    }
+
+    @Test
+    public void testUsersRoundTrip() throws IOException {
+        Keyboard[] keyboards = generateKeyboards(3);
+        User[] users = new User[3];
+        users[0] = new User("first", "pw1");
+        users[0].setUserCart(new ArrayList<>(Arrays.asList(keyboards[0], keyboards[1])));
+        users[0].setUserOrderHistory(new ArrayList<>(Arrays.asList(keyboards[1])));
+        users[0].setLoginStatus(false);
+        users[1] = new User("second", null);
+        users[1].setUserCart(null);
+        users[2] = new User("third", "pw3");
+
+        List<User> loaded = new ArrayList<>();
+        BinarySnapshot.readUsers(new ByteArrayInputStream(BinarySnapshot.writeUsers(users)), loaded::add);
+
+        assertEquals(3, loaded.size());
+        assertEquals("first", loaded.get(0).getUsername());
+        assertEquals("pw1", loaded.get(0).getPassword());
+        assertEquals(false, loaded.get(0).getLoginStatus());
+        assertEquals(users[0].getUserCart(), loaded.get(0).getUserCart());
+        assertEquals(users[0].getUserOrderHistory(), loaded.get(0).getUserOrderHistory());
+        assertSame(loaded.get(0).getUserCart().get(1).getKeyboardName(),
+                loaded.get(0).getUserOrderHistory().get(0).getKeyboardName());
+        assertNull(loaded.get(1).getPassword());
+        assertNull(loaded.get(1).getUserCart());
+        assertTrue(loaded.get(2).getUserCart().isEmpty());
+    }
+
+    @Test
+    public void testRejectsWrongKind() {
+        byte[] keyboards = BinarySnapshot.writeKeyboards(generateKeyboards(2));
+        assertThrows(IOException.class,
+                () -> BinarySnapshot.readUsers(new ByteArrayInputStream(keyboards), user -> {
+                }));
+    }
+
+    @Test
+    public void testRejectsJson() {
+        byte[] json = "[{\"keyboardId\":1}]".getBytes();
+        assertThrows(IOException.class,
+                () -> BinarySnapshot.readKeyboards(new ByteArrayInputStream(json), keyboard -> {
+                }));
+    }
+
+    @Test
+    public void testRejectsTruncatedSnapshot() {
+        byte[] snapshot = BinarySnapshot.writeKeyboards(generateKeyboards(10));
+        byte[] truncated = Arrays.copyOf(snapshot, snapshot.length - 5);
+        assertThrows(IOException.class,
+                () -> BinarySnapshot.readKeyboards(new ByteArrayInputStream(truncated), keyboard -> {
+                }));
+    }
+
+    @Test
+    public void testFilenameFor() {
+        assertEquals("data/inventory.bin", BinarySnapshot.filenameFor("data/inventory.json"));
+        assertEquals("data/users.bin", BinarySnapshot.filenameFor("data/users.json"));
+        assertEquals("data/inventory.bin", BinarySnapshot.filenameFor("data/inventory"));
+    }
+
+    @Test
+    public void testSmallerThanJsonWithSameKeyboards(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Keyboard[] keyboards = generateKeyboards(1000);
+        Path json = dir.resolve("inventory.json");
+        Path binary = dir.resolve("inventory.bin");
+        objectMapper.writeValue(json.toFile(), keyboards);
+        Files.write(binary, BinarySnapshot.writeKeyboards(keyboards));
+
+        List<Keyboard> fromJson = new ArrayList<>(keyboards.length);
+        try (InputStream input = new FileInputStream(json.toFile())) {
+            new StreamingJsonLoader<>(objectMapper, Keyboard.class, "keyboards").load(input, Files.size(json),
+                    fromJson::add);
+        }
+        List<Keyboard> fromBinary = new ArrayList<>(keyboards.length);
+        try (InputStream input = new FileInputStream(binary.toFile())) {
+            BinarySnapshot.readKeyboards(input, fromBinary::add);
+        }
+
+        assertEquals(fromJson, fromBinary);
+        assertTrue(Files.size(binary) < Files.size(json) / 2);
+    }
+
+    /**
+     * Compares file size and load time of the JSON and binary formats for a
+     * large inventory. Timings depend on the machine, so they are only logged;
+     * run with -Pbenchmarks.
+     */
+    @Test
+    @Tag("Benchmark")
+    public void testBenchmarkAgainstJson(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Keyboard[] keyboards = generateKeyboards(100000);
+        Path json = dir.resolve("inventory.json");
+        Path binary = dir.resolve("inventory.bin");
+        objectMapper.writeValue(json.toFile(), keyboards);
+        Files.write(binary, BinarySnapshot.writeKeyboards(keyboards));
+
+        long jsonNanos = Long.MAX_VALUE;
+        long binaryNanos = Long.MAX_VALUE;
+        StreamingJsonLoader<Keyboard> jsonLoader = new StreamingJsonLoader<>(objectMapper, Keyboard.class,
+                "keyboards");
+        for (int round = 0; round < 3; ++round) {
+            List<Keyboard> fromJson = new ArrayList<>(keyboards.length);
+            long start = System.nanoTime();
+            try (InputStream input = new FileInputStream(json.toFile())) {
+                jsonLoader.load(input, Files.size(json), fromJson::add);
+            }
+            jsonNanos = Math.min(jsonNanos, System.nanoTime() - start);
+
+            List<Keyboard> fromBinary = new ArrayList<>(keyboards.length);
+            start = System.nanoTime();
+            try (InputStream input = new FileInputStream(binary.toFile())) {
+                BinarySnapshot.readKeyboards(input, fromBinary::add);
+            }
+            binaryNanos = Math.min(binaryNanos, System.nanoTime() - start);
+            assertEquals(fromJson, fromBinary);
+        }
+
+        LOG.info(String.format("%d keyboards: JSON %d bytes in %d ms, binary %d bytes in %d ms", keyboards.length,
+                Files.size(json), jsonNanos / 1000000, Files.size(binary), binaryNanos / 1000000));
+        assertTrue(Files.size(binary) < Files.size(json) / 2);
+    }
+}
@@ -1,7 +1,9 @@
 package com.estore.api.estoreapi.persistence;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -11,15 +13,36 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
 import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.KeyboardPage;
+import com.estore.api.estoreapi.model.KeyboardQuery;
+import com.estore.api.estoreapi.model.KeyboardQueryResult;
+import com.estore.api.estoreapi.model.KeyboardSort;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 @Tag("Persistence-tier")
 public class InventoryFileDAOTest {
@@ -88,6 +111,184 @@ public class InventoryFileDAOTest {
 
     }
 
+    @Test
+    public void testFindKeyboardsWithIndex() throws IOException {
+        assertArrayEquals(new Keyboard[] { testKeyboards[0], testKeyboards[2] }, inventoryFileDAO.findKeyboard("ir"));
+        assertEquals(0, inventoryFileDAO.findKeyboard("fif").length);
+        assertArrayEquals(new Keyboard[] { testKeyboards[4] }, inventoryFileDAO.findKeyboard("fif", true));
+
+        inventoryFileDAO.updateKeyboard(
+                new Keyboard(103, "Sixth", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 34, 24));
+        inventoryFileDAO.deleteKeyboard(99);
+        assertEquals(0, inventoryFileDAO.findKeyboard("Fifth").length);
+        assertArrayEquals(new Keyboard[] { testKeyboards[2] }, inventoryFileDAO.findKeyboard("ir"));
+        assertEquals(103, inventoryFileDAO.findKeyboard("SIXTH", true)[0].getKeyboardId());
+    }
+
+    @Test
+    public void testQueryKeyboardsByFacet() throws IOException {
+        KeyboardQueryResult result = inventoryFileDAO.queryKeyboards(
+                new KeyboardQuery(null, false, null, null, Arrays.asList(Keyboard.Size.FULL), null));
+
+        assertArrayEquals(new Keyboard[] { testKeyboards[0], testKeyboards[2], testKeyboards[4] },
+                result.getKeyboards());
+        // Size counts ignore the size filter, color counts respect it
+        assertEquals(3, result.getSizeCounts().get(Keyboard.Size.FULL));
+        assertEquals(1, result.getSizeCounts().get(Keyboard.Size.TKL));
+        assertEquals(1, result.getSizeCounts().get(Keyboard.Size.SIXTY));
+        assertEquals(1, result.getSwitchColorCounts().get(Keyboard.SwitchColor.BLUE));
+        assertEquals(1, result.getSwitchColorCounts().get(Keyboard.SwitchColor.RED));
+        assertEquals(0, result.getSwitchColorCounts().get(Keyboard.SwitchColor.BLACK));
+    }
+
+    @Test
+    public void testQueryKeyboardsCombined() throws IOException {
+        KeyboardQueryResult result = inventoryFileDAO.queryKeyboards(
+                new KeyboardQuery("I", true, 31, 34, null, Arrays.asList(Keyboard.SwitchColor.RED)));
+
+        assertArrayEquals(new Keyboard[] { testKeyboards[4] }, result.getKeyboards());
+        assertEquals(1, result.getSizeCounts().get(Keyboard.Size.FULL));
+        assertEquals(1, result.getSwitchColorCounts().get(Keyboard.SwitchColor.BROWN));
+        assertEquals(1, result.getSwitchColorCounts().get(Keyboard.SwitchColor.RED));
+
+        inventoryFileDAO.updateKeyboard(
+                new Keyboard(101, "Third", Keyboard.Size.TKL, Keyboard.SwitchColor.RED, 32, 22));
+        result = inventoryFileDAO.queryKeyboards(
+                new KeyboardQuery("I", true, 31, 34, null, Arrays.asList(Keyboard.SwitchColor.RED)));
+        assertEquals(2, result.getTotal());
+        assertEquals(1, result.getSizeCounts().get(Keyboard.Size.TKL));
+    }
+
+    @Test
+    public void testGetKeyboardPageFollowsCursor() throws IOException {
+        KeyboardQuery any = new KeyboardQuery(null, false, null, null, null, null);
+
+        KeyboardPage first = inventoryFileDAO.getKeyboardPage(any, KeyboardSort.NAME, false, null, 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[4], testKeyboards[0] }, first.getKeyboards());
+        KeyboardPage second = inventoryFileDAO.getKeyboardPage(any, KeyboardSort.NAME, false,
+                first.getNextCursor(), 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[3], testKeyboards[1] }, second.getKeyboards());
+        KeyboardPage last = inventoryFileDAO.getKeyboardPage(any, KeyboardSort.NAME, false,
+                second.getNextCursor(), 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[2] }, last.getKeyboards());
+        assertNull(last.getNextCursor());
+
+        KeyboardPage descending = inventoryFileDAO.getKeyboardPage(any, KeyboardSort.QUANTITY, true, null, 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[4], testKeyboards[3] }, descending.getKeyboards());
+    }
+
+    @Test
+    public void testGetKeyboardPageSeesChangesBetweenPages() throws IOException {
+        KeyboardQuery any = new KeyboardQuery(null, false, null, null, null, null);
+        KeyboardPage first = inventoryFileDAO.getKeyboardPage(any, KeyboardSort.PRICE, false, null, 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[0], testKeyboards[1] }, first.getKeyboards());
+
+        // An earlier keyboard disappearing does not shift the next page
+        inventoryFileDAO.deleteKeyboard(99);
+        inventoryFileDAO.updateKeyboard(
+                new Keyboard(103, "Fifth", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 10, 24));
+        KeyboardPage second = inventoryFileDAO.getKeyboardPage(any, KeyboardSort.PRICE, false,
+                first.getNextCursor(), 5);
+        assertArrayEquals(new Keyboard[] { testKeyboards[2], testKeyboards[3] }, second.getKeyboards());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    public void testGetKeyboardPageWithFilters() throws IOException {
+        KeyboardPage byPrice = inventoryFileDAO.getKeyboardPage(
+                new KeyboardQuery(null, false, 31, 33, null, null), KeyboardSort.PRICE, true, null, 5);
+        assertArrayEquals(new Keyboard[] { testKeyboards[3], testKeyboards[2], testKeyboards[1] },
+                byPrice.getKeyboards());
+
+        KeyboardPage byName = inventoryFileDAO.getKeyboardPage(
+                new KeyboardQuery("i", false, null, null, null, null), KeyboardSort.ID, true, null, 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[4], testKeyboards[2] }, byName.getKeyboards());
+        byName = inventoryFileDAO.getKeyboardPage(new KeyboardQuery("i", false, null, null, null, null),
+                KeyboardSort.ID, true, byName.getNextCursor(), 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[0] }, byName.getKeyboards());
+    }
+
+    @Test
+    public void testGetKeyboardPageRejectsForeignCursor() throws IOException {
+        KeyboardQuery any = new KeyboardQuery(null, false, null, null, null, null);
+        String cursor = inventoryFileDAO.getKeyboardPage(any, KeyboardSort.PRICE, false, null, 1).getNextCursor();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> inventoryFileDAO.getKeyboardPage(any, KeyboardSort.NAME, false, cursor, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> inventoryFileDAO.getKeyboardPage(any, KeyboardSort.PRICE, false, "not a cursor", 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> inventoryFileDAO.getKeyboardPage(any, KeyboardSort.PRICE, false, null, 0));
+    }
+
+    @Test
+    public void testSnapshotReadsDoNotWaitForWriters() throws Exception {
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setInventorySnapshotReads(true);
+        InventoryFileDAO dao = new InventoryFileDAO("testing_doesnt_matter.txt", mockObjectMapper, settings);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            synchronized (dao.keyboardMap) {
+                // A writer holding the lock, e.g. during a save, does not stall readers
+                Future<Keyboard[]> keyboards = reader.submit(() -> dao.getKeyboards());
+                Future<Keyboard> keyboard = reader.submit(() -> dao.getKeyboard(101));
+                Future<Keyboard[]> found = reader.submit(() -> dao.findKeyboard("ir"));
+                assertArrayEquals(testKeyboards, keyboards.get(5, TimeUnit.SECONDS));
+                assertEquals(testKeyboards[2], keyboard.get(5, TimeUnit.SECONDS));
+                assertArrayEquals(new Keyboard[] { testKeyboards[0], testKeyboards[2] },
+                        found.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSnapshotReadsSeeChanges() throws IOException {
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setInventorySnapshotReads(true);
+        InventoryFileDAO dao = new InventoryFileDAO("testing_doesnt_matter.txt", mockObjectMapper, settings);
+
+        Keyboard keyboard = dao.getKeyboard(101);
+        keyboard.setQuantity(0);
+        assertEquals(22, dao.getKeyboard(101).getQuantity());
+
+        dao.updateKeyboard(keyboard);
+        dao.deleteKeyboard(99);
+        Keyboard created = dao.createKeyboard(
+                new Keyboard(0, "Sixth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLACK, 50, 1));
+
+        assertEquals(0, dao.getKeyboard(101).getQuantity());
+        assertNull(dao.getKeyboard(99));
+        assertEquals(created, dao.getKeyboards()[4]);
+        assertEquals(5, dao.getKeyboards().length);
+        assertEquals(1, dao.findKeyboard("Six").length);
+    }
+
+    @Test
+    public void testExportKeyboards() throws IOException {
+        when(mockObjectMapper.writeValueAsBytes(any()))
+                .thenAnswer(invocation -> ((Keyboard) invocation.getArgument(0)).getKeyboardName().getBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(testKeyboards.length, inventoryFileDAO.exportKeyboards(out));
+        assertEquals("First\nSecond\nThird\nFourth\nFifth\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testExportKeyboardsFromSnapshot() throws IOException {
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setInventorySnapshotReads(true);
+        InventoryFileDAO dao = new InventoryFileDAO("testing_doesnt_matter.txt", mockObjectMapper, settings);
+        when(mockObjectMapper.writeValueAsBytes(any()))
+                .thenAnswer(invocation -> ((Keyboard) invocation.getArgument(0)).getKeyboardName().getBytes());
+        dao.deleteKeyboard(101);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(4, dao.exportKeyboards(out));
+        assertEquals("First\nSecond\nFourth\nFifth\n", out.toString(StandardCharsets.UTF_8));
+    }
+
     @Test
     public void testGetKeyboard() throws IOException {
 
@@ -200,4 +401,534 @@ public class InventoryFileDAOTest {
                 "IOException not thrown");
     }
 
+    /**
+     * Creates an inventory file with the test keyboards and opens a DAO on it
+     * with the write-ahead log enabled
+     */
+    private InventoryFileDAO openWithWal(Path dir, int checkpointInterval) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("inventory.json").toFile();
+        if (!file.exists()) {
+            objectMapper.writeValue(file, testKeyboards);
+        }
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setInventoryWalEnabled(true);
+        settings.setInventoryCheckpointInterval(checkpointInterval);
+        return new InventoryFileDAO(file.getPath(), objectMapper, settings);
+    }
+
+    @Test
+    public void testWalReplaysChangesAfterRestart(@TempDir Path dir) throws IOException {
+        InventoryFileDAO dao = openWithWal(dir, 1000);
+        Keyboard updated = new Keyboard(99, "First", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 30, 5);
+        dao.updateKeyboard(updated);
+        dao.deleteKeyboard(100);
+        Keyboard created = dao.createKeyboard(
+                new Keyboard(0, "Sixth", Keyboard.Size.TKL, Keyboard.SwitchColor.RED, 40, 3));
+
+        // The snapshot is untouched, only the log has the changes
+        Keyboard[] onDisk = new ObjectMapper().readValue(dir.resolve("inventory.json").toFile(), Keyboard[].class);
+        assertEquals(testKeyboards.length, onDisk.length);
+
+        InventoryFileDAO reopened = openWithWal(dir, 1000);
+        assertEquals(5, reopened.getKeyboard(99).getQuantity());
+        assertNull(reopened.getKeyboard(100));
+        assertEquals("Sixth", reopened.getKeyboard(created.getKeyboardId()).getKeyboardName());
+        assertEquals(testKeyboards.length, reopened.getKeyboards().length);
+    }
+
+    @Test
+    public void testWalCheckpointTruncatesLog(@TempDir Path dir) throws IOException {
+        InventoryFileDAO dao = openWithWal(dir, 2);
+        dao.deleteKeyboard(100);
+        dao.deleteKeyboard(101);
+
+        Keyboard[] onDisk = new ObjectMapper().readValue(dir.resolve("inventory.json").toFile(), Keyboard[].class);
+        assertEquals(testKeyboards.length - 2, onDisk.length);
+        assertEquals(0, Files.size(dir.resolve("inventory.json.wal")));
+    }
+
+    @Test
+    public void testWalIgnoresTornRecord(@TempDir Path dir) throws IOException {
+        InventoryFileDAO dao = openWithWal(dir, 1000);
+        dao.deleteKeyboard(100);
+        Files.write(dir.resolve("inventory.json.wal"), "{\"version\":2,\"type\":\"DEL".getBytes(),
+                java.nio.file.StandardOpenOption.APPEND);
+
+        InventoryFileDAO reopened = openWithWal(dir, 1000);
+        assertNull(reopened.getKeyboard(100));
+        assertEquals(testKeyboards.length - 1, reopened.getKeyboards().length);
+        reopened.deleteKeyboard(101);
+
+        InventoryFileDAO again = openWithWal(dir, 1000);
+        assertNull(again.getKeyboard(101));
+    }
+
+    @Test
+    public void testWalDropsUnterminatedRecord(@TempDir Path dir) throws IOException {
+        InventoryFileDAO dao = openWithWal(dir, 1000);
+        dao.deleteKeyboard(100);
+        // Complete JSON, but the crash came before its newline was written
+        Files.write(dir.resolve("inventory.json.wal"),
+                new ObjectMapper().writeValueAsBytes(InventoryChange.delete(2, 101)),
+                java.nio.file.StandardOpenOption.APPEND);
+
+        InventoryFileDAO reopened = openWithWal(dir, 1000);
+        assertNotNull(reopened.getKeyboard(101));
+        reopened.deleteKeyboard(102);
+
+        InventoryFileDAO again = openWithWal(dir, 1000);
+        assertNull(again.getKeyboard(100));
+        assertNotNull(again.getKeyboard(101));
+        assertNull(again.getKeyboard(102));
+    }
+
+    @Test
+    public void testWalStopsAtUnreadableRecord(@TempDir Path dir) throws IOException {
+        InventoryFileDAO dao = openWithWal(dir, 1000);
+        dao.deleteKeyboard(100);
+        dao.deleteKeyboard(101);
+        Path wal = dir.resolve("inventory.json.wal");
+        List<String> lines = Files.readAllLines(wal);
+        Files.write(wal, List.of(lines.get(0), "not json", lines.get(1)));
+        long before = Files.size(wal);
+
+        InventoryFileDAO reopened = openWithWal(dir, 1000);
+        assertNull(reopened.getKeyboard(100));
+        assertNotNull(reopened.getKeyboard(101));
+        assertTrue(Files.size(wal) < before);
+    }
+
+    @Test
+    public void testCloseWritesFinalCheckpoint(@TempDir Path dir) throws IOException {
+        InventoryFileDAO dao = openWithWal(dir, 1000);
+        dao.deleteKeyboard(103);
+        dao.close();
+
+        Keyboard[] onDisk = new ObjectMapper().readValue(dir.resolve("inventory.json").toFile(), Keyboard[].class);
+        assertEquals(testKeyboards.length - 1, onDisk.length);
+        assertEquals(0, Files.size(dir.resolve("inventory.json.wal")));
+    }
+
+    @Test
+    public void testGroupCommitWritesBeforeAcknowledging(@TempDir Path dir) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("inventory.json").toFile();
+        objectMapper.writeValue(file, testKeyboards);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setGroupCommitEnabled(true);
+        settings.setGroupCommitWindowMs(5);
+        InventoryFileDAO dao = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+
+        Thread[] threads = new Thread[testKeyboards.length];
+        for (int i = 0; i < threads.length; i++) {
+            Keyboard keyboard = testKeyboards[i];
+            threads[i] = new Thread(() -> assertDoesNotThrow(() -> dao.updateKeyboard(
+                    new Keyboard(keyboard.getKeyboardId(), keyboard.getKeyboardName(), keyboard.getSize(),
+                            keyboard.getSwitchColor(), keyboard.getPrice(), 0))));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Keyboard[] onDisk = objectMapper.readValue(file, Keyboard[].class);
+        for (Keyboard keyboard : onDisk) {
+            assertEquals(0, keyboard.getQuantity());
+        }
+        dao.close();
+    }
+
+    @Test
+    public void testGroupCommitSyncsWriteAheadLog(@TempDir Path dir) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("inventory.json").toFile();
+        objectMapper.writeValue(file, testKeyboards);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setInventoryWalEnabled(true);
+        settings.setGroupCommitEnabled(true);
+        settings.setGroupCommitWindowMs(5);
+        InventoryFileDAO dao = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+
+        Thread[] threads = new Thread[testKeyboards.length];
+        for (int i = 0; i < threads.length; i++) {
+            int id = testKeyboards[i].getKeyboardId();
+            threads[i] = new Thread(() -> assertDoesNotThrow(() -> dao.deleteKeyboard(id)));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Acknowledged changes are in the log, not in a rewritten checkpoint
+        assertEquals(testKeyboards.length, objectMapper.readValue(file, Keyboard[].class).length);
+        assertEquals(testKeyboards.length, Files.readAllLines(dir.resolve("inventory.json.wal")).size());
+        settings.setGroupCommitEnabled(false);
+        assertEquals(0, new InventoryFileDAO(file.getPath(), objectMapper, settings).getKeyboards().length);
+        dao.close();
+    }
+
+    @Test
+    public void testAtomicSnapshotRecoversFromCorruptFile(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("inventory.json").toFile();
+        objectMapper.writeValue(file, testKeyboards);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setAtomicSnapshots(true);
+        InventoryFileDAO dao = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+        dao.deleteKeyboard(99);
+        dao.deleteKeyboard(100);
+
+        // A torn write of the live file falls back to the previous snapshot
+        Files.write(file.toPath(), "[{\"keyboardId\":1".getBytes());
+        InventoryFileDAO reopened = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+        assertNull(reopened.getKeyboard(99));
+        assertNotNull(reopened.getKeyboard(100));
+        assertEquals(testKeyboards.length - 1, reopened.getKeyboards().length);
+    }
+
+    @Test
+    public void testStreamingLoad(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("inventory.json").toFile();
+        objectMapper.writeValue(file, testKeyboards);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setStreamingLoad(true);
+        InventoryFileDAO dao = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+
+        assertArrayEquals(testKeyboards, dao.getKeyboards());
+        Keyboard created = dao.createKeyboard(
+                new Keyboard(0, "Sixth", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 35, 25));
+        assertTrue(created.getKeyboardId() > 103);
+    }
+
+    @Test
+    public void testStreamingLoadFallsBackToBackup(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("inventory.json").toFile();
+        objectMapper.writeValue(file, testKeyboards);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setAtomicSnapshots(true);
+        settings.setStreamingLoad(true);
+        InventoryFileDAO dao = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+        dao.deleteKeyboard(99);
+        dao.deleteKeyboard(100);
+
+        // The partly parsed corrupt file must not leak into the reloaded map
+        byte[] current = Files.readAllBytes(file.toPath());
+        current[current.length - 3] = 'x';
+        Files.write(file.toPath(), current);
+        InventoryFileDAO reopened = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+        assertNull(reopened.getKeyboard(99));
+        assertNotNull(reopened.getKeyboard(100));
+        assertEquals(testKeyboards.length - 1, reopened.getKeyboards().length);
+    }
+
+    @Test
+    public void testBinarySnapshot(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("inventory.json").toFile();
+        objectMapper.writeValue(file, testKeyboards);
+        byte[] json = Files.readAllBytes(file.toPath());
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setSnapshotFormat(PersistenceSettings.SnapshotFormat.BINARY);
+
+        // The first start reads the JSON file, the first save switches to binary
+        InventoryFileDAO dao = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+        dao.deleteKeyboard(99);
+        assertTrue(Files.exists(dir.resolve("inventory.bin")));
+        assertArrayEquals(json, Files.readAllBytes(file.toPath()));
+
+        InventoryFileDAO reopened = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+        assertNull(reopened.getKeyboard(99));
+        assertEquals(testKeyboards[1], reopened.getKeyboard(100));
+        assertEquals(testKeyboards.length - 1, reopened.getKeyboards().length);
+    }
+
+    @Test
+    public void testPriceIndexFollowsChanges() throws IOException {
+        Keyboard repriced = new Keyboard(99, "First", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 50, 20);
+        inventoryFileDAO.updateKeyboard(repriced);
+        inventoryFileDAO.deleteKeyboard(101);
+        Keyboard created = inventoryFileDAO.createKeyboard(
+                new Keyboard(0, "Sixth", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 31, 25));
+
+        Keyboard[] filtered = inventoryFileDAO.getFilteredKeyboards("30", "32");
+        assertArrayEquals(new Keyboard[] { testKeyboards[1], created }, filtered);
+        assertArrayEquals(new Keyboard[] { repriced }, inventoryFileDAO.getFilteredKeyboards("40", "60"));
+        assertEquals(0, inventoryFileDAO.getFilteredKeyboards("40", "30").length);
+    }
+
+    @Test
+    public void testPriceFilterDuringConcurrentUpdates() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 2; ++t) {
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < 2000; ++i) {
+                    inventoryFileDAO.updateKeyboard(
+                            new Keyboard(100, "Second", Keyboard.Size.SIXTY, Keyboard.SwitchColor.RED, i % 100, 21));
+                }
+                return null;
+            }));
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < 2000; ++i) {
+                    for (Keyboard keyboard : inventoryFileDAO.getFilteredKeyboards("0", "50")) {
+                        assertTrue(keyboard.getPrice() <= 50);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testVersionMovesOnEveryChange() throws IOException {
+        long version = inventoryFileDAO.getVersion();
+        Keyboard created = inventoryFileDAO.createKeyboard(
+                new Keyboard(0, "Sixth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLUE, 35, 1));
+        assertTrue(inventoryFileDAO.getVersion() > version);
+
+        version = inventoryFileDAO.getVersion();
+        inventoryFileDAO.updateKeyboard(new Keyboard(created, 3));
+        assertTrue(inventoryFileDAO.getVersion() > version);
+
+        version = inventoryFileDAO.getVersion();
+        assertTrue(inventoryFileDAO.reserveStock(99, 1));
+        assertTrue(inventoryFileDAO.getVersion() > version);
+
+        version = inventoryFileDAO.getVersion();
+        assertFalse(inventoryFileDAO.reserveStock(99, 100));
+        inventoryFileDAO.getKeyboards();
+        assertEquals(version, inventoryFileDAO.getVersion());
+
+        assertTrue(inventoryFileDAO.deleteKeyboard(created.getKeyboardId()));
+        assertTrue(inventoryFileDAO.getVersion() > version);
+    }
+
+    @Test
+    public void testListenersSeeEveryChange() throws IOException {
+        List<InventoryChange> changes = new ArrayList<>();
+        inventoryFileDAO.addChangeListener(changes::add);
+
+        Keyboard created = inventoryFileDAO.createKeyboard(
+                new Keyboard(0, "Sixth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLUE, 35, 1));
+        assertTrue(inventoryFileDAO.reserveStock(99, 5));
+        assertTrue(inventoryFileDAO.deleteKeyboard(created.getKeyboardId()));
+
+        assertEquals(3, changes.size());
+        assertEquals(created.getKeyboardId(), changes.get(0).getKeyboardId());
+        assertEquals(99, changes.get(1).getKeyboardId());
+        assertEquals(15, changes.get(1).getKeyboard().getQuantity());
+        assertEquals(InventoryChange.Type.DELETE, changes.get(2).getType());
+        assertEquals(inventoryFileDAO.getVersion(), changes.get(2).getVersion());
+    }
+
+    @Test
+    public void testChangesSinceVersion() throws IOException {
+        long version = inventoryFileDAO.getVersion();
+        String epoch = inventoryFileDAO.getChangesSince(0, null).getEpoch();
+        Keyboard created = inventoryFileDAO.createKeyboard(
+                new Keyboard(0, "Sixth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLUE, 35, 1));
+        assertTrue(inventoryFileDAO.reserveStock(99, 5));
+        assertTrue(inventoryFileDAO.reserveStock(99, 1));
+
+        InventoryChanges changes = inventoryFileDAO.getChangesSince(version, epoch);
+        assertFalse(changes.isResync());
+        assertEquals(inventoryFileDAO.getVersion(), changes.getVersion());
+        assertEquals(2, changes.getChanges().size());
+        assertEquals(created.getKeyboardId(), changes.getChanges().get(0).getKeyboardId());
+        assertEquals(14, changes.getChanges().get(1).getKeyboard().getQuantity());
+
+        assertTrue(inventoryFileDAO.getChangesSince(version - 1, epoch).isResync());
+        assertTrue(inventoryFileDAO.getChangesSince(version, "stale").isResync());
+        assertTrue(inventoryFileDAO.getChangesSince(changes.getVersion(), null).isResync());
+    }
+
+    @Test
+    public void testReserveAndReleaseStock() throws IOException {
+        assertTrue(inventoryFileDAO.reserveStock(99, 5));
+        assertEquals(15, inventoryFileDAO.getKeyboard(99).getQuantity());
+        assertFalse(inventoryFileDAO.reserveStock(99, 16));
+        assertEquals(15, inventoryFileDAO.getKeyboard(99).getQuantity());
+        assertTrue(inventoryFileDAO.releaseStock(99, 5));
+        assertEquals(20, inventoryFileDAO.getKeyboard(99).getQuantity());
+        assertTrue(inventoryFileDAO.reserveStock(100, 11));
+        assertArrayEquals(new Keyboard[] { testKeyboards[1] }, inventoryFileDAO.getKeyboardPage(
+                new KeyboardQuery(null, false, null, null, null, null), KeyboardSort.QUANTITY, false, null, 1)
+                .getKeyboards());
+
+        assertFalse(inventoryFileDAO.reserveStock(98, 1));
+        assertFalse(inventoryFileDAO.releaseStock(98, 1));
+        assertThrows(IllegalArgumentException.class, () -> inventoryFileDAO.reserveStock(99, 0));
+    }
+
+    @Test
+    public void testReserveStockFollowsUpdatesAndDeletes() throws IOException {
+        inventoryFileDAO.updateKeyboard(
+                new Keyboard(100, "Second", Keyboard.Size.SIXTY, Keyboard.SwitchColor.RED, 31, 2));
+        assertTrue(inventoryFileDAO.reserveStock(100, 2));
+        assertFalse(inventoryFileDAO.reserveStock(100, 1));
+
+        inventoryFileDAO.deleteKeyboard(100);
+        assertFalse(inventoryFileDAO.releaseStock(100, 1));
+    }
+
+    @Test
+    public void testUpdateKeepsStockReservedMeanwhile() throws Exception {
+        Thread checkout;
+        synchronized (inventoryFileDAO.keyboardMap) {
+            // The units are taken without the lock; recording them waits for it
+            checkout = new Thread(() -> assertDoesNotThrow(() -> assertTrue(inventoryFileDAO.reserveStock(101, 5))));
+            checkout.start();
+            while (checkout.getState() != Thread.State.BLOCKED) {
+                Thread.sleep(1);
+            }
+            // An admin who read 22 units restocks to 40
+            Keyboard updated = inventoryFileDAO.updateKeyboard(
+                    new Keyboard(101, "Third", Keyboard.Size.FULL, Keyboard.SwitchColor.BROWN, 32, 40));
+            assertEquals(35, updated.getQuantity());
+        }
+        checkout.join();
+
+        assertEquals(35, inventoryFileDAO.getKeyboard(101).getQuantity());
+        assertFalse(inventoryFileDAO.reserveStock(101, 36));
+        assertTrue(inventoryFileDAO.reserveStock(101, 35));
+
+        // Taking away more than is left leaves none rather than a negative count
+        inventoryFileDAO.updateKeyboard(
+                new Keyboard(102, "Fourth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLUE, 33, -5));
+        assertEquals(0, inventoryFileDAO.getKeyboard(102).getQuantity());
+    }
+
+    @Test
+    public void testReserveStockForSeveralKeyboards() throws IOException {
+        Map<Integer, Integer> order = new HashMap<>();
+        order.put(99, 5);
+        order.put(100, 21);
+        assertTrue(inventoryFileDAO.reserveStock(order));
+        assertEquals(15, inventoryFileDAO.getKeyboard(99).getQuantity());
+        assertEquals(0, inventoryFileDAO.getKeyboard(100).getQuantity());
+
+        // One short keyboard leaves every quantity as it was
+        order.put(101, 1);
+        order.put(100, 1);
+        assertFalse(inventoryFileDAO.reserveStock(order));
+        assertEquals(15, inventoryFileDAO.getKeyboard(99).getQuantity());
+        assertEquals(22, inventoryFileDAO.getKeyboard(101).getQuantity());
+
+        order.put(98, 1);
+        assertFalse(inventoryFileDAO.releaseStock(order));
+        assertEquals(20, inventoryFileDAO.getKeyboard(99).getQuantity());
+        assertEquals(1, inventoryFileDAO.getKeyboard(100).getQuantity());
+    }
+
+    @Test
+    public void testReserveStockForSeveralKeyboardsWithWal(@TempDir Path dir) throws IOException {
+        InventoryFileDAO dao = openWithWal(dir, 1000);
+        Map<Integer, Integer> order = new HashMap<>();
+        order.put(99, 5);
+        order.put(101, 2);
+        assertTrue(dao.reserveStock(order));
+
+        InventoryFileDAO reopened = openWithWal(dir, 1000);
+        assertEquals(15, reopened.getKeyboard(99).getQuantity());
+        assertEquals(20, reopened.getKeyboard(101).getQuantity());
+    }
+
+    /**
+     * Many buyers race for the last units of one keyboard. Exactly the
+     * units in stock must be sold and the file must agree once the writer
+     * has flushed.
+     */
+    @Test
+    public void testReserveStockNeverOversellsHotKeyboard(@TempDir Path dir) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("inventory.json").toFile();
+        testKeyboards[0].setQuantity(1000);
+        objectMapper.writeValue(file, testKeyboards);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setGroupCommitEnabled(true);
+        settings.setGroupCommitWindowMs(2);
+        InventoryFileDAO dao = new InventoryFileDAO(file.getPath(), objectMapper, settings);
+
+        int threads = 32;
+        int attempts = 125;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; ++t) {
+            results.add(pool.submit(() -> {
+                int sold = 0;
+                for (int i = 0; i < attempts; ++i) {
+                    if (dao.reserveStock(99, 1)) {
+                        ++sold;
+                    }
+                }
+                return sold;
+            }));
+        }
+        int sold = 0;
+        for (Future<Integer> result : results) {
+            sold += result.get(60, TimeUnit.SECONDS);
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        assertEquals(1000, sold);
+        assertEquals(0, dao.getKeyboard(99).getQuantity());
+        dao.close();
+        assertEquals(0, objectMapper.readValue(file, Keyboard[].class)[0].getQuantity());
+        Logger.getLogger(InventoryFileDAOTest.class.getName()).info(String.format(
+                "%d reservations of one keyboard from %d threads: %d ms", threads * attempts, threads,
+                elapsed / 1000000));
+    }
+
+    /**
+     * Compares the price index against the full scan it replaced on 100k
+     * keyboards. Timings depend on the machine, so they are only logged; run
+     * with -Pbenchmarks.
+     */
+    @Test
+    @Tag("Benchmark")
+    public void testBenchmarkPriceIndex() throws IOException {
+        Keyboard[] keyboards = new Keyboard[100000];
+        for (int i = 0; i < keyboards.length; ++i) {
+            keyboards[i] = new Keyboard(i, "Keyboard " + i, Keyboard.Size.FULL, Keyboard.SwitchColor.RED,
+                    i % 10000, 1);
+        }
+        when(mockObjectMapper.readValue(new File("doesnt_matter.txt"), Keyboard[].class)).thenReturn(keyboards);
+        InventoryFileDAO dao = new InventoryFileDAO("doesnt_matter.txt", mockObjectMapper);
+
+        int queries = 200;
+        long indexed = 0;
+        long scanned = 0;
+        for (int q = 0; q < queries; ++q) {
+            int from = (q * 37) % 9900;
+            int to = from + 100;
+
+            long start = System.nanoTime();
+            Keyboard[] fromIndex = dao.getFilteredKeyboards(String.valueOf(from), String.valueOf(to));
+            indexed += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Keyboard> fromScan = new ArrayList<>();
+            for (Keyboard keyboard : dao.getKeyboards()) {
+                if (keyboard.getPrice() >= from && keyboard.getPrice() <= to) {
+                    fromScan.add(keyboard);
+                }
+            }
+            scanned += System.nanoTime() - start;
+
+            assertEquals(fromScan.size(), fromIndex.length);
+        }
+        Logger.getLogger(InventoryFileDAOTest.class.getName()).info(String.format(
+                "%d price range queries over %d keyboards: index %d ms, full scan %d ms", queries,
+                keyboards.length, indexed / 1000000, scanned / 1000000));
+    }
+
 }
@@ -0,0 +1,83 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.estore.api.estoreapi.model.Keyboard;
+
+@Tag("Persistence-tier")
+public class InventorySnapshotTest {
+    InventorySnapshot snapshot;
+    Keyboard first = new Keyboard(1, "First", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 30, 10);
+    Keyboard second = new Keyboard(5, "Second", Keyboard.Size.TKL, Keyboard.SwitchColor.RED, 40, 20);
+    Keyboard third = new Keyboard(9, "Third", Keyboard.Size.SIXTY, Keyboard.SwitchColor.BROWN, 50, 30);
+
+    @BeforeEach
+    public void setupInventorySnapshot() {
+        snapshot = InventorySnapshot.of(Arrays.asList(third, first, second), 3);
+    }
+
+    @Test
+    public void testKeyboardsInIdOrder() {
+        assertArrayEquals(new Keyboard[] { first, second, third }, snapshot.keyboards());
+        assertEquals(3, snapshot.getVersion());
+        assertEquals("Second", snapshot.get(5).getKeyboardName());
+        assertNull(snapshot.get(4));
+    }
+
+    @Test
+    public void testChangesLeaveOldSnapshotAlone() {
+        Keyboard inserted = new Keyboard(3, "Inserted", Keyboard.Size.FULL, Keyboard.SwitchColor.BLACK, 60, 1);
+        InventorySnapshot added = snapshot.with(inserted, 4);
+        InventorySnapshot replaced = added.with(new Keyboard(5, "Second", Keyboard.Size.TKL,
+                Keyboard.SwitchColor.RED, 40, 19), 5);
+        InventorySnapshot removed = replaced.without(1, 6);
+
+        assertArrayEquals(new Keyboard[] { first, inserted, second, third }, added.keyboards());
+        assertEquals(19, replaced.get(5).getQuantity());
+        assertNull(removed.get(1));
+        assertEquals(3, removed.keyboards().length);
+        assertEquals(6, removed.getVersion());
+        assertEquals(3, snapshot.size());
+        assertEquals(20, snapshot.get(5).getQuantity());
+        assertEquals(3, removed.without(42, 7).size());
+    }
+
+    @Test
+    public void testHoldsCopies() {
+        first.setQuantity(0);
+        snapshot.get(1).setQuantity(0);
+
+        assertEquals(10, snapshot.get(1).getQuantity());
+    }
+
+    @Test
+    public void testFind() {
+        assertArrayEquals(new Keyboard[] { first, third }, snapshot.find("ir", false));
+        assertEquals(0, snapshot.find("SEC", false).length);
+        assertArrayEquals(new Keyboard[] { second }, snapshot.find("SEC", true));
+    }
+
+    @Test
+    public void testFindAfterChanges() {
+        assertEquals(1, snapshot.find("Second", false).length);
+        InventorySnapshot restocked = snapshot.with(new Keyboard(5, "Second", Keyboard.Size.TKL,
+                Keyboard.SwitchColor.RED, 40, 0), 4);
+        InventorySnapshot renamed = restocked.with(new Keyboard(5, "Renamed", Keyboard.Size.TKL,
+                Keyboard.SwitchColor.RED, 40, 0), 5);
+        InventorySnapshot removed = renamed.without(9, 6);
+
+        assertEquals(0, restocked.find("Second", false)[0].getQuantity());
+        assertEquals(0, renamed.find("Second", false).length);
+        assertEquals(1, renamed.find("named", false).length);
+        assertEquals(1, snapshot.find("Second", false).length);
+        assertArrayEquals(new Keyboard[] { first }, removed.find("ir", false));
+    }
+}
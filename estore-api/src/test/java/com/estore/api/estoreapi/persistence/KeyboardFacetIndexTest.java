@@ -0,0 +1,68 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.estore.api.estoreapi.model.Keyboard;
+
+@Tag("Persistence-tier")
+public class KeyboardFacetIndexTest {
+    KeyboardFacetIndex index;
+    Keyboard first = new Keyboard(1, "First", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 30, 1);
+    Keyboard second = new Keyboard(2, "Second", Keyboard.Size.TKL, Keyboard.SwitchColor.RED, 40, 1);
+    Keyboard third = new Keyboard(5, "Third", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 50, 1);
+
+    @BeforeEach
+    public void setupKeyboardFacetIndex() {
+        index = new KeyboardFacetIndex();
+        index.add(first);
+        index.add(second);
+        index.add(third);
+        index.add(new Keyboard(-1, "Negative", Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 1, 1));
+    }
+
+    @Test
+    public void testUnions() {
+        assertEquals(bits(1, 5), index.withSizes(EnumSet.of(Keyboard.Size.FULL)));
+        assertEquals(bits(1, 2, 5), index.withSizes(EnumSet.of(Keyboard.Size.FULL, Keyboard.Size.TKL)));
+        assertEquals(bits(2, 5), index.withSwitchColors(EnumSet.of(Keyboard.SwitchColor.RED)));
+        assertNull(index.withSizes(Collections.emptySet()));
+        assertEquals(bits(1, 2, 5), index.all());
+    }
+
+    @Test
+    public void testCounts() {
+        Map<Keyboard.Size, Integer> sizes = index.countSizes(bits(1, 2, 5));
+        assertEquals(2, sizes.get(Keyboard.Size.FULL));
+        assertEquals(1, sizes.get(Keyboard.Size.TKL));
+        assertEquals(0, sizes.get(Keyboard.Size.SIXTY));
+        Map<Keyboard.SwitchColor, Integer> colors = index.countSwitchColors(bits(2));
+        assertEquals(1, colors.get(Keyboard.SwitchColor.RED));
+        assertEquals(0, colors.get(Keyboard.SwitchColor.BLUE));
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        index.remove(third);
+        assertEquals(bits(1), index.withSizes(EnumSet.of(Keyboard.Size.FULL)));
+        index.clear();
+        assertEquals(new BitSet(), index.all());
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,87 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("Persistence-tier")
+public class KeyboardNameIndexTest {
+    KeyboardNameIndex index;
+
+    @BeforeEach
+    public void setupKeyboardNameIndex() {
+        index = new KeyboardNameIndex();
+        index.put(1, "Keychron K2");
+        index.put(2, "Ducky One 2 Mini");
+        index.put(3, "Keychron Q1");
+        index.put(4, "GMMK Pro");
+        index.put(5, null);
+    }
+
+    @Test
+    public void testSubstringSearch() {
+        assertEquals(Arrays.asList(1, 3), index.search("Keychron", false));
+        assertEquals(Arrays.asList(2), index.search("One 2 M", false));
+        assertEquals(Collections.emptyList(), index.search("Razer", false));
+    }
+
+    @Test
+    public void testCaseSensitivity() {
+        assertEquals(Collections.emptyList(), index.search("keychron", false));
+        assertEquals(Arrays.asList(1, 3), index.search("keychron", true));
+        assertEquals(Arrays.asList(4), index.search("gmmk PRO", true));
+    }
+
+    @Test
+    public void testTrigramsPresentButNotAdjacent() {
+        // "Pro" and "GMM" both occur in "GMMK Pro", but "GMMPro" does not
+        assertEquals(Collections.emptyList(), index.search("GMMPro", false));
+    }
+
+    @Test
+    public void testShortQueries() {
+        assertEquals(Arrays.asList(1, 3), index.search("Ke", false));
+        assertEquals(Arrays.asList(1, 2, 3, 4), index.search("", false));
+        assertEquals(Arrays.asList(3), index.search("q", true));
+    }
+
+    @Test
+    public void testUpdatesAndRemovals() {
+        index.put(1, "Anne Pro 2");
+        index.remove(3);
+        assertEquals(Collections.emptyList(), index.search("Keychron", false));
+        assertEquals(Arrays.asList(1, 4), index.search("Pro", false));
+        index.clear();
+        assertEquals(Collections.emptyList(), index.search("Pro", false));
+    }
+
+    /**
+     * Searches catalogs of 10k and 100k names. Timings depend on the machine,
+     * so they are only logged.
+     */
+    @Test
+    public void testLatencyAsCatalogGrows() {
+        for (int size : new int[] { 10000, 100000 }) {
+            KeyboardNameIndex large = new KeyboardNameIndex();
+            for (int id = 0; id < size; ++id) {
+                large.put(id, "Model " + Integer.toHexString(id * 7919) + " keyboard");
+            }
+            large.put(size, "Needle Special Edition");
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; ++i) {
+                assertEquals(1, large.search("Special Ed", false).size());
+            }
+            long nanos = System.nanoTime() - start;
+            Logger.getLogger(KeyboardNameIndexTest.class.getName())
+                    .info(String.format("1000 searches over %d names: %d ms", size, nanos / 1000000));
+            assertTrue(large.search("Model", false).size() > size / 2);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.KeyboardPage;
+import com.estore.api.estoreapi.model.KeyboardQuery;
+import com.estore.api.estoreapi.model.KeyboardQueryResult;
+import com.estore.api.estoreapi.model.KeyboardSort;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test the Memory-Mapped Inventory DAO class
+ * 
+ * @author Team 2
+ */
+@Tag("Persistence-tier")
+public class MappedInventoryDAOTest {
+    @TempDir
+    Path dir;
+    ObjectMapper objectMapper;
+    File file;
+    Keyboard[] testKeyboards;
+    MappedInventoryDAO mappedDAO;
+
+    @BeforeEach
+    public void setupMappedInventoryDAO() throws IOException {
+        objectMapper = new ObjectMapper();
+        testKeyboards = new Keyboard[3];
+        testKeyboards[0] = new Keyboard(1, "First", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 30, 20);
+        testKeyboards[1] = new Keyboard(2, "Second", Keyboard.Size.SIXTY, Keyboard.SwitchColor.RED, 40, 21);
+        testKeyboards[2] = new Keyboard(4, "Third", null, Keyboard.SwitchColor.BROWN, 50, 22);
+        file = dir.resolve("inventory.json").toFile();
+        objectMapper.writeValue(file, testKeyboards);
+        mappedDAO = open();
+    }
+
+    @AfterEach
+    public void closeMappedInventoryDAO() throws IOException {
+        mappedDAO.close();
+    }
+
+    private MappedInventoryDAO open() throws IOException {
+        return new MappedInventoryDAO(file.getPath(), objectMapper, new PersistenceSettings());
+    }
+
+    private MappedInventoryDAO reopen() throws IOException {
+        mappedDAO.close();
+        mappedDAO = open();
+        return mappedDAO;
+    }
+
+    @Test
+    public void testImportsInventory() throws IOException {
+        assertTrue(Files.exists(dir.resolve("inventory.records")));
+        assertTrue(Files.exists(dir.resolve("inventory.names")));
+        assertArrayEquals(testKeyboards, mappedDAO.getKeyboards());
+        assertEquals(testKeyboards[2], mappedDAO.getKeyboard(4));
+        assertNull(mappedDAO.getKeyboard(4).getSize());
+    }
+
+    @Test
+    public void testGetMissingKeyboard() throws IOException {
+        assertNull(mappedDAO.getKeyboard(3));
+        assertNull(mappedDAO.getKeyboard(-1));
+        assertNull(mappedDAO.getKeyboard(100000));
+    }
+
+    @Test
+    public void testFindAndFilter() throws IOException {
+        assertArrayEquals(new Keyboard[] { testKeyboards[0], testKeyboards[2] }, mappedDAO.findKeyboard("ir"));
+        assertArrayEquals(new Keyboard[] { testKeyboards[1], testKeyboards[2] },
+                mappedDAO.getFilteredKeyboards("35", "50"));
+    }
+
+    @Test
+    public void testChangesSurviveRestart() throws IOException {
+        Keyboard created = mappedDAO.createKeyboard(
+                new Keyboard(0, "Fourth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLACK, 60, 5));
+        assertEquals(5, created.getKeyboardId());
+        Keyboard renamed = new Keyboard(1, "Renamed", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 35, 19);
+        assertEquals(renamed, mappedDAO.updateKeyboard(renamed));
+        assertTrue(mappedDAO.deleteKeyboard(2));
+        assertFalse(mappedDAO.deleteKeyboard(2));
+        assertNull(mappedDAO.updateKeyboard(new Keyboard(3, "Missing", null, null, 1, 1)));
+
+        reopen();
+        assertArrayEquals(new Keyboard[] { renamed, testKeyboards[2], created }, mappedDAO.getKeyboards());
+        assertEquals(Keyboard.Size.TKL, mappedDAO.getKeyboard(5).getSize());
+    }
+
+    @Test
+    public void testVersionMovesOnEveryChange() throws IOException {
+        long version = mappedDAO.getVersion();
+        Keyboard created = mappedDAO.createKeyboard(
+                new Keyboard(0, "Fourth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLACK, 60, 5));
+        assertTrue(mappedDAO.getVersion() > version);
+
+        version = mappedDAO.getVersion();
+        assertTrue(mappedDAO.reserveStock(created.getKeyboardId(), 2));
+        assertTrue(mappedDAO.getVersion() > version);
+
+        version = mappedDAO.getVersion();
+        assertFalse(mappedDAO.reserveStock(created.getKeyboardId(), 10));
+        assertEquals(version, mappedDAO.getVersion());
+
+        assertTrue(mappedDAO.deleteKeyboard(created.getKeyboardId()));
+        assertTrue(mappedDAO.getVersion() > version);
+    }
+
+    @Test
+    public void testListenersSeeEveryChange() throws IOException {
+        List<InventoryChange> changes = new ArrayList<>();
+        mappedDAO.addChangeListener(changes::add);
+
+        Keyboard created = mappedDAO.createKeyboard(
+                new Keyboard(0, "Fourth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLACK, 60, 5));
+        assertTrue(mappedDAO.reserveStock(created.getKeyboardId(), 2));
+        assertFalse(mappedDAO.reserveStock(created.getKeyboardId(), 10));
+        assertTrue(mappedDAO.deleteKeyboard(created.getKeyboardId()));
+
+        assertEquals(3, changes.size());
+        assertEquals(3, changes.get(1).getKeyboard().getQuantity());
+        assertEquals(InventoryChange.Type.DELETE, changes.get(2).getType());
+        assertEquals(mappedDAO.getVersion(), changes.get(2).getVersion());
+    }
+
+    @Test
+    public void testChangesSinceVersion() throws IOException {
+        Map<Integer, Integer> quantities = new HashMap<>();
+        quantities.put(1, 1);
+        quantities.put(2, 1);
+        assertTrue(mappedDAO.reserveStock(quantities));
+        long version = mappedDAO.getVersion();
+        assertTrue(mappedDAO.deleteKeyboard(1));
+
+        assertTrue(mappedDAO.getChangesSince(0, null).isResync());
+        InventoryChanges all = mappedDAO.getChangesSince(0, mappedDAO.getChangesSince(0, null).getEpoch());
+        assertEquals(2, all.getChanges().size());
+        assertEquals(InventoryChange.Type.DELETE, all.getChanges().get(1).getType());
+        assertEquals(1, mappedDAO.getChangesSince(version, all.getEpoch()).getChanges().size());
+
+        reopen();
+        assertTrue(mappedDAO.getChangesSince(version, all.getEpoch()).isResync());
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() throws IOException {
+        for (int i = 0; i < 3000; ++i) {
+            mappedDAO.createKeyboard(new Keyboard(0, "Bulk " + i, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, i, 1));
+        }
+        assertEquals(3003, mappedDAO.getKeyboards().length);
+
+        reopen();
+        assertEquals(3003, mappedDAO.getKeyboards().length);
+        assertEquals("Bulk 2999", mappedDAO.getKeyboard(3004).getKeyboardName());
+    }
+
+    @Test
+    public void testExportKeyboardsInChunks() throws IOException {
+        for (int i = 0; i < 600; ++i) {
+            mappedDAO.createKeyboard(new Keyboard(0, "Bulk " + i, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, i, 1));
+        }
+        mappedDAO.deleteKeyboard(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(602, mappedDAO.exportKeyboards(out));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(602, lines.length);
+        assertEquals(testKeyboards[0], objectMapper.readValue(lines[0], Keyboard.class));
+        assertEquals(testKeyboards[2], objectMapper.readValue(lines[1], Keyboard.class));
+        assertEquals("Bulk 599", objectMapper.readValue(lines[601], Keyboard.class).getKeyboardName());
+    }
+
+    @Test
+    public void testDoesNotImportTwice() throws IOException {
+        mappedDAO.deleteKeyboard(1);
+        objectMapper.writeValue(file, testKeyboards);
+
+        reopen();
+        assertNull(mappedDAO.getKeyboard(1));
+    }
+
+    @Test
+    public void testQueryKeyboards() throws IOException {
+        KeyboardQueryResult result = mappedDAO.queryKeyboards(
+                new KeyboardQuery("i", false, 30, 50, null, Arrays.asList(Keyboard.SwitchColor.BLUE)));
+
+        assertArrayEquals(new Keyboard[] { testKeyboards[0] }, result.getKeyboards());
+        assertEquals(1, result.getSizeCounts().get(Keyboard.Size.FULL));
+        assertEquals(1, result.getSwitchColorCounts().get(Keyboard.SwitchColor.BLUE));
+        assertEquals(1, result.getSwitchColorCounts().get(Keyboard.SwitchColor.BROWN));
+    }
+
+    @Test
+    public void testGetKeyboardPageById() throws IOException {
+        KeyboardQuery any = new KeyboardQuery(null, false, null, null, null, null);
+
+        KeyboardPage first = mappedDAO.getKeyboardPage(any, KeyboardSort.ID, false, null, 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[0], testKeyboards[1] }, first.getKeyboards());
+        KeyboardPage second = mappedDAO.getKeyboardPage(any, KeyboardSort.ID, false, first.getNextCursor(), 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[2] }, second.getKeyboards());
+        assertNull(second.getNextCursor());
+
+        KeyboardPage descending = mappedDAO.getKeyboardPage(any, KeyboardSort.ID, true, null, 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[2], testKeyboards[1] }, descending.getKeyboards());
+        descending = mappedDAO.getKeyboardPage(any, KeyboardSort.ID, true, descending.getNextCursor(), 2);
+        assertArrayEquals(new Keyboard[] { testKeyboards[0] }, descending.getKeyboards());
+    }
+
+    @Test
+    public void testGetKeyboardPageBySelection() throws IOException {
+        mappedDAO.createKeyboard(new Keyboard(0, "Fourth", Keyboard.Size.TKL, Keyboard.SwitchColor.BLACK, 35, 5));
+        KeyboardQuery any = new KeyboardQuery(null, false, null, null, null, null);
+
+        KeyboardPage first = mappedDAO.getKeyboardPage(any, KeyboardSort.NAME, true, null, 2);
+        assertEquals("Third", first.getKeyboards()[0].getKeyboardName());
+        assertEquals("Second", first.getKeyboards()[1].getKeyboardName());
+        KeyboardPage second = mappedDAO.getKeyboardPage(any, KeyboardSort.NAME, true, first.getNextCursor(), 2);
+        assertEquals("Fourth", second.getKeyboards()[0].getKeyboardName());
+        assertEquals("First", second.getKeyboards()[1].getKeyboardName());
+
+        KeyboardPage cheap = mappedDAO.getKeyboardPage(new KeyboardQuery(null, false, null, 40, null, null),
+                KeyboardSort.PRICE, false, null, 5);
+        assertEquals(3, cheap.getKeyboards().length);
+        assertEquals("Fourth", cheap.getKeyboards()[1].getKeyboardName());
+        assertNull(cheap.getNextCursor());
+    }
+
+    @Test
+    public void testReserveAndReleaseStock() throws IOException {
+        assertTrue(mappedDAO.reserveStock(1, 5));
+        assertFalse(mappedDAO.reserveStock(1, 16));
+        assertTrue(mappedDAO.releaseStock(2, 4));
+        assertFalse(mappedDAO.reserveStock(3, 1));
+        assertFalse(mappedDAO.releaseStock(3, 1));
+
+        reopen();
+        assertEquals(15, mappedDAO.getKeyboard(1).getQuantity());
+        assertEquals(25, mappedDAO.getKeyboard(2).getQuantity());
+    }
+
+    @Test
+    public void testReserveStockForSeveralKeyboards() throws IOException {
+        Map<Integer, Integer> order = new HashMap<>();
+        order.put(1, 20);
+        order.put(2, 1);
+        assertTrue(mappedDAO.reserveStock(order));
+
+        order.put(4, 23);
+        assertFalse(mappedDAO.reserveStock(order));
+        order.remove(4);
+        assertTrue(mappedDAO.releaseStock(order));
+
+        reopen();
+        assertEquals(20, mappedDAO.getKeyboard(1).getQuantity());
+        assertEquals(21, mappedDAO.getKeyboard(2).getQuantity());
+        assertEquals(22, mappedDAO.getKeyboard(4).getQuantity());
+    }
+
+    @Test
+    public void testReserveStockNeverOversells() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            results.add(pool.submit(() -> {
+                int sold = 0;
+                for (int i = 0; i < 50; ++i) {
+                    if (mappedDAO.reserveStock(4, 1)) {
+                        ++sold;
+                    }
+                }
+                return sold;
+            }));
+        }
+        int sold = 0;
+        for (Future<Integer> result : results) {
+            sold += result.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(22, sold);
+        assertEquals(0, mappedDAO.getKeyboard(4).getQuantity());
+    }
+}
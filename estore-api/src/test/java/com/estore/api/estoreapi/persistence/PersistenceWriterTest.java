@@ -0,0 +1,114 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("Persistence-tier")
+public class PersistenceWriterTest {
+
+    @Test
+    public void testBurstIsCoalesced() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        PersistenceWriter writer = new PersistenceWriter("test-writer", 20, PersistenceWriter.Durability.FLUSH,
+                flushes::incrementAndGet);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                PersistenceWriter.await(writer.markDirty());
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        writer.close();
+
+        // 100 changes in a burst should need only a handful of writes
+        assertTrue(flushes.get() >= 1);
+        assertTrue(flushes.get() <= 10, "expected coalescing, got " + flushes.get() + " flushes");
+        assertEquals(flushes.get(), writer.getFlushCount());
+    }
+
+    @Test
+    public void testFlushDurabilityWaitsForWrite() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PersistenceWriter writer = new PersistenceWriter("test-writer", 0, PersistenceWriter.Durability.FLUSH,
+                () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                });
+        CompletableFuture<Void> commit = writer.markDirty();
+        Thread.sleep(50);
+        assertFalse(commit.isDone());
+        release.countDown();
+        PersistenceWriter.await(commit);
+        assertTrue(commit.isDone());
+        writer.close();
+    }
+
+    @Test
+    public void testImmediateDurabilityDoesNotWait() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger flushes = new AtomicInteger();
+        PersistenceWriter writer = new PersistenceWriter("test-writer", 0, PersistenceWriter.Durability.IMMEDIATE,
+                () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    flushes.incrementAndGet();
+                });
+        assertTrue(writer.markDirty().isDone());
+        release.countDown();
+        writer.close();
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void testFlushFailureReachesWaiter() throws Exception {
+        PersistenceWriter writer = new PersistenceWriter("test-writer", 0, PersistenceWriter.Durability.FLUSH,
+                () -> {
+                    throw new IOException("disk full");
+                });
+        CompletableFuture<Void> commit = writer.markDirty();
+        IOException thrown = assertThrows(IOException.class, () -> PersistenceWriter.await(commit));
+        assertEquals("disk full", thrown.getMessage());
+        writer.close();
+    }
+
+    @Test
+    public void testCloseFlushesPendingChanges() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        PersistenceWriter writer = new PersistenceWriter("test-writer", 60000, PersistenceWriter.Durability.IMMEDIATE,
+                flushes::incrementAndGet);
+        writer.markDirty();
+        writer.close();
+        assertEquals(1, flushes.get());
+        assertThrows(IllegalStateException.class, writer::markDirty);
+    }
+}
@@ -0,0 +1,98 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.estore.api.estoreapi.model.InventoryChange;
+import com.estore.api.estoreapi.model.InventoryChanges;
+import com.estore.api.estoreapi.model.Keyboard;
+
+/**
+ * Test the Recent Changes class
+ *
+ * @author Team 2
+ */
+@Tag("Persistence-tier")
+public class RecentChangesTest {
+
+    /**
+     * Creates a keyboard
+     *
+     * @param id       the keyboard's id
+     * @param quantity the keyboard's quantity
+     * @return the keyboard
+     */
+    private static Keyboard keyboard(int id, int quantity) {
+        return new Keyboard(id, "k" + id, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 10, quantity);
+    }
+
+    @Test
+    public void testKeepsLatestChangeOfEachKeyboard() {
+        RecentChanges log = new RecentChanges(8, 10);
+        Keyboard first = keyboard(1, 5);
+        log.add(InventoryChange.upsert(11, first));
+        log.add(InventoryChange.upsert(12, keyboard(2, 5)));
+        first.setQuantity(4);
+        log.add(InventoryChange.upsert(13, first));
+        log.add(InventoryChange.delete(14, 2));
+
+        InventoryChanges changes = log.since(10, log.getEpoch());
+        assertFalse(changes.isResync());
+        assertEquals(14, changes.getVersion());
+        assertEquals(2, changes.getChanges().size());
+        assertEquals(13, changes.getChanges().get(0).getVersion());
+        assertEquals(4, changes.getChanges().get(0).getKeyboard().getQuantity());
+        assertEquals(InventoryChange.Type.DELETE, changes.getChanges().get(1).getType());
+
+        // Recorded keyboards are copies
+        first.setQuantity(0);
+        assertEquals(4, log.since(12, log.getEpoch()).getChanges().get(0).getKeyboard().getQuantity());
+        assertTrue(log.since(14, log.getEpoch()).getChanges().isEmpty());
+    }
+
+    @Test
+    public void testResyncsWhenChangesAreGone() {
+        RecentChanges log = new RecentChanges(2, 0);
+        for (int version = 1; version <= 5; ++version) {
+            log.add(InventoryChange.upsert(version, keyboard(version, 1)));
+        }
+
+        assertFalse(log.since(3, log.getEpoch()).isResync());
+        assertEquals(2, log.since(3, log.getEpoch()).getChanges().size());
+        assertTrue(log.since(2, log.getEpoch()).isResync());
+        assertTrue(log.since(2, log.getEpoch()).getChanges().isEmpty());
+        assertTrue(log.since(6, log.getEpoch()).isResync());
+        assertTrue(log.since(4, "another run").isResync());
+        assertNotEquals(log.getEpoch(), new RecentChanges(2, 0).getEpoch());
+    }
+
+    @Test
+    public void testVersionWithoutEpochResyncs() {
+        RecentChanges log = new RecentChanges(8, 0);
+        log.add(InventoryChange.upsert(1, keyboard(1, 1)));
+        log.add(InventoryChange.upsert(2, keyboard(2, 1)));
+
+        assertTrue(log.since(1, null).isResync());
+        assertEquals(log.getEpoch(), log.since(1, null).getEpoch());
+        // A new client only gets the changes since startup, so it must resync
+        assertTrue(log.since(0, null).isResync());
+        assertTrue(log.since(0, null).getChanges().isEmpty());
+        assertEquals(2, log.since(0, null).getVersion());
+        assertFalse(log.since(0, log.getEpoch()).isResync());
+    }
+
+    @Test
+    public void testKeepingNoneAlwaysResyncs() {
+        RecentChanges log = new RecentChanges(0, 3);
+        assertFalse(log.since(3, log.getEpoch()).isResync());
+
+        log.add(InventoryChange.upsert(4, keyboard(1, 1)));
+        assertTrue(log.since(3, log.getEpoch()).isResync());
+        assertFalse(log.since(4, log.getEpoch()).isResync());
+    }
+}
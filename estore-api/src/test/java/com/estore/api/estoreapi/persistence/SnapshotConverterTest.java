@@ -0,0 +1,55 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.estore.api.estoreapi.model.Keyboard;
+import com.estore.api.estoreapi.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@Tag("Persistence-tier")
+public class SnapshotConverterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SnapshotConverter converter = new SnapshotConverter(objectMapper);
+
+    @Test
+    public void testInventoryRoundTrip(@TempDir Path dir) throws IOException {
+        Keyboard[] keyboards = new Keyboard[2];
+        keyboards[0] = new Keyboard(1, "First", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 30, 20);
+        keyboards[1] = new Keyboard(2, "Second", Keyboard.Size.SIXTY, Keyboard.SwitchColor.RED, 31, 21);
+        String json = dir.resolve("inventory.json").toString();
+        String binary = dir.resolve("inventory.bin").toString();
+        String exported = dir.resolve("exported.json").toString();
+        objectMapper.writeValue(dir.resolve("inventory.json").toFile(), keyboards);
+
+        assertEquals(2, converter.inventoryToBinary(json, binary));
+        assertEquals(2, converter.inventoryToJson(binary, exported));
+        assertArrayEquals(keyboards, objectMapper.readValue(dir.resolve("exported.json").toFile(), Keyboard[].class));
+    }
+
+    @Test
+    public void testUsersRoundTrip(@TempDir Path dir) throws IOException {
+        User user = new User("user", "pw");
+        user.setUserCart(new ArrayList<>(Arrays.asList(
+                new Keyboard(1, "First", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 30, 2))));
+        String json = dir.resolve("users.json").toString();
+        String binary = dir.resolve("users.bin").toString();
+        String exported = dir.resolve("exported.json").toString();
+        objectMapper.writeValue(dir.resolve("users.json").toFile(), new User[] { user });
+
+        assertEquals(1, converter.usersToBinary(json, binary));
+        assertEquals(1, converter.usersToJson(binary, exported));
+        User[] users = objectMapper.readValue(dir.resolve("exported.json").toFile(), User[].class);
+        assertEquals("pw", users[0].getPassword());
+        assertEquals(user.getUserCart(), users[0].getUserCart());
+    }
+}
@@ -0,0 +1,127 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@Tag("Persistence-tier")
+public class SnapshotFileTest {
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testWriteThenRead(@TempDir Path dir) throws IOException {
+        SnapshotFile snapshot = new SnapshotFile(dir.resolve("data.json").toString());
+        snapshot.write(bytes("[1]"));
+        snapshot.write(bytes("[1,2]"));
+
+        assertArrayEquals(bytes("[1,2]"), snapshot.read());
+        assertArrayEquals(bytes("[1]"), Files.readAllBytes(dir.resolve("data.json.bak")));
+        assertTrue(Files.exists(dir.resolve("data.json.crc")));
+        assertFalse(Files.exists(dir.resolve("data.json.tmp")));
+    }
+
+    @Test
+    public void testCorruptFileFallsBackToBackup(@TempDir Path dir) throws IOException {
+        SnapshotFile snapshot = new SnapshotFile(dir.resolve("data.json").toString());
+        snapshot.write(bytes("[1]"));
+        snapshot.write(bytes("[1,2]"));
+        Files.write(dir.resolve("data.json"), bytes("[1,"));
+
+        assertArrayEquals(bytes("[1]"), snapshot.read());
+    }
+
+    @Test
+    public void testCorruptFileWithoutBackupFails(@TempDir Path dir) throws IOException {
+        SnapshotFile snapshot = new SnapshotFile(dir.resolve("data.json").toString());
+        snapshot.write(bytes("[1]"));
+        Files.write(dir.resolve("data.json"), bytes("[2]"));
+
+        assertThrows(IOException.class, snapshot::read);
+    }
+
+    @Test
+    public void testLegacyFileWithoutSidecar(@TempDir Path dir) throws IOException {
+        Files.write(dir.resolve("data.json"), bytes("[7]"));
+        SnapshotFile snapshot = new SnapshotFile(dir.resolve("data.json").toString());
+
+        assertArrayEquals(bytes("[7]"), snapshot.read());
+        snapshot.write(bytes("[8]"));
+        assertArrayEquals(bytes("[8]"), snapshot.read());
+    }
+
+    @Test
+    public void testCrashBeforeRenameKeepsOldContents(@TempDir Path dir) throws IOException {
+        SnapshotFile snapshot = new SnapshotFile(dir.resolve("data.json").toString());
+        snapshot.write(bytes("[1]"));
+        // Simulate dying while the next version was still being written
+        Files.write(dir.resolve("data.json.tmp"), bytes("[1,2"));
+        Files.write(dir.resolve("data.json.crc.tmp"), bytes("crc32c=00000000 length=4"));
+
+        assertArrayEquals(bytes("[1]"), snapshot.read());
+    }
+
+    @Test
+    public void testCrashBetweenRenamesUsesTemporarySidecar(@TempDir Path dir) throws IOException {
+        SnapshotFile snapshot = new SnapshotFile(dir.resolve("data.json").toString());
+        snapshot.write(bytes("[1]"));
+        snapshot.write(bytes("[1,2]"));
+        // Simulate dying after the data file was renamed into place
+        Files.move(dir.resolve("data.json.crc"), dir.resolve("data.json.crc.tmp"));
+
+        assertArrayEquals(bytes("[1,2]"), snapshot.read());
+    }
+
+    @Test
+    public void testCrashBetweenAnyTwoStepsLeavesReadableContents(@TempDir Path dir) throws IOException {
+        int steps = new SnapshotFile(dir.resolve("probe.json").toString()).steps(bytes("[]")).size();
+        for (int done = 0; done <= steps; ++done) {
+            Path data = dir.resolve("data" + done + ".json");
+            SnapshotFile snapshot = new SnapshotFile(data.toString());
+            snapshot.write(bytes("[1]"));
+            snapshot.write(bytes("[1,2]"));
+            // Simulate dying after the first done steps of the next write
+            List<SnapshotFile.Step> write = snapshot.steps(bytes("[1,2,3]"));
+            for (SnapshotFile.Step step : write.subList(0, done)) {
+                step.run();
+            }
+
+            byte[] read = new SnapshotFile(data.toString()).read();
+            assertTrue(Arrays.equals(bytes("[1,2]"), read) || Arrays.equals(bytes("[1,2,3]"), read),
+                    "after " + done + " steps");
+            if (done == steps) {
+                assertArrayEquals(bytes("[1,2,3]"), read);
+            }
+
+            // The next write recovers from the crash
+            snapshot.write(bytes("[4]"));
+            assertArrayEquals(bytes("[4]"), snapshot.read());
+        }
+    }
+
+    @Test
+    public void testDelete(@TempDir Path dir) throws IOException {
+        SnapshotFile snapshot = new SnapshotFile(dir.resolve("data.json").toString());
+        snapshot.write(bytes("[1]"));
+        snapshot.write(bytes("[2]"));
+        snapshot.delete();
+
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            assertFalse(files.findAny().isPresent());
+        }
+    }
+}
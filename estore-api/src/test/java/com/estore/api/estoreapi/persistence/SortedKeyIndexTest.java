@@ -0,0 +1,60 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("Persistence-tier")
+public class SortedKeyIndexTest {
+    SortedKeyIndex<Integer> index;
+
+    @BeforeEach
+    public void setupSortedKeyIndex() {
+        index = new SortedKeyIndex<>();
+        index.put(1, 30);
+        index.put(2, 10);
+        index.put(3, 30);
+        index.put(4, 20);
+    }
+
+    private static List<Integer> ids(Iterator<SortedKeyIndex.Position<Integer>> positions) {
+        List<Integer> ids = new ArrayList<>();
+        positions.forEachRemaining(position -> ids.add(position.getId()));
+        return ids;
+    }
+
+    @Test
+    public void testOrdersByKeyThenId() {
+        assertEquals(List.of(2, 4, 1, 3), ids(index.after(null, false)));
+        assertEquals(List.of(3, 1, 4, 2), ids(index.after(null, true)));
+    }
+
+    @Test
+    public void testAfterPosition() {
+        assertEquals(List.of(3), ids(index.after(new SortedKeyIndex.Position<>(30, 1), false)));
+        assertEquals(List.of(4, 2), ids(index.after(new SortedKeyIndex.Position<>(30, 1), true)));
+        // The position does not have to be in the index
+        assertEquals(List.of(1, 3), ids(index.after(new SortedKeyIndex.Position<>(25, 9), false)));
+    }
+
+    @Test
+    public void testFromKey() {
+        assertEquals(List.of(4, 1, 3), ids(index.from(20, false)));
+        assertEquals(List.of(4, 2), ids(index.from(25, true)));
+    }
+
+    @Test
+    public void testPutMovesAndRemove() {
+        index.put(2, 40);
+        index.remove(4);
+
+        assertEquals(List.of(1, 3, 2), ids(index.after(null, false)));
+        assertEquals(3, index.size());
+    }
+}
@@ -0,0 +1,139 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test the Stock Holds class
+ *
+ * @author Team 2
+ */
+@Tag("Persistence-tier")
+public class StockHoldsTest {
+    InventoryDAO mockInventoryDAO;
+    AtomicLong clock;
+    PersistenceSettings settings;
+    StockHolds stockHolds;
+
+    @BeforeEach
+    public void setupStockHolds() {
+        mockInventoryDAO = mock(InventoryDAO.class);
+        clock = new AtomicLong(1000000);
+        settings = new PersistenceSettings();
+        settings.setCartHoldsEnabled(true);
+        settings.setCartHoldTtlSeconds(60);
+        settings.setCartHoldTickMs(1000);
+        stockHolds = new StockHolds(mockInventoryDAO, settings, clock::get);
+    }
+
+    @Test
+    public void testExpiredHoldsAreReleasedTogether() throws IOException {
+        stockHolds.hold("alice", 1, 1);
+        stockHolds.hold("bob", 1, 2);
+        stockHolds.hold("bob", 2, 1);
+
+        clock.addAndGet(59000);
+        assertEquals(0, stockHolds.sweep());
+        verify(mockInventoryDAO, never()).releaseStock(any());
+
+        clock.addAndGet(1000);
+        assertEquals(3, stockHolds.sweep());
+        verify(mockInventoryDAO).releaseStock(Map.of(1, 3, 2, 1));
+        assertEquals(0, stockHolds.size());
+    }
+
+    @Test
+    public void testHoldingAgainRestartsTheLifetime() throws IOException {
+        stockHolds.hold("alice", 1, 1);
+        clock.addAndGet(30000);
+        stockHolds.hold("alice", 1, 1);
+        assertEquals(1, stockHolds.size());
+
+        clock.addAndGet(30000);
+        assertEquals(0, stockHolds.sweep());
+        clock.addAndGet(30000);
+        assertEquals(1, stockHolds.sweep());
+        verify(mockInventoryDAO).releaseStock(Map.of(1, 2));
+    }
+
+    @Test
+    public void testReleaseAndClaimEndHolds() throws IOException {
+        stockHolds.hold("alice", 1, 1);
+        stockHolds.hold("alice", 2, 3);
+        stockHolds.hold("bob", 3, 1);
+
+        assertTrue(stockHolds.release("alice", 1));
+        assertFalse(stockHolds.release("alice", 1));
+        verify(mockInventoryDAO).releaseStock(1, 1);
+
+        assertEquals(Map.of(2, 3), stockHolds.claim("alice"));
+        assertEquals(1, stockHolds.releaseAll("bob"));
+        verify(mockInventoryDAO).releaseStock(Map.of(3, 1));
+
+        clock.addAndGet(120000);
+        assertEquals(0, stockHolds.sweep());
+        verify(mockInventoryDAO, times(1)).releaseStock(any());
+    }
+
+    @Test
+    public void testDisabledHoldsDoNothing() throws IOException {
+        stockHolds = new StockHolds(mockInventoryDAO, new PersistenceSettings(), clock::get);
+        stockHolds.hold("alice", 1, 1);
+
+        assertFalse(stockHolds.isEnabled());
+        assertEquals(0, stockHolds.size());
+        assertFalse(stockHolds.release("alice", 1));
+        assertTrue(stockHolds.claim("alice").isEmpty());
+        verify(mockInventoryDAO, never()).releaseStock(anyInt(), anyInt());
+    }
+
+    @Test
+    public void testRestartSettlesLoggedHolds(@TempDir Path dir) throws IOException {
+        String filename = dir.resolve("holds.log").toString();
+        stockHolds = new StockHolds(mockInventoryDAO, settings, new ObjectMapper(), filename, clock::get);
+        stockHolds.hold("alice", 1, 1);
+        stockHolds.hold("bob", 2, 2);
+        clock.addAndGet(30000);
+        stockHolds.hold("carol", 3, 3);
+        stockHolds.hold("carol", 3, 1);
+        stockHolds.hold("dave", 4, 1);
+        assertTrue(stockHolds.release("dave", 4));
+        stockHolds.close();
+
+        // Down long enough for the first two holds to expire
+        clock.addAndGet(45000);
+        stockHolds = new StockHolds(mockInventoryDAO, settings, new ObjectMapper(), filename, clock::get);
+        verify(mockInventoryDAO).releaseStock(Map.of(1, 1, 2, 2));
+        assertEquals(1, stockHolds.size());
+
+        clock.addAndGet(15000);
+        assertEquals(1, stockHolds.sweep());
+        verify(mockInventoryDAO).releaseStock(Map.of(3, 4));
+        stockHolds.close();
+
+        // Nothing left to give back on the next start
+        stockHolds = new StockHolds(mockInventoryDAO, settings, new ObjectMapper(), filename, clock::get);
+        assertEquals(0, stockHolds.size());
+        verify(mockInventoryDAO, times(2)).releaseStock(any());
+        stockHolds.close();
+    }
+}
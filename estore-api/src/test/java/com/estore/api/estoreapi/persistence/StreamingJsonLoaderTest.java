@@ -0,0 +1,65 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.estore.api.estoreapi.model.Keyboard;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@Tag("Persistence-tier")
+public class StreamingJsonLoaderTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StreamingJsonLoader<Keyboard> loader = new StreamingJsonLoader<>(objectMapper, Keyboard.class,
+            "keyboards");
+
+    @Test
+    public void testLoadsEveryElementInOrder() throws IOException {
+        Keyboard[] keyboards = new Keyboard[3];
+        keyboards[0] = new Keyboard(1, "First", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 30, 20);
+        keyboards[1] = new Keyboard(2, "Second", Keyboard.Size.SIXTY, Keyboard.SwitchColor.RED, 31, 21);
+        keyboards[2] = new Keyboard(3, "Third", Keyboard.Size.TKL, Keyboard.SwitchColor.BROWN, 32, 22);
+        byte[] json = objectMapper.writeValueAsBytes(keyboards);
+
+        List<Keyboard> loaded = new ArrayList<>();
+        long count = loader.load(new ByteArrayInputStream(json), json.length, loaded::add);
+
+        assertEquals(3, count);
+        for (int i = 0; i < keyboards.length; ++i) {
+            assertEquals(keyboards[i].getKeyboardId(), loaded.get(i).getKeyboardId());
+            assertEquals(keyboards[i].getKeyboardName(), loaded.get(i).getKeyboardName());
+            assertEquals(keyboards[i].getSize(), loaded.get(i).getSize());
+        }
+    }
+
+    @Test
+    public void testLoadsEmptyArray() throws IOException {
+        byte[] json = "[ ]".getBytes(StandardCharsets.UTF_8);
+        assertEquals(0, loader.load(new ByteArrayInputStream(json), -1, keyboard -> {
+        }));
+    }
+
+    @Test
+    public void testRejectsNonArray() {
+        byte[] json = "{\"keyboardId\":1}".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> loader.load(new ByteArrayInputStream(json), json.length,
+                keyboard -> {
+                }));
+    }
+
+    @Test
+    public void testRejectsTruncatedArray() {
+        byte[] json = "[{\"keyboardId\":1,\"keyboardName\":\"First\"},{\"keyboardId\"".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> loader.load(new ByteArrayInputStream(json), json.length,
+                keyboard -> {
+                }));
+    }
+}
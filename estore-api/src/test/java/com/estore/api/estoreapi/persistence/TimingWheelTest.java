@@ -0,0 +1,99 @@
+package com.estore.api.estoreapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Timing Wheel class
+ *
+ * @author Team 2
+ */
+@Tag("Persistence-tier")
+public class TimingWheelTest {
+
+    @Test
+    public void testItemsComeDueOnTheirTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(8, 100);
+        wheel.schedule("soon", 102);
+        wheel.schedule("later", 105);
+        // More than one turn of the wheel away, in the same bucket as "soon"
+        wheel.schedule("next turn", 110);
+        List<String> expired = new ArrayList<>();
+
+        assertEquals(0, wheel.advance(101, expired::add));
+        assertEquals(1, wheel.advance(104, expired::add));
+        assertEquals(List.of("soon"), expired);
+        assertEquals(1, wheel.advance(109, expired::add));
+        assertEquals(1, wheel.advance(110, expired::add));
+        assertEquals(List.of("soon", "later", "next turn"), expired);
+        assertEquals(0, wheel.size());
+        assertEquals(111, wheel.getTick());
+    }
+
+    @Test
+    public void testCancelledItemsNeverComeDue() {
+        TimingWheel<String> wheel = new TimingWheel<>(4, 0);
+        TimingWheel.Timeout<String> first = wheel.schedule("first", 2);
+        TimingWheel.Timeout<String> second = wheel.schedule("second", 2);
+        wheel.schedule("third", 2);
+
+        assertTrue(wheel.cancel(second));
+        assertFalse(wheel.cancel(second));
+        assertFalse(second.isPending());
+        assertEquals(2, wheel.size());
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(2, expired::add);
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains("first") && expired.contains("third"));
+        assertFalse(first.isPending());
+        assertFalse(wheel.cancel(first));
+    }
+
+    @Test
+    public void testPastDueItemComesDueOnNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(16, 50);
+        wheel.advance(60, item -> {
+        });
+        wheel.schedule("late", 10);
+        List<String> expired = new ArrayList<>();
+        wheel.advance(61, expired::add);
+        assertEquals(List.of("late"), expired);
+    }
+
+    /**
+     * Schedules and expires 200k items. Timings depend on the machine, so
+     * they are only logged; run with -Pbenchmarks.
+     */
+    @Test
+    @Tag("Benchmark")
+    public void testBenchmarkManyTimeouts() {
+        int count = 200000;
+        TimingWheel<Integer> wheel = new TimingWheel<>(4096, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; ++i) {
+            wheel.schedule(i, 900 + i % 1000);
+        }
+        long scheduled = System.nanoTime() - start;
+        int[] expired = new int[1];
+        start = System.nanoTime();
+        for (long tick = 0; tick < 2000; ++tick) {
+            wheel.advance(tick, item -> ++expired[0]);
+        }
+        long swept = System.nanoTime() - start;
+
+        assertEquals(count, expired[0]);
+        assertEquals(0, wheel.size());
+        Logger.getLogger(TimingWheelTest.class.getName()).info(String.format(
+                "%d timeouts: scheduled in %d ms, swept over 2000 ticks in %d ms", count, scheduled / 1000000,
+                swept / 1000000));
+    }
+}
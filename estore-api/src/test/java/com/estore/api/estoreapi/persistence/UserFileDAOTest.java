@@ -1,9 +1,20 @@
 package com.estore.api.estoreapi.persistence;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -14,6 +25,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -147,6 +159,70 @@ public class UserFileDAOTest {
         
     }
 
+    @Test
+    public void testCheckout() throws IOException {
+        User retrievedUser = userFileDAO.getUser(testUsers[0].getUsername());
+        Keyboard keyboard = new Keyboard(1, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 2);
+        retrievedUser.getUserOrderHistory().add(new Keyboard(keyboard, 1));
+        userFileDAO.addToUserCart(retrievedUser, keyboard, 2);
+        List<Keyboard> purchased = new ArrayList<>(retrievedUser.getUserCart());
+
+        assertTrue(userFileDAO.checkout(retrievedUser, purchased));
+
+        assertTrue(retrievedUser.getUserCart().isEmpty());
+        assertEquals(1, retrievedUser.getUserOrderHistory().size());
+        assertEquals(3, retrievedUser.getUserOrderHistory().get(0).getQuantity());
+    }
+
+    @Test
+    public void testCheckoutRefusesChangedCart() throws IOException {
+        User retrievedUser = userFileDAO.getUser(testUsers[0].getUsername());
+        Keyboard keyboard = new Keyboard(1, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 2);
+        userFileDAO.addToUserCart(retrievedUser, keyboard, 2);
+        List<Keyboard> purchased = new ArrayList<>(retrievedUser.getUserCart());
+        userFileDAO.addToUserCart(retrievedUser,
+                new Keyboard(2, "baz", Keyboard.Size.TKL, Keyboard.SwitchColor.RED, 80, 1), 1);
+
+        assertFalse(userFileDAO.checkout(retrievedUser, purchased));
+
+        assertEquals(2, retrievedUser.getUserCart().size());
+        assertTrue(retrievedUser.getUserOrderHistory().isEmpty());
+    }
+
+    @Test
+    public void testCheckoutRefusesChangedQuantity() throws IOException {
+        User retrievedUser = userFileDAO.getUser(testUsers[0].getUsername());
+        Keyboard keyboard = new Keyboard(1, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 2);
+        userFileDAO.addToUserCart(retrievedUser, keyboard, 2);
+        List<Keyboard> purchased = new ArrayList<>();
+        for (Keyboard inCart : retrievedUser.getUserCart()) {
+            purchased.add(new Keyboard(inCart, inCart.getQuantity()));
+        }
+        // Changed in place, between reserving and checking out
+        assertTrue(userFileDAO.increaseQuantity(retrievedUser, keyboard));
+
+        assertFalse(userFileDAO.checkout(retrievedUser, purchased));
+
+        assertEquals(3, retrievedUser.getCart().get(1).getQuantity());
+        assertTrue(retrievedUser.getUserOrderHistory().isEmpty());
+    }
+
+    @Test
+    public void testCartFindsKeyboardAfterQuantityChange() throws IOException {
+        User retrievedUser = userFileDAO.getUser(testUsers[0].getUsername());
+        Keyboard keyboard = new Keyboard(1, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 1);
+        Keyboard request = new Keyboard(keyboard, 1);
+
+        assertTrue(userFileDAO.addToUserCart(retrievedUser, keyboard, 1));
+        assertTrue(userFileDAO.increaseQuantity(retrievedUser, request));
+        assertTrue(userFileDAO.increaseQuantity(retrievedUser, request));
+
+        assertEquals(3, userFileDAO.getKeyboardFromCart(retrievedUser, request).getQuantity());
+        assertFalse(userFileDAO.addToUserCart(retrievedUser, request, 1));
+        assertTrue(userFileDAO.removeFromCart(retrievedUser, request));
+        assertTrue(retrievedUser.getUserCart().isEmpty());
+    }
+
     @Test
     public void testGetCart() throws IOException {
         // Retrieve the user from the data store using the getUser method of the User
@@ -368,4 +444,294 @@ public class UserFileDAOTest {
         assertThrows(IOException.class, () -> new UserFileDAO("doesnt_matter.txt", mockObjectMapper),
                 "IOException not thrown");
     }
+
+    /**
+     * Creates a users file with the test users and opens a DAO on it with the
+     * journal enabled
+     */
+    private UserFileDAO openWithJournal(Path dir, long checkpointIntervalMs) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("users.json").toFile();
+        if (!file.exists()) {
+            objectMapper.writeValue(file, testUsers);
+        }
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setUsersJournalEnabled(true);
+        settings.setUsersCheckpointIntervalMs(checkpointIntervalMs);
+        return new UserFileDAO(file.getPath(), objectMapper, settings);
+    }
+
+    @Test
+    public void testJournalReplaysChangesAfterRestart(@TempDir Path dir) throws IOException {
+        UserFileDAO dao = openWithJournal(dir, 60000);
+        User user = dao.getUser("test_user1");
+        dao.addToUserCart(user, new Keyboard(1, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 1), 1);
+        dao.createUser(new User("test_user3", "pw"));
+        dao.deleteAccount("test_user2");
+
+        // users.json is untouched until a checkpoint runs
+        User[] onDisk = new ObjectMapper().readValue(dir.resolve("users.json").toFile(), User[].class);
+        assertEquals(testUsers.length, onDisk.length);
+
+        UserFileDAO reopened = openWithJournal(dir, 60000);
+        assertEquals(1, reopened.getUser("test_user1").getUserCart().size());
+        assertNotNull(reopened.getUser("test_user3"));
+        assertNull(reopened.getUser("test_user2"));
+    }
+
+    @Test
+    public void testBackgroundCheckpoint(@TempDir Path dir) throws Exception {
+        UserFileDAO dao = openWithJournal(dir, 10);
+        dao.deleteAccount("test_user2");
+
+        Path journal = dir.resolve("users.json.journal");
+        for (int i = 0; i < 200 && Files.size(journal) > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, Files.size(journal));
+        User[] onDisk = new ObjectMapper().readValue(dir.resolve("users.json").toFile(), User[].class);
+        assertEquals(testUsers.length - 1, onDisk.length);
+        dao.close();
+    }
+
+    @Test
+    public void testCloseWritesFinalCheckpoint(@TempDir Path dir) throws IOException {
+        UserFileDAO dao = openWithJournal(dir, 60000);
+        dao.createUser(new User("test_user3", "pw"));
+        dao.close();
+
+        User[] onDisk = new ObjectMapper().readValue(dir.resolve("users.json").toFile(), User[].class);
+        assertEquals(testUsers.length + 1, onDisk.length);
+        assertEquals(0, Files.size(dir.resolve("users.json.journal")));
+    }
+
+    /**
+     * Creates a users file with the test users and opens a DAO on it with
+     * sharded storage in a directory next to it
+     */
+    private UserFileDAO openSharded(Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("users.json").toFile();
+        if (!file.exists()) {
+            objectMapper.writeValue(file, testUsers);
+        }
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setUserStorage(PersistenceSettings.UserStorage.SHARDED);
+        settings.setUsersDirectory(dir.resolve("users").toString());
+        return new UserFileDAO(file.getPath(), objectMapper, settings);
+    }
+
+    @Test
+    public void testShardedSplitsUsersFileAndLoadsLazily(@TempDir Path dir) throws IOException {
+        openSharded(dir);
+        assertTrue(Files.exists(dir.resolve("users").resolve("test_user1.json")));
+        assertTrue(Files.exists(dir.resolve("users").resolve("test_user2.json")));
+
+        UserFileDAO reopened = openSharded(dir);
+        assertTrue(reopened.userMap.isEmpty());
+        assertNotNull(reopened.getUser("test_user1"));
+        assertEquals(1, reopened.userMap.size());
+        assertNull(reopened.getUser("nobody"));
+        assertEquals(testUsers.length, reopened.getUsers().length);
+    }
+
+    @Test
+    public void testExportUsersWithoutLoadingThem(@TempDir Path dir) throws IOException {
+        openSharded(dir);
+        UserFileDAO reopened = openSharded(dir);
+        reopened.getUser("test_user2");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, reopened.exportUsers(out));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<String> usernames = new ArrayList<>();
+        for (String line : lines) {
+            usernames.add(objectMapper.readValue(line, User.class).getUsername());
+        }
+        assertEquals(List.of("test_user1", "test_user2"), usernames);
+        assertEquals(1, reopened.userMap.size());
+    }
+
+    @Test
+    public void testShardedRewritesOnlyTouchedUser(@TempDir Path dir) throws IOException {
+        UserFileDAO dao = openSharded(dir);
+        Path other = dir.resolve("users").resolve("test_user2.json");
+        byte[] before = Files.readAllBytes(other);
+        Files.delete(dir.resolve("users.json"));
+
+        User user = dao.getUser("test_user1");
+        dao.addToUserCart(user, new Keyboard(1, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 1), 1);
+        assertArrayEquals(before, Files.readAllBytes(other));
+        assertArrayEquals(before, Files.readAllBytes(other));
+        dao.createUser(new User("test user/3", "pw"));
+        dao.deleteAccount("test_user2");
+
+        assertFalse(Files.exists(other));
+        assertFalse(Files.exists(dir.resolve("users.json")));
+        UserFileDAO reopened = openSharded(dir);
+        assertEquals(1, reopened.getUser("test_user1").getUserCart().size());
+        assertNotNull(reopened.getUser("test user/3"));
+        assertNull(reopened.getUser("test_user2"));
+    }
+
+    @Test
+    public void testGroupCommitWritesBeforeAcknowledging(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("users.json").toFile();
+        objectMapper.writeValue(file, testUsers);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setGroupCommitEnabled(true);
+        settings.setGroupCommitWindowMs(5);
+        UserFileDAO dao = new UserFileDAO(file.getPath(), objectMapper, settings);
+
+        dao.createUser(new User("test_user3", "pw"));
+        dao.logout(dao.getUser("test_user1"));
+
+        User[] onDisk = objectMapper.readValue(file, User[].class);
+        assertEquals(testUsers.length + 1, onDisk.length);
+        for (User user : onDisk) {
+            if (user.getUsername().equals("test_user1")) {
+                assertFalse(user.getLoginStatus());
+            }
+        }
+        dao.close();
+    }
+    @Test
+    public void testStreamingLoad(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("users.json").toFile();
+        objectMapper.writeValue(file, testUsers);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setStreamingLoad(true);
+        UserFileDAO dao = new UserFileDAO(file.getPath(), objectMapper, settings);
+
+        assertEquals(testUsers.length, dao.getUsers().length);
+        for (User user : testUsers) {
+            assertEquals(user.getPassword(), dao.getUser(user.getUsername()).getPassword());
+        }
+    }
+
+    @Test
+    public void testBinarySnapshot(@TempDir Path dir) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = dir.resolve("users.json").toFile();
+        objectMapper.writeValue(file, testUsers);
+        PersistenceSettings settings = new PersistenceSettings();
+        settings.setSnapshotFormat(PersistenceSettings.SnapshotFormat.BINARY);
+        settings.setAtomicSnapshots(true);
+
+        UserFileDAO dao = new UserFileDAO(file.getPath(), objectMapper, settings);
+        Keyboard keyboard = new Keyboard(1, "bur", Keyboard.Size.FULL, Keyboard.SwitchColor.BLUE, 100, 1);
+        dao.addToUserCart(dao.getUser("test_user1"), keyboard, 1);
+        dao.createUser(new User("test_user3", "pw"));
+        assertTrue(Files.exists(dir.resolve("users.bin")));
+
+        UserFileDAO reopened = new UserFileDAO(file.getPath(), objectMapper, settings);
+        assertEquals(testUsers.length + 1, reopened.getUsers().length);
+        assertEquals(1, reopened.getUser("test_user1").getUserCart().size());
+        assertEquals("bur", reopened.getUser("test_user1").getUserCart().get(0).getKeyboardName());
+    }
+
+
+    @Test
+    public void testUserLockLeavesOtherUsersAvailable() throws Exception {
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            Future<User[]> everyone;
+            UserFileDAO.UserLock held = userFileDAO.lockUser("test_user1");
+            try {
+                User second = other.submit(() -> userFileDAO.getUser("test_user2")).get(5, TimeUnit.SECONDS);
+                assertEquals("test_user2", second.getUsername());
+
+                // A consistent view of every user waits for the held lock
+                everyone = other.submit(() -> userFileDAO.getUsers());
+                Thread.sleep(100);
+                assertFalse(everyone.isDone());
+            } finally {
+                held.unlock();
+            }
+            assertEquals(testUsers.length, everyone.get(5, TimeUnit.SECONDS).length);
+        } finally {
+            other.shutdownNow();
+        }
+    }
+
+    /**
+     * Fills the carts of a number of users from a pool of threads
+     *
+     * @return the elapsed nanoseconds
+     */
+    private long runCartWorkload(UserFileDAO dao, int users, int itemsPerUser, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int u = 0; u < users; ++u) {
+                String username = "cart_user" + u;
+                done.add(pool.submit(() -> {
+                    for (int k = 0; k < itemsPerUser; ++k) {
+                        dao.addToUserCart(dao.getUser(username),
+                                new Keyboard(k, "Keyboard " + k, Keyboard.Size.FULL, Keyboard.SwitchColor.RED, 10, 1), 1);
+                        dao.getUserShoppingCart(dao.getUser(username));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentCartUpdatesAreAllSaved(@TempDir Path dir) throws Exception {
+        int users = 8;
+        int itemsPerUser = 20;
+        UserFileDAO dao = openSharded(dir);
+        for (int u = 0; u < users; ++u) {
+            dao.createUser(new User("cart_user" + u, "pw"));
+        }
+        runCartWorkload(dao, users, itemsPerUser, users);
+
+        UserFileDAO reopened = openSharded(dir);
+        for (int u = 0; u < users; ++u) {
+            assertEquals(itemsPerUser, reopened.getUser("cart_user" + u).getUserCart().size());
+        }
+    }
+
+    /**
+     * Compares the cart workload on one thread against many threads over the
+     * sharded files. Timings depend on the machine, so they are only logged;
+     * run with -Pbenchmarks.
+     */
+    @Test
+    @Tag("Benchmark")
+    public void testBenchmarkConcurrentUsers(@TempDir Path dir) throws Exception {
+        int users = 32;
+        int itemsPerUser = 20;
+        int threads = Math.max(2, Math.min(users, Runtime.getRuntime().availableProcessors() * 2));
+        long[] elapsed = new long[2];
+        for (int run = 0; run < 2; ++run) {
+            Path runDir = Files.createDirectory(dir.resolve("run" + run));
+            UserFileDAO dao = openSharded(runDir);
+            for (int u = 0; u < users; ++u) {
+                dao.createUser(new User("cart_user" + u, "pw"));
+            }
+            elapsed[run] = runCartWorkload(dao, users, itemsPerUser, run == 0 ? 1 : threads);
+
+            UserFileDAO reopened = openSharded(runDir);
+            for (int u = 0; u < users; ++u) {
+                assertEquals(itemsPerUser, reopened.getUser("cart_user" + u).getUserCart().size());
+            }
+        }
+        Logger.getLogger(UserFileDAOTest.class.getName()).info(String.format(
+                "%d users x %d cart updates: 1 thread %.1f ms, %d threads %.1f ms (%.1fx)", users, itemsPerUser,
+                elapsed[0] / 1e6, threads, elapsed[1] / 1e6, (double) elapsed[0] / elapsed[1]));
+    }
 }
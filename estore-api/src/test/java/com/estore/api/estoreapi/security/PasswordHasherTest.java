@@ -0,0 +1,136 @@
+package com.estore.api.estoreapi.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Password Hasher class
+ *
+ * @author Team 2
+ */
+@Tag("Security-tier")
+public class PasswordHasherTest {
+    PasswordSettings settings;
+    AtomicLong clock;
+    PasswordHasher hasher;
+
+    @BeforeEach
+    public void setupPasswordHasher() {
+        settings = new PasswordSettings();
+        settings.setHashingEnabled(true);
+        settings.setIterations(1000);
+        settings.setCacheTtlSeconds(60);
+        clock = new AtomicLong(1000000);
+        hasher = new PasswordHasher(settings, clock::get);
+    }
+
+    @AfterEach
+    public void closePasswordHasher() {
+        hasher.close();
+    }
+
+    @Test
+    public void testHashesAreSaltedAndVerify() throws IOException {
+        String first = hasher.hash("hunter2");
+        String second = hasher.hash("hunter2");
+
+        assertTrue(PasswordHasher.isHashed(first));
+        assertTrue(first.startsWith("pbkdf2-sha256$1000$"));
+        assertNotEquals(first, second);
+        assertTrue(hasher.verify("alice", first, "hunter2"));
+        assertTrue(hasher.verify("alice", second, "hunter2"));
+        assertFalse(hasher.verify("alice", first, "hunter3"));
+        assertFalse(hasher.verify("alice", "pbkdf2-sha256$1000$not base64!$x", "hunter2"));
+        // A hash given as a password is hashed like any other password
+        assertNotEquals(first, hasher.hash(first));
+        assertTrue(hasher.verify("alice", hasher.hash(first), first));
+    }
+
+    @Test
+    public void testStoredIterationCountIsBounded() throws IOException {
+        settings.setIterations(4000);
+        PasswordHasher stronger = new PasswordHasher(settings, clock::get);
+        assertTrue(hasher.verify("alice", stronger.hash("hunter2"), "hunter2"));
+        stronger.close();
+
+        // With the workers gone, a count that was hashed would throw
+        hasher.close();
+        String tail = "$c2FsdHNhbHRzYWx0c2FsdA$AAAA";
+        assertFalse(hasher.verify("bob", "pbkdf2-sha256$2147483647" + tail, "hunter2"));
+        assertFalse(hasher.verify("bob", "pbkdf2-sha256$4001" + tail, "hunter2"));
+        assertFalse(hasher.verify("bob", "pbkdf2-sha256$0" + tail, "hunter2"));
+        assertThrows(IOException.class, () -> hasher.verify("bob", "pbkdf2-sha256$4000" + tail, "hunter2"));
+    }
+
+    @Test
+    public void testPlainPasswordsAreCheckedAndFlaggedForRehash() throws IOException {
+        assertTrue(hasher.verify("alice", "hunter2", "hunter2"));
+        assertFalse(hasher.verify("alice", "hunter2", "Hunter2"));
+        assertTrue(hasher.needsRehash("hunter2"));
+        assertFalse(hasher.needsRehash(hasher.hash("hunter2")));
+
+        settings.setIterations(2000);
+        PasswordHasher stronger = new PasswordHasher(settings, clock::get);
+        assertTrue(stronger.needsRehash(hasher.hash("hunter2")));
+        stronger.close();
+
+        PasswordHasher disabled = new PasswordHasher(new PasswordSettings(), clock::get);
+        assertEquals("hunter2", disabled.hash("hunter2"));
+        assertFalse(disabled.needsRehash("hunter2"));
+        assertTrue(disabled.verify("alice", hasher.hash("hunter2"), "hunter2"));
+        disabled.close();
+    }
+
+    @Test
+    public void testRecentCheckSkipsTheHash() throws IOException {
+        String stored = hasher.hash("hunter2");
+        assertTrue(hasher.verify("alice", stored, "hunter2"));
+
+        // With the workers gone, only a remembered check can succeed
+        hasher.close();
+        assertTrue(hasher.verify("alice", stored, "hunter2"));
+        assertThrows(IOException.class, () -> hasher.verify("bob", stored, "hunter2"));
+        assertThrows(IOException.class, () -> hasher.verify("alice", stored, "hunter3"));
+
+        clock.addAndGet(60000);
+        assertThrows(IOException.class, () -> hasher.verify("alice", stored, "hunter2"));
+    }
+
+    /**
+     * Compares checking a password at the production cost with checking it
+     * again from the cache. Timings depend on the machine, so they are only
+     * logged; run with -Pbenchmarks.
+     */
+    @Test
+    @Tag("Benchmark")
+    public void testBenchmarkCachedVerify() throws IOException {
+        settings.setIterations(210000);
+        PasswordHasher production = new PasswordHasher(settings);
+        String stored = production.hash("hunter2");
+
+        long start = System.nanoTime();
+        assertTrue(production.verify("alice", stored, "hunter2"));
+        long cold = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(production.verify("alice", stored, "hunter2"));
+        }
+        long warm = (System.nanoTime() - start) / 1000;
+        production.close();
+
+        Logger.getLogger(PasswordHasherTest.class.getName()).info(String.format(
+                "Password check at 210000 iterations: %d us hashed, %d us remembered", cold / 1000, warm / 1000));
+    }
+}
@@ -0,0 +1,113 @@
+package com.estore.api.estoreapi.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Session Store class
+ *
+ * @author Team 2
+ */
+@Tag("Security-tier")
+public class SessionStoreTest {
+    SessionSettings settings;
+    AtomicLong clock;
+    SessionStore sessions;
+
+    @BeforeEach
+    public void setupSessionStore() {
+        settings = new SessionSettings();
+        settings.setEnabled(true);
+        settings.setIdleTimeoutSeconds(60);
+        settings.setAbsoluteTimeoutSeconds(300);
+        settings.setMaxSessions(3);
+        clock = new AtomicLong(1000000);
+        sessions = new SessionStore(settings, clock::get);
+    }
+
+    @Test
+    public void testTokensIdentifyTheirUser() {
+        String alice = sessions.create("alice");
+        String bob = sessions.create("bob");
+
+        assertNotEquals(alice, bob);
+        assertEquals("alice", sessions.authenticate(alice));
+        assertEquals("bob", sessions.authenticate(bob));
+        assertNull(sessions.authenticate("not a token"));
+        assertNull(sessions.authenticate(null));
+    }
+
+    @Test
+    public void testIdleAndAbsoluteExpiry() {
+        String idle = sessions.create("alice");
+        String busy = sessions.create("bob");
+
+        // Used every 50 seconds, so never idle for a full minute
+        for (int i = 0; i < 5; ++i) {
+            clock.addAndGet(50000);
+            assertEquals("bob", sessions.authenticate(busy));
+        }
+        assertNull(sessions.authenticate(idle));
+
+        clock.addAndGet(50000);
+        assertNull(sessions.authenticate(busy));
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    public void testLoggingOutEndsSessions() {
+        String first = sessions.create("alice");
+        String second = sessions.create("alice");
+        String other = sessions.create("bob");
+
+        assertTrue(sessions.end(first));
+        assertFalse(sessions.end(first));
+        assertNull(sessions.authenticate(first));
+        assertEquals("alice", sessions.authenticate(second));
+
+        sessions.create("alice");
+        assertEquals(2, sessions.endAll("alice"));
+        assertNull(sessions.authenticate(second));
+        assertEquals("bob", sessions.authenticate(other));
+    }
+
+    @Test
+    public void testFullStoreEvictsExpiredThenIdlest() {
+        String first = sessions.create("a");
+        clock.addAndGet(1000);
+        String second = sessions.create("b");
+        clock.addAndGet(1000);
+        String third = sessions.create("c");
+        clock.addAndGet(1000);
+        sessions.authenticate(first);
+
+        sessions.create("d");
+        assertEquals(3, sessions.size());
+        assertNull(sessions.authenticate(second));
+        assertEquals("a", sessions.authenticate(first));
+        assertEquals("c", sessions.authenticate(third));
+
+        clock.addAndGet(60000);
+        assertEquals(3, sessions.sweep());
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    public void testDisabledStoreRefusesEveryToken() {
+        sessions = new SessionStore(new SessionSettings(), clock::get);
+
+        assertFalse(sessions.isEnabled());
+        assertFalse(sessions.isRequired());
+        assertNull(sessions.create("alice"));
+        assertEquals(0, sessions.size());
+    }
+}
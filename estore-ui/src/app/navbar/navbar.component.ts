@@ -47,7 +47,8 @@ export class NavbarComponent {
   }
 
   logout(){
-    this.userService.logout(this.user.username, this.user.password).subscribe(user => this.user = user);
+    // The user fetched from the server comes without its password
+    this.userService.logout(this.user.username, this.localService.getData('password')!).subscribe(user => this.user = user);
     this.localService.clearData();
     localStorage.removeItem('isLoggedIn');
     this.router.navigate([""]);
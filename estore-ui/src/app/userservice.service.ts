@@ -12,6 +12,7 @@ import { LocalService } from './local.service';
 export class UserService {
 
   private userURL = 'http://localhost:8080/user'
+  private static readonly SESSION_HEADER = 'X-Session-Token';
 
   httpOptions = {
     headers: new HttpHeaders({'Content-Type':'application/json'})
@@ -20,6 +21,19 @@ export class UserService {
   constructor(private http: HttpClient, private messageService: MessageService,
     private localService: LocalService) {}
 
+  /**
+   * Options for the cart and order requests, carrying the session token saved
+   * at login when there is one
+   */
+  private sessionOptions(): { headers: HttpHeaders } {
+    let headers = new HttpHeaders({'Content-Type':'application/json'});
+    const token = this.localService.getData('session_token');
+    if (token) {
+      headers = headers.set(UserService.SESSION_HEADER, token);
+    }
+    return { headers: headers };
+  }
+
   private log(message: string){
     this.messageService.add(`KeyboardService: ${message}`);
   }
@@ -99,7 +113,7 @@ export class UserService {
 
   addToCart(keyboard: Keyboard, username: string): Observable<User> {
     const url = `${this.userURL}/${username}/cart`;
-    return this.http.put<User>(url, keyboard, this.httpOptions).pipe(
+    return this.http.put<User>(url, keyboard, this.sessionOptions()).pipe(
       tap(user => this.log('added to '+user.username)), //_ => this.log(`added ${item.type} to cart`)
       catchError(this.handleError<any>('addToCart'))
     );
@@ -108,7 +122,7 @@ export class UserService {
   removeFromCart(keyboard: Keyboard, username: string): Observable<User> {
     const url = `${this.userURL}/${username}/removeFromCart`;
     const httpOptions = {
-      headers: new HttpHeaders({ 'Content-Type': 'application/json' }),
+      headers: this.sessionOptions().headers,
       body: keyboard // include keyboard in the request body
     };
     return this.http.delete<User>(url, httpOptions).pipe(
@@ -120,7 +134,7 @@ export class UserService {
 
   increaseQuantity(keyboard: Keyboard, username: string): Observable<User> {
     const url = `${this.userURL}/${username}/cart/increaseQuantity`;
-    return this.http.put<User>(url, keyboard, this.httpOptions).pipe(
+    return this.http.put<User>(url, keyboard, this.sessionOptions()).pipe(
       tap(user => this.log('increased keyboard quantity to  '+ keyboard.quantity)),
       catchError(this.handleError<any>('addToCart'))
     );
@@ -128,7 +142,7 @@ export class UserService {
 
   decreaseQuantity(keyboard: Keyboard, username: string): Observable<User> {
     const url = `${this.userURL}/${username}/cart/decreaseQuantity`;
-    return this.http.put<User>(url, keyboard, this.httpOptions).pipe(
+    return this.http.put<User>(url, keyboard, this.sessionOptions()).pipe(
       tap(user => this.log('increased keyboard quantity to  '+ keyboard.quantity)),
       catchError(this.handleError<any>('addToCart'))
     );
@@ -136,13 +150,28 @@ export class UserService {
 
   login(username: string, password: string ): Observable<User> {
     const url = `${this.userURL}/login/username=${username}&password=${password}`;
-    return this.http.put<User>(url, username).pipe(
+    return this.http.put<User>(url, username, { observe: 'response' }).pipe(
+      map(response => {
+        const token = response.headers.get(UserService.SESSION_HEADER);
+        if (token) {
+          this.localService.saveData('session_token', token);
+        }
+        return response.body!;
+      }),
       tap((_) => this.log(`login ${username}, ${password}`)),
       catchError(this.handleError<any>('login'))
     );
   }
 
   logout(username: string, password: string ): Observable<User> {
+    const options = this.sessionOptions();
+    if (options.headers.has(UserService.SESSION_HEADER)) {
+      this.localService.removeData('session_token');
+      return this.http.post<User>(`${this.userURL}/logout`, null, options).pipe(
+        tap((_) => this.log(`logout ${username}`)),
+        catchError(this.handleError<any>('logout'))
+      );
+    }
     const url = `${this.userURL}/logout/username=${username}&password=${password}`;
     return this.http.put<User>(url, username).pipe(
       tap((_) => this.log(`login ${username}, ${password}`)),
@@ -152,7 +181,7 @@ export class UserService {
 
   clearCart(username: string): Observable<User> {
     const url = `${this.userURL}/${username}/order`;
-    return this.http.delete<User>(url).pipe(
+    return this.http.delete<User>(url, this.sessionOptions()).pipe(
       tap(_ => this.log(`cleared ${_.username}'s cart`)),
       catchError(this.handleError<any>('clearCart'))
     );
@@ -160,7 +189,7 @@ export class UserService {
 
   getEntireCart(username: string): Observable<Keyboard[]> {
     const url = `${this.userURL}/${username}/cart`;
-    return this.http.get<User>(url).pipe(
+    return this.http.get<User>(url, this.sessionOptions()).pipe(
       map(user => user.userCart),
       tap(_ => this.log(`retrieved ${username}'s cart`)),
       catchError(this.handleError<any>('retrieved user cart'))
@@ -169,7 +198,7 @@ export class UserService {
 
   getOrderHistory(username: string): Observable<Keyboard[]> {
     const url = `${this.userURL}/${username}/orders`;
-    return this.http.get<User>(url).pipe(
+    return this.http.get<User>(url, this.sessionOptions()).pipe(
       map(user => user.userCart),
       tap(_ => this.log(`retrieved ${username}'s cart`)),
       catchError(this.handleError<any>('retrieved user cart'))
@@ -178,7 +207,7 @@ export class UserService {
 
   pushToOrderHistory(username: string, keyboards: Keyboard[]): Observable<User> {
     const url = `${this.userURL}/${username}/orders/addToOrderHistory`;
-    return this.http.post<User>(url, keyboards, this.httpOptions).pipe(
+    return this.http.post<User>(url, keyboards, this.sessionOptions()).pipe(
       tap((user: User) => this.log(`updated User w/ username=${user.username}`)),
       catchError(this.handleError<User>('pushToOrderHistory'))
     );
@@ -186,7 +215,7 @@ export class UserService {
 
   clearCartAfterPurchase(username: string): Observable<User> {
     const url = `${this.userURL}/${username}/clearCart`;
-    return this.http.delete<User>(url, this.httpOptions).pipe(
+    return this.http.delete<User>(url, this.sessionOptions()).pipe(
       tap(_ => this.log(`cleared the cart of username=${username}`)),
       catchError(this.handleError<User>('deleteAccount'))
     );